@@ -0,0 +1,117 @@
+package com.sources.com.qualcomm.robotcore.benchmark;
+
+import com.qualcomm.robotcore.robocol.Command;
+import com.qualcomm.robotcore.robocol.CommandDeduplicator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the command duplicate check in EventLoopManager before and after CommandDeduplicator
+ * <p>
+ * Every command is delivered several times, as during a retransmit storm, with the copies
+ * shuffled among the other commands in flight. Reports how many duplicates each approach lets
+ * through and the cost per received command.
+ * <p>
+ * Run with: java com.qualcomm.robotcore.benchmark.CommandDeduplicatorBenchmark [iterations]
+ */
+public class CommandDeduplicatorBenchmark {
+
+	private static final int[] IN_FLIGHT = { 8, 64, 256, 512, 1000 };
+	private static final int COPIES = 4; // deliveries per command
+	private static final int COMMANDS = 20000;
+	private static final int LEGACY_CACHE_SIZE = 8;
+
+	public static void main(String[] args) {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+
+		System.out.println(String.format("%10s %18s %14s %18s %14s",
+				"in flight", "legacy dupes run", "legacy ns/cmd", "dedup dupes run", "dedup ns/cmd"));
+
+		for (int inFlight : IN_FLIGHT) {
+			Command[] stream = buildStream(inFlight, new Random(inFlight));
+
+			// warm up, then keep the best run
+			long legacyBest = Long.MAX_VALUE;
+			long dedupBest = Long.MAX_VALUE;
+			int legacyDupes = 0;
+			int dedupDupes = 0;
+			for (int i = 0; i < iterations + 2; i++) {
+				long start = System.nanoTime();
+				legacyDupes = runLegacy(stream);
+				long legacy = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				dedupDupes = runDeduplicator(stream);
+				long dedup = System.nanoTime() - start;
+
+				if (i >= 2) {
+					legacyBest = Math.min(legacyBest, legacy);
+					dedupBest = Math.min(dedupBest, dedup);
+				}
+			}
+
+			System.out.println(String.format("%10d %18d %14.1f %18d %14.1f",
+					inFlight, legacyDupes, legacyBest / (double) stream.length,
+					dedupDupes, dedupBest / (double) stream.length));
+		}
+	}
+
+	/*
+	 * Each command is sent COPIES times; the copies of a command land anywhere among the
+	 * deliveries of the other commands in flight at the same time
+	 */
+	private static Command[] buildStream(int inFlight, Random random) {
+		List<Command> stream = new ArrayList<Command>(COMMANDS * COPIES);
+		List<Command> batch = new ArrayList<Command>(inFlight * COPIES);
+
+		for (int i = 0; i < COMMANDS; i += inFlight) {
+			batch.clear();
+			for (int j = i; j < Math.min(COMMANDS, i + inFlight); j++) {
+				Command command = new Command("CMD_" + j, "");
+				for (int k = 0; k < COPIES; k++) batch.add(command);
+			}
+			Collections.shuffle(batch, random);
+			stream.addAll(batch);
+		}
+
+		return stream.toArray(new Command[stream.size()]);
+	}
+
+	// returns the number of duplicates that would have been executed
+	private static int runLegacy(Command[] stream) {
+		Command[] cache = new Command[LEGACY_CACHE_SIZE];
+		int position = 0;
+		int executed = 0;
+
+		for (Command command : stream) {
+			boolean found = false;
+			for (Command c : cache) {
+				if (c != null && c.equals(command)) {
+					found = true;
+					break;
+				}
+			}
+			if (found) continue;
+
+			cache[(position++) % cache.length] = command;
+			executed++;
+		}
+
+		return executed - (stream.length / COPIES);
+	}
+
+	private static int runDeduplicator(Command[] stream) {
+		CommandDeduplicator deduplicator = new CommandDeduplicator();
+		int executed = 0;
+		long now = System.nanoTime();
+
+		for (Command command : stream) {
+			if (deduplicator.add(command, now)) executed++;
+		}
+
+		return executed - (stream.length / COPIES);
+	}
+}
@@ -0,0 +1,326 @@
+package com.sources.com.qualcomm.robotcore.benchmark;
+
+import com.qualcomm.robotcore.hardware.Gamepad;
+import com.qualcomm.robotcore.robocol.Command;
+import com.qualcomm.robotcore.robocol.Heartbeat;
+import com.qualcomm.robotcore.robocol.PeerDiscovery;
+import com.qualcomm.robotcore.robocol.RobocolConfig;
+import com.qualcomm.robotcore.robocol.RobocolParsable;
+import com.qualcomm.robotcore.robocol.Telemetry;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures encode and decode of the Robocol messages: operations per second and bytes allocated
+ * per operation
+ * <p>
+ * Payloads are meant to look like match traffic: moving sticks, commands of mixed sizes and
+ * 30-key telemetry frames. Each case is warmed up and then run for a fixed time on the calling
+ * thread. Allocation is read from com.sun.management.ThreadMXBean, so it is only reported on
+ * JVMs that support it.
+ * <p>
+ * Run with: java com.qualcomm.robotcore.benchmark.RobocolCodecBenchmark [seconds per case] [filter]
+ */
+public class RobocolCodecBenchmark {
+
+	private static final double WARMUP_SECONDS = 1;
+	private static final int TELEMETRY_KEYS = 30;
+	private static final int SAMPLES = 256; // distinct payloads per case, cycled through
+
+	/**
+	 * One benchmarked operation
+	 */
+	private static abstract class Case {
+		final String name;
+
+		Case(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Run the operation once
+		 *
+		 * @param i iteration number
+		 * @return anything derived from the result, so it can't be optimized away
+		 */
+		abstract long run(int i) throws Exception;
+	}
+
+	// results are folded in here so the JIT can't drop the work
+	private static volatile long sink;
+
+	// average encoded size of each case's payloads, in bytes
+	private static final Map<String, String> wireSizes = new HashMap<String, String>();
+
+	public static void main(String[] args) throws Exception {
+		double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 2;
+		String filter = args.length > 1 ? args[1] : "";
+
+		System.out.println(String.format("%-28s %14s %14s %10s", "case", "ops/s", "bytes/op", "wire size"));
+		for (Case c : cases()) {
+			if (!c.name.contains(filter)) continue;
+			measure(c, WARMUP_SECONDS);
+			double[] result = measure(c, seconds);
+			System.out.println(String.format("%-28s %14.0f %14s %10s", c.name, result[0],
+					(result[1] < 0) ? "n/a" : String.format("%.1f", result[1]), wireSize(c.name)));
+		}
+	}
+
+	private static String wireSize(String name) {
+		String size = wireSizes.get(name);
+		return (size == null) ? "" : size;
+	}
+
+	/*
+	 * Returns { ops/s, bytes allocated per op or -1 }
+	 */
+	private static double[] measure(Case c, double seconds) throws Exception {
+		long allocatedBefore = allocatedBytes();
+		long start = System.nanoTime();
+		long deadline = start + (long) (seconds * 1e9);
+		long ops = 0;
+		long result = 0;
+
+		// check the clock every batch, not every op
+		while (System.nanoTime() < deadline) {
+			for (int i = 0; i < 1000; i++) {
+				result += c.run((int) ops++);
+			}
+		}
+
+		long elapsed = System.nanoTime() - start;
+		long allocatedAfter = allocatedBytes();
+		sink += result;
+
+		double bytesPerOp = (allocatedBefore < 0) ? -1 : (allocatedAfter - allocatedBefore) / (double) ops;
+		return new double[] { ops / (elapsed / 1e9), bytesPerOp };
+	}
+
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+			if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+				return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	private static List<Case> cases() throws Exception {
+		List<Case> cases = new ArrayList<Case>();
+		final Random random = new Random(42);
+		final ByteBuffer buffer = ByteBuffer.allocate(RobocolConfig.MAX_PACKET_SIZE);
+
+		// gamepads: sticks and triggers moving, a few buttons held
+		for (final int version : new int[] { 2, Gamepad.COMPACT_ROBOCOL_VERSION }) {
+			final Gamepad[] gamepads = new Gamepad[SAMPLES];
+			for (int i = 0; i < SAMPLES; i++) {
+				Gamepad gamepad = new Gamepad();
+				double t = i / 50.0;
+				gamepad.left_stick_x = (float) Math.sin(t);
+				gamepad.left_stick_y = (float) Math.cos(t);
+				gamepad.right_stick_x = (float) Math.sin(t * 2);
+				gamepad.right_trigger = (float) ((Math.sin(t * 3) + 1) / 2);
+				gamepad.a = (i / 25) % 2 == 0;
+				gamepad.dpad_up = (i / 40) % 3 == 0;
+				gamepad.timestamp = 1000000 + i * 20;
+				gamepad.user = 1;
+				gamepad.id = 1;
+				gamepad.setWireVersion(version);
+				gamepads[i] = gamepad;
+			}
+
+			final Gamepad encoder = new Gamepad();
+			encoder.setWireVersion(version);
+			final byte[][] encoded = new byte[SAMPLES][];
+			for (int i = 0; i < SAMPLES; i++) {
+				encoder.copy(gamepads[i]);
+				buffer.clear();
+				encoder.writeTo(buffer);
+				encoded[i] = Arrays.copyOf(buffer.array(), buffer.position());
+			}
+			wireSizes.put("gamepad v" + version + " encode", averageSize(encoded));
+			wireSizes.put("gamepad v" + version + " decode", averageSize(encoded));
+
+			cases.add(new Case("gamepad v" + version + " encode") {
+				@Override
+				long run(int i) throws Exception {
+					encoder.copy(gamepads[i % SAMPLES]);
+					buffer.clear();
+					encoder.writeTo(buffer);
+					return buffer.position();
+				}
+			});
+
+			final Gamepad decoder = new Gamepad();
+			final ByteBuffer[] wrapped = wrap(encoded);
+			cases.add(new Case("gamepad v" + version + " decode") {
+				@Override
+				long run(int i) throws Exception {
+					// the first sample is a full update, so compact decoding restarts cleanly
+					int n = i % SAMPLES;
+					decoder.readFrom(wrapped[n], 0, encoded[n].length);
+					return decoder.timestamp;
+				}
+			});
+		}
+
+		// heartbeats
+		final Heartbeat heartbeat = new Heartbeat(Heartbeat.Token.EMPTY);
+		buffer.clear();
+		heartbeat.writeTo(buffer);
+		final byte[] heartbeatBytes = Arrays.copyOf(buffer.array(), buffer.position());
+		final ByteBuffer heartbeatBuffer = ByteBuffer.wrap(heartbeatBytes);
+		wireSizes.put("heartbeat encode", Integer.toString(heartbeatBytes.length));
+		wireSizes.put("heartbeat decode", Integer.toString(heartbeatBytes.length));
+		cases.add(new Case("heartbeat encode") {
+			@Override
+			long run(int i) throws Exception {
+				buffer.clear();
+				heartbeat.writeTo(buffer);
+				return buffer.position();
+			}
+		});
+		cases.add(new Case("heartbeat decode") {
+			@Override
+			long run(int i) throws Exception {
+				heartbeat.readFrom(heartbeatBuffer, 0, heartbeatBytes.length);
+				return heartbeat.getSequenceNumber();
+			}
+		});
+
+		// commands: short control commands mixed with larger ones carrying data
+		final Command[] commands = new Command[SAMPLES];
+		final byte[][] commandBytes = new byte[SAMPLES][];
+		for (int i = 0; i < SAMPLES; i++) {
+			String name = (i % 4 == 0) ? "CMD_RUN_OP_MODE" : (i % 4 == 1) ? "CMD_REQUEST_OP_MODE_LIST_RESP" : "CMD_SET_MATCH_NUMBER";
+			commands[i] = new Command(name, randomString(random, (i % 4 == 1) ? 200 + random.nextInt(56) : random.nextInt(24)));
+			buffer.clear();
+			commands[i].writeTo(buffer);
+			commandBytes[i] = Arrays.copyOf(buffer.array(), buffer.position());
+		}
+		final ByteBuffer[] commandBuffers = wrap(commandBytes);
+		wireSizes.put("command encode", averageSize(commandBytes));
+		wireSizes.put("command decode", averageSize(commandBytes));
+		cases.add(new Case("command encode") {
+			@Override
+			long run(int i) throws Exception {
+				buffer.clear();
+				commands[i % SAMPLES].writeTo(buffer);
+				return buffer.position();
+			}
+		});
+		cases.add(new Case("command decode") {
+			@Override
+			long run(int i) throws Exception {
+				int n = i % SAMPLES;
+				return new Command(commandBuffers[n], 0, commandBytes[n].length).getTimestamp();
+			}
+		});
+
+		// telemetry: 30 keys, mostly numbers, a few strings
+		final Telemetry[] frames = new Telemetry[SAMPLES / 16];
+		final byte[][] frameBytes = new byte[frames.length][];
+		for (int f = 0; f < frames.length; f++) {
+			Telemetry telemetry = new Telemetry();
+			for (int k = 0; k < TELEMETRY_KEYS; k++) {
+				if (k % 6 == 0) {
+					telemetry.addData("status " + k, "state " + random.nextInt(10));
+				} else {
+					telemetry.addData("motor " + k + " position", random.nextDouble() * 1000);
+				}
+			}
+			frames[f] = telemetry;
+			buffer.clear();
+			telemetry.writeTo(buffer);
+			frameBytes[f] = Arrays.copyOf(buffer.array(), buffer.position());
+		}
+		final ByteBuffer[] frameBuffers = wrap(frameBytes);
+		final Telemetry telemetryDecoder = new Telemetry();
+		wireSizes.put("telemetry 30 keys encode", averageSize(frameBytes));
+		wireSizes.put("telemetry 30 keys decode", averageSize(frameBytes));
+		cases.add(new Case("telemetry 30 keys encode") {
+			@Override
+			long run(int i) throws Exception {
+				buffer.clear();
+				frames[i % frames.length].writeTo(buffer);
+				return buffer.position();
+			}
+		});
+		cases.add(new Case("telemetry 30 keys decode") {
+			@Override
+			long run(int i) throws Exception {
+				int n = i % frames.length;
+				telemetryDecoder.readFrom(frameBuffers[n], 0, frameBytes[n].length);
+				return telemetryDecoder.getTimestamp();
+			}
+		});
+
+		// peer discovery
+		final PeerDiscovery peerDiscovery = new PeerDiscovery(PeerDiscovery.PeerType.PEER);
+		buffer.clear();
+		peerDiscovery.writeTo(buffer);
+		final byte[] peerBytes = Arrays.copyOf(buffer.array(), buffer.position());
+		final ByteBuffer peerBuffer = ByteBuffer.wrap(peerBytes);
+		wireSizes.put("peer discovery encode", Integer.toString(peerBytes.length));
+		wireSizes.put("peer discovery decode", Integer.toString(peerBytes.length));
+		cases.add(new Case("peer discovery encode") {
+			@Override
+			long run(int i) throws Exception {
+				buffer.clear();
+				peerDiscovery.writeTo(buffer);
+				return buffer.position();
+			}
+		});
+		cases.add(new Case("peer discovery decode") {
+			@Override
+			long run(int i) throws Exception {
+				peerDiscovery.readFrom(peerBuffer, 0, peerBytes.length);
+				return peerDiscovery.getCapabilities();
+			}
+		});
+
+		// message type lookup
+		final int types = RobocolParsable.MsgType.values().length;
+		cases.add(new Case("MsgType.fromByte") {
+			@Override
+			long run(int i) throws Exception {
+				return RobocolParsable.MsgType.fromByte((byte) (i % types)).ordinal();
+			}
+		});
+		cases.add(new Case("MsgType.fromByte unknown") {
+			@Override
+			long run(int i) throws Exception {
+				return RobocolParsable.MsgType.fromByte((byte) (types + (i & 0x0f))).ordinal();
+			}
+		});
+
+		return cases;
+	}
+
+	private static ByteBuffer[] wrap(byte[][] samples) {
+		ByteBuffer[] buffers = new ByteBuffer[samples.length];
+		for (int i = 0; i < samples.length; i++) buffers[i] = ByteBuffer.wrap(samples[i]);
+		return buffers;
+	}
+
+	private static String averageSize(byte[][] samples) {
+		long total = 0;
+		for (byte[] sample : samples) total += sample.length;
+		return String.format("%.1f", total / (double) samples.length);
+	}
+
+	private static String randomString(Random random, int length) {
+		StringBuilder builder = new StringBuilder(length);
+		for (int i = 0; i < length; i++) builder.append((char) ('a' + random.nextInt(26)));
+		return builder.toString();
+	}
+}
@@ -0,0 +1,42 @@
+plugins {
+    id("com.android.library")
+}
+
+android {
+    namespace = "com.qualcomm.robotcore"
+    compileSdk = 33
+
+    defaultConfig {
+        minSdk = 19
+    }
+
+    sourceSets {
+        getByName("main") {
+            // the robot core packages sit at the top of the tree, one directory per package
+            java.setSrcDirs(
+                listOf(
+                    "eventloop", "exception", "factory", "hardware", "robocol", "robot",
+                    "sensor", "util", "wifi", "simulator", "benchmark"
+                )
+            )
+        }
+        getByName("test") {
+            java.setSrcDirs(listOf("src/test/java"))
+        }
+    }
+
+    testOptions {
+        // RobotLog goes to android.util.Log, which does nothing in local unit tests
+        unitTests.isReturnDefaultValues = true
+    }
+
+    compileOptions {
+        sourceCompatibility = JavaVersion.VERSION_1_8
+        targetCompatibility = JavaVersion.VERSION_1_8
+    }
+}
+
+dependencies {
+
+    testImplementation("junit:junit:4.13.2")
+}
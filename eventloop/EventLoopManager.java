@@ -31,25 +31,42 @@
 package com.sources.com.qualcomm.robotcore.eventloop;
 
 import com.qualcomm.robotcore.eventloop.EventLoop;
-import com.qualcomm.robotcore.eventloop.SyncdDevice;
 import com.qualcomm.robotcore.eventloop.opmode.OpModeManager;
 import com.qualcomm.robotcore.exception.RobotCoreException;
 import com.qualcomm.robotcore.hardware.Gamepad;
+import com.qualcomm.robotcore.robocol.BulkAck;
+import com.qualcomm.robotcore.robocol.BulkChunk;
+import com.qualcomm.robotcore.robocol.BulkTransferReceiver;
+import com.qualcomm.robotcore.robocol.BulkTransferSender;
 import com.qualcomm.robotcore.robocol.Command;
+import com.qualcomm.robotcore.robocol.CommandAck;
+import com.qualcomm.robotcore.robocol.CommandDeduplicator;
+import com.qualcomm.robotcore.robocol.CommandRetransmitter;
 import com.qualcomm.robotcore.robocol.Heartbeat;
+import com.qualcomm.robotcore.robocol.LinkQualityMonitor;
 import com.qualcomm.robotcore.robocol.PeerDiscovery;
 import com.qualcomm.robotcore.robocol.RobocolDatagram;
 import com.qualcomm.robotcore.robocol.RobocolDatagramSocket;
+import com.qualcomm.robotcore.robocol.RobocolUnpacker;
 import com.qualcomm.robotcore.robocol.Telemetry;
+import com.qualcomm.robotcore.robocol.TelemetryAck;
+import com.qualcomm.robotcore.robocol.TelemetryDelta;
+import com.qualcomm.robotcore.robocol.TelemetryDeltaEncoder;
+import com.qualcomm.robotcore.robocol.TelemetryFragmenter;
 import com.qualcomm.robotcore.util.ElapsedTime;
+import com.qualcomm.robotcore.util.FrameworkScheduler;
+import com.qualcomm.robotcore.util.LogLinearHistogram;
 import com.qualcomm.robotcore.util.Range;
 import com.qualcomm.robotcore.util.RobotLog;
 
 import java.net.InetAddress;
 import java.net.SocketException;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Event Loop Manager
@@ -61,9 +78,16 @@ public class EventLoopManager {
 
 	private static final boolean DEBUG = false;
 	private static final int HEARTBEAT_WAIT_DELAY = 250; // in milliseconds
-	private static final int MAX_COMMAND_CACHE = 8;
 	private static final int MAX_COMMAND_ATTEMPTS = 10;
-	private static final int SOCKET_SCHEDULED_SEND_INTERVAL = 100; // in milliseconds
+	private static final long SOCKET_SCHEDULED_SEND_INTERVAL = CommandRetransmitter.TICK; // in milliseconds
+	private static final long SHUTDOWN_TIMEOUT = 1000; // in milliseconds
+	private static final long EVENT_LOOP_STOP_TIMEOUT = 200; // in milliseconds
+
+	// the recv and event loop threads run ahead of UI and logging threads
+	private static final int WORKER_PRIORITY = Thread.NORM_PRIORITY + 1;
+	private static final long LINK_QUALITY_REPORT_INTERVAL = 1000; // in milliseconds
+
+	public static final double DEFAULT_LOOP_FREQUENCY = 200.0; // in Hz
 
 	public final static String SYSTEM_TELEMETRY = "SYSTEM_TELEMETRY";
 	public static final String ROBOT_BATTERY_LEVEL_KEY = "Robot Battery Level";
@@ -71,6 +95,16 @@ public class EventLoopManager {
 	public static final String RESTART_OPMODE = "RESTART_OPMODE";
 	public static final String OPMODE_RESTART_FINISHED = "OPMODE_RESTART_FINISHED";
 
+	/**
+	 * Tag of the telemetry reporting the loop profile, see getLoopProfiler()
+	 */
+	public static final String LOOP_PROFILE_TELEMETRY = "LOOP_PROFILE";
+
+	/**
+	 * Command that clears the loop profile; handled here, it is not passed on to the event loop
+	 */
+	public static final String CMD_RESET_LOOP_PROFILE = "CMD_RESET_LOOP_PROFILE";
+
 	private static final com.qualcomm.robotcore.eventloop.EventLoop EMPTY_EVENT_LOOP = new EmptyEventLoop();
 
 	// If no heartbeat is received in this amount of time, forcibly shut down the robot
@@ -78,144 +112,273 @@ public class EventLoopManager {
 
 	/**
 	 * Callback to monitor when event loop changes state
+	 * <p>
+	 * Called on a thread of its own, after the change; see EventLoopMonitorDispatcher.
 	 */
 	public interface EventLoopMonitor {
 		void onStateChange(State state);
 	}
 
 	/**
-	 * Responsible for sending scheduled items via the socket
+	 * Responsible for sending scheduled items via the socket; runs every
+	 * SOCKET_SCHEDULED_SEND_INTERVAL on the scheduler
 	 */
 	private class ScheduledSendRunnable implements Runnable {
 
-		private Set<Command> removeList = new HashSet<Command>();
+		private Telemetry linkQualityTelemetry = new Telemetry();
+		private Telemetry loopProfileTelemetry = new Telemetry();
+		private long nextLinkQualityReport = 0;
 
 		@Override
 		public void run() {
+			long now = System.nanoTime();
 
-			while (!Thread.interrupted()) {
-				for (Command cmd : commandSendCache) {
-					if (cmd.getAttempts() > MAX_COMMAND_ATTEMPTS) {
-						// too many attempts
-						RobotLog.w("Failed to send command, too many attempts: " + cmd.toString());
-						removeList.add(cmd);
-					} else if (cmd.isAcknowledged()) {
-						// command ack'd, remove from list
-						RobotLog.v("Command " + cmd.getName() + " has been acknowledged by remote device");
-						removeList.add(cmd);
-					} else {
-						// no ack received, send
-						try {
-							RobotLog.v("Sending command: " + cmd.getName() + ", attempt " + cmd.getAttempts());
-							socket.send(new RobocolDatagram(cmd.toByteArray()));
-						} catch (RobotCoreException e) {
-							RobotLog.w("Failed to send command " + cmd.getName());
-							RobotLog.logStacktrace(e);
-						}
-					}
-				}
+			// resend commands that have not been acknowledged in time
+			commandRetransmitter.advance(now);
 
-				// update cache
-				commandSendCache.removeAll(removeList);
-				removeList.clear();
+			// telemetry held back by its tag's rate limit
+			telemetryLimiter.flush(now);
 
-				// sleep
-				try {
-					Thread.sleep(SOCKET_SCHEDULED_SEND_INTERVAL);
-				} catch (InterruptedException e) {
-					// if we are interrupted, shut down this thread
-					return;
-				}
+			// bulk data goes out at a limited rate, after everything else
+			if (bulkTransferEnabled) bulkSender.pump(now);
+
+			// report link quality while a driver station is connected
+			if (now - nextLinkQualityReport >= 0 && clientAddr != null) {
+				nextLinkQualityReport = now + LINK_QUALITY_REPORT_INTERVAL * 1000000L;
+				linkQualityTelemetry.setTag(SYSTEM_TELEMETRY);
+				linkQuality.addTo(linkQualityTelemetry);
+				sendTelemetryData(linkQualityTelemetry);
+
+				loopProfileTelemetry.setTag(LOOP_PROFILE_TELEMETRY);
+				loopProfiler.addTo(loopProfileTelemetry);
+				if (loopProfileTelemetry.hasData()) sendTelemetryData(loopProfileTelemetry);
 			}
+
+			socket.flush();
 		}
 	}
 
 	/**
 	 * Responsible for pulling items off the socket and processing them
 	 */
-	private class RecvRunnable implements Runnable {
+	private class RecvRunnable implements Runnable, RobocolDatagramSocket.RecvCallback {
 
 		ElapsedTime timer = new ElapsedTime();
+		RobocolUnpacker unpacker = new RobocolUnpacker(this);
 
 		@Override
 		public void run() {
 
 			while (true) {
-				RobocolDatagram msg = socket.recv();
+				int count = socket.drain(unpacker);
+
+				// send the echoes and acks generated by this burst together
+				long start = System.nanoTime();
+				sendCommandAcks();
+				bulkReceiver.sendAcks(socket);
+				socket.flush();
+				if (count > 0) loopProfiler.record(LoopProfiler.Phase.RECV_BURST, start);
 
 				if (shutdownRecvLoop == true || socket.isClosed()) {
 					return;
 				}
 
-				if (msg == null) {
+				if (count == 0) {
 					Thread.yield();
 					continue;
 				}
+			}
+		}
 
-				if (RobotLog.hasGlobalErrorMsg()) {
-					buildAndSendTelemetry(SYSTEM_TELEMETRY, RobotLog.getGlobalErrorMsg());
-				}
+		@Override
+		public void onRecv(RobocolDatagram msg) {
 
-				if (DEBUG)
-					timer.reset();
+			if (shutdownRecvLoop == true) {
+				return;
+			}
 
-				try {
-					if (EventLoopManager.this.isWaitingForRestart){
-						RobotLog.e("Dropped connection... last running op mode: " + EventLoopManager.this.lastActiveOpMode);
-						buildAndSendTelemetry(RESTART_OPMODE, lastActiveOpMode);
-					}
+			long start = System.nanoTime();
 
-					switch (msg.getMsgType()) {
-					case GAMEPAD:
-						processGamepadEvent(msg);
-						break;
-					case HEARTBEAT:
-						processHeartbeatEvent(msg);
-						break;
-					case PEER_DISCOVERY:
-						processPeerDiscoveryEvent(msg);
-						break;
-					case COMMAND:
-						processCommandEvent(msg);
-						break;
-					case EMPTY:
-						processEmptyEvent();
-						break;
-					default:
-						processUnknownEvent(msg);
-						break;
-					}
-				} catch (RobotCoreException e) {
-					RobotLog.w("RobotCore event loop cannot process event: " + e);
+			if (RobotLog.hasGlobalErrorMsg()) {
+				buildAndSendTelemetry(SYSTEM_TELEMETRY, RobotLog.getGlobalErrorMsg());
+			}
+
+			if (DEBUG)
+				timer.reset();
+
+			try {
+				if (EventLoopManager.this.isWaitingForRestart.get()){
+					RobotLog.e("Dropped connection... last running op mode: " + EventLoopManager.this.lastActiveOpMode);
+					buildAndSendTelemetry(RESTART_OPMODE, lastActiveOpMode);
 				}
 
-				if (DEBUG)
-					timer.log("recv runnable");
+				switch (msg.getMsgType()) {
+				case GAMEPAD:
+					processGamepadEvent(msg);
+					break;
+				case HEARTBEAT:
+					processHeartbeatEvent(msg);
+					break;
+				case PEER_DISCOVERY:
+					processPeerDiscoveryEvent(msg);
+					break;
+				case COMMAND:
+					processCommandEvent(msg);
+					break;
+				case TELEMETRY_ACK:
+					processTelemetryAckEvent(msg);
+					break;
+				case COMMAND_ACK:
+					processCommandAckEvent(msg);
+					break;
+				case BULK_DATA:
+					processBulkDataEvent(msg);
+					break;
+				case BULK_ACK:
+					processBulkAckEvent(msg);
+					break;
+				case EMPTY:
+					processEmptyEvent();
+					break;
+				default:
+					processUnknownEvent(msg);
+					break;
+				}
+			} catch (RobotCoreException e) {
+				RobotLog.w("RobotCore event loop cannot process event: " + e);
 			}
+
+			loopProfiler.record(LoopProfiler.Phase.RECV_MESSAGE, start);
+
+			if (DEBUG)
+				timer.log("recv runnable");
 		}
 	}
 
 	/**
 	 * Responsible for calling loop on the assigned event loop
+	 * <p>
+	 * One long-lived thread runs every event loop in turn. Each call to request() starts a new
+	 * session; a session runs until cancel() supersedes it or the event loop fails.
 	 */
 	private class EventLoopRunnable implements Runnable {
 
+		private final Object lock = new Object();
+		private volatile int session = 0;
+		private boolean requested = false; // guarded by lock
+		private boolean active = false;    // guarded by lock
+		private boolean retired = false;   // guarded by lock
+
+		/**
+		 * Start a new session with the current event loop
+		 */
+		void request() {
+			synchronized (lock) {
+				session++;
+				requested = true;
+				lock.notifyAll();
+			}
+		}
+
+		/**
+		 * End the current session and wait for it to finish
+		 *
+		 * @param thread the thread running this worker
+		 * @param timeout how long to wait, in milliseconds
+		 * @return true if no session is running any more
+		 */
+		boolean cancel(Thread thread, long timeout) {
+			synchronized (lock) {
+				session++;
+				requested = false;
+				if (!active) return true;
+			}
+
+			// called from the event loop itself; the session ends when the loop returns
+			if (thread == Thread.currentThread()) return true;
+
+			// wake the loop up if it is waiting or sleeping
+			thread.interrupt();
+
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+			synchronized (lock) {
+				while (active) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) break;
+					try {
+						TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						break;
+					}
+				}
+				return !active;
+			}
+		}
+
+		private void recordSwitchLatency() {
+			long latency = System.nanoTime() - switchStart;
+			switchStart = 0;
+			switchLatency.record(latency);
+			RobotLog.v(String.format("Event loop switch took %.1f ms", latency / 1e6));
+		}
+
+		/**
+		 * Let the thread exit once the current session, if any, is over
+		 */
+		void retire() {
+			synchronized (lock) {
+				session++;
+				retired = true;
+				lock.notifyAll();
+			}
+		}
+
 		@Override
 		public void run() {
+			while (true) {
+				int current;
+				synchronized (lock) {
+					while (!requested && !retired) {
+						try {
+							lock.wait();
+						} catch (InterruptedException e) {
+							// a cancel() that raced with the end of the last session
+						}
+					}
+					if (retired) return;
+
+					requested = false;
+					active = true;
+					current = session;
+				}
+
+				// clear an interrupt meant for the previous session
+				Thread.interrupted();
+
+				try {
+					runSession(current);
+				} finally {
+					synchronized (lock) {
+						active = false;
+						lock.notifyAll();
+					}
+				}
+			}
+		}
+
+		private void runSession(int current) {
 
 			RobotLog.v("EventLoopRunnable has started");
+
 			try {
-				ElapsedTime loopTime = new ElapsedTime();
-				final double MIN_THROTTLE = 0.0010; // in seconds
-				final long THROTTLE_RESOLUTION = 5; // in milliseconds
+				loopScheduler.start();
 
-				while (Thread.interrupted() == false) {
+				while (current == session && Thread.interrupted() == false) {
 
-					while (loopTime.time() < MIN_THROTTLE) {
-						// don't go faster than throttle allows
-						Thread.sleep(THROTTLE_RESOLUTION);
-					}
-					loopTime.reset();
+					// don't go faster than the loop rate allows
+					loopScheduler.awaitNextPeriod();
+					long cycleStart = System.nanoTime();
 
 					if (RobotLog.hasGlobalErrorMsg()) {
 						buildAndSendTelemetry(SYSTEM_TELEMETRY, RobotLog.getGlobalErrorMsg());
@@ -224,6 +387,7 @@ public class EventLoopManager {
 					// skip this iteration if we've never received a heartbeat
 					if (lastHeartbeatReceived.startTime() == 0.0) {
 						Thread.sleep(HEARTBEAT_WAIT_DELAY);
+						loopScheduler.resync();
 						continue;
 					}
 
@@ -231,12 +395,18 @@ public class EventLoopManager {
 						// we haven't received a heartbeat from the driver station in a while
 						handleDroppedConnection();
 						Thread.sleep(1000); //from decompiled version
+						loopScheduler.resync();
 					}
 
 					// wait for all sync'd devices to be ready
-					for (com.qualcomm.robotcore.eventloop.SyncdDevice device : syncdDevices) {
-						device.blockUntilReady();
-					}
+					long phaseStart = System.nanoTime();
+					syncdDevices.awaitReady();
+					phaseStart = loopProfiler.record(LoopProfiler.Phase.SYNC_WAIT, phaseStart);
+
+					// take one consistent snapshot of the gamepads for this loop
+					gamepads.acquire();
+
+					if (switchStart != 0) recordSwitchLatency();
 
 					// run the event loop
 					try {
@@ -254,9 +424,15 @@ public class EventLoopManager {
 
 						throw new RobotCoreException("EventLoop Exception in loop()");
 					} finally {
-						// notify sync'd devices that the event loop is complete
-						for (com.qualcomm.robotcore.eventloop.SyncdDevice device : syncdDevices) {
-							device.startBlockingWork();
+						// a session that stopEventLoop() gave up on may only get here after its
+						// replacement started; the devices and the profiler belong to that one now
+						if (current == session) {
+							phaseStart = loopProfiler.record(LoopProfiler.Phase.USER_LOOP, phaseStart);
+
+							// notify sync'd devices that the event loop is complete
+							syncdDevices.startBlockingWork();
+							loopProfiler.record(LoopProfiler.Phase.BLOCKING_WORK, phaseStart);
+							loopProfiler.record(LoopProfiler.Phase.LOOP_BUSY, cycleStart);
 						}
 					}
 				}
@@ -265,7 +441,9 @@ public class EventLoopManager {
 				RobotLog.v("EventLoopRunnable interrupted");
 			} catch (RobotCoreException e) {
 				RobotLog.v("RobotCoreException in EventLoopManager: " + e.getMessage());
-				changeState(State.EMERGENCY_STOP);
+
+				// a session that was already cancelled must not stop the event loop that replaced it
+				if (current == session) changeState(State.EMERGENCY_STOP);
 
 				buildAndSendTelemetry(SYSTEM_TELEMETRY, RobotLog.getGlobalErrorMsg());
 			}
@@ -276,14 +454,14 @@ public class EventLoopManager {
 	public void handleDroppedConnection(){
 		this.clientAddr = null; // assume this client is no longer connected
 		OpModeManager opModeManager = eventLoop.getOpModeManager();
-		if (!this.isWaitingForRestart) {
+		if (this.isWaitingForRestart.compareAndSet(false, true)) {
 			this.lastActiveOpMode = opModeManager.getActiveOpModeName();
-			this.isWaitingForRestart = true;
 		}
+		String lastActiveOpMode = this.lastActiveOpMode;
 		String msg = "Lost connection while running op mode: " + lastActiveOpMode;
 		this.changeState(State.DROPPED_CONNECTION);
 
-		if (!this.lastActiveOpMode.equals(OpModeManager.DEFAULT_OP_MODE_NAME)) {
+		if (!lastActiveOpMode.equals(OpModeManager.DEFAULT_OP_MODE_NAME)) {
 			RobotLog.setGlobalErrorMsg(msg);
 		}
 		RobotLog.i(msg);
@@ -322,32 +500,92 @@ public class EventLoopManager {
 		DROPPED_CONNECTION
 	}
 
-	public State state = State.NOT_STARTED;
+	/*
+	 * Valid state transitions; changing to the current state is always allowed, and does nothing.
+	 * There is deliberately no way back to RUNNING from STOPPED or EMERGENCY_STOP: the event loop
+	 * thread has exited then, and only start() or setEventLoop() runs a new one, through INIT.
+	 */
+	private static final Map<State, EnumSet<State>> TRANSITIONS = new EnumMap<State, EnumSet<State>>(State.class);
+	static {
+		TRANSITIONS.put(State.NOT_STARTED, EnumSet.of(State.INIT, State.STOPPED));
+		TRANSITIONS.put(State.INIT, EnumSet.of(State.RUNNING, State.STOPPED, State.EMERGENCY_STOP));
+		TRANSITIONS.put(State.RUNNING, EnumSet.of(State.STOPPED, State.EMERGENCY_STOP, State.DROPPED_CONNECTION));
+		TRANSITIONS.put(State.DROPPED_CONNECTION, EnumSet.of(State.RUNNING, State.STOPPED, State.EMERGENCY_STOP));
+		TRANSITIONS.put(State.EMERGENCY_STOP, EnumSet.of(State.STOPPED));
+		TRANSITIONS.put(State.STOPPED, EnumSet.of(State.INIT));
+	}
+
+	// changed by the UI, recv and event loop threads; only through changeState(), under stateLock
+	private volatile State state = State.NOT_STARTED;
+	private final Object stateLock = new Object();
 
-	private Thread eventLoopThread = new Thread();
-	private Thread scheduledSendThread = new Thread();
+	private final FrameworkScheduler scheduler;
+	private EventLoopRunnable eventLoopWorker = null;
+	private Thread eventLoopThread = null;
+	private volatile long switchStart = 0;
+	private final LogLinearHistogram switchLatency = new LogLinearHistogram();
+	private Thread recvThread = null;
+	private ScheduledFuture<?> scheduledSendFuture = null;
 
 	private final RobocolDatagramSocket socket;
-	private boolean shutdownRecvLoop = false;
-	private boolean isWaitingForRestart = false;
+	private volatile boolean shutdownRecvLoop = false;
+	private final AtomicBoolean isWaitingForRestart = new AtomicBoolean(false);
 
 	private ElapsedTime lastHeartbeatReceived = new ElapsedTime();
-	private String lastActiveOpMode = "";
+	private volatile String lastActiveOpMode = "";
+
+	private volatile com.qualcomm.robotcore.eventloop.EventLoop eventLoop = EMPTY_EVENT_LOOP;
+
+	private final com.qualcomm.robotcore.eventloop.GamepadStateBuffer gamepads = new com.qualcomm.robotcore.eventloop.GamepadStateBuffer();
+	// one per user, since compact gamepad updates build on the user's last full update; recv thread only
+	private final Gamepad[] incomingGamepads = { new Gamepad(), new Gamepad() };
+	private int gamepadDropsInRow = 0; // recv thread only
+	// last heartbeat received, guarded by itself; getHeartbeat() hands out copies
+	private final Heartbeat heartbeat = new Heartbeat(Heartbeat.Token.EMPTY);
+	private final Heartbeat heartbeatRecv = new Heartbeat(Heartbeat.Token.EMPTY); // recv thread only
+	private final LinkQualityMonitor linkQuality = new LinkQualityMonitor();
 
-	private com.qualcomm.robotcore.eventloop.EventLoop eventLoop = EMPTY_EVENT_LOOP;
+	private final EventLoopMonitorDispatcher monitorDispatcher;
 
-	private final Gamepad gamepad[] = { new Gamepad(), new Gamepad() };
-	private Heartbeat heartbeat = new Heartbeat(Heartbeat.Token.EMPTY);
+	private final SyncdDeviceBarrier syncdDevices;
+	private final CommandDeduplicator commandRecvCache = new CommandDeduplicator(); // recv thread only
 
-	private EventLoopMonitor callback = null;
+	private final CommandRetransmitter commandRetransmitter;
+	// acks for commands received in the current burst; recv thread only
+	private final CommandAck commandAcks = new CommandAck();
+	private boolean commandAckEnabled = false;
+	private final CommandAck commandAckRecv = new CommandAck();
 
-	private final Set<com.qualcomm.robotcore.eventloop.SyncdDevice> syncdDevices = new CopyOnWriteArraySet<com.qualcomm.robotcore.eventloop.SyncdDevice>();
-	private final Command[] commandRecvCache = new Command[MAX_COMMAND_CACHE];
-	private int commandRecvCachePosition = 0;
+	private final BulkTransferSender bulkSender;
+	private final BulkTransferReceiver bulkReceiver = new BulkTransferReceiver(new BulkTransferReceiver.Listener() {
+		@Override
+		public void onTransferComplete(String name, byte[] data) {
+			BulkTransferReceiver.Listener listener = bulkListener;
+			if (listener != null) listener.onTransferComplete(name, data);
+		}
+	});
+	private final BulkChunk bulkChunk = new BulkChunk(); // recv thread only
+	private final BulkAck bulkAck = new BulkAck(); // recv thread only
+	private volatile BulkTransferReceiver.Listener bulkListener = null;
+	private volatile boolean bulkTransferEnabled = false;
+
+	private final TelemetryDeltaEncoder telemetryEncoder = new TelemetryDeltaEncoder();
+	private final TelemetryDelta telemetryFrame = new TelemetryDelta();
+	private final TelemetryAck telemetryAck = new TelemetryAck();
+	private final TelemetryFragmenter telemetryFragmenter;
+	private volatile boolean telemetryDeltaEnabled = false;
+	private volatile boolean telemetryFragmentEnabled = false;
+	private final TelemetryRateLimiter telemetryLimiter = new TelemetryRateLimiter(new TelemetryRateLimiter.Sender() {
+		@Override
+		public void send(Telemetry telemetry) {
+			transmitTelemetry(telemetry);
+		}
+	});
 
-	private final Set<Command> commandSendCache = new CopyOnWriteArraySet<Command>();
+	private final LoopScheduler loopScheduler = new LoopScheduler(DEFAULT_LOOP_FREQUENCY, LoopScheduler.WaitStrategy.PARK_NANOS);
+	private final LoopProfiler loopProfiler = new LoopProfiler();
 
-	private InetAddress clientAddr;
+	private volatile InetAddress clientAddr;
 
 	/**
 	 * Constructor
@@ -355,8 +593,23 @@ public class EventLoopManager {
 	 * @param socket socket for IO with remote device
 	 */
 	public EventLoopManager(RobocolDatagramSocket socket) {
+		this(socket, FrameworkScheduler.getDefault());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param socket socket for IO with remote device
+	 * @param scheduler scheduler that runs this manager's threads and periodic tasks
+	 */
+	public EventLoopManager(RobocolDatagramSocket socket, FrameworkScheduler scheduler) {
 		this.socket = socket;
-		this.changeState(State.NOT_STARTED);
+		this.scheduler = scheduler;
+		this.syncdDevices = new SyncdDeviceBarrier(scheduler);
+		this.telemetryFragmenter = new TelemetryFragmenter(socket);
+		this.commandRetransmitter = new CommandRetransmitter(socket, MAX_COMMAND_ATTEMPTS);
+		this.bulkSender = new BulkTransferSender(socket);
+		this.monitorDispatcher = new EventLoopMonitorDispatcher(scheduler);
 	}
 
 	/**
@@ -365,7 +618,16 @@ public class EventLoopManager {
 	 * @param monitor event loop monitor
 	 */
 	public void setMonitor(EventLoopMonitor monitor) {
-		this.callback = monitor;
+		this.monitorDispatcher.setMonitor(monitor);
+	}
+
+	/**
+	 * Get the current state
+	 *
+	 * @return state
+	 */
+	public State getState() {
+		return state;
 	}
 
 	/**
@@ -377,10 +639,10 @@ public class EventLoopManager {
 	public void start(com.qualcomm.robotcore.eventloop.EventLoop eventLoop) throws RobotCoreException {
 		this.shutdownRecvLoop = false;
 
-		this.scheduledSendThread = new Thread(new ScheduledSendRunnable());
-		this.scheduledSendThread.start();
+		this.scheduledSendFuture = scheduler.scheduleAtFixedRate("EventLoopManager send", new ScheduledSendRunnable(),
+				0, SOCKET_SCHEDULED_SEND_INTERVAL, TimeUnit.MILLISECONDS);
 
-		new Thread(new RecvRunnable()).start();
+		this.recvThread = scheduler.startWorker("EventLoopManager recv", WORKER_PRIORITY, new RecvRunnable());
 		this.setEventLoop(eventLoop);
 	}
 
@@ -389,18 +651,48 @@ public class EventLoopManager {
 	 */
 	public void shutdown() {
 		this.socket.close();
-		this.scheduledSendThread.interrupt();
+		if (this.scheduledSendFuture != null) this.scheduledSendFuture.cancel(false);
 		this.shutdownRecvLoop = true;
 		this.stopEventLoop();
+		if (this.eventLoopWorker != null) this.eventLoopWorker.retire();
+
+		// let the monitor see the final state
+		this.monitorDispatcher.shutdown(EVENT_LOOP_STOP_TIMEOUT);
+
+		// the closed socket wakes up the recv thread; wait for it so it can't outlive us
+		Thread recv = this.recvThread;
+		if (recv != null && recv != Thread.currentThread()) {
+			try {
+				recv.join(SHUTDOWN_TIMEOUT);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (recv.isAlive()) RobotLog.w("EventLoopManager recv thread did not stop");
+		}
 	}
 
 	/**
 	 * Register a sync'd device
+	 * <p>
+	 * The device gets SyncdDeviceBarrier.DEFAULT_TIMEOUT each loop; if it is late the loop runs
+	 * without it.
 	 * 
 	 * @param device sync'd device
 	 */
 	public void registerSyncdDevice(com.qualcomm.robotcore.eventloop.SyncdDevice device) {
-		this.syncdDevices.add(device);
+		registerSyncdDevice(device, SyncdDeviceBarrier.DEFAULT_TIMEOUT, SyncdDeviceBarrier.DEFAULT_LATE_POLICY);
+	}
+
+	/**
+	 * Register a sync'd device
+	 *
+	 * @param device sync'd device
+	 * @param timeout how long each loop waits for the device, in milliseconds
+	 * @param policy what to do when the device is not ready in time
+	 */
+	public void registerSyncdDevice(com.qualcomm.robotcore.eventloop.SyncdDevice device, long timeout,
+			SyncdDeviceBarrier.LatePolicy policy) {
+		this.syncdDevices.register(device, timeout, policy);
 	}
 
 	/**
@@ -409,7 +701,16 @@ public class EventLoopManager {
 	 * @param device sync'd device
 	 */
 	public void unregisterSyncdDevice(com.qualcomm.robotcore.eventloop.SyncdDevice device) {
-		this.syncdDevices.remove(device);
+		this.syncdDevices.unregister(device);
+	}
+
+	/**
+	 * Get the sync'd devices, with how long each one took to become ready
+	 *
+	 * @return sync'd device barrier
+	 */
+	public SyncdDeviceBarrier getSyncdDevices() {
+		return syncdDevices;
 	}
 
 	/**
@@ -424,6 +725,8 @@ public class EventLoopManager {
 			RobotLog.d("Event loop cannot be null, using empty event loop");
 		}
 
+		switchStart = System.nanoTime();
+
 		// cancel the old event loop
 		this.stopEventLoop();
 
@@ -463,58 +766,215 @@ public class EventLoopManager {
 	 */
 	public Gamepad getGamepad(int port) {
 		Range.throwIfRangeIsInvalid(port, 0, 1);
-		return gamepad[port];
+		return gamepads.getSnapshot()[port];
 	}
 
 	/**
 	 * Get the gamepads
 	 * <p>
-	 * Array index will match the user number
+	 * Array index will match the user number. Both gamepads are taken from the same snapshot, which
+	 * only changes between calls to the event loop. The returned gamepads stay unchanged for this
+	 * loop and at least the next two, see GamepadStateBuffer; copy them to keep them longer.
 	 * 
 	 * @return gamepad
 	 */
 	public Gamepad[] getGamepads() {
-		return gamepad;
+		return gamepads.getSnapshot();
+	}
+
+	/**
+	 * Sequence number of the current gamepad snapshot
+	 *
+	 * @return number of gamepad packets received up to the current snapshot
+	 */
+	public long getGamepadSequence() {
+		return gamepads.getSequence();
 	}
 
 	/**
 	 * Get the current heartbeat state
+	 * <p>
+	 * Returns a new copy on every call, so the receive thread does not allocate for every
+	 * heartbeat it receives, and the copy never changes.
 	 *
 	 * @return heartbeat
 	 */
 	public Heartbeat getHeartbeat() {
-		return heartbeat;
+		synchronized (heartbeat) {
+			return new Heartbeat(heartbeat);
+		}
 	}
 
 	private void clearWaitForRestart() {
-		isWaitingForRestart = false;
+		isWaitingForRestart.set(false);
 	}
 
 	public boolean isWaitingForRestart(){
-		return isWaitingForRestart;
+		return isWaitingForRestart.get();
 	}
 
 	/**
 	 * Send telemetry data
 	 * <p>
-	 * Send the telemetry data, and then clear the sent data
+	 * Send the telemetry data, and then clear the sent data. Tags with a maximum rate, see
+	 * setTelemetryMaxRate(), are held back and merged with later data until their next turn.
 	 * 
 	 * @param telemetry telemetry data
 	 */
 	public void sendTelemetryData(Telemetry telemetry) {
-		try {
-			socket.send(new RobocolDatagram(telemetry.toByteArray()));
-		} catch (RobotCoreException e) {
-			RobotLog.w("Failed to send telemetry data");
-			RobotLog.logStacktrace(e);
-		}
+		telemetryLimiter.submit(telemetry, System.nanoTime());
 
 		// clear the stale telemetry data
 		telemetry.clearData();
 	}
 
+	/**
+	 * Set the maximum rate telemetry with a given tag is transmitted at
+	 * <p>
+	 * Telemetry.DEFAULT_TAG is limited to TelemetryRateLimiter.DEFAULT_MAX_RATE; all other tags,
+	 * SYSTEM_TELEMETRY included, are sent immediately unless limited here.
+	 *
+	 * @param tag telemetry tag
+	 * @param hz maximum transmissions per second, or 0 to send every frame immediately
+	 */
+	public void setTelemetryMaxRate(String tag, double hz) {
+		telemetryLimiter.setMaxRate(tag, hz);
+	}
+
+	/*
+	 * Put one telemetry frame on the wire
+	 */
+	private void transmitTelemetry(Telemetry telemetry) {
+		long start = System.nanoTime();
+		if (telemetryDeltaEnabled) {
+			synchronized (telemetryEncoder) {
+				try {
+					telemetryEncoder.encode(telemetry, telemetryFrame);
+					if (telemetryFragmentEnabled) {
+						telemetryFragmenter.send(telemetryFrame);
+					} else {
+						socket.send(telemetryFrame);
+					}
+				} catch (RobotCoreException e) {
+					RobotLog.w("Unable to send telemetry: " + e.toString());
+				}
+			}
+		} else {
+			socket.send(telemetry);
+		}
+		socket.flush();
+		loopProfiler.record(LoopProfiler.Phase.TELEMETRY, start);
+	}
+
+	/**
+	 * Set how often a full telemetry frame is sent when the driver station accepts delta frames
+	 *
+	 * @param keyframeInterval number of frames per tag between full frames
+	 */
+	public void setTelemetryKeyframeInterval(int keyframeInterval) {
+		synchronized (telemetryEncoder) {
+			telemetryEncoder.setKeyframeInterval(keyframeInterval);
+		}
+	}
+
+	/**
+	 * Set how many times per second the event loop runs
+	 *
+	 * @param frequency loops per second, between LoopScheduler.MIN_FREQUENCY and LoopScheduler.MAX_FREQUENCY
+	 */
+	public void setLoopFrequency(double frequency) {
+		loopScheduler.setFrequency(frequency);
+	}
+
+	/**
+	 * Set how the event loop waits between loops
+	 *
+	 * @param waitStrategy wait strategy
+	 */
+	public void setLoopWaitStrategy(LoopScheduler.WaitStrategy waitStrategy) {
+		loopScheduler.setWaitStrategy(waitStrategy);
+	}
+
+	/**
+	 * Get the scheduler pacing the event loop, for its rate and jitter statistics
+	 *
+	 * @return loop scheduler
+	 */
+	public LoopScheduler getLoopScheduler() {
+		return loopScheduler;
+	}
+
+	/**
+	 * Get how long event loop switches took, in nanoseconds
+	 * <p>
+	 * A switch is timed from setEventLoop() to the new event loop's first call to loop(), and
+	 * includes stopping and tearing down the old event loop and the init() of the new one.
+	 *
+	 * @return histogram of switch latencies
+	 */
+	public LogLinearHistogram getEventLoopSwitchLatency() {
+		return switchLatency;
+	}
+
+	/**
+	 * Get the phase timings of the event loop and receive loop
+	 * <p>
+	 * They are also sent once a second as LOOP_PROFILE_TELEMETRY, and cleared by the
+	 * CMD_RESET_LOOP_PROFILE command.
+	 *
+	 * @return loop profiler
+	 */
+	public LoopProfiler getLoopProfiler() {
+		return loopProfiler;
+	}
+
+	/**
+	 * Get the link quality statistics for the connected driver station
+	 *
+	 * @return link quality monitor
+	 */
+	public LinkQualityMonitor getLinkQualityMonitor() {
+		return linkQuality;
+	}
+
+	/**
+	 * Send a block of data, such as a file, to the driver station
+	 * <p>
+	 * Transfers are sent one after another, at a limited rate, and only to a driver station that
+	 * supports bulk transfers. The data must not be changed until the transfer is complete.
+	 *
+	 * @param name name of the transfer, e.g. a file name
+	 * @param data data to send
+	 * @return transfer ID
+	 */
+	public int sendBulkTransfer(String name, byte[] data) {
+		return bulkSender.send(name, data);
+	}
+
+	/**
+	 * Set the maximum rate of bulk transfers
+	 *
+	 * @param rate in bytes per second
+	 */
+	public void setBulkTransferRate(double rate) {
+		bulkSender.setRate(rate);
+	}
+
+	/**
+	 * Set a listener for bulk transfers received from the driver station
+	 * <p>
+	 * The listener is called on the receive thread. Bulk data is ignored while no listener is set,
+	 * and transfers larger than BulkTransferReceiver.DEFAULT_MAX_TRANSFER_SIZE are refused.
+	 *
+	 * @param listener listener, or null
+	 */
+	public void setBulkTransferListener(BulkTransferReceiver.Listener listener) {
+		this.bulkListener = listener;
+	}
+
 	public void sendCommand(Command command) {
-		commandSendCache.add(command);
+		commandRetransmitter.send(command, System.nanoTime());
+		socket.flush();
 	}
 
 	private void startEventLoop() throws RobotCoreException {
@@ -524,9 +984,7 @@ public class EventLoopManager {
 			this.eventLoop.init(this);
 
 			// notify sync'd devices that the event loop init is complete
-			for (SyncdDevice device : this.syncdDevices) {
-				device.startBlockingWork();
-			}
+			this.syncdDevices.startBlockingWork();
 		} catch (Exception e) {
 			RobotLog.w("Caught exception during looper init: " + e);
 			RobotLog.logStacktrace(e);
@@ -536,29 +994,35 @@ public class EventLoopManager {
 				buildAndSendTelemetry(SYSTEM_TELEMETRY, RobotLog.getGlobalErrorMsg());
 			}
 
+			switchStart = 0;
 			throw new RobotCoreException("Robot failed to start: " + e.getMessage());
 		}
 
-		// reset the heartbeat timer
-		this.lastHeartbeatReceived = new ElapsedTime(0);
+		// reset the heartbeat timer, unless the driver station is still talking to us; then the
+		// new event loop can run right away instead of waiting for the next heartbeat
+		if (this.lastHeartbeatReceived.startTime() == 0.0 || this.lastHeartbeatReceived.time() > SECONDS_UNTIL_FORCED_SHUTDOWN / 2) {
+			this.lastHeartbeatReceived = new ElapsedTime(0);
+		}
 
 		// start the new event loop
 		this.changeState(State.RUNNING);
 
-		this.eventLoopThread = new Thread(new EventLoopRunnable());
-		this.eventLoopThread.start();
+		// the loop thread outlives event loops; it is only started the first time
+		if (this.eventLoopWorker == null) {
+			this.eventLoopWorker = new EventLoopRunnable();
+			this.eventLoopThread = scheduler.startWorker("EventLoopManager loop", WORKER_PRIORITY, this.eventLoopWorker);
+		}
+		this.eventLoopWorker.request();
 	}
 
 	private void stopEventLoop() {
-		// cancel the old event loop
-		eventLoopThread.interrupt();
-
-		// TODO: add an 'event loop finish' notification (Thunderbots)		
-		// give time for the event loop to finish
-		try {
-			Thread.sleep(200);
-		} catch (InterruptedException e) {
-			// if we receive an interrupt we will rush the event loop teardown
+		// cancel the old event loop and wait for it to finish
+		if (eventLoopWorker != null && !eventLoopWorker.cancel(eventLoopThread, EVENT_LOOP_STOP_TIMEOUT)) {
+			// stuck in user code; leave that thread behind, the next event loop gets a new one
+			RobotLog.w("Event loop did not stop within " + EVENT_LOOP_STOP_TIMEOUT + " ms, replacing its thread");
+			eventLoopWorker.retire();
+			eventLoopWorker = null;
+			eventLoopThread = null;
 		}
 
 		// inform old event loop that it's been shut down
@@ -580,13 +1044,39 @@ public class EventLoopManager {
 		syncdDevices.clear();
 	}
 
-	private void changeState(State state) {
-		this.state = state;
-		RobotLog.v("EventLoopManager state is " + state);
-		if (callback != null)
-			this.callback.onStateChange(state);
+	/*
+	 * Move to a new state, if the transition table allows it. Returns true if the state changed.
+	 *
+	 * The change and the monitor dispatch happen under one lock, so the monitor sees racing changes
+	 * in the order they were made and ends on the actual state. dispatch() only queues, it never
+	 * waits on the monitor.
+	 */
+	private boolean changeState(State next) {
+		synchronized (stateLock) {
+			State current = this.state;
+			if (current == next) return false;
+
+			if (!TRANSITIONS.get(current).contains(next)) {
+				RobotLog.w("EventLoopManager ignoring invalid state change from " + current + " to " + next);
+				return false;
+			}
+
+			this.state = next;
+			RobotLog.v("EventLoopManager state is " + next);
+			this.monitorDispatcher.dispatch(next);
+			return true;
+		}
 	}
 
+	/**
+	 * Resume after the driver station reconnected and restarted the last op mode
+	 * <p>
+	 * Only moves a waiting loop (DROPPED_CONNECTION) or one still starting up back to RUNNING.
+	 * After a stop or an emergency stop there is no event loop left to resume, so the state stays
+	 * as it is; the op mode has to be started again.
+	 *
+	 * @param name name of the restarted op mode
+	 */
 	public void noLongerWaitForRestart(String name) {
 		this.clearWaitForRestart();
 		RobotLog.clearGlobalErrorMsg();
@@ -601,27 +1091,27 @@ public class EventLoopManager {
 		if (DEBUG)
 			RobotLog.v("processing gamepad event");
 
-		Gamepad incomingGamepad = new Gamepad();
-		incomingGamepad.fromByteArray(msg.getData());
-
-		if (incomingGamepad.user < 1 || incomingGamepad.user > 2) {
+		int user = Gamepad.peekUser(msg.getData(), msg.getOffset(), msg.getLength());
+		if (user < 1 || user > 2) {
 			// this gamepad user is invalid, we cannot use
 			RobotLog.d("Gamepad with user %d received. Only users 1 and 2 are valid");
 			return;
 		}
 
-		int position = incomingGamepad.user - 1;
-
-		// swap out the old gamepad state for the current gamepad state
-		gamepad[position] = incomingGamepad;
+		Gamepad incomingGamepad = incomingGamepads[user - 1];
+		try {
+			incomingGamepad.readFrom(msg.getByteBuffer(), msg.getOffset(), msg.getLength());
+		} catch (RobotCoreException e) {
+			// after a lost full update the next few compact updates fail the same way; log the first
+			if (gamepadDropsInRow++ == 0) RobotLog.w("Dropping gamepad updates: " + e.getMessage());
+			return;
+		}
+		if (gamepadDropsInRow > 1) RobotLog.v(String.format("Dropped %d gamepad updates", gamepadDropsInRow));
+		gamepadDropsInRow = 0;
 
-		if (gamepad[0].id == gamepad[1].id) {
-			// a gamepad was moved, reset the old gamepad
+		// publish the new state; if a gamepad was moved, the old position is reset
+		if (gamepads.update(incomingGamepad)) {
 			RobotLog.v("Gamepad moved position, removing stale gamepad");
-			if (position == 0)
-				gamepad[1] = new Gamepad();
-			if (position == 1)
-				gamepad[0] = new Gamepad();
 		}
 	}
 
@@ -630,18 +1120,28 @@ public class EventLoopManager {
 			RobotLog.v("processing heartbeat event");
 
 		this.socket.send(msg);
-		Heartbeat currentHeartbeat = new Heartbeat(Heartbeat.Token.EMPTY);
-		currentHeartbeat.fromByteArray(msg.getData());
 
+		// decode in place, heartbeats arrive continuously; getHeartbeat() copies on demand
+		this.heartbeatRecv.readFrom(msg.getByteBuffer(), msg.getOffset(), msg.getLength());
+		synchronized (heartbeat) {
+			heartbeat.copyFrom(heartbeatRecv);
+		}
 		this.lastHeartbeatReceived.reset();
-		this.heartbeat = currentHeartbeat;
+		if (this.linkQuality.onHeartbeat(heartbeatRecv, System.nanoTime())) {
+			// a restarted driver station keeps its address but knows no telemetry keys or frames
+			RobotLog.v("Heartbeat sequence jumped, resetting telemetry deltas");
+			synchronized (telemetryEncoder) {
+				telemetryEncoder.reset();
+			}
+		}
 	}
 
 	private void processPeerDiscoveryEvent(RobocolDatagram msg) throws RobotCoreException {
 		if (DEBUG)
 			RobotLog.v("processing peer discovery event");
 
-		if (msg.getAddress().equals(clientAddr))
+		InetAddress clientAddr = msg.getAddress();
+		if (clientAddr.equals(this.clientAddr))
 			return; // no action needed
 
 		// do not respond if the empty event loop is running
@@ -649,7 +1149,7 @@ public class EventLoopManager {
 			return;
 
 		// update remoteAddr with latest address
-		this.clientAddr = msg.getAddress();
+		this.clientAddr = clientAddr;
 		RobotLog.i("new remote peer discovered: " + clientAddr.getHostAddress());
 
 		try {
@@ -658,42 +1158,94 @@ public class EventLoopManager {
 			RobotLog.e("Unable to connect to peer:" + e);
 		}
 
+		// negotiate optional features with what the peer advertised
+		PeerDiscovery peer = new PeerDiscovery(PeerDiscovery.PeerType.NOT_SET);
+		peer.readFrom(msg.getByteBuffer(), msg.getOffset(), msg.getLength());
+		RobotLog.v("Remote peer: " + peer.toString());
+		socket.setPackingEnabled(peer.hasCapability(PeerDiscovery.CAPABILITY_PACKING));
+		synchronized (telemetryEncoder) {
+			telemetryEncoder.reset();
+		}
+		linkQuality.reset();
+		telemetryDeltaEnabled = peer.hasCapability(PeerDiscovery.CAPABILITY_TELEMETRY_DELTA);
+		telemetryFragmentEnabled = peer.hasCapability(PeerDiscovery.CAPABILITY_TELEMETRY_FRAGMENT);
+		commandAckEnabled = peer.hasCapability(PeerDiscovery.CAPABILITY_COMMAND_ACK);
+		bulkTransferEnabled = peer.hasCapability(PeerDiscovery.CAPABILITY_BULK_TRANSFER);
+		bulkSender.onReconnect();
+
+		// answer in the peer's version; a version 1 peer does not parse anything newer
 		final PeerDiscovery message = new PeerDiscovery(PeerDiscovery.PeerType.PEER);
+		message.setRobocolVersion((byte) Math.max(1, Math.min(peer.getRobocolVersion(), PeerDiscovery.ROBOCOL_VERSION)));
 		RobotLog.v("Sending peer discovery packet");
-		RobocolDatagram packet = new RobocolDatagram(message);
-		if (socket.getInetAddress() == null)
-			packet.setAddress(clientAddr);
-		socket.send(packet);
+		socket.send(message, (socket.getInetAddress() == null) ? clientAddr : null);
+	}
+
+	private void processTelemetryAckEvent(RobocolDatagram msg) throws RobotCoreException {
+		telemetryAck.readFrom(msg.getByteBuffer(), msg.getOffset(), msg.getLength());
+		synchronized (telemetryEncoder) {
+			telemetryEncoder.acknowledge(telemetryAck);
+		}
+	}
+
+	private void processBulkDataEvent(RobocolDatagram msg) throws RobotCoreException {
+		// nobody to deliver to, or the peer never said it sends bulk data
+		if (bulkListener == null || !bulkTransferEnabled) return;
+
+		bulkChunk.readFrom(msg.getByteBuffer(), msg.getOffset(), msg.getLength());
+		bulkReceiver.onChunk(bulkChunk, System.nanoTime());
+	}
+
+	private void processBulkAckEvent(RobocolDatagram msg) throws RobotCoreException {
+		bulkAck.readFrom(msg.getByteBuffer(), msg.getOffset(), msg.getLength());
+		bulkSender.onAck(bulkAck);
+	}
+
+	private void processCommandAckEvent(RobocolDatagram msg) throws RobotCoreException {
+		commandAckRecv.readFrom(msg.getByteBuffer(), msg.getOffset(), msg.getLength());
+		commandRetransmitter.acknowledge(commandAckRecv, System.nanoTime());
+	}
+
+	private void sendCommandAcks() {
+		if (commandAcks.isEmpty()) return;
+
+		socket.send(commandAcks);
+		commandAcks.clear();
 	}
 
 	private void processCommandEvent(RobocolDatagram msg) throws RobotCoreException {
 		if (DEBUG)
 			RobotLog.v("processing command event");
 
-		Command command = new Command(msg.getData());
+		Command command = new Command(msg.getByteBuffer(), msg.getOffset(), msg.getLength());
 
 		// is this a command ack?
 		if (command.isAcknowledged()) {
-			// yes, remove from send cache and stop processing
-			commandSendCache.remove(command);
+			// yes, stop retransmitting it and stop processing
+			commandRetransmitter.acknowledge(command, System.nanoTime());
 			return;
 		}
 
-		// acknowledge this command
-		command.acknowledge();
-		socket.send(new RobocolDatagram(command));
+		// acknowledge this command, batched with the rest of the burst if the peer allows it
+		if (commandAckEnabled) {
+			if (commandAcks.isFull()) sendCommandAcks();
+			commandAcks.add(command);
+		} else {
+			command.acknowledge();
+			socket.send(command);
+		}
 
-		// check if it's in the cache
-		for (Command c : commandRecvCache) {
-			if (c != null && c.equals(command)) {
-				// this command is in the cache, which means we've already handled it
-				// no need to continue, just return now
-				return;
-			}
+		// cache the command, unless it's already in the cache
+		if (!commandRecvCache.add(command, System.nanoTime())) {
+			// this command is in the cache, which means we've already handled it
+			// no need to continue, just return now
+			return;
 		}
 
-		// cache the command
-		commandRecvCache[(commandRecvCachePosition++) % commandRecvCache.length] = command;
+		if (command.getName().equals(CMD_RESET_LOOP_PROFILE)) {
+			RobotLog.v(loopProfiler.toString());
+			loopProfiler.reset();
+			return;
+		}
 
 		// process the command
 		try {
@@ -0,0 +1,132 @@
+package com.sources.com.qualcomm.robotcore.eventloop;
+
+import com.qualcomm.robotcore.util.FrameworkScheduler;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import java.util.ArrayDeque;
+
+/**
+ * Delivers EventLoopManager state changes to its EventLoopMonitor on a thread of their own
+ * <p>
+ * The thread that changes the state only queues the new state, so a slow monitor, typically one
+ * that updates the UI, can not stall the event loop or receive threads. The queue is bounded. A
+ * state equal to the last queued one is dropped, and when the queue is full the newest queued
+ * state is replaced, so the monitor always ends up seeing the latest state.
+ */
+public class EventLoopMonitorDispatcher implements Runnable {
+
+	public static final int CAPACITY = 16;
+
+	private final FrameworkScheduler scheduler;
+	private final ArrayDeque<EventLoopManager.State> queue = new ArrayDeque<EventLoopManager.State>(CAPACITY);
+
+	private volatile EventLoopManager.EventLoopMonitor monitor = null;
+
+	// guarded by this
+	private Thread thread = null;
+	private boolean stopping = false;
+	private long dispatched = 0;
+	private long coalesced = 0;
+
+	public EventLoopMonitorDispatcher(FrameworkScheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Set the monitor that receives state changes from now on
+	 *
+	 * @param monitor monitor, or null for none
+	 */
+	public void setMonitor(EventLoopManager.EventLoopMonitor monitor) {
+		this.monitor = monitor;
+	}
+
+	/**
+	 * Queue a state change for the monitor; never blocks on the monitor
+	 *
+	 * @param state new state
+	 */
+	public synchronized void dispatch(EventLoopManager.State state) {
+		if (monitor == null) return;
+
+		if (queue.size() >= CAPACITY) {
+			queue.pollLast();
+			coalesced++;
+		}
+		if (queue.peekLast() == state) {
+			coalesced++;
+			return;
+		}
+		queue.addLast(state);
+
+		if (thread == null) {
+			stopping = false;
+			thread = scheduler.startWorker("EventLoopManager monitor", Thread.NORM_PRIORITY, this);
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Deliver what is queued, then stop the dispatch thread
+	 *
+	 * @param timeout how long to wait for the queue to drain, in milliseconds
+	 */
+	public void shutdown(long timeout) {
+		Thread t;
+		synchronized (this) {
+			stopping = true;
+			notifyAll();
+			t = thread;
+		}
+
+		if (t == null || t == Thread.currentThread()) return;
+		try {
+			t.join(timeout);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public synchronized long getDispatched() {
+		return dispatched;
+	}
+
+	/**
+	 * @return number of state changes folded into another one instead of being delivered
+	 */
+	public synchronized long getCoalesced() {
+		return coalesced;
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			EventLoopManager.State state;
+			synchronized (this) {
+				while (queue.isEmpty() && !stopping) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						thread = null;
+						return;
+					}
+				}
+				if (queue.isEmpty()) {
+					thread = null;
+					return;
+				}
+				state = queue.pollFirst();
+				dispatched++;
+			}
+
+			EventLoopManager.EventLoopMonitor m = monitor;
+			if (m == null) continue;
+			try {
+				m.onStateChange(state);
+			} catch (Exception e) {
+				RobotLog.w("EventLoopMonitor threw an exception: " + e.toString());
+				RobotLog.logStacktrace(e);
+			}
+		}
+	}
+}
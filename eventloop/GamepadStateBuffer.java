@@ -0,0 +1,121 @@
+package com.sources.com.qualcomm.robotcore.eventloop;
+
+import com.qualcomm.robotcore.hardware.Gamepad;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands the state of both gamepads from the thread receiving gamepad packets to the event loop
+ * <p>
+ * Three preallocated pairs of gamepads are rotated. The receiving thread fills the back pair and
+ * publishes it by swapping it with the middle pair. The event loop calls acquire() once per loop,
+ * which swaps the middle pair to the front if a newer one was published, so both gamepads are
+ * consistent with each other and nothing is allocated per packet.
+ * <p>
+ * The rotated pairs are reused by the writer, so they are never handed out. When acquire() takes a
+ * newer pair, it copies it into the next of SNAPSHOTS preallocated snapshot pairs, which only
+ * acquire() writes. A snapshot therefore stays unchanged until acquire() has taken new data
+ * SNAPSHOTS - 1 more times: for the loop that acquired it and at least the next two. Code that
+ * keeps gamepads longer than that, such as a helper thread of an op mode, must copy them.
+ * <p>
+ * There must be a single writer, calling update(), and a single reader, calling acquire().
+ */
+public class GamepadStateBuffer {
+
+	private static final int INDEX_MASK = 0x3;
+	private static final int FRESH = 0x4; // set when the middle pair has not been acquired yet
+
+	public static final int SNAPSHOTS = 3;
+
+	private final Gamepad[][] pairs = {
+			{ new Gamepad(), new Gamepad() },
+			{ new Gamepad(), new Gamepad() },
+			{ new Gamepad(), new Gamepad() } };
+	private final long[] sequences = new long[pairs.length];
+
+	// index of the middle pair, plus FRESH
+	private final AtomicInteger middle = new AtomicInteger(1);
+
+	// only used by the writer
+	private final Gamepad[] current = { new Gamepad(), new Gamepad() };
+	private final Gamepad empty = new Gamepad();
+	private int back = 2;
+	private long sequence = 0;
+
+	// only changed by the reader
+	private int front = 0;
+	private final Gamepad[][] snapshots = new Gamepad[SNAPSHOTS][];
+	private int nextSnapshot = 0;
+	private volatile Gamepad[] snapshot;
+	private volatile long snapshotSequence = 0;
+
+	public GamepadStateBuffer() {
+		for (int i = 0; i < SNAPSHOTS; i++) snapshots[i] = new Gamepad[] { new Gamepad(), new Gamepad() };
+		snapshot = snapshots[nextSnapshot++];
+	}
+
+	/**
+	 * Store a received gamepad and publish both gamepads
+	 * <p>
+	 * If the same gamepad now shows up for both users, it was moved, and the other user's state is
+	 * reset.
+	 *
+	 * @param gamepad received gamepad, for user 1 or 2; copied, so it may be reused
+	 * @return true if the gamepad was moved from the other user
+	 */
+	public boolean update(Gamepad gamepad) {
+		int position = gamepad.user - 1;
+		current[position].copy(gamepad);
+
+		boolean moved = (current[0].id == current[1].id);
+		if (moved) current[1 - position].copy(empty);
+
+		Gamepad[] pair = pairs[back];
+		pair[0].copy(current[0]);
+		pair[1].copy(current[1]);
+		sequences[back] = ++sequence;
+
+		back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+
+		return moved;
+	}
+
+	/**
+	 * Take the most recently published gamepads; call once per loop
+	 *
+	 * @return gamepads for user 1 and 2; unchanged until acquire() has taken new data
+	 * SNAPSHOTS - 1 more times
+	 */
+	public Gamepad[] acquire() {
+		if ((middle.get() & FRESH) != 0) {
+			front = middle.getAndSet(front) & INDEX_MASK;
+
+			Gamepad[] pair = snapshots[nextSnapshot];
+			nextSnapshot = (nextSnapshot + 1) % SNAPSHOTS;
+			pair[0].copy(pairs[front][0]);
+			pair[1].copy(pairs[front][1]);
+			snapshotSequence = sequences[front];
+			snapshot = pair;
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Get the gamepads returned by the last acquire()
+	 *
+	 * @return gamepads for user 1 and 2; valid as long as the ones returned by acquire()
+	 */
+	public Gamepad[] getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Sequence number of the gamepads returned by the last acquire(); it goes up by one for every
+	 * gamepad packet received, so gaps show how many packets one loop skipped
+	 *
+	 * @return sequence number, 0 before the first packet
+	 */
+	public long getSequence() {
+		return snapshotSequence;
+	}
+}
@@ -0,0 +1,107 @@
+package com.sources.com.qualcomm.robotcore.eventloop;
+
+import com.qualcomm.robotcore.robocol.Telemetry;
+import com.qualcomm.robotcore.util.LogLinearHistogram;
+
+/**
+ * Times the phases of the event loop and the receive loop
+ * <p>
+ * Every phase has its own LogLinearHistogram of durations in nanoseconds. Recording is a
+ * System.nanoTime() difference and a bucket increment, so profiling is always on.
+ */
+public class LoopProfiler {
+
+	/**
+	 * Timed phases
+	 */
+	public enum Phase {
+		SYNC_WAIT("Sync Wait"),          /// SyncdDevice.blockUntilReady() for all devices
+		USER_LOOP("User Loop"),          /// EventLoop.loop()
+		BLOCKING_WORK("Blocking Work"),  /// SyncdDevice.startBlockingWork() for all devices
+		LOOP_BUSY("Loop Busy"),          /// one whole event loop cycle, not counting the wait for the next period
+		TELEMETRY("Telemetry"),          /// encoding and queuing one telemetry frame
+		RECV_MESSAGE("Recv Message"),    /// handling one received message
+		RECV_BURST("Recv Burst");        /// sending the acks and flushing after a burst of received datagrams
+
+		private final String key;
+
+		private Phase(String key) {
+			this.key = key;
+		}
+
+		/**
+		 * Telemetry key this phase is reported under
+		 *
+		 * @return key
+		 */
+		public String getKey() {
+			return key;
+		}
+	}
+
+	private final LogLinearHistogram[] histograms = new LogLinearHistogram[Phase.values().length];
+
+	public LoopProfiler() {
+		for (int i = 0; i < histograms.length; i++) histograms[i] = new LogLinearHistogram();
+	}
+
+	/**
+	 * Record the duration of a phase that started at the given time
+	 *
+	 * @param phase phase
+	 * @param start System.nanoTime() when the phase started
+	 * @return System.nanoTime() now, the start of whatever comes next
+	 */
+	public long record(Phase phase, long start) {
+		long now = System.nanoTime();
+		histograms[phase.ordinal()].record(now - start);
+		return now;
+	}
+
+	/**
+	 * Get the histogram of a phase, in nanoseconds
+	 *
+	 * @param phase phase
+	 * @return histogram
+	 */
+	public LogLinearHistogram getHistogram(Phase phase) {
+		return histograms[phase.ordinal()];
+	}
+
+	/**
+	 * Forget everything recorded so far
+	 */
+	public void reset() {
+		for (LogLinearHistogram histogram : histograms) histogram.reset();
+	}
+
+	/**
+	 * Add p50, p99 and max of every phase that recorded anything to a telemetry message
+	 *
+	 * @param telemetry telemetry to add to
+	 */
+	public void addTo(Telemetry telemetry) {
+		for (Phase phase : Phase.values()) {
+			LogLinearHistogram histogram = histograms[phase.ordinal()];
+			if (histogram.getCount() == 0) continue;
+			telemetry.addData(phase.getKey(), format(histogram));
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("Loop profile -");
+		for (Phase phase : Phase.values()) {
+			LogLinearHistogram histogram = histograms[phase.ordinal()];
+			if (histogram.getCount() == 0) continue;
+			builder.append(' ').append(phase.getKey()).append(": ").append(format(histogram)).append(';');
+		}
+		return builder.toString();
+	}
+
+	private static String format(LogLinearHistogram histogram) {
+		return String.format("p50 %.0f us, p99 %.0f us, max %.0f us (%d)",
+				histogram.getPercentile(0.50) / 1e3, histogram.getPercentile(0.99) / 1e3,
+				histogram.getMax() / 1e3, histogram.getCount());
+	}
+}
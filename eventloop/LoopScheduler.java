@@ -0,0 +1,226 @@
+package com.sources.com.qualcomm.robotcore.eventloop;
+
+import com.qualcomm.robotcore.util.Range;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces a loop at a fixed rate
+ * <p>
+ * Each period ends at an absolute deadline, start + n * period, so time spent in the loop body
+ * does not add up into drift. A loop that finishes a period more than a whole period late counts
+ * as an overrun; the schedule is then moved to the current time rather than running a burst of
+ * loops to catch up. How the time until the deadline is spent is chosen by a WaitStrategy.
+ * <p>
+ * awaitNextPeriod() must only be called by the loop thread. The rate and wait strategy may be
+ * changed, and the statistics read, from any thread.
+ */
+public class LoopScheduler {
+
+	/**
+	 * How to wait for the next deadline
+	 */
+	public enum WaitStrategy {
+		SLEEP,          /// Thread.sleep(); cheapest, but wakes up on the OS timer tick
+		PARK_NANOS,     /// LockSupport.parkNanos(); finer grained on most kernels
+		SPIN_THEN_PARK  /// park until just before the deadline, then spin; lowest jitter, costs CPU
+	}
+
+	public static final double MIN_FREQUENCY = 1.0;
+	public static final double MAX_FREQUENCY = 2000.0;
+
+	// how long before the deadline SPIN_THEN_PARK stops parking and starts spinning
+	private static final long SPIN_THRESHOLD = TimeUnit.MICROSECONDS.toNanos(100);
+
+	private volatile long period;
+	private volatile WaitStrategy waitStrategy;
+
+	// only written by the loop thread
+	private long deadline = 0;
+	private volatile long loops = 0;
+	private volatile long overruns = 0;
+	private volatile long lastJitter = 0;
+	private volatile long maxJitter = 0;
+	private volatile long totalJitter = 0;
+	private volatile long windowLoops = 0;
+	private volatile long windowStart = 0;
+	private volatile long windowEnd = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param frequency loops per second, between MIN_FREQUENCY and MAX_FREQUENCY
+	 * @param waitStrategy how to wait between loops
+	 */
+	public LoopScheduler(double frequency, WaitStrategy waitStrategy) {
+		setFrequency(frequency);
+		setWaitStrategy(waitStrategy);
+	}
+
+	/**
+	 * Set the target loop rate; takes effect from the next period
+	 *
+	 * @param frequency loops per second, between MIN_FREQUENCY and MAX_FREQUENCY
+	 */
+	public void setFrequency(double frequency) {
+		Range.throwIfRangeIsInvalid(frequency, MIN_FREQUENCY, MAX_FREQUENCY);
+		period = (long) (TimeUnit.SECONDS.toNanos(1) / frequency);
+	}
+
+	public double getFrequency() {
+		return (double) TimeUnit.SECONDS.toNanos(1) / period;
+	}
+
+	public void setWaitStrategy(WaitStrategy waitStrategy) {
+		if (waitStrategy == null) throw new IllegalArgumentException("wait strategy cannot be null");
+		this.waitStrategy = waitStrategy;
+	}
+
+	public WaitStrategy getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	/**
+	 * Start a new schedule and clear the statistics
+	 * <p>
+	 * The first period ends right away, so a new loop does not wait a period before it runs.
+	 */
+	public void start() {
+		loops = 0;
+		overruns = 0;
+		lastJitter = 0;
+		maxJitter = 0;
+		totalJitter = 0;
+		resync();
+		deadline = System.nanoTime();
+	}
+
+	/**
+	 * Move the schedule so the next deadline is one period from now
+	 * <p>
+	 * Call after the loop deliberately waited for something else, so the wait is not counted as
+	 * an overrun.
+	 */
+	public void resync() {
+		deadline = System.nanoTime() + period;
+		windowLoops = 0;
+	}
+
+	/**
+	 * Wait until the end of the current period
+	 *
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public void awaitNextPeriod() throws InterruptedException {
+		long period = this.period;
+
+		long now = System.nanoTime();
+		long jitter;
+		if (now - deadline > period) {
+			// a whole period late; start over from here instead of bursting to catch up, but count
+			// the lateness first
+			overruns++;
+			jitter = now - deadline;
+			deadline = now;
+		} else {
+			waitUntil(deadline);
+			now = System.nanoTime();
+			jitter = Math.max(0, now - deadline);
+		}
+
+		lastJitter = jitter;
+		totalJitter += jitter;
+		if (jitter > maxJitter) maxJitter = jitter;
+
+		if (windowLoops == 0) windowStart = now;
+		windowEnd = now;
+		windowLoops++;
+		loops++;
+
+		deadline += period;
+	}
+
+	/**
+	 * Number of periods completed since start()
+	 *
+	 * @return loop count
+	 */
+	public long getLoops() {
+		return loops;
+	}
+
+	/**
+	 * Number of periods that ended more than a whole period late
+	 *
+	 * @return overrun count
+	 */
+	public long getOverruns() {
+		return overruns;
+	}
+
+	/**
+	 * How late the last period ended, in nanoseconds
+	 *
+	 * @return jitter
+	 */
+	public long getLastJitter() {
+		return lastJitter;
+	}
+
+	public long getMaxJitter() {
+		return maxJitter;
+	}
+
+	public long getAverageJitter() {
+		long loops = this.loops;
+		return (loops == 0) ? 0 : totalJitter / loops;
+	}
+
+	/**
+	 * Loop rate actually achieved since start() or the last resync()
+	 *
+	 * @return loops per second
+	 */
+	public double getMeasuredFrequency() {
+		long loops = windowLoops;
+		long elapsed = windowEnd - windowStart;
+		if (loops < 2 || elapsed <= 0) return 0;
+		return (loops - 1) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("target %.1f Hz (%s), measured %.1f Hz, overruns %d, jitter us avg %d max %d",
+				getFrequency(), waitStrategy.name(), getMeasuredFrequency(), overruns,
+				TimeUnit.NANOSECONDS.toMicros(getAverageJitter()), TimeUnit.NANOSECONDS.toMicros(maxJitter));
+	}
+
+	private void waitUntil(long deadline) throws InterruptedException {
+		long remaining = deadline - System.nanoTime();
+		if (remaining <= 0) return;
+
+		switch (waitStrategy) {
+			case SLEEP:
+				Thread.sleep(TimeUnit.NANOSECONDS.toMillis(remaining), (int) (remaining % 1000000));
+				break;
+			case PARK_NANOS:
+				while (remaining > 0) {
+					LockSupport.parkNanos(this, remaining);
+					if (Thread.interrupted()) throw new InterruptedException();
+					remaining = deadline - System.nanoTime();
+				}
+				break;
+			case SPIN_THEN_PARK:
+				while (remaining > SPIN_THRESHOLD) {
+					LockSupport.parkNanos(this, remaining - SPIN_THRESHOLD);
+					if (Thread.interrupted()) throw new InterruptedException();
+					remaining = deadline - System.nanoTime();
+				}
+				while (deadline - System.nanoTime() > 0) {
+					if (Thread.interrupted()) throw new InterruptedException();
+				}
+				break;
+		}
+	}
+}
@@ -0,0 +1,265 @@
+package com.sources.com.qualcomm.robotcore.eventloop;
+
+import com.qualcomm.robotcore.exception.RobotCoreException;
+import com.qualcomm.robotcore.util.FrameworkScheduler;
+import com.qualcomm.robotcore.util.LogLinearHistogram;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Waits for all registered sync'd devices at once
+ * <p>
+ * Every device gets a waiter thread that calls its blockUntilReady(). awaitReady() releases all
+ * waiters together and parks until they have all returned, so a loop waits for the slowest device
+ * rather than for the sum of all of them. A device that is not ready within its timeout is handled
+ * by its LatePolicy. Each device's time to ready is recorded in a histogram.
+ * <p>
+ * awaitReady() and startBlockingWork() must be called from the event loop thread only.
+ */
+public class SyncdDeviceBarrier {
+
+	/**
+	 * What to do when a device is not ready within its timeout
+	 */
+	public enum LatePolicy {
+		SKIP_STALE,     /// run the loop without the device, with whatever data it last had
+		EMERGENCY_STOP  /// fail the loop, which puts the event loop manager in EMERGENCY_STOP
+	}
+
+	public static final long DEFAULT_TIMEOUT = 100; // in milliseconds
+	public static final LatePolicy DEFAULT_LATE_POLICY = LatePolicy.SKIP_STALE;
+
+	private static final int IDLE = 0;     // startBlockingWork() was called, not released yet
+	private static final int WAITING = 1;  // released; the waiter is in blockUntilReady()
+	private static final int READY = 2;    // blockUntilReady() returned
+
+	/**
+	 * Wait statistics of one device
+	 */
+	public class Entry implements Runnable {
+		private final SyncdDevice device;
+		private final long timeout; // in nanoseconds
+		private final LatePolicy policy;
+		private final LogLinearHistogram waitTimes = new LogLinearHistogram();
+
+		private volatile int state = IDLE;
+		private volatile long releasedAt = 0;
+		private volatile Exception failure = null;
+		private volatile boolean stopped = false;
+		private volatile boolean late = false;
+		private volatile long lateCount = 0;
+		private volatile long staleLoops = 0;
+		private Thread thread = null;
+
+		private Entry(SyncdDevice device, long timeout, LatePolicy policy) {
+			this.device = device;
+			this.timeout = TimeUnit.MILLISECONDS.toNanos(timeout);
+			this.policy = policy;
+		}
+
+		public SyncdDevice getDevice() {
+			return device;
+		}
+
+		/**
+		 * Time from release to ready, in nanoseconds
+		 *
+		 * @return histogram of wait times
+		 */
+		public LogLinearHistogram getWaitTimes() {
+			return waitTimes;
+		}
+
+		/**
+		 * @return number of times this device missed its timeout
+		 */
+		public long getLateCount() {
+			return lateCount;
+		}
+
+		/**
+		 * @return number of loops run without this device
+		 */
+		public long getStaleLoops() {
+			return staleLoops;
+		}
+
+		@Override
+		public void run() {
+			while (!stopped) {
+				if (state != WAITING) {
+					LockSupport.park(this);
+					continue;
+				}
+
+				try {
+					device.blockUntilReady();
+				} catch (InterruptedException e) {
+					// unregistered while blocked
+					return;
+				} catch (Exception e) {
+					failure = e;
+				}
+
+				waitTimes.record(System.nanoTime() - releasedAt);
+				state = READY;
+
+				Thread waiting = loopThread;
+				if (waiting != null) LockSupport.unpark(waiting);
+			}
+		}
+
+		private void stop() {
+			stopped = true;
+			if (thread != null) thread.interrupt();
+		}
+	}
+
+	private final FrameworkScheduler scheduler;
+	private final List<Entry> entries = new CopyOnWriteArrayList<Entry>();
+	private volatile Thread loopThread = null;
+
+	public SyncdDeviceBarrier(FrameworkScheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Register a device, starting its waiter thread
+	 *
+	 * @param device sync'd device
+	 * @param timeout how long to wait for the device each loop, in milliseconds
+	 * @param policy what to do when the device is late
+	 */
+	public synchronized void register(SyncdDevice device, long timeout, LatePolicy policy) {
+		if (timeout <= 0) throw new IllegalArgumentException("sync'd device timeout must be positive, got " + timeout);
+		if (find(device) != null) return;
+
+		Entry entry = new Entry(device, timeout, policy);
+		entry.thread = scheduler.startWorker("SyncdDevice waiter " + entries.size(), Thread.NORM_PRIORITY + 1, entry);
+		entries.add(entry);
+	}
+
+	/**
+	 * Unregister a device and stop its waiter thread
+	 *
+	 * @param device sync'd device
+	 */
+	public synchronized void unregister(SyncdDevice device) {
+		Entry entry = find(device);
+		if (entry == null) return;
+
+		entries.remove(entry);
+		entry.stop();
+	}
+
+	/**
+	 * Unregister all devices
+	 */
+	public synchronized void clear() {
+		for (Entry entry : entries) entry.stop();
+		entries.clear();
+	}
+
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * Release every idle device and wait until all are ready or late
+	 *
+	 * @throws RobotCoreException if a device failed, or a device with LatePolicy.EMERGENCY_STOP is late
+	 * @throws InterruptedException if the calling thread is interrupted
+	 */
+	public void awaitReady() throws RobotCoreException, InterruptedException {
+		loopThread = Thread.currentThread();
+
+		long now = System.nanoTime();
+		for (Entry entry : entries) {
+			if (entry.state == IDLE) {
+				entry.releasedAt = now;
+				entry.late = false;
+				entry.state = WAITING;
+				LockSupport.unpark(entry.thread);
+			}
+		}
+
+		while (true) {
+			boolean pending = false;
+			long wakeup = Long.MAX_VALUE;
+			now = System.nanoTime();
+
+			for (Entry entry : entries) {
+				if (entry.state == READY) {
+					Exception failure = entry.failure;
+					if (failure != null) {
+						entry.failure = null;
+						if (failure instanceof RobotCoreException) throw (RobotCoreException) failure;
+						throw new RobotCoreException("sync'd device failed: " + failure.toString());
+					}
+					continue;
+				}
+
+				long deadline = entry.releasedAt + entry.timeout;
+				if (now - deadline < 0) {
+					pending = true;
+					wakeup = Math.min(wakeup, deadline - now);
+					continue;
+				}
+
+				// late; the waiter keeps waiting, the device is picked up again once it is ready
+				if (!entry.late) {
+					entry.late = true;
+					entry.lateCount++;
+					RobotLog.w(String.format("sync'd device %s not ready after %d ms",
+							entry.device.toString(), TimeUnit.NANOSECONDS.toMillis(entry.timeout)));
+				}
+				if (entry.policy == LatePolicy.EMERGENCY_STOP) {
+					throw new RobotCoreException("sync'd device " + entry.device.toString() + " is not responding");
+				}
+			}
+
+			if (!pending) break;
+
+			LockSupport.parkNanos(this, wakeup);
+			if (Thread.interrupted()) throw new InterruptedException();
+		}
+
+		for (Entry entry : entries) {
+			if (entry.state != READY) entry.staleLoops++;
+		}
+	}
+
+	/**
+	 * Call startBlockingWork() on every device that is not still waiting to become ready
+	 */
+	public void startBlockingWork() {
+		for (Entry entry : entries) {
+			if (entry.state == WAITING) continue;
+			entry.device.startBlockingWork();
+			entry.state = IDLE;
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("Sync'd devices -");
+		for (Entry entry : entries) {
+			LogLinearHistogram waits = entry.waitTimes;
+			builder.append(String.format(" %s: p50 %.0f us, p99 %.0f us, max %.0f us, late %d, stale loops %d;",
+					entry.device.toString(), waits.getPercentile(0.50) / 1e3, waits.getPercentile(0.99) / 1e3,
+					waits.getMax() / 1e3, entry.lateCount, entry.staleLoops));
+		}
+		return builder.toString();
+	}
+
+	private Entry find(SyncdDevice device) {
+		for (Entry entry : entries) {
+			if (entry.device == device) return entry;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,166 @@
+package com.sources.com.qualcomm.robotcore.eventloop;
+
+import com.qualcomm.robotcore.robocol.Telemetry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Limits how often telemetry is transmitted, per tag
+ * <p>
+ * A tag with a maximum rate is sent at most once per interval. Telemetry submitted between two
+ * transmissions is merged into a pending frame for its tag, so a newer value for a key replaces
+ * the older one in place and only the latest values go out. Pending frames are sent by flush(),
+ * which should be called periodically. Tags without a maximum rate are sent immediately.
+ * <p>
+ * All methods are thread safe; transmissions are made while holding this object's lock.
+ */
+public class TelemetryRateLimiter {
+
+	/**
+	 * Puts a telemetry frame on the wire
+	 */
+	public interface Sender {
+		void send(Telemetry telemetry);
+	}
+
+	/**
+	 * Default maximum rate of Telemetry.DEFAULT_TAG, in Hz; about what a driver station can render
+	 */
+	public static final double DEFAULT_MAX_RATE = 20.0;
+
+	private static class TagState {
+		long interval = 0; // in nanoseconds, 0 if unlimited
+		long nextSend = 0;
+		boolean pending = false;
+		final Telemetry frame = new Telemetry();
+	}
+
+	private final Sender sender;
+	private final Map<String, TagState> tags = new HashMap<String, TagState>();
+
+	private long submitted = 0;
+	private long sent = 0;
+
+	public TelemetryRateLimiter(Sender sender) {
+		this.sender = sender;
+		setMaxRate(Telemetry.DEFAULT_TAG, DEFAULT_MAX_RATE);
+	}
+
+	/**
+	 * Set the maximum rate a tag is transmitted at
+	 *
+	 * @param tag telemetry tag
+	 * @param hz maximum transmissions per second, or 0 to send every frame immediately
+	 */
+	public synchronized void setMaxRate(String tag, double hz) {
+		if (hz < 0) throw new IllegalArgumentException("telemetry rate must be positive, got " + hz);
+
+		TagState state = stateOf(tag);
+		state.interval = (hz == 0) ? 0 : (long) (1e9 / hz);
+
+		// anything held back under the old rate goes out at the next flush
+		state.nextSend = System.nanoTime();
+	}
+
+	/**
+	 * Get the maximum rate a tag is transmitted at
+	 *
+	 * @param tag telemetry tag
+	 * @return maximum transmissions per second, or 0 if unlimited
+	 */
+	public synchronized double getMaxRate(String tag) {
+		TagState state = tags.get(normalize(tag));
+		if (state == null || state.interval == 0) return 0;
+		return 1e9 / state.interval;
+	}
+
+	/**
+	 * Send a telemetry frame now, or merge it into the pending frame of its tag
+	 * <p>
+	 * The data in the telemetry object is copied; the caller may clear it on return.
+	 *
+	 * @param telemetry telemetry to send
+	 * @param now current System.nanoTime()
+	 */
+	public synchronized void submit(Telemetry telemetry, long now) {
+		submitted++;
+
+		TagState state = tags.get(telemetry.getTag());
+		if (state == null || state.interval == 0) {
+			sender.send(telemetry);
+			sent++;
+			return;
+		}
+
+		merge(telemetry, state.frame);
+		state.pending = true;
+		if (now - state.nextSend >= 0) send(state, now);
+	}
+
+	/**
+	 * Send every pending frame whose interval has elapsed
+	 *
+	 * @param now current System.nanoTime()
+	 */
+	public synchronized void flush(long now) {
+		for (TagState state : tags.values()) {
+			if (state.pending && now - state.nextSend >= 0) send(state, now);
+		}
+	}
+
+	/**
+	 * Number of frames submitted
+	 *
+	 * @return frames submitted
+	 */
+	public synchronized long getSubmitted() {
+		return submitted;
+	}
+
+	/**
+	 * Number of frames transmitted; the rest were merged into later frames
+	 *
+	 * @return frames sent
+	 */
+	public synchronized long getSent() {
+		return sent;
+	}
+
+	private void send(TagState state, long now) {
+		sender.send(state.frame);
+		sent++;
+		state.frame.clearData();
+		state.pending = false;
+
+		// stay on the schedule unless we fell more than an interval behind
+		state.nextSend += state.interval;
+		if (now - state.nextSend >= 0) state.nextSend = now + state.interval;
+	}
+
+	private TagState stateOf(String tag) {
+		tag = normalize(tag);
+		TagState state = tags.get(tag);
+		if (state == null) {
+			state = new TagState();
+			state.frame.setTag(tag);
+			tags.put(tag, state);
+		}
+		return state;
+	}
+
+	private static String normalize(String tag) {
+		return (tag == null || tag.length() == 0) ? Telemetry.DEFAULT_TAG : tag;
+	}
+
+	private static void merge(Telemetry from, Telemetry to) {
+		synchronized (from) {
+			for (Map.Entry<String, String> entry : from.getDataStrings().entrySet()) {
+				to.addData(entry.getKey(), entry.getValue());
+			}
+			for (Map.Entry<String, Float> entry : from.getDataNumbers().entrySet()) {
+				to.addData(entry.getKey(), entry.getValue().floatValue());
+			}
+		}
+	}
+}
@@ -32,14 +32,36 @@ package com.sources.com.qualcomm.robotcore.factory;
 
 import com.qualcomm.robotcore.eventloop.EventLoopManager;
 import com.qualcomm.robotcore.exception.RobotCoreException;
+import com.qualcomm.robotcore.robocol.RobocolDatagramChannelSocket;
 import com.qualcomm.robotcore.robocol.RobocolDatagramSocket;
 import com.qualcomm.robotcore.robot.Robot;
 
 public class RobotFactory {
 
 	public static Robot createRobot() throws RobotCoreException {
+		return createRobot(RobocolDatagramSocket.Transport.DATAGRAM_SOCKET);
+	}
+
+	/**
+	 * Create a robot that uses the given transport for Robocol traffic
+	 *
+	 * @param transport socket implementation to use
+	 * @return robot
+	 * @throws RobotCoreException if unable to create the robot
+	 */
+	public static Robot createRobot(RobocolDatagramSocket.Transport transport) throws RobotCoreException {
+
+		RobocolDatagramSocket socket;
+		switch (transport) {
+		case DATAGRAM_CHANNEL:
+			socket = new RobocolDatagramChannelSocket();
+			break;
+		case DATAGRAM_SOCKET:
+		default:
+			socket = new RobocolDatagramSocket();
+			break;
+		}
 
-		RobocolDatagramSocket socket = new RobocolDatagramSocket();
 		EventLoopManager eventProcessor = new EventLoopManager(socket);
 
 		Robot robot = new Robot();
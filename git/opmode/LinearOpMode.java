@@ -30,6 +30,7 @@
 
 package com.qualcomm.robotcore.eventloop.opmode;
 
+import com.qualcomm.robotcore.util.FrameworkScheduler;
 import com.qualcomm.robotcore.util.ElapsedTime;
 import com.qualcomm.robotcore.util.RobotLog;
 
@@ -161,8 +162,7 @@ public abstract class LinearOpMode extends OpMode {
      */
     public final void init() {
         this.linearOpModeRunnable = new LinearOpModeRunnable(this);
-        this.linearOpModeThread = new Thread(this.linearOpModeRunnable, "Linear OpMode Helper");
-        this.linearOpModeThread.start();
+        this.linearOpModeThread = FrameworkScheduler.getDefault().startWorker("Linear OpMode Helper", Thread.NORM_PRIORITY, this.linearOpModeRunnable);
     }
 
     /**
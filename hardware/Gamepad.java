@@ -39,9 +39,10 @@ import android.os.Build;
 import com.qualcomm.robotcore.exception.RobotCoreException;
 import com.qualcomm.robotcore.robocol.RobocolParsable;
 import com.qualcomm.robotcore.util.Range;
-import com.qualcomm.robotcore.util.RobotLog;
+import com.qualcomm.robotcore.util.TypeConversion;
 
 import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.util.AbstractMap;
 import java.util.HashSet;
@@ -218,10 +219,40 @@ public class Gamepad implements RobocolParsable {
 
 	private static final byte ROBOCOL_VERSION = 2;
 
+	/**
+	 * Compact wire format, only sent to peers with PeerDiscovery.CAPABILITY_GAMEPAD_V3
+	 */
+	public static final byte COMPACT_ROBOCOL_VERSION = 3;
+
+	/*
+	 * A full update is sent at least this often in the compact format. There is no feedback, so a
+	 * lost full update makes the receiver drop the updates built on it until the next one; a short
+	 * interval keeps that to a few packets.
+	 */
+	public static final int FULL_UPDATE_INTERVAL = 5;
+	private static final long MAX_TIMESTAMP_DELTA = 1000;
+
+	// presence bits of the compact format
+	private static final int PRESENT_LEFT_STICK_X  = 0x01;
+	private static final int PRESENT_LEFT_STICK_Y  = 0x02;
+	private static final int PRESENT_RIGHT_STICK_X = 0x04;
+	private static final int PRESENT_RIGHT_STICK_Y = 0x08;
+	private static final int PRESENT_LEFT_TRIGGER  = 0x10;
+	private static final int PRESENT_RIGHT_TRIGGER = 0x20;
+	private static final int PRESENT_BUTTONS       = 0x40;
+	private static final int PRESENT_FULL          = 0x80; // everything, plus id and absolute timestamp
+
 	private static final float MAX_MOTION_RANGE = 1.0f;
 
 	private final GamepadCallback callback;
 
+	// compact format state; the last full update sent or received, and the sequence numbers
+	private byte wireVersion = ROBOCOL_VERSION;
+	private Gamepad wireBase = null;
+	private int wireBaseSequence = 0;
+	private int wireSequence = 0;
+	private int wireUpdatesSinceFull = 0;
+
 	private static Set<Integer> gameControllerDeviceIdCache = new HashSet<Integer>();
 
 	// Set of devices to consume input events from. If null, inputs from all detected devices will be used.
@@ -322,56 +353,182 @@ public class Gamepad implements RobocolParsable {
 
 	@Override
 	public byte[] toByteArray() throws RobotCoreException {
-
 		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		writeTo(buffer);
+		return buffer.array();
+	}
 
-		try {
-			int buttons = 0;
+	@Override
+	public void fromByteArray(byte[] byteArray) throws RobotCoreException {
+		readFrom(ByteBuffer.wrap(byteArray), 0, byteArray.length);
+	}
+
+	/**
+	 * Set the wire format used by writeTo
+	 * <p>
+	 * Version 3 only sends what changed since the last full update, so the same Gamepad object
+	 * should be sent every time.
+	 *
+	 * @param version 2 (the default) or COMPACT_ROBOCOL_VERSION
+	 */
+	public void setWireVersion(int version) {
+		if (version != ROBOCOL_VERSION && version != COMPACT_ROBOCOL_VERSION) {
+			throw new IllegalArgumentException("Unsupported gamepad wire version " + version);
+		}
+		wireVersion = (byte) version;
+	}
 
+	public int getWireVersion() {
+		return wireVersion;
+	}
+
+	/**
+	 * Find the user a gamepad message is for, without decoding it
+	 *
+	 * @param data message data
+	 * @param offset start of the message header
+	 * @param length length of the message, header included
+	 * @return user, or ID_UNASSOCIATED if the message does not carry one
+	 */
+	public static int peekUser(byte[] data, int offset, int length) {
+		if (length < HEADER_LENGTH + 2) return ID_UNASSOCIATED;
+
+		int version = data[offset + HEADER_LENGTH];
+		if (version >= COMPACT_ROBOCOL_VERSION) return data[offset + HEADER_LENGTH + 1];
+		if (version >= 2 && length >= BUFFER_SIZE) return data[offset + BUFFER_SIZE - 1];
+
+		return ID_UNASSOCIATED;
+	}
+
+	@Override
+	public void writeTo(ByteBuffer buffer) throws RobotCoreException {
+
+		if (wireVersion >= COMPACT_ROBOCOL_VERSION) {
+			writeCompact(buffer);
+			return;
+		}
+
+		try {
 			buffer.put(getRobocolMsgType().asByte());
 			buffer.putShort(PAYLOAD_SIZE);
 			buffer.put(ROBOCOL_VERSION);
 			buffer.putInt(id);
-			buffer.putLong(timestamp).array();
-			buffer.putFloat(left_stick_x).array();
-			buffer.putFloat(left_stick_y).array();
-			buffer.putFloat(right_stick_x).array();
-			buffer.putFloat(right_stick_y).array();
-			buffer.putFloat(left_trigger).array();
-			buffer.putFloat(right_trigger).array();
-
-			buttons = (buttons << 1) + (dpad_up ? 1 : 0);
-			buttons = (buttons << 1) + (dpad_down ? 1 : 0);
-			buttons = (buttons << 1) + (dpad_left ? 1 : 0);
-			buttons = (buttons << 1) + (dpad_right ? 1 : 0);
-			buttons = (buttons << 1) + (a ? 1 : 0);
-			buttons = (buttons << 1) + (b ? 1 : 0);
-			buttons = (buttons << 1) + (x ? 1 : 0);
-			buttons = (buttons << 1) + (y ? 1 : 0);
-			buttons = (buttons << 1) + (guide ? 1 : 0);
-			buttons = (buttons << 1) + (start ? 1 : 0);
-			buttons = (buttons << 1) + (back ? 1 : 0);
-			buttons = (buttons << 1) + (left_bumper ? 1 : 0);
-			buttons = (buttons << 1) + (right_bumper ? 1 : 0);
-			buffer.putInt(buttons);
+			buffer.putLong(timestamp);
+			buffer.putFloat(left_stick_x);
+			buffer.putFloat(left_stick_y);
+			buffer.putFloat(right_stick_x);
+			buffer.putFloat(right_stick_y);
+			buffer.putFloat(left_trigger);
+			buffer.putFloat(right_trigger);
+			buffer.putInt(packButtons());
+			buffer.put(user);
+		} catch (BufferOverflowException e) {
+			throw new RobotCoreException("Gamepad does not fit in buffer", e);
+		}
+	}
+
+	private void writeCompact(ByteBuffer buffer) throws RobotCoreException {
+
+		/*
+		 * Data format, version 3
+		 *
+		 * bytes    | format | value
+		 * ---------|--------|---------------------------------
+		 *  1       | uint8  | version
+		 *  1       | int8   | user
+		 *  1       | uint8  | sequence number
+		 *  1       | uint8  | sequence number of the full update this one is relative to
+		 *  1       | uint8  | presence bits, see PRESENT_*
+		 *  4       | int32  | id, full updates only
+		 *  8       | int64  | timestamp, full updates only
+		 *  varies  | varint | timestamp minus the full update's timestamp, other updates only
+		 *  1 each  | int8   | sticks present, value * 127
+		 *  1 each  | uint8  | triggers present, value * 255
+		 *  2       | uint16 | buttons, if present
+		 *
+		 * Anything not present is unchanged from the full update. The state is only committed once
+		 * the whole update is written, so a write into a full buffer can be retried.
+		 */
 
+		long timestampDelta = (wireBase == null) ? -1 : timestamp - wireBase.timestamp;
+		boolean full = (wireBase == null
+				|| wireUpdatesSinceFull >= FULL_UPDATE_INTERVAL
+				|| id != wireBase.id
+				|| timestampDelta < 0 || timestampDelta > MAX_TIMESTAMP_DELTA);
+
+		int sequence = (wireSequence + 1) & 0xff;
+		int buttons = packButtons();
+
+		int presence = PRESENT_FULL | PRESENT_LEFT_STICK_X | PRESENT_LEFT_STICK_Y | PRESENT_RIGHT_STICK_X
+				| PRESENT_RIGHT_STICK_Y | PRESENT_LEFT_TRIGGER | PRESENT_RIGHT_TRIGGER | PRESENT_BUTTONS;
+		if (!full) {
+			presence = 0;
+			if (quantizeStick(left_stick_x) != quantizeStick(wireBase.left_stick_x)) presence |= PRESENT_LEFT_STICK_X;
+			if (quantizeStick(left_stick_y) != quantizeStick(wireBase.left_stick_y)) presence |= PRESENT_LEFT_STICK_Y;
+			if (quantizeStick(right_stick_x) != quantizeStick(wireBase.right_stick_x)) presence |= PRESENT_RIGHT_STICK_X;
+			if (quantizeStick(right_stick_y) != quantizeStick(wireBase.right_stick_y)) presence |= PRESENT_RIGHT_STICK_Y;
+			if (quantizeTrigger(left_trigger) != quantizeTrigger(wireBase.left_trigger)) presence |= PRESENT_LEFT_TRIGGER;
+			if (quantizeTrigger(right_trigger) != quantizeTrigger(wireBase.right_trigger)) presence |= PRESENT_RIGHT_TRIGGER;
+			if (buttons != wireBase.packButtons()) presence |= PRESENT_BUTTONS;
+		}
+
+		int start = buffer.position();
+
+		try {
+			buffer.put(getRobocolMsgType().asByte());
+			buffer.putShort((short) 0); // payload size is written below
+
+			buffer.put(COMPACT_ROBOCOL_VERSION);
 			buffer.put(user);
+			buffer.put((byte) sequence);
+			buffer.put((byte) (full ? sequence : wireBaseSequence));
+			buffer.put((byte) presence);
+
+			if (full) {
+				buffer.putInt(id);
+				buffer.putLong(timestamp);
+			} else {
+				TypeConversion.putUnsignedVarint(buffer, (int) timestampDelta);
+			}
+
+			if ((presence & PRESENT_LEFT_STICK_X) != 0) buffer.put(quantizeStick(left_stick_x));
+			if ((presence & PRESENT_LEFT_STICK_Y) != 0) buffer.put(quantizeStick(left_stick_y));
+			if ((presence & PRESENT_RIGHT_STICK_X) != 0) buffer.put(quantizeStick(right_stick_x));
+			if ((presence & PRESENT_RIGHT_STICK_Y) != 0) buffer.put(quantizeStick(right_stick_y));
+			if ((presence & PRESENT_LEFT_TRIGGER) != 0) buffer.put(quantizeTrigger(left_trigger));
+			if ((presence & PRESENT_RIGHT_TRIGGER) != 0) buffer.put(quantizeTrigger(right_trigger));
+			if ((presence & PRESENT_BUTTONS) != 0) buffer.putShort((short) buttons);
 		} catch (BufferOverflowException e) {
-			RobotLog.logStacktrace(e);
+			throw new RobotCoreException("Gamepad does not fit in buffer", e);
 		}
 
-		return buffer.array();
+		buffer.putShort(start + 1, (short) (buffer.position() - start - HEADER_LENGTH));
+
+		// commit
+		wireSequence = sequence;
+		if (full) {
+			if (wireBase == null) wireBase = new Gamepad();
+			wireBase.copy(this);
+			wireBaseSequence = sequence;
+			wireUpdatesSinceFull = 0;
+		}
+		wireUpdatesSinceFull++;
 	}
 
 	@Override
-	public void fromByteArray(byte[] byteArray) throws RobotCoreException {
-		if (byteArray.length < BUFFER_SIZE) {
-			throw new RobotCoreException("Expected buffer of at least " + BUFFER_SIZE + " bytes, received " + byteArray.length);
+	public void readFrom(ByteBuffer byteBuffer, int offset, int length) throws RobotCoreException {
+		if (length > HEADER_LENGTH && byteBuffer.get(offset + HEADER_LENGTH) >= COMPACT_ROBOCOL_VERSION) {
+			readCompact(byteBuffer, offset, length);
+			callCallback();
+			return;
 		}
 
-		ByteBuffer byteBuffer = ByteBuffer.wrap(byteArray, HEADER_LENGTH, PAYLOAD_SIZE);
+		if (length < BUFFER_SIZE) {
+			throw new RobotCoreException("Expected buffer of at least " + BUFFER_SIZE + " bytes, received " + length);
+		}
 
-		int buttons = 0;
+		byteBuffer.limit(offset + length);
+		byteBuffer.position(offset + HEADER_LENGTH);
 
 		byte version = byteBuffer.get();
 
@@ -385,21 +542,7 @@ public class Gamepad implements RobocolParsable {
 			right_stick_y = byteBuffer.getFloat();
 			left_trigger = byteBuffer.getFloat();
 			right_trigger = byteBuffer.getFloat();
-
-			buttons = byteBuffer.getInt();
-			dpad_up      = (buttons & 0x1000) != 0;
-			dpad_down    = (buttons & 0x0800) != 0;
-			dpad_left    = (buttons & 0x0400) != 0;
-			dpad_right   = (buttons & 0x0200) != 0;
-			a            = (buttons & 0x0100) != 0;
-			b            = (buttons & 0x0080) != 0;
-			x            = (buttons & 0x0040) != 0;
-			y            = (buttons & 0x0020) != 0;
-			guide        = (buttons & 0x0010) != 0;
-			start        = (buttons & 0x0008) != 0;
-			back         = (buttons & 0x0004) != 0;
-			left_bumper  = (buttons & 0x0002) != 0;
-			right_bumper = (buttons & 0x0001) != 0;
+			unpackButtons(byteBuffer.getInt());
 		}
 
 		// extract version 2 values
@@ -410,6 +553,134 @@ public class Gamepad implements RobocolParsable {
 		callCallback();
 	}
 
+	private void readCompact(ByteBuffer byteBuffer, int offset, int length) throws RobotCoreException {
+		byteBuffer.limit(offset + length);
+		byteBuffer.position(offset + HEADER_LENGTH + 1);
+
+		try {
+			byte packetUser = byteBuffer.get();
+			int sequence = byteBuffer.get() & 0xff;
+			int baseSequence = byteBuffer.get() & 0xff;
+			int presence = byteBuffer.get() & 0xff;
+			boolean full = (presence & PRESENT_FULL) != 0;
+
+			if (full) {
+				id = byteBuffer.getInt();
+				timestamp = byteBuffer.getLong();
+			} else if (wireBase == null || baseSequence != wireBaseSequence) {
+				throw new RobotCoreException("Gamepad update is relative to a full update that was not received");
+			} else {
+				copy(wireBase);
+				timestamp = wireBase.timestamp + TypeConversion.getUnsignedVarint(byteBuffer);
+			}
+			user = packetUser;
+
+			if ((presence & PRESENT_LEFT_STICK_X) != 0) left_stick_x = dequantizeStick(byteBuffer.get());
+			if ((presence & PRESENT_LEFT_STICK_Y) != 0) left_stick_y = dequantizeStick(byteBuffer.get());
+			if ((presence & PRESENT_RIGHT_STICK_X) != 0) right_stick_x = dequantizeStick(byteBuffer.get());
+			if ((presence & PRESENT_RIGHT_STICK_Y) != 0) right_stick_y = dequantizeStick(byteBuffer.get());
+			if ((presence & PRESENT_LEFT_TRIGGER) != 0) left_trigger = dequantizeTrigger(byteBuffer.get());
+			if ((presence & PRESENT_RIGHT_TRIGGER) != 0) right_trigger = dequantizeTrigger(byteBuffer.get());
+			if ((presence & PRESENT_BUTTONS) != 0) unpackButtons(byteBuffer.getShort() & 0xffff);
+
+			wireSequence = sequence;
+			if (full) {
+				if (wireBase == null) wireBase = new Gamepad();
+				wireBase.copy(this);
+				wireBaseSequence = sequence;
+			}
+		} catch (BufferUnderflowException e) {
+			throw new RobotCoreException("Gamepad update is truncated", e);
+		} catch (IllegalArgumentException e) {
+			throw new RobotCoreException("Gamepad update is malformed", e);
+		}
+	}
+
+	private int packButtons() {
+		int buttons = 0;
+		buttons = (buttons << 1) + (dpad_up ? 1 : 0);
+		buttons = (buttons << 1) + (dpad_down ? 1 : 0);
+		buttons = (buttons << 1) + (dpad_left ? 1 : 0);
+		buttons = (buttons << 1) + (dpad_right ? 1 : 0);
+		buttons = (buttons << 1) + (a ? 1 : 0);
+		buttons = (buttons << 1) + (b ? 1 : 0);
+		buttons = (buttons << 1) + (x ? 1 : 0);
+		buttons = (buttons << 1) + (y ? 1 : 0);
+		buttons = (buttons << 1) + (guide ? 1 : 0);
+		buttons = (buttons << 1) + (start ? 1 : 0);
+		buttons = (buttons << 1) + (back ? 1 : 0);
+		buttons = (buttons << 1) + (left_bumper ? 1 : 0);
+		buttons = (buttons << 1) + (right_bumper ? 1 : 0);
+		return buttons;
+	}
+
+	private void unpackButtons(int buttons) {
+		dpad_up      = (buttons & 0x1000) != 0;
+		dpad_down    = (buttons & 0x0800) != 0;
+		dpad_left    = (buttons & 0x0400) != 0;
+		dpad_right   = (buttons & 0x0200) != 0;
+		a            = (buttons & 0x0100) != 0;
+		b            = (buttons & 0x0080) != 0;
+		x            = (buttons & 0x0040) != 0;
+		y            = (buttons & 0x0020) != 0;
+		guide        = (buttons & 0x0010) != 0;
+		start        = (buttons & 0x0008) != 0;
+		back         = (buttons & 0x0004) != 0;
+		left_bumper  = (buttons & 0x0002) != 0;
+		right_bumper = (buttons & 0x0001) != 0;
+	}
+
+	private static byte quantizeStick(float value) {
+		return (byte) Math.round(Range.clip(value, -MAX_MOTION_RANGE, MAX_MOTION_RANGE) * 127);
+	}
+
+	private static float dequantizeStick(byte value) {
+		return Math.max(value, -127) / 127f;
+	}
+
+	private static byte quantizeTrigger(float value) {
+		return (byte) Math.round(Range.clip(value, 0, MAX_MOTION_RANGE) * 255);
+	}
+
+	private static float dequantizeTrigger(byte value) {
+		return (value & 0xff) / 255f;
+	}
+
+	/**
+	 * Copy the state of another gamepad into this gamepad
+	 * <p>
+	 * Copies the sticks, triggers, buttons, id, user and timestamp. The callback, deadzone and
+	 * dpad threshold of this gamepad are kept.
+	 *
+	 * @param gamepad gamepad to copy from
+	 */
+	public void copy(Gamepad gamepad) {
+		id = gamepad.id;
+		user = gamepad.user;
+		timestamp = gamepad.timestamp;
+
+		left_stick_x = gamepad.left_stick_x;
+		left_stick_y = gamepad.left_stick_y;
+		right_stick_x = gamepad.right_stick_x;
+		right_stick_y = gamepad.right_stick_y;
+		left_trigger = gamepad.left_trigger;
+		right_trigger = gamepad.right_trigger;
+
+		dpad_up = gamepad.dpad_up;
+		dpad_down = gamepad.dpad_down;
+		dpad_left = gamepad.dpad_left;
+		dpad_right = gamepad.dpad_right;
+		a = gamepad.a;
+		b = gamepad.b;
+		x = gamepad.x;
+		y = gamepad.y;
+		guide = gamepad.guide;
+		start = gamepad.start;
+		back = gamepad.back;
+		left_bumper = gamepad.left_bumper;
+		right_bumper = gamepad.right_bumper;
+	}
+
 	/**
 	 * Are all analog sticks and triggers in their rest position?
 	 * 
@@ -0,0 +1,220 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.util.FrameworkScheduler;
+import com.qualcomm.robotcore.util.Network;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Resolves the local address Robocol should bind to for a given destination.
+ * <p>
+ * Candidate interfaces are probed in parallel, so resolution takes at most one
+ * {@link RobocolConfig#TIMEOUT} instead of one per interface. Probes run on a pool of at most
+ * PROBE_THREADS threads, and probes still running or waiting at the deadline are cancelled, so
+ * repeated resolution can't pile up threads. The winning address is cached per
+ * destination; the cache is dropped whenever the set of local addresses reported by
+ * {@link Network#getLocalIpAddresses()} changes.
+ */
+public class BindAddressResolver {
+
+	private static BindAddressResolver defaultResolver = null;
+
+	/**
+	 * Get the process wide resolver
+	 * @return shared resolver
+	 */
+	public static synchronized BindAddressResolver getDefault() {
+		if (defaultResolver == null) defaultResolver = new BindAddressResolver(FrameworkScheduler.getDefault());
+		return defaultResolver;
+	}
+
+	private static final int PROBE_PENDING = 0;
+	private static final int PROBE_REACHABLE = 1;
+	private static final int PROBE_FAILED = 2;
+
+	public static final int PROBE_THREADS = 4;
+	private static final int PROBE_QUEUE_SIZE = 16;
+
+	private final ThreadPoolExecutor probes;
+	private final Map<InetAddress, InetAddress> cache = new HashMap<InetAddress, InetAddress>();
+	private Set<InetAddress> snapshot = new HashSet<InetAddress>();
+
+	private int hits = 0;
+	private int misses = 0;
+
+	public BindAddressResolver(FrameworkScheduler scheduler) {
+		this.probes = scheduler.newPool("Robocol bind probe", PROBE_THREADS, PROBE_QUEUE_SIZE);
+	}
+
+	/**
+	 * Find a bind address that can reach the destAddress. If no bind address
+	 * can be found, return the loopback address
+	 *
+	 * @param destAddress destination address
+	 * @return address to bind to
+	 */
+	public InetAddress resolve(InetAddress destAddress) {
+		ArrayList<InetAddress> local = Network.getLocalIpAddresses();
+
+		synchronized (this) {
+			Set<InetAddress> current = new HashSet<InetAddress>(local);
+			if (!current.equals(snapshot)) {
+				if (!cache.isEmpty()) RobotLog.v("Local network interfaces changed, re-resolving bind addresses");
+				cache.clear();
+				snapshot = current;
+			}
+
+			InetAddress cached = cache.get(destAddress);
+			if (cached != null) {
+				hits++;
+				return cached;
+			}
+			misses++;
+		}
+
+		ArrayList<InetAddress> addresses = Network.removeLoopbackAddresses(local);
+		addresses = Network.removeIPv6Addresses(addresses);
+
+		InetAddress bindAddress = findInterfaceAddress(addresses, destAddress);
+		if (bindAddress == null) bindAddress = probe(addresses, destAddress);
+
+		if (bindAddress == null) {
+			// not cached; a link that is still coming up may answer next time
+			return Network.getLoopbackAddress();
+		}
+
+		synchronized (this) {
+			cache.put(destAddress, bindAddress);
+		}
+		return bindAddress;
+	}
+
+	/**
+	 * Forget all cached bind addresses
+	 */
+	public synchronized void invalidate() {
+		cache.clear();
+		snapshot = new HashSet<InetAddress>();
+	}
+
+	public synchronized int getCacheHits() {
+		return hits;
+	}
+
+	public synchronized int getCacheMisses() {
+		return misses;
+	}
+
+	// if an iface has the destAddress, pick that one
+	private InetAddress findInterfaceAddress(List<InetAddress> addresses, InetAddress destAddress) {
+		for (InetAddress address : addresses) {
+			try {
+				NetworkInterface iface = NetworkInterface.getByInetAddress(address);
+				if (iface == null) continue;
+				Enumeration<InetAddress> ifaceAddresses = iface.getInetAddresses();
+				while (ifaceAddresses.hasMoreElements()) {
+					InetAddress ifaceAddress = ifaceAddresses.nextElement();
+					if (ifaceAddress.equals(destAddress)) {
+						return ifaceAddress; // we found a match
+					}
+				}
+			} catch (SocketException e) {
+				RobotLog.v(String.format("socket exception while trying to get network interface of %s",
+						address.getHostAddress()));
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Probe every candidate at once. The result is the first address in interface order that was
+	 * reachable, same as probing them one after another, but without waiting on each timeout.
+	 */
+	private InetAddress probe(final List<InetAddress> addresses, final InetAddress destAddress) {
+		final int[] results = new int[addresses.size()];
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+
+		for (int i = 0; i < addresses.size(); i++) {
+			final int index = i;
+			final InetAddress address = addresses.get(i);
+			Runnable probe = new Runnable() {
+				@Override
+				public void run() {
+					boolean reachable = false;
+					try {
+						NetworkInterface iface = NetworkInterface.getByInetAddress(address);
+						reachable = address.isReachable(iface, RobocolConfig.TTL, RobocolConfig.TIMEOUT);
+					} catch (SocketException e) {
+						RobotLog.v(String.format("socket exception while trying to get network interface of %s",
+								address.getHostAddress()));
+					} catch (IOException e) {
+						RobotLog.v(String.format("IO exception while trying to determine if %s is reachable via %s",
+								destAddress.getHostAddress(), address.getHostAddress()));
+					}
+					synchronized (results) {
+						results[index] = reachable ? PROBE_REACHABLE : PROBE_FAILED;
+						results.notifyAll();
+					}
+				}
+			};
+			try {
+				futures.add(probes.submit(probe));
+			} catch (RejectedExecutionException e) {
+				RobotLog.w("Too many bind probes waiting, skipping " + address.getHostAddress());
+				results[index] = PROBE_FAILED;
+			}
+		}
+
+		try {
+			return awaitProbes(addresses, results);
+		} finally {
+			// nobody waits for the stragglers; isReachable() may ignore the interrupt, but then it
+			// still returns within its own timeout
+			for (Future<?> future : futures) future.cancel(true);
+		}
+	}
+
+	private InetAddress awaitProbes(List<InetAddress> addresses, int[] results) {
+		// isReachable honors its timeout, the extra slack covers probes waiting for a thread
+		long deadline = System.currentTimeMillis() + 2 * RobocolConfig.TIMEOUT;
+		synchronized (results) {
+			while (true) {
+				boolean pending = false;
+				for (int i = 0; i < results.length && !pending; i++) {
+					if (results[i] == PROBE_REACHABLE) return addresses.get(i);
+					if (results[i] == PROBE_PENDING) pending = true;
+				}
+				if (!pending) return null;
+
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) break;
+				try {
+					results.wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+
+			// out of time; settle for any address that answered
+			for (int i = 0; i < results.length; i++) {
+				if (results[i] == PROBE_REACHABLE) return addresses.get(i);
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,126 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.exception.RobotCoreException;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Acknowledges the chunks of a bulk transfer received so far
+ * <p>
+ * Every chunk below the cumulative index has been received. Bit n of the selective mask is set
+ * if chunk (cumulative + 1 + n) has been received as well.
+ */
+public class BulkAck implements RobocolParsable {
+
+	public static final short PAYLOAD_SIZE = 16;
+
+	/**
+	 * Number of chunks past the cumulative index covered by the selective mask
+	 */
+	public static final int SELECTIVE_RANGE = 64;
+
+	private int transferId;
+	private int cumulative;
+	private long selective;
+
+	public BulkAck() {
+		// default constructor
+	}
+
+	/**
+	 * Reuse this ack
+	 *
+	 * @param transferId transfer ID
+	 * @param cumulative index of the first chunk not received yet
+	 * @param selective chunks received after the cumulative index
+	 */
+	public void set(int transferId, int cumulative, long selective) {
+		this.transferId = transferId;
+		this.cumulative = cumulative;
+		this.selective = selective;
+	}
+
+	public int getTransferId() {
+		return transferId;
+	}
+
+	public int getCumulative() {
+		return cumulative;
+	}
+
+	/**
+	 * Check if a chunk has been received
+	 *
+	 * @param index chunk index
+	 * @return true if the chunk is acknowledged by this ack
+	 */
+	public boolean isAcknowledged(int index) {
+		if (index < cumulative) return true;
+		int bit = index - cumulative - 1;
+		if (bit < 0 || bit >= SELECTIVE_RANGE) return false;
+		return (selective & (1L << bit)) != 0;
+	}
+
+	@Override
+	public MsgType getRobocolMsgType() {
+		return MsgType.BULK_ACK;
+	}
+
+	@Override
+	public byte[] toByteArray() throws RobotCoreException {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + PAYLOAD_SIZE);
+		writeTo(buffer);
+		return buffer.array();
+	}
+
+	@Override
+	public void fromByteArray(byte[] byteArray) throws RobotCoreException {
+		readFrom(ByteBuffer.wrap(byteArray), 0, byteArray.length);
+	}
+
+	@Override
+	public void writeTo(ByteBuffer buffer) throws RobotCoreException {
+
+		/*
+		 * Data format
+		 *
+		 * bytes    | format | value
+		 * ---------|--------|---------------------------------
+		 *  4       | int32  | transfer ID
+		 *  4       | int32  | cumulative chunk index
+		 *  8       | int64  | selective mask
+		 */
+
+		try {
+			buffer.put(getRobocolMsgType().asByte());
+			buffer.putShort(PAYLOAD_SIZE);
+
+			buffer.putInt(transferId);
+			buffer.putInt(cumulative);
+			buffer.putLong(selective);
+		} catch (BufferOverflowException e) {
+			throw new RobotCoreException("Bulk ack does not fit in buffer", e);
+		}
+	}
+
+	@Override
+	public void readFrom(ByteBuffer buffer, int offset, int length) throws RobotCoreException {
+		buffer.limit(offset + length);
+		buffer.position(offset + HEADER_LENGTH);
+
+		try {
+			transferId = buffer.getInt();
+			cumulative = buffer.getInt();
+			selective = buffer.getLong();
+		} catch (BufferUnderflowException e) {
+			throw new RobotCoreException("Bulk ack is truncated", e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Bulk ack - transfer: %d, cumulative: %d", transferId, cumulative);
+	}
+}
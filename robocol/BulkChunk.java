@@ -0,0 +1,196 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.exception.RobotCoreException;
+import com.qualcomm.robotcore.util.TypeConversion;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * One chunk of a bulk transfer
+ * <p>
+ * A transfer moves a block of bytes, such as a config file or a log, in chunks of up to
+ * CHUNK_SIZE bytes. The first chunk also carries the name of the transfer. See
+ * BulkTransferSender and BulkTransferReceiver.
+ */
+public class BulkChunk implements RobocolParsable {
+
+	/**
+	 * Maximum number of data bytes in one chunk, keeps a chunk within one packed datagram
+	 */
+	public static final int CHUNK_SIZE = 1024;
+
+	/**
+	 * Maximum size of a transfer, in bytes
+	 */
+	public static final int MAX_TRANSFER_SIZE = 16 * 1024 * 1024;
+
+	private static final int BASE_PAYLOAD_SIZE = 17;
+
+	private int transferId;
+	private int index;
+	private int count;
+	private int totalLength;
+	private byte[] nameBytes = new byte[0];
+	private String name = "";
+
+	// on send, a view of the transfer data; on receive, a copy in received
+	private final byte[] received = new byte[CHUNK_SIZE];
+	private byte[] data = received;
+	private int dataOffset = 0;
+	private int dataLength = 0;
+
+	public BulkChunk() {
+		// default constructor
+	}
+
+	/**
+	 * Reuse this chunk to send part of a transfer
+	 * <p>
+	 * The data is not copied, it must not change while the chunk is sent.
+	 *
+	 * @param transferId transfer ID
+	 * @param index index of this chunk
+	 * @param count number of chunks in the transfer
+	 * @param name name of the transfer, only sent with the first chunk
+	 * @param transfer all data of the transfer
+	 */
+	public void set(int transferId, int index, int count, byte[] name, byte[] transfer) {
+		this.transferId = transferId;
+		this.index = index;
+		this.count = count;
+		this.totalLength = transfer.length;
+		this.nameBytes = (index == 0) ? name : new byte[0];
+		this.data = transfer;
+		this.dataOffset = index * CHUNK_SIZE;
+		this.dataLength = Math.min(CHUNK_SIZE, transfer.length - dataOffset);
+	}
+
+	public int getTransferId() {
+		return transferId;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public int getTotalLength() {
+		return totalLength;
+	}
+
+	/**
+	 * Get the name of the transfer, only known from the first chunk
+	 *
+	 * @return name, or an empty string for other chunks
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public byte[] getData() {
+		return data;
+	}
+
+	public int getDataOffset() {
+		return dataOffset;
+	}
+
+	public int getDataLength() {
+		return dataLength;
+	}
+
+	@Override
+	public MsgType getRobocolMsgType() {
+		return MsgType.BULK_DATA;
+	}
+
+	@Override
+	public byte[] toByteArray() throws RobotCoreException {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + getPayloadSize());
+		writeTo(buffer);
+		return buffer.array();
+	}
+
+	@Override
+	public void fromByteArray(byte[] byteArray) throws RobotCoreException {
+		readFrom(ByteBuffer.wrap(byteArray), 0, byteArray.length);
+	}
+
+	@Override
+	public void writeTo(ByteBuffer buffer) throws RobotCoreException {
+
+		/*
+		 * Data format
+		 *
+		 * bytes    | format | value
+		 * ---------|--------|---------------------------------
+		 *  4       | int32  | transfer ID
+		 *  4       | int32  | chunk index
+		 *  4       | int32  | number of chunks
+		 *  4       | int32  | total length of the transfer
+		 *  1       | uint8  | length of name (0 except in the first chunk)
+		 *  varies  | UTF-8  | name
+		 *  varies  | bytes  | data, the rest of the message
+		 */
+
+		if (nameBytes.length > 255) {
+			throw new RobotCoreException("Bulk transfer name cannot exceed 255 bytes");
+		}
+
+		try {
+			buffer.put(getRobocolMsgType().asByte());
+			buffer.putShort((short) getPayloadSize());
+
+			buffer.putInt(transferId);
+			buffer.putInt(index);
+			buffer.putInt(count);
+			buffer.putInt(totalLength);
+			buffer.put((byte) nameBytes.length);
+			buffer.put(nameBytes);
+			buffer.put(data, dataOffset, dataLength);
+		} catch (BufferOverflowException e) {
+			throw new RobotCoreException("Bulk chunk does not fit in buffer", e);
+		}
+	}
+
+	@Override
+	public void readFrom(ByteBuffer buffer, int offset, int length) throws RobotCoreException {
+		buffer.limit(offset + length);
+		buffer.position(offset + HEADER_LENGTH);
+
+		try {
+			transferId = buffer.getInt();
+			index = buffer.getInt();
+			count = buffer.getInt();
+			totalLength = buffer.getInt();
+
+			nameBytes = new byte[TypeConversion.unsignedByteToInt(buffer.get())];
+			buffer.get(nameBytes);
+			name = TypeConversion.utf8ToString(nameBytes);
+
+			dataLength = buffer.remaining();
+			if (dataLength > CHUNK_SIZE) {
+				throw new RobotCoreException("Bulk chunk is too large: " + dataLength);
+			}
+			data = received;
+			dataOffset = 0;
+			buffer.get(data, 0, dataLength);
+		} catch (BufferUnderflowException e) {
+			throw new RobotCoreException("Bulk chunk is truncated", e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Bulk chunk - transfer: %d, chunk: %d/%d", transferId, index, count);
+	}
+
+	private int getPayloadSize() {
+		return BASE_PAYLOAD_SIZE + nameBytes.length + dataLength;
+	}
+}
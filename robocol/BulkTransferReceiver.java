@@ -0,0 +1,237 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.util.RobotLog;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Reassembles bulk transfers from BulkChunk messages
+ * <p>
+ * Chunks may arrive in any order and more than once. Call onChunk() for every received chunk and
+ * sendAcks() at the end of every receive burst; one BulkAck per transfer that made progress is
+ * sent then. A transfer that receives nothing for STALE_TIMEOUT is dropped, until then it can be
+ * resumed by the sender.
+ * <p>
+ * Transfers larger than the receive limit are refused, and chunks are stored as they arrive; the
+ * transfer is put together only once it is complete. A peer announcing a large transfer therefore
+ * costs no more memory than the data it actually sends.
+ * <p>
+ * This class is not thread safe, it is meant to be used from the receive thread only.
+ */
+public class BulkTransferReceiver {
+
+	/**
+	 * Callback for completed transfers
+	 */
+	public interface Listener {
+		void onTransferComplete(String name, byte[] data);
+	}
+
+	public static final int MAX_ACTIVE_TRANSFERS = 4;
+	public static final long STALE_TIMEOUT = 60000; // in milliseconds
+	public static final int DEFAULT_MAX_TRANSFER_SIZE = 1024 * 1024;
+
+	// completed transfer IDs remembered, so late duplicates are acknowledged but not delivered twice
+	private static final int COMPLETED_HISTORY = 16;
+
+	private static class Transfer {
+		int id;
+		String name = null;
+		int length;
+		byte[][] chunks;
+		int count;
+		boolean[] received;
+		int cumulative = 0;
+		boolean ackDue = false;
+		long lastActivity;
+	}
+
+	private final Listener listener;
+	private final int maxTransferSize;
+	private final Map<Integer, Transfer> transfers = new HashMap<Integer, Transfer>();
+	private final int[] completed = new int[COMPLETED_HISTORY];
+	private final int[] completedCounts = new int[COMPLETED_HISTORY];
+	private int completedPosition = 0;
+	private int completedSize = 0;
+	private final BulkAck ack = new BulkAck();
+	private boolean pendingCompletedAck = false; // ack holds an ack for a completed transfer
+
+	private long dropped = 0;
+
+	public BulkTransferReceiver(Listener listener) {
+		this(listener, DEFAULT_MAX_TRANSFER_SIZE);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param listener called with every completed transfer
+	 * @param maxTransferSize larger transfers are refused, at most BulkChunk.MAX_TRANSFER_SIZE
+	 */
+	public BulkTransferReceiver(Listener listener, int maxTransferSize) {
+		this.listener = listener;
+		this.maxTransferSize = Math.min(maxTransferSize, BulkChunk.MAX_TRANSFER_SIZE);
+	}
+
+	/**
+	 * Handle a received chunk
+	 *
+	 * @param chunk received chunk
+	 * @param now System.nanoTime()
+	 */
+	public void onChunk(BulkChunk chunk, long now) {
+		Transfer transfer = transfers.get(chunk.getTransferId());
+
+		if (transfer == null) {
+			int done = findCompleted(chunk.getTransferId());
+			if (done >= 0) {
+				// the sender missed our final ack, repeat it
+				ack.set(chunk.getTransferId(), completedCounts[done], 0);
+				pendingCompletedAck = true;
+				return;
+			}
+
+			if (!isValid(chunk, maxTransferSize)) {
+				RobotLog.w("Dropping invalid bulk chunk: " + chunk.toString());
+				dropped++;
+				return;
+			}
+
+			expire(now);
+			if (transfers.size() >= MAX_ACTIVE_TRANSFERS) {
+				RobotLog.w("Too many bulk transfers in progress, dropping chunk: " + chunk.toString());
+				dropped++;
+				return;
+			}
+
+			transfer = new Transfer();
+			transfer.id = chunk.getTransferId();
+			transfer.count = chunk.getCount();
+			transfer.length = chunk.getTotalLength();
+			transfer.chunks = new byte[transfer.count][];
+			transfer.received = new boolean[transfer.count];
+			transfers.put(transfer.id, transfer);
+		}
+
+		transfer.lastActivity = now;
+		transfer.ackDue = true;
+
+		int index = chunk.getIndex();
+		if (index < 0 || index >= transfer.count || chunk.getCount() != transfer.count
+				|| chunk.getTotalLength() != transfer.length) {
+			dropped++;
+			return;
+		}
+		if (transfer.received[index]) return; // duplicate
+
+		int offset = index * BulkChunk.CHUNK_SIZE;
+		int expected = Math.min(BulkChunk.CHUNK_SIZE, transfer.length - offset);
+		if (chunk.getDataLength() != expected) {
+			dropped++;
+			return;
+		}
+
+		byte[] data = new byte[expected];
+		System.arraycopy(chunk.getData(), chunk.getDataOffset(), data, 0, expected);
+		transfer.chunks[index] = data;
+		transfer.received[index] = true;
+		if (index == 0) transfer.name = chunk.getName();
+		while (transfer.cumulative < transfer.count && transfer.received[transfer.cumulative]) {
+			transfer.cumulative++;
+		}
+	}
+
+	/**
+	 * Send acks for the transfers that received chunks since the last call, and deliver the
+	 * transfers that are complete
+	 *
+	 * @param socket socket to send acks on
+	 */
+	public void sendAcks(RobocolDatagramSocket socket) {
+		if (pendingCompletedAck) {
+			socket.send(ack);
+			pendingCompletedAck = false;
+		}
+
+		Iterator<Transfer> iterator = transfers.values().iterator();
+		while (iterator.hasNext()) {
+			Transfer transfer = iterator.next();
+			if (!transfer.ackDue) continue;
+			transfer.ackDue = false;
+
+			ack.set(transfer.id, transfer.cumulative, selectiveMask(transfer));
+			socket.send(ack);
+
+			if (transfer.cumulative == transfer.count) {
+				iterator.remove();
+				remember(transfer);
+				listener.onTransferComplete(transfer.name, assemble(transfer));
+			}
+		}
+	}
+
+	/**
+	 * @return number of chunks dropped as invalid or because of too many transfers
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+	public void clear() {
+		transfers.clear();
+		completedSize = 0;
+		pendingCompletedAck = false;
+	}
+
+	private static boolean isValid(BulkChunk chunk, int maxTransferSize) {
+		int length = chunk.getTotalLength();
+		if (length < 0 || length > maxTransferSize) return false;
+		int count = Math.max(1, (length + BulkChunk.CHUNK_SIZE - 1) / BulkChunk.CHUNK_SIZE);
+		return chunk.getCount() == count;
+	}
+
+	private static byte[] assemble(Transfer transfer) {
+		byte[] data = new byte[transfer.length];
+		for (int i = 0; i < transfer.count; i++) {
+			System.arraycopy(transfer.chunks[i], 0, data, i * BulkChunk.CHUNK_SIZE, transfer.chunks[i].length);
+		}
+		return data;
+	}
+
+	private static long selectiveMask(Transfer transfer) {
+		long mask = 0;
+		int end = Math.min(transfer.count, transfer.cumulative + 1 + BulkAck.SELECTIVE_RANGE);
+		for (int i = transfer.cumulative + 1; i < end; i++) {
+			if (transfer.received[i]) mask |= 1L << (i - transfer.cumulative - 1);
+		}
+		return mask;
+	}
+
+	private void expire(long now) {
+		Iterator<Transfer> iterator = transfers.values().iterator();
+		while (iterator.hasNext()) {
+			Transfer transfer = iterator.next();
+			if (now - transfer.lastActivity > STALE_TIMEOUT * 1000000L) {
+				RobotLog.w(String.format("Bulk transfer %d timed out, %d of %d chunks received",
+						transfer.id, transfer.cumulative, transfer.count));
+				iterator.remove();
+			}
+		}
+	}
+
+	private int findCompleted(int id) {
+		for (int i = 0; i < completedSize; i++) {
+			if (completed[i] == id) return i;
+		}
+		return -1;
+	}
+
+	private void remember(Transfer transfer) {
+		completed[completedPosition] = transfer.id;
+		completedCounts[completedPosition] = transfer.count;
+		completedPosition = (completedPosition + 1) % COMPLETED_HISTORY;
+		completedSize = Math.min(completedSize + 1, COMPLETED_HISTORY);
+	}
+}
@@ -0,0 +1,180 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.util.RobotLog;
+import com.qualcomm.robotcore.util.TokenBucket;
+import com.qualcomm.robotcore.util.TypeConversion;
+
+import java.util.LinkedList;
+import java.util.Random;
+
+/**
+ * Sends bulk transfers, one at a time, in BulkChunk messages
+ * <p>
+ * Up to WINDOW chunks past the first unacknowledged chunk may be in flight. The receiver answers
+ * with BulkAck messages, which acknowledge chunks cumulatively and selectively; chunks not
+ * acknowledged within RETRANSMIT_TIMEOUT are sent again. A token bucket limits the rate, so
+ * gamepads, heartbeats and commands are not crowded out.
+ * <p>
+ * A transfer survives losing the peer: after onReconnect() every chunk that was not acknowledged
+ * is sent again, and the receiver keeps what it already has.
+ * <p>
+ * pump() must be called regularly, e.g. once per tick of the scheduled send thread.
+ */
+public class BulkTransferSender {
+
+	public static final int WINDOW = 32; // in chunks, at most BulkAck.SELECTIVE_RANGE
+	public static final long RETRANSMIT_TIMEOUT = 300; // in milliseconds
+	public static final double DEFAULT_RATE = 256 * 1024; // in bytes per second
+	public static final double BURST_SIZE = 8 * BulkChunk.CHUNK_SIZE; // in bytes
+
+	private static class Transfer {
+		int id;
+		String name;
+		byte[] nameBytes;
+		byte[] data;
+		int count;
+		int cumulative = 0;
+		boolean[] acked;
+		long[] sent; // System.nanoTime() of the last send, 0 if not in flight
+	}
+
+	private final RobocolDatagramSocket socket;
+	private final TokenBucket bucket = new TokenBucket(DEFAULT_RATE, BURST_SIZE);
+	private final BulkChunk chunk = new BulkChunk();
+	private final LinkedList<Transfer> transfers = new LinkedList<Transfer>();
+
+	// random start, so IDs from a restarted sender don't match stale transfers at the receiver
+	private int nextId = new Random().nextInt();
+
+	private long chunksSent = 0;
+	private long chunksResent = 0;
+	private long transfersCompleted = 0;
+
+	public BulkTransferSender(RobocolDatagramSocket socket) {
+		this.socket = socket;
+	}
+
+	/**
+	 * Queue data to be sent, transfers are sent in the order they were queued
+	 * <p>
+	 * The data is not copied and must not be changed until the transfer is complete.
+	 *
+	 * @param name name of the transfer, e.g. a file name; at most 255 bytes of UTF-8
+	 * @param data data to send
+	 * @return transfer ID
+	 */
+	public synchronized int send(String name, byte[] data) {
+		if (data.length > BulkChunk.MAX_TRANSFER_SIZE) {
+			throw new IllegalArgumentException(String.format("bulk transfer is too large (MAX: %d)", BulkChunk.MAX_TRANSFER_SIZE));
+		}
+
+		Transfer transfer = new Transfer();
+		transfer.id = nextId++;
+		transfer.name = name;
+		transfer.nameBytes = TypeConversion.stringToUtf8(name);
+		if (transfer.nameBytes.length > 255) {
+			throw new IllegalArgumentException("bulk transfer name is too long (MAX: 255)");
+		}
+		transfer.data = data;
+		transfer.count = Math.max(1, (data.length + BulkChunk.CHUNK_SIZE - 1) / BulkChunk.CHUNK_SIZE);
+		transfer.acked = new boolean[transfer.count];
+		transfer.sent = new long[transfer.count];
+
+		transfers.add(transfer);
+		return transfer.id;
+	}
+
+	/**
+	 * Send the chunks that are due, as far as the window and rate allow
+	 *
+	 * @param now System.nanoTime()
+	 */
+	public synchronized void pump(long now) {
+		Transfer transfer = transfers.peek();
+		if (transfer == null) return;
+
+		int end = Math.min(transfer.count, transfer.cumulative + WINDOW);
+		for (int i = transfer.cumulative; i < end; i++) {
+			if (transfer.acked[i]) continue;
+
+			boolean resend = transfer.sent[i] != 0;
+			if (resend && now - transfer.sent[i] < RETRANSMIT_TIMEOUT * 1000000L) continue;
+
+			if (!bucket.tryTake(BulkChunk.CHUNK_SIZE, now)) return;
+
+			chunk.set(transfer.id, i, transfer.count, transfer.nameBytes, transfer.data);
+			socket.send(chunk);
+			transfer.sent[i] = now;
+			chunksSent++;
+			if (resend) chunksResent++;
+		}
+	}
+
+	/**
+	 * Handle an ack from the receiver
+	 *
+	 * @param ack received ack
+	 */
+	public synchronized void onAck(BulkAck ack) {
+		Transfer transfer = transfers.peek();
+		if (transfer == null || transfer.id != ack.getTransferId()) return;
+
+		int end = Math.min(transfer.count, ack.getCumulative() + 1 + BulkAck.SELECTIVE_RANGE);
+		for (int i = transfer.cumulative; i < end; i++) {
+			if (ack.isAcknowledged(i)) transfer.acked[i] = true;
+		}
+		while (transfer.cumulative < transfer.count && transfer.acked[transfer.cumulative]) {
+			transfer.cumulative++;
+		}
+
+		if (transfer.cumulative == transfer.count) {
+			RobotLog.v(String.format("Bulk transfer %s complete, %d bytes", transfer.name, transfer.data.length));
+			transfers.poll();
+			transfersCompleted++;
+		}
+	}
+
+	/**
+	 * The peer was lost and found again, resend every chunk that was not acknowledged
+	 */
+	public synchronized void onReconnect() {
+		for (Transfer transfer : transfers) {
+			for (int i = 0; i < transfer.count; i++) transfer.sent[i] = 0;
+		}
+	}
+
+	/**
+	 * Drop every queued transfer
+	 */
+	public synchronized void clear() {
+		transfers.clear();
+	}
+
+	/**
+	 * Set the maximum rate of bulk data
+	 *
+	 * @param rate in bytes per second
+	 */
+	public void setRate(double rate) {
+		bucket.setRate(rate);
+	}
+
+	/**
+	 * @return number of transfers not completed yet, including the one in progress
+	 */
+	public synchronized int getPendingCount() {
+		return transfers.size();
+	}
+
+	public synchronized long getChunksSent() {
+		return chunksSent;
+	}
+
+	public synchronized long getChunksResent() {
+		return chunksResent;
+	}
+
+	public synchronized long getTransfersCompleted() {
+		return transfersCompleted;
+	}
+}
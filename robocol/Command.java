@@ -31,13 +31,16 @@
 package com.sources.com.qualcomm.robotcore.robocol;
 
 import com.qualcomm.robotcore.exception.RobotCoreException;
-import com.qualcomm.robotcore.util.RobotLog;
 import com.qualcomm.robotcore.util.TypeConversion;
 
 import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 //import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Class used to send and receive commands
@@ -50,6 +53,29 @@ public class Command implements RobocolParsable, Comparable<Command>, Comparator
 
 	public static final int MAX_COMMAND_LENGTH = 256;
 
+	/**
+	 * Order in which the sender transmits commands
+	 * <p>
+	 * The priority is not sent over the wire; it only matters to the sender.
+	 */
+	public enum Priority {
+		/** stop the robot, switch op modes; always sent first */
+		CRITICAL,
+		/** answers to the user, sent as soon as possible */
+		INTERACTIVE,
+		/** sent at a limited rate, when nothing more urgent is waiting */
+		BULK
+	}
+
+	// framework commands that stop the robot, restart it or switch op modes
+	private static final Set<String> CRITICAL_COMMANDS = new HashSet<String>(Arrays.asList(
+		"CMD_RESTART_ROBOT", "CMD_INIT_OP_MODE", "CMD_RUN_OP_MODE", "CMD_SWITCH_OP_MODE",
+		"CMD_STOP_OP_MODE", "RESTART_OPMODE", "OPMODE_RESTART_FINISHED"));
+
+	// framework answers that can be large and are not time critical
+	private static final Set<String> BULK_COMMANDS = new HashSet<String>(Arrays.asList(
+		"CMD_REQUEST_OP_MODE_LIST_RESP"));
+
 	private static final short BASE_PAYLOAD_SIZE = 11;
 
 	// commented because unused
@@ -62,6 +88,7 @@ public class Command implements RobocolParsable, Comparable<Command>, Comparator
 	long mTimestamp;
 	boolean mAcknowledged = false;
 	byte mAttempts = 0;
+	Priority mPriority = Priority.INTERACTIVE;
 
 	/**
 	 * Constructor
@@ -79,7 +106,19 @@ public class Command implements RobocolParsable, Comparable<Command>, Comparator
 	 * @param extra extra data as string
 	 */
 	public Command(String name, String extra) {
+		this(name, extra, priorityOf(name));
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param name name as string
+	 * @param extra extra data as string
+	 * @param priority transmit priority
+	 */
+	public Command(String name, String extra, Priority priority) {
 		mName = name;
+		mPriority = priority;
 		mExtra = extra;
 		mNameBytes = TypeConversion.stringToUtf8(mName);
 		mExtraBytes = TypeConversion.stringToUtf8(mExtra);
@@ -98,6 +137,18 @@ public class Command implements RobocolParsable, Comparable<Command>, Comparator
 		fromByteArray(byteArray);
 	}
 
+	/**
+	 * Constructor
+	 *
+	 * @param buffer buffer holding a command message
+	 * @param offset index of the message header in the buffer
+	 * @param length length of the message, header included
+	 * @throws RobotCoreException if unable to parse the message
+	 */
+	public Command(ByteBuffer buffer, int offset, int length) throws RobotCoreException {
+		readFrom(buffer, offset, length);
+	}
+
 	/**
 	 * The receiver should call this method before sending this command back to the sender
 	 */
@@ -141,6 +192,36 @@ public class Command implements RobocolParsable, Comparable<Command>, Comparator
 		return mAttempts;
 	}
 
+	/**
+	 * Get the transmit priority of this command
+	 * <p>
+	 * Received commands are always INTERACTIVE, since the priority is not sent over the wire.
+	 *
+	 * @return priority
+	 */
+	public Priority getPriority() {
+		return mPriority;
+	}
+
+	public void setPriority(Priority priority) {
+		mPriority = priority;
+	}
+
+	/**
+	 * Transmit priority of a command, by name
+	 * <p>
+	 * Stopping, restarting and switching op modes are CRITICAL, large framework answers are
+	 * BULK, everything else is INTERACTIVE. Used by the constructors that don't take a priority.
+	 *
+	 * @param name command name
+	 * @return priority
+	 */
+	public static Priority priorityOf(String name) {
+		if (CRITICAL_COMMANDS.contains(name)) return Priority.CRITICAL;
+		if (BULK_COMMANDS.contains(name)) return Priority.BULK;
+		return Priority.INTERACTIVE;
+	}
+
 	/**
 	 * Get the timestamp that this command was created
 	 * 
@@ -165,13 +246,29 @@ public class Command implements RobocolParsable, Comparable<Command>, Comparator
 	 */
 	@Override
 	public byte[] toByteArray() throws RobotCoreException {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + getPayloadSize());
+		writeTo(buffer);
+		return buffer.array();
+	}
 
-		if (mAttempts != Byte.MAX_VALUE)
-			mAttempts += 1;
+	/*
+	 * (non-Javadoc)
+	 * @see com.qualcomm.robotcore.robocol.RobocolParsable#fromByteArray(byte[])
+	 */
+	@Override
+	public void fromByteArray(byte[] byteArray) throws RobotCoreException {
+		readFrom(ByteBuffer.wrap(byteArray), 0, byteArray.length);
+	}
 
-		short payloadSize = (short) (BASE_PAYLOAD_SIZE + mNameBytes.length + mExtraBytes.length);
+	/*
+	 * (non-Javadoc)
+	 * @see com.qualcomm.robotcore.robocol.RobocolParsable#writeTo(java.nio.ByteBuffer)
+	 */
+	@Override
+	public void writeTo(ByteBuffer buffer) throws RobotCoreException {
+
+		short payloadSize = getPayloadSize();
 
-		ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + payloadSize);
 		try {
 			buffer.put(getRobocolMsgType().asByte());
 			buffer.putShort(payloadSize);
@@ -185,33 +282,43 @@ public class Command implements RobocolParsable, Comparable<Command>, Comparator
 			buffer.put((byte) mExtraBytes.length);
 			buffer.put(mExtraBytes);
 		} catch (BufferOverflowException e) {
-			RobotLog.logStacktrace(e);
+			throw new RobotCoreException("Command does not fit in buffer: " + mName, e);
 		}
-		return buffer.array();
+
+		if (mAttempts != Byte.MAX_VALUE)
+			mAttempts += 1;
 	}
 
 	/*
 	 * (non-Javadoc)
-	 * @see com.qualcomm.robotcore.robocol.RobocolParsable#fromByteArray(byte[])
+	 * @see com.qualcomm.robotcore.robocol.RobocolParsable#readFrom(java.nio.ByteBuffer, int, int)
 	 */
 	@Override
-	public void fromByteArray(byte[] byteArray) throws RobotCoreException {
-		ByteBuffer buffer = ByteBuffer.wrap(byteArray, HEADER_LENGTH,
-				byteArray.length - HEADER_LENGTH);
+	public void readFrom(ByteBuffer buffer, int offset, int length) throws RobotCoreException {
+		buffer.limit(offset + length);
+		buffer.position(offset + HEADER_LENGTH);
 
-		mTimestamp = buffer.getLong();
+		try {
+			mTimestamp = buffer.getLong();
 
-		mAcknowledged = (buffer.get() == 1);
+			mAcknowledged = (buffer.get() == 1);
 
-		int length = TypeConversion.unsignedByteToInt(buffer.get());
-		mNameBytes = new byte[length];
-		buffer.get(mNameBytes);
-		mName = TypeConversion.utf8ToString(mNameBytes);
+			int nameLength = TypeConversion.unsignedByteToInt(buffer.get());
+			mNameBytes = new byte[nameLength];
+			buffer.get(mNameBytes);
+			mName = TypeConversion.utf8ToString(mNameBytes);
+
+			int extraLength = TypeConversion.unsignedByteToInt(buffer.get());
+			mExtraBytes = new byte[extraLength];
+			buffer.get(mExtraBytes);
+			mExtra = TypeConversion.utf8ToString(mExtraBytes);
+		} catch (BufferUnderflowException e) {
+			throw new RobotCoreException("Command message is truncated", e);
+		}
+	}
 
-		length = TypeConversion.unsignedByteToInt(buffer.get());
-		mExtraBytes = new byte[length];
-		buffer.get(mExtraBytes);
-		mExtra = TypeConversion.utf8ToString(mExtraBytes);
+	private short getPayloadSize() {
+		return (short) (BASE_PAYLOAD_SIZE + mNameBytes.length + mExtraBytes.length);
 	}
 
 	@Override
@@ -231,7 +338,7 @@ public class Command implements RobocolParsable, Comparable<Command>, Comparator
 
 	@Override
 	public int hashCode() {
-		return (int) (mName.hashCode() & mTimestamp);
+		return 31 * mName.hashCode() + (int) (mTimestamp ^ (mTimestamp >>> 32));
 	}
 
 	@Override
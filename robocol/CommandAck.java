@@ -0,0 +1,147 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.exception.RobotCoreException;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Acknowledges several received commands in one message
+ * <p>
+ * Only sent to peers that support PeerDiscovery.CAPABILITY_COMMAND_ACK; other peers get each
+ * command echoed back with the acknowledged flag set. A command is identified by its timestamp
+ * and the String.hashCode() of its name.
+ */
+public class CommandAck implements RobocolParsable {
+
+	/**
+	 * Maximum number of commands in one ack, keeps the message well below one packet
+	 */
+	public static final int MAX_ACKS = 100;
+
+	private static final int ENTRY_SIZE = 12;
+
+	private final long[] timestamps = new long[MAX_ACKS];
+	private final int[] nameHashes = new int[MAX_ACKS];
+	private int count = 0;
+
+	public CommandAck() {
+		// default constructor
+	}
+
+	/**
+	 * Add a command to this ack
+	 *
+	 * @param command received command
+	 * @return false if this ack is full
+	 */
+	public boolean add(Command command) {
+		if (count == MAX_ACKS) return false;
+
+		timestamps[count] = command.getTimestamp();
+		nameHashes[count] = command.getName().hashCode();
+		count++;
+		return true;
+	}
+
+	public void clear() {
+		count = 0;
+	}
+
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	public boolean isFull() {
+		return count == MAX_ACKS;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public long getTimestamp(int index) {
+		return timestamps[index];
+	}
+
+	public int getNameHash(int index) {
+		return nameHashes[index];
+	}
+
+	@Override
+	public MsgType getRobocolMsgType() {
+		return MsgType.COMMAND_ACK;
+	}
+
+	@Override
+	public byte[] toByteArray() throws RobotCoreException {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + getPayloadSize());
+		writeTo(buffer);
+		return buffer.array();
+	}
+
+	@Override
+	public void fromByteArray(byte[] byteArray) throws RobotCoreException {
+		readFrom(ByteBuffer.wrap(byteArray), 0, byteArray.length);
+	}
+
+	@Override
+	public void writeTo(ByteBuffer buffer) throws RobotCoreException {
+
+		/*
+		 * Data format
+		 *
+		 * bytes    | format | value
+		 * ---------|--------|---------------------------------
+		 *  1       | uint8  | number of commands
+		 *
+		 * then for each command
+		 *  8       | int64  | command timestamp
+		 *  4       | int32  | hash code of the command name
+		 */
+
+		try {
+			buffer.put(getRobocolMsgType().asByte());
+			buffer.putShort((short) getPayloadSize());
+
+			buffer.put((byte) count);
+			for (int i = 0; i < count; i++) {
+				buffer.putLong(timestamps[i]);
+				buffer.putInt(nameHashes[i]);
+			}
+		} catch (BufferOverflowException e) {
+			throw new RobotCoreException("Command ack does not fit in buffer", e);
+		}
+	}
+
+	@Override
+	public void readFrom(ByteBuffer buffer, int offset, int length) throws RobotCoreException {
+		buffer.limit(offset + length);
+		buffer.position(offset + HEADER_LENGTH);
+
+		try {
+			int n = buffer.get() & 0xff;
+			if (n > MAX_ACKS) {
+				throw new RobotCoreException("Command ack holds too many commands: " + n);
+			}
+
+			for (int i = 0; i < n; i++) {
+				timestamps[i] = buffer.getLong();
+				nameHashes[i] = buffer.getInt();
+			}
+			count = n;
+		} catch (BufferUnderflowException e) {
+			throw new RobotCoreException("Command ack is truncated", e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Command ack - commands: %d", count);
+	}
+
+	private int getPayloadSize() {
+		return 1 + count * ENTRY_SIZE;
+	}
+}
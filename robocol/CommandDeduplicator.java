@@ -0,0 +1,183 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+/**
+ * Remembers recently received commands, so a resent command is only handled once
+ * <p>
+ * Commands are identified by name and timestamp. They are kept in an open addressing hash table
+ * of primitive arrays (linear probing, backward shift deletion), so a lookup is O(1) and does not
+ * allocate. A command is forgotten once more than the window count of newer commands arrived
+ * after it, or once it is older than the window age, whichever comes first.
+ * <p>
+ * This class is not thread safe.
+ */
+public class CommandDeduplicator {
+
+	public static final int DEFAULT_WINDOW_COUNT = 512;
+	public static final long DEFAULT_WINDOW_AGE = 10000; // in milliseconds
+
+	private final int windowCount;
+	private final long windowAge; // in nanoseconds
+
+	// hash table
+	private final int mask;
+	private final boolean[] used;
+	private final int[] nameHashes;
+	private final long[] timestamps;
+
+	// arrival order, oldest at head
+	private final int[] orderNameHashes;
+	private final long[] orderTimestamps;
+	private final long[] orderArrivals;
+	private int head = 0;
+	private int size = 0;
+
+	private long duplicates = 0;
+
+	public CommandDeduplicator() {
+		this(DEFAULT_WINDOW_COUNT, DEFAULT_WINDOW_AGE);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param windowCount number of commands to remember
+	 * @param windowAge how long to remember a command, in milliseconds
+	 */
+	public CommandDeduplicator(int windowCount, long windowAge) {
+		if (windowCount < 1) throw new IllegalArgumentException("window count must be positive");
+
+		this.windowCount = windowCount;
+		this.windowAge = windowAge * 1000000L;
+
+		// keep the table at most half full
+		int tableSize = Integer.highestOneBit(windowCount) << 2;
+		mask = tableSize - 1;
+		used = new boolean[tableSize];
+		nameHashes = new int[tableSize];
+		timestamps = new long[tableSize];
+
+		orderNameHashes = new int[windowCount];
+		orderTimestamps = new long[windowCount];
+		orderArrivals = new long[windowCount];
+	}
+
+	/**
+	 * Check if a command was seen before, and remember it if not
+	 *
+	 * @param command received command
+	 * @param now System.nanoTime()
+	 * @return true if this command is new, false if it is a duplicate
+	 */
+	public boolean add(Command command, long now) {
+		return add(command.getName().hashCode(), command.getTimestamp(), now);
+	}
+
+	/**
+	 * Check if a command was seen before, and remember it if not
+	 *
+	 * @param nameHash hash code of the command name
+	 * @param timestamp command timestamp
+	 * @param now System.nanoTime()
+	 * @return true if this command is new, false if it is a duplicate
+	 */
+	public boolean add(int nameHash, long timestamp, long now) {
+		expire(now);
+
+		int slot = hash(nameHash, timestamp) & mask;
+		while (used[slot]) {
+			if (nameHashes[slot] == nameHash && timestamps[slot] == timestamp) {
+				duplicates++;
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		if (size == windowCount) {
+			// eviction may shift entries around, so look for a free slot again
+			evictOldest();
+			slot = hash(nameHash, timestamp) & mask;
+			while (used[slot]) slot = (slot + 1) & mask;
+		}
+
+		used[slot] = true;
+		nameHashes[slot] = nameHash;
+		timestamps[slot] = timestamp;
+
+		int tail = (head + size) % windowCount;
+		orderNameHashes[tail] = nameHash;
+		orderTimestamps[tail] = timestamp;
+		orderArrivals[tail] = now;
+		size++;
+
+		return true;
+	}
+
+	/**
+	 * Forget every command
+	 */
+	public void clear() {
+		for (int i = 0; i < used.length; i++) used[i] = false;
+		head = 0;
+		size = 0;
+	}
+
+	/**
+	 * @return number of commands currently remembered
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return number of duplicates found since this object was created
+	 */
+	public long getDuplicates() {
+		return duplicates;
+	}
+
+	private void expire(long now) {
+		while (size > 0 && now - orderArrivals[head] > windowAge) evictOldest();
+	}
+
+	private void evictOldest() {
+		remove(orderNameHashes[head], orderTimestamps[head]);
+		head = (head + 1) % windowCount;
+		size--;
+	}
+
+	private void remove(int nameHash, long timestamp) {
+		int slot = hash(nameHash, timestamp) & mask;
+		while (used[slot]) {
+			if (nameHashes[slot] == nameHash && timestamps[slot] == timestamp) break;
+			slot = (slot + 1) & mask;
+		}
+		if (!used[slot]) return;
+
+		// shift later entries of the probe run back, so no tombstones are needed
+		int hole = slot;
+		int next = (hole + 1) & mask;
+		while (used[next]) {
+			int home = hash(nameHashes[next], timestamps[next]) & mask;
+			// the entry may fill the hole only if its home slot is not cyclically in (hole, next]
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				used[hole] = true;
+				nameHashes[hole] = nameHashes[next];
+				timestamps[hole] = timestamps[next];
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		used[hole] = false;
+	}
+
+	private static int hash(int nameHash, long timestamp) {
+		// murmur3 finalizer over both halves of the key
+		long h = timestamp * 0x9e3779b97f4a7c15L + nameHash;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb93fe53e2b1bL;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+}
@@ -0,0 +1,321 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.util.RobotLog;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sends commands and resends them until they are acknowledged
+ * <p>
+ * Commands go out in order of priority: CRITICAL and INTERACTIVE commands are sent right away,
+ * BULK commands wait for the next tick. On every tick the commands that are due are sent critical
+ * first, and at most MAX_BULK_PER_TICK bulk commands go out; the rest wait for the next tick.
+ * <p>
+ * Each command has its own retransmit deadline, kept in a hashed timer wheel: TICK wide slots,
+ * with deadlines beyond one turn of the wheel waiting for later turns. Adding a command and
+ * acknowledging it are both O(1); the command timestamp is the key.
+ * <p>
+ * The retransmit timeout (RTO) is derived from the measured round trip time of commands, as in
+ * RFC 6298. Only commands acknowledged without having been resent are measured (Karn's
+ * algorithm). Every resend of a command doubles its timeout, except for CRITICAL commands: those
+ * keep being resent at the current RTO, so a stop is not held back by backoff.
+ * <p>
+ * advance() must be called about once per TICK.
+ */
+public class CommandRetransmitter {
+
+	public static final long TICK = 10; // in milliseconds
+	public static final int DEFAULT_MAX_ATTEMPTS = 10;
+	public static final int MAX_BULK_PER_TICK = 8;
+
+	private static final int WHEEL_SIZE = 64; // must be a power of 2
+	private static final long TICK_NANOS = TICK * 1000000L;
+
+	private static final long INITIAL_RTO = 100 * 1000000L; // in nanoseconds, the old fixed interval
+	private static final long MIN_RTO = 20 * 1000000L;
+	private static final long MAX_RTO = 2000 * 1000000L;
+
+	private static final int LANES = Command.Priority.values().length;
+
+	private static class Entry {
+		Command command;
+		int nameHash;
+		int lane;
+		boolean sent = false;
+		long firstSent;
+		long rto;
+		long deadlineTick;
+		boolean resent = false;
+		Entry prev;
+		Entry next;
+	}
+
+	private final RobocolDatagramSocket socket;
+	private final int maxAttempts;
+
+	private final Entry[] wheel = new Entry[WHEEL_SIZE];
+	// entries due on this tick, one list per priority, linked through Entry.next
+	private final Entry[] dueHead = new Entry[LANES];
+	private final Entry[] dueTail = new Entry[LANES];
+	private final Map<Long, Entry> pending = new HashMap<Long, Entry>();
+	private final long start;
+	private long currentTick = 0;
+
+	// round trip estimate, in nanoseconds; 0 until the first sample
+	private long smoothedRtt = 0;
+	private long rttVariance = 0;
+	private long rto = INITIAL_RTO;
+
+	private long retransmissions = 0;
+	private long failures = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param socket socket to send commands on
+	 */
+	public CommandRetransmitter(RobocolDatagramSocket socket) {
+		this(socket, DEFAULT_MAX_ATTEMPTS);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param socket socket to send commands on
+	 * @param maxAttempts a command is dropped after being sent this many times without an ack
+	 */
+	public CommandRetransmitter(RobocolDatagramSocket socket, int maxAttempts) {
+		this.socket = socket;
+		this.maxAttempts = maxAttempts;
+		this.start = System.nanoTime();
+	}
+
+	/**
+	 * Send a command, and schedule it to be resent until acknowledged
+	 * <p>
+	 * BULK commands are sent on the next tick, others right away.
+	 *
+	 * @param command command to send
+	 * @param now System.nanoTime()
+	 */
+	public synchronized void send(Command command, long now) {
+		if (pending.containsKey(command.getTimestamp())) return; // already in flight
+
+		Entry entry = new Entry();
+		entry.command = command;
+		entry.nameHash = command.getName().hashCode();
+		entry.lane = command.getPriority().ordinal();
+		entry.rto = rto;
+
+		pending.put(command.getTimestamp(), entry);
+		if (command.getPriority() == Command.Priority.BULK) {
+			entry.deadlineTick = currentTick + 1;
+			link(entry);
+		} else {
+			transmit(entry, now);
+		}
+	}
+
+	/**
+	 * Handle an acknowledgement
+	 *
+	 * @param ack acknowledged command received from the peer
+	 * @param now System.nanoTime()
+	 * @return true if the command was waiting for this ack
+	 */
+	public synchronized boolean acknowledge(Command ack, long now) {
+		return acknowledge(ack.getName().hashCode(), ack.getTimestamp(), now);
+	}
+
+	/**
+	 * Handle a batch of acknowledgements
+	 *
+	 * @param ack acknowledgements received from the peer
+	 * @param now System.nanoTime()
+	 * @return number of commands that were waiting for these acks
+	 */
+	public synchronized int acknowledge(CommandAck ack, long now) {
+		int acknowledged = 0;
+		for (int i = 0; i < ack.getCount(); i++) {
+			if (acknowledge(ack.getNameHash(i), ack.getTimestamp(i), now)) acknowledged++;
+		}
+		return acknowledged;
+	}
+
+	private boolean acknowledge(int nameHash, long timestamp, long now) {
+		Entry entry = pending.get(timestamp);
+		if (entry == null || entry.nameHash != nameHash || !entry.sent) return false;
+
+		pending.remove(timestamp);
+		unlink(entry);
+
+		RobotLog.v("Command " + entry.command.getName() + " has been acknowledged by remote device");
+		if (!entry.resent) sampleRtt(now - entry.firstSent);
+
+		return true;
+	}
+
+	/**
+	 * Resend every command whose deadline has passed
+	 *
+	 * @param now System.nanoTime()
+	 */
+	public synchronized void advance(long now) {
+		long nowTick = (now - start) / TICK_NANOS;
+		if (nowTick <= currentTick) return;
+
+		// after a long stall one turn of the wheel covers every slot
+		long lastTick = Math.min(nowTick, currentTick + WHEEL_SIZE);
+		for (long tick = currentTick + 1; tick <= lastTick; tick++) {
+			Entry entry = wheel[(int) (tick & (WHEEL_SIZE - 1))];
+			while (entry != null) {
+				Entry next = entry.next;
+				if (entry.deadlineTick <= nowTick) {
+					unlink(entry);
+					addDue(entry);
+				}
+				entry = next;
+			}
+		}
+
+		currentTick = nowTick;
+
+		// send what is due, most urgent first
+		int bulkSent = 0;
+		for (int lane = 0; lane < LANES; lane++) {
+			Entry entry = dueHead[lane];
+			dueHead[lane] = null;
+			dueTail[lane] = null;
+
+			while (entry != null) {
+				Entry next = entry.next;
+				entry.next = null;
+				if (lane == Command.Priority.BULK.ordinal() && bulkSent >= MAX_BULK_PER_TICK) {
+					// over the bulk budget, try again next tick
+					entry.deadlineTick = currentTick + 1;
+					link(entry);
+				} else {
+					transmit(entry, now);
+					if (lane == Command.Priority.BULK.ordinal()) bulkSent++;
+				}
+				entry = next;
+			}
+		}
+	}
+
+	/**
+	 * Drop every command in flight
+	 */
+	public synchronized void clear() {
+		pending.clear();
+		for (int i = 0; i < wheel.length; i++) wheel[i] = null;
+		for (int i = 0; i < LANES; i++) {
+			dueHead[i] = null;
+			dueTail[i] = null;
+		}
+	}
+
+	public synchronized int getPendingCount() {
+		return pending.size();
+	}
+
+	/**
+	 * @return smoothed round trip time in seconds, or 0 if nothing was measured yet
+	 */
+	public synchronized double getSmoothedRtt() {
+		return smoothedRtt / 1e9;
+	}
+
+	/**
+	 * @return current retransmit timeout in seconds
+	 */
+	public synchronized double getRto() {
+		return rto / 1e9;
+	}
+
+	public synchronized long getRetransmissions() {
+		return retransmissions;
+	}
+
+	/**
+	 * @return number of commands dropped after too many attempts
+	 */
+	public synchronized long getFailures() {
+		return failures;
+	}
+
+	private void transmit(Entry entry, long now) {
+		Command command = entry.command;
+
+		if (!entry.sent) {
+			socket.send(command);
+			entry.sent = true;
+			entry.firstSent = now;
+			schedule(entry, now);
+			return;
+		}
+
+		if (command.getAttempts() >= maxAttempts) {
+			RobotLog.w("Failed to send command, too many attempts: " + command.toString());
+			pending.remove(command.getTimestamp());
+			failures++;
+			return;
+		}
+
+		RobotLog.v("Sending command: " + command.getName() + ", attempt " + command.getAttempts());
+		socket.send(command);
+		retransmissions++;
+
+		entry.resent = true;
+		if (entry.lane != Command.Priority.CRITICAL.ordinal()) entry.rto = Math.min(entry.rto * 2, MAX_RTO);
+		schedule(entry, now);
+	}
+
+	private void schedule(Entry entry, long now) {
+		long deadline = (now + entry.rto - start + TICK_NANOS - 1) / TICK_NANOS;
+		entry.deadlineTick = Math.max(deadline, currentTick + 1);
+		link(entry);
+	}
+
+	private void link(Entry entry) {
+		int slot = (int) (entry.deadlineTick & (WHEEL_SIZE - 1));
+		entry.prev = null;
+		entry.next = wheel[slot];
+		if (entry.next != null) entry.next.prev = entry;
+		wheel[slot] = entry;
+	}
+
+	private void addDue(Entry entry) {
+		if (dueTail[entry.lane] == null) {
+			dueHead[entry.lane] = entry;
+		} else {
+			dueTail[entry.lane].next = entry;
+		}
+		dueTail[entry.lane] = entry;
+	}
+
+	private void unlink(Entry entry) {
+		if (entry.prev != null) {
+			entry.prev.next = entry.next;
+		} else {
+			int slot = (int) (entry.deadlineTick & (WHEEL_SIZE - 1));
+			if (wheel[slot] == entry) wheel[slot] = entry.next;
+		}
+		if (entry.next != null) entry.next.prev = entry.prev;
+		entry.prev = null;
+		entry.next = null;
+	}
+
+	private void sampleRtt(long rtt) {
+		if (smoothedRtt == 0) {
+			smoothedRtt = rtt;
+			rttVariance = rtt / 2;
+		} else {
+			rttVariance = (3 * rttVariance + Math.abs(smoothedRtt - rtt)) / 4;
+			smoothedRtt = (7 * smoothedRtt + rtt) / 8;
+		}
+
+		rto = Math.max(MIN_RTO, Math.min(MAX_RTO, smoothedRtt + Math.max(TICK_NANOS, 4 * rttVariance)));
+	}
+}
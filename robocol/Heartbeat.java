@@ -31,7 +31,6 @@
 package com.sources.com.qualcomm.robotcore.robocol;
 
 import com.qualcomm.robotcore.exception.RobotCoreException;
-import com.qualcomm.robotcore.util.RobotLog;
 
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
@@ -77,6 +76,25 @@ public class Heartbeat implements RobocolParsable {
 		}
 	}
 
+	/**
+	 * Copy constructor
+	 *
+	 * @param other heartbeat to copy
+	 */
+	public Heartbeat(Heartbeat other) {
+		copyFrom(other);
+	}
+
+	/**
+	 * Make this heartbeat a copy of another one, without allocating
+	 *
+	 * @param other heartbeat to copy
+	 */
+	public void copyFrom(Heartbeat other) {
+		sequenceNumber = other.sequenceNumber;
+		timestamp = other.timestamp;
+	}
+
 	/**
 	 * Timestamp this Heartbeat was created at
 	 * <p>
@@ -124,6 +142,23 @@ public class Heartbeat implements RobocolParsable {
 	@Override
 	public byte[] toByteArray() throws RobotCoreException {
 		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		writeTo(buffer);
+		return buffer.array();
+	}
+
+	/**
+	 * Populate this Heartbeat from a byte array
+	 */
+	@Override
+	public void fromByteArray(byte[] byteArray) throws RobotCoreException {
+		readFrom(ByteBuffer.wrap(byteArray), 0, byteArray.length);
+	}
+
+	/**
+	 * Write this Heartbeat into a buffer
+	 */
+	@Override
+	public void writeTo(ByteBuffer buffer) throws RobotCoreException {
 		try {
 			buffer.put(getRobocolMsgType().asByte());
 			buffer.putShort(PAYLOAD_SIZE);
@@ -131,23 +166,23 @@ public class Heartbeat implements RobocolParsable {
 			buffer.putShort(sequenceNumber);
 			buffer.putLong(timestamp);
 		} catch (BufferOverflowException e) {
-			RobotLog.logStacktrace(e);
+			throw new RobotCoreException("Heartbeat does not fit in buffer", e);
 		}
-		return buffer.array();
 	}
 
 	/**
-	 * Populate this Heartbeat from a byte array
+	 * Populate this Heartbeat from a buffer
 	 */
 	@Override
-	public void fromByteArray(byte[] byteArray) throws RobotCoreException {
-		if (byteArray.length < BUFFER_SIZE) {
-			throw new RobotCoreException("Expected buffer of at least " + BUFFER_SIZE + " bytes, received " + byteArray.length);
+	public void readFrom(ByteBuffer buffer, int offset, int length) throws RobotCoreException {
+		if (length < BUFFER_SIZE) {
+			throw new RobotCoreException("Expected buffer of at least " + BUFFER_SIZE + " bytes, received " + length);
 		}
 
-		ByteBuffer byteBuffer = ByteBuffer.wrap(byteArray, HEADER_LENGTH, PAYLOAD_SIZE);
-		sequenceNumber = byteBuffer.getShort();
-		timestamp = byteBuffer.getLong();
+		buffer.limit(offset + length);
+		buffer.position(offset + HEADER_LENGTH);
+		sequenceNumber = buffer.getShort();
+		timestamp = buffer.getLong();
 	}
 
 	/**
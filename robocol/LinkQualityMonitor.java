@@ -0,0 +1,229 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import java.util.Arrays;
+
+/**
+ * Tracks the quality of the link to the driver station, using the heartbeats it sends
+ * <p>
+ * Heartbeat sequence numbers show lost, reordered and duplicated heartbeats. The timestamps are
+ * taken on the driver station and can't be compared with local time, but the change in transit
+ * time between two heartbeats can; that gives the inter-arrival jitter, estimated as in RFC 3550.
+ * <p>
+ * Histograms have fixed buckets, so memory use does not grow with time.
+ */
+public class LinkQualityMonitor {
+
+	public static final String LOSS_KEY = "Link Loss";
+	public static final String JITTER_KEY = "Link Jitter";
+	public static final String REORDERED_KEY = "Link Reordered";
+	public static final String INTERARRIVAL_KEY = "Link Interarrival";
+
+	/**
+	 * Upper bounds of the inter-arrival histogram buckets, in milliseconds; the last bucket holds
+	 * everything above the last bound
+	 */
+	public static final int[] INTERARRIVAL_BUCKETS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000 };
+
+	/**
+	 * Upper bounds of the gap histogram buckets, in heartbeats lost in a row; the last bucket holds
+	 * everything above the last bound
+	 */
+	public static final int[] GAP_BUCKETS = { 1, 2, 3, 5, 10, 20, 50 };
+
+	// sequence numbers run from 0 to MAX_SEQUENCE_NUMBER inclusive
+	private static final int SEQUENCE_MODULUS = Heartbeat.MAX_SEQUENCE_NUMBER + 1;
+
+	// a jump forward this large is treated as the driver station restarting, not as loss
+	private static final int MAX_GAP = 1000;
+
+	// a heartbeat at most this far behind the highest one arrived late; further back is a restart
+	private static final int REORDER_WINDOW = 64;
+
+	private boolean started = false;
+	private int highestSequence;
+	private long lastArrival;
+	private long lastTransit;
+
+	private long received = 0;
+	private long lost = 0;
+	private long reordered = 0;
+	private long duplicates = 0;
+	private long resyncs = 0;
+	private double jitter = 0; // in nanoseconds
+
+	private final long[] interarrivalHistogram = new long[INTERARRIVAL_BUCKETS.length + 1];
+	private final long[] gapHistogram = new long[GAP_BUCKETS.length + 1];
+
+	/**
+	 * Record a received heartbeat
+	 *
+	 * @param heartbeat heartbeat as sent by the driver station
+	 * @param arrival System.nanoTime() when the heartbeat arrived
+	 * @return true if the sequence numbers jumped too far to be loss, the driver station may have
+	 * restarted and lost its state
+	 */
+	public synchronized boolean onHeartbeat(Heartbeat heartbeat, long arrival) {
+		int sequence = heartbeat.getSequenceNumber();
+		long transit = arrival - heartbeat.getTimestamp();
+		received++;
+
+		if (!started) {
+			started = true;
+			highestSequence = sequence;
+			lastArrival = arrival;
+			lastTransit = transit;
+			return false;
+		}
+
+		int diff = (sequence - highestSequence + SEQUENCE_MODULUS) % SEQUENCE_MODULUS;
+
+		if (diff == 0) {
+			duplicates++;
+			return false;
+		}
+
+		if (diff >= SEQUENCE_MODULUS - REORDER_WINDOW) {
+			// arrived after a later heartbeat; it was counted as lost when the gap was seen
+			reordered++;
+			if (lost > 0) lost--;
+			return false;
+		}
+
+		if (diff > MAX_GAP) {
+			// the sequence numbers started over, or the link was down for a long time; start
+			// counting again from here instead of comparing with the old sequence and transit time
+			resyncs++;
+			highestSequence = sequence;
+			lastArrival = arrival;
+			lastTransit = transit;
+			return true;
+		}
+
+		if (diff > 1) {
+			lost += diff - 1;
+			gapHistogram[bucket(GAP_BUCKETS, diff - 1)]++;
+		}
+
+		long interarrival = arrival - lastArrival;
+		interarrivalHistogram[bucket(INTERARRIVAL_BUCKETS, interarrival / 1000000)]++;
+
+		long d = Math.abs(transit - lastTransit);
+		jitter += (d - jitter) / 16;
+
+		highestSequence = sequence;
+		lastArrival = arrival;
+		lastTransit = transit;
+		return false;
+	}
+
+	/**
+	 * Forget everything recorded so far
+	 */
+	public synchronized void reset() {
+		started = false;
+		received = 0;
+		lost = 0;
+		reordered = 0;
+		duplicates = 0;
+		resyncs = 0;
+		jitter = 0;
+		Arrays.fill(interarrivalHistogram, 0);
+		Arrays.fill(gapHistogram, 0);
+	}
+
+	public synchronized long getReceived() {
+		return received;
+	}
+
+	public synchronized long getLost() {
+		return lost;
+	}
+
+	public synchronized long getReordered() {
+		return reordered;
+	}
+
+	public synchronized long getDuplicates() {
+		return duplicates;
+	}
+
+	/**
+	 * @return number of times the sequence numbers jumped too far to be loss, e.g. a driver station restart
+	 */
+	public synchronized long getResyncs() {
+		return resyncs;
+	}
+
+	/**
+	 * @return fraction of heartbeats lost, between 0 and 1
+	 */
+	public synchronized double getLossRatio() {
+		long expected = received + lost;
+		if (expected == 0) return 0;
+
+		return (double) lost / expected;
+	}
+
+	/**
+	 * @return inter-arrival jitter, in seconds
+	 */
+	public synchronized double getJitter() {
+		return jitter / 1e9;
+	}
+
+	/**
+	 * @return copy of the inter-arrival histogram, bucketed by INTERARRIVAL_BUCKETS
+	 */
+	public synchronized long[] getInterarrivalHistogram() {
+		return Arrays.copyOf(interarrivalHistogram, interarrivalHistogram.length);
+	}
+
+	/**
+	 * @return copy of the loss gap histogram, bucketed by GAP_BUCKETS
+	 */
+	public synchronized long[] getGapHistogram() {
+		return Arrays.copyOf(gapHistogram, gapHistogram.length);
+	}
+
+	/**
+	 * Add the current link statistics to a telemetry message
+	 *
+	 * @param telemetry telemetry to add to
+	 */
+	public synchronized void addTo(Telemetry telemetry) {
+		telemetry.addData(LOSS_KEY, String.format("%.1f%% (%d of %d)", getLossRatio() * 100, lost, received + lost));
+		telemetry.addData(JITTER_KEY, String.format("%.1f ms", jitter / 1e6));
+		telemetry.addData(REORDERED_KEY, reordered);
+		telemetry.addData(INTERARRIVAL_KEY, formatHistogram(INTERARRIVAL_BUCKETS, interarrivalHistogram, "ms"));
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("Link quality - received: %d, lost: %d, reordered: %d, duplicates: %d, jitter: %.2f ms, interarrival: %s, gaps: %s",
+				received, lost, reordered, duplicates, jitter / 1e6,
+				formatHistogram(INTERARRIVAL_BUCKETS, interarrivalHistogram, "ms"),
+				formatHistogram(GAP_BUCKETS, gapHistogram, ""));
+	}
+
+	private static int bucket(int[] bounds, long value) {
+		for (int i = 0; i < bounds.length; i++) {
+			if (value <= bounds[i]) return i;
+		}
+		return bounds.length;
+	}
+
+	private static String formatHistogram(int[] bounds, long[] counts, String unit) {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] == 0) continue;
+			if (builder.length() > 0) builder.append(' ');
+			if (i < bounds.length) {
+				builder.append("<=").append(bounds[i]).append(unit);
+			} else {
+				builder.append('>').append(bounds[bounds.length - 1]).append(unit);
+			}
+			builder.append(':').append(counts[i]);
+		}
+		return builder.toString();
+	}
+}
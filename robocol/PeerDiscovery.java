@@ -42,7 +42,50 @@ public class PeerDiscovery implements RobocolParsable {
 	public static final short PAYLOAD_SIZE = 10;
 	public static final short BUFFER_SIZE = PAYLOAD_SIZE + HEADER_LENGTH;
 
-	public static final byte ROBOCOL_VERSION = 1;
+	/*
+	 * Version history
+	 *
+	 * 1 - peer type
+	 * 2 - adds a capabilities bit field, see CAPABILITY_*
+	 */
+	public static final byte ROBOCOL_VERSION = 2;
+
+	/**
+	 * Peer can receive several Robocol messages packed back to back into one datagram
+	 */
+	public static final int CAPABILITY_PACKING = 0x0001;
+
+	/**
+	 * Peer understands TELEMETRY_DELTA frames and answers them with TELEMETRY_ACK
+	 */
+	public static final int CAPABILITY_TELEMETRY_DELTA = 0x0002;
+
+	/**
+	 * Peer reassembles TELEMETRY_FRAGMENT messages into telemetry frames
+	 */
+	public static final int CAPABILITY_TELEMETRY_FRAGMENT = 0x0004;
+
+	/**
+	 * Peer accepts gamepads in the compact version 3 wire format
+	 */
+	public static final int CAPABILITY_GAMEPAD_V3 = 0x0008;
+
+	/**
+	 * Peer understands COMMAND_ACK messages in place of echoed commands
+	 */
+	public static final int CAPABILITY_COMMAND_ACK = 0x0010;
+
+	/**
+	 * Peer takes part in bulk transfers, BULK_DATA and BULK_ACK
+	 */
+	public static final int CAPABILITY_BULK_TRANSFER = 0x0020;
+
+	/**
+	 * Capabilities supported by this version of Robocol
+	 */
+	public static final int SUPPORTED_CAPABILITIES = CAPABILITY_PACKING | CAPABILITY_TELEMETRY_DELTA
+			| CAPABILITY_TELEMETRY_FRAGMENT | CAPABILITY_GAMEPAD_V3 | CAPABILITY_COMMAND_ACK
+			| CAPABILITY_BULK_TRANSFER;
 
 	/**
 	 * Peer type
@@ -90,9 +133,16 @@ public class PeerDiscovery implements RobocolParsable {
 	}
 
 	private PeerType peerType;
+	private byte version = ROBOCOL_VERSION;
+	private int capabilities;
 
 	public PeerDiscovery(PeerDiscovery.PeerType peerType) {
+		this(peerType, SUPPORTED_CAPABILITIES);
+	}
+
+	public PeerDiscovery(PeerDiscovery.PeerType peerType, int capabilities) {
 		this.peerType = peerType;
+		this.capabilities = capabilities;
 	}
 
 	/**
@@ -102,6 +152,44 @@ public class PeerDiscovery implements RobocolParsable {
 		return peerType;
 	}
 
+	/**
+	 * @return the Robocol version the peer advertised
+	 */
+	public byte getRobocolVersion() {
+		return version;
+	}
+
+	/**
+	 * Set the Robocol version to send, so a peer that only knows an older version can parse it
+	 * <p>
+	 * Version 1 leaves out the capabilities.
+	 *
+	 * @param version between 1 and ROBOCOL_VERSION
+	 */
+	public void setRobocolVersion(byte version) {
+		if (version < 1 || version > ROBOCOL_VERSION) {
+			throw new IllegalArgumentException("unsupported peer discovery version " + version);
+		}
+		this.version = version;
+	}
+
+	/**
+	 * @return the capabilities the peer advertised; always 0 for version 1 peers
+	 */
+	public int getCapabilities() {
+		return capabilities;
+	}
+
+	/**
+	 * Check if the peer advertised a capability
+	 *
+	 * @param capability one of the CAPABILITY_* flags
+	 * @return true if supported
+	 */
+	public boolean hasCapability(int capability) {
+		return (capabilities & capability) == capability;
+	}
+
 	@Override
 	public MsgType getRobocolMsgType() {
 		return RobocolParsable.MsgType.PEER_DISCOVERY;
@@ -110,38 +198,59 @@ public class PeerDiscovery implements RobocolParsable {
 	@Override
 	public byte[] toByteArray() throws RobotCoreException {
 		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		writeTo(buffer);
+		return buffer.array();
+	}
+
+	@Override
+	public void fromByteArray(byte[] byteArray) throws RobotCoreException {
+		readFrom(ByteBuffer.wrap(byteArray), 0, byteArray.length);
+	}
+
+	@Override
+	public void writeTo(ByteBuffer buffer) throws RobotCoreException {
 		try {
+			int start = buffer.position();
 			buffer.put(getRobocolMsgType().asByte());
 			buffer.putShort(PAYLOAD_SIZE);
 
-			buffer.put(ROBOCOL_VERSION);
+			buffer.put(version);
 			buffer.put(peerType.asByte());
+			if (version >= 2) buffer.putShort((short) capabilities);
+
+			// the unused part of the payload is always sent as zeros
+			while (buffer.position() < start + BUFFER_SIZE) buffer.put((byte) 0);
 		} catch (BufferOverflowException e) {
-			RobotLog.logStacktrace(e);
+			throw new RobotCoreException("Peer discovery packet does not fit in buffer", e);
 		}
-		return buffer.array();
 	}
 
 	@Override
-	public void fromByteArray(byte[] byteArray) throws RobotCoreException {
-		if (byteArray.length < BUFFER_SIZE) {
-			throw new RobotCoreException("Expected buffer of at least " + BUFFER_SIZE + " bytes, received " + byteArray.length);
+	public void readFrom(ByteBuffer buffer, int offset, int length) throws RobotCoreException {
+		if (length < BUFFER_SIZE) {
+			throw new RobotCoreException("Expected buffer of at least " + BUFFER_SIZE + " bytes, received " + length);
+		}
+
+		buffer.limit(offset + length);
+		buffer.position(offset + HEADER_LENGTH);
+		version = buffer.get();
+
+		// extract version 1 values
+		if (version >= 1) {
+			peerType = PeerType.fromByte(buffer.get());
 		}
 
-		ByteBuffer byteBuffer = ByteBuffer.wrap(byteArray, HEADER_LENGTH, PAYLOAD_SIZE);
-		byte version = byteBuffer.get();
-		switch (version) {
-		case 1:
-			peerType = PeerType.fromByte(byteBuffer.get());
-			break;
-		default:
-			break;
+		// extract version 2 values
+		capabilities = 0;
+		if (version >= 2) {
+			capabilities = buffer.getShort() & 0xffff;
 		}
 	}
 
 	@Override
 	public String toString() {
-		return String.format("Peer Discovery - peer type: %s", peerType.name());
+		return String.format("Peer Discovery - peer type: %s, version: %d, capabilities: 0x%04x",
+				peerType.name(), version, capabilities);
 	}
 
 }
@@ -31,12 +31,10 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. */
 
 package com.sources.com.qualcomm.robotcore.robocol;
 
-import com.qualcomm.robotcore.exception.RobotCoreException;
+import com.qualcomm.robotcore.util.FrameworkScheduler;
 import com.qualcomm.robotcore.util.RobotLog;
 
 import java.net.InetAddress;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
@@ -49,20 +47,15 @@ public class PeerDiscoveryManager {
 
 		@Override
 		public void run() {
-			try {
-				RobotLog.v("Sending peer discovery packet");
-				RobocolDatagram packet = new RobocolDatagram(message);
-				if (socket.getInetAddress() == null) packet.setAddress(peerDiscoveryDevice);
-				socket.send(packet);
-			} catch (RobotCoreException e) {
-				RobotLog.d("Unable to send peer discovery packet: " + e.toString());
-			}
+			RobotLog.v("Sending peer discovery packet");
+			socket.send(message, (socket.getInetAddress() == null) ? peerDiscoveryDevice : null);
+			socket.flush();
 		}
 	}
 
 	private InetAddress peerDiscoveryDevice;
 	private final RobocolDatagramSocket socket;
-	private ScheduledExecutorService discoveryLoopService;
+	private final FrameworkScheduler scheduler;
 	private ScheduledFuture<?> discoveryLoopFuture;
 	private final PeerDiscovery message = new PeerDiscovery(PeerDiscovery.PeerType.PEER);
 
@@ -72,7 +65,18 @@ public class PeerDiscoveryManager {
 	 * @param socket socket to send packets from
 	 */
 	public PeerDiscoveryManager(RobocolDatagramSocket socket) {
+		this(socket, FrameworkScheduler.getDefault());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param socket socket to send packets from
+	 * @param scheduler scheduler to run peer discovery on
+	 */
+	public PeerDiscoveryManager(RobocolDatagramSocket socket, FrameworkScheduler scheduler) {
 		this.socket = socket;
+		this.scheduler = scheduler;
 	}
 
 	/**
@@ -99,12 +103,11 @@ public class PeerDiscoveryManager {
 		}
 
 		// stop and old peer discovery service
-		if (discoveryLoopFuture != null) discoveryLoopFuture.cancel(true);
+		if (discoveryLoopFuture != null) discoveryLoopFuture.cancel(false);
 
 		// start the peer discovery service
 		this.peerDiscoveryDevice = peerDiscoveryDevice;
-		discoveryLoopService = Executors.newSingleThreadScheduledExecutor();
-		discoveryLoopFuture = discoveryLoopService.scheduleAtFixedRate(new PeerDiscoveryRunnable(), 1, 1, TimeUnit.SECONDS);
+		discoveryLoopFuture = scheduler.scheduleAtFixedRate("peer discovery", new PeerDiscoveryRunnable(), 1, 1, TimeUnit.SECONDS);
 	}
 
 	/**
@@ -112,7 +115,7 @@ public class PeerDiscoveryManager {
 	 */
 	public void stop() {
 		RobotLog.v("Stopping peer discovery");
-		if (discoveryLoopFuture != null) discoveryLoopFuture.cancel(true);
+		if (discoveryLoopFuture != null) discoveryLoopFuture.cancel(false);
 	}
 
 }
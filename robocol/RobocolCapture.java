@@ -0,0 +1,169 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.util.RobotLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Records every datagram sent or received by a RobocolDatagramSocket into a memory mapped file
+ * <p>
+ * The file is allocated and mapped up front; recording a datagram is a copy into the mapping, so
+ * it costs little more than the copy itself. Once the file is full, further datagrams are counted
+ * but not recorded. The end offset in the file header is updated after every record, so the file
+ * stays readable if the process dies. See RobocolCaptureReader and RobocolReplaySocket.
+ */
+public class RobocolCapture {
+
+	/*
+	 * File format, big endian
+	 *
+	 * header
+	 *  4       | int32  | MAGIC
+	 *  4       | int32  | VERSION
+	 *  8       | int64  | offset of the end of the last record
+	 *
+	 * then for each record
+	 *  8       | int64  | System.nanoTime() when the datagram was sent or received
+	 *  1       | uint8  | direction, INBOUND or OUTBOUND
+	 *  1       | uint8  | length of the peer address, 0 if unknown
+	 *  2       | uint16 | length of the datagram
+	 *  16      | bytes  | peer address, padded with zeros
+	 *  varies  | bytes  | datagram
+	 */
+
+	public static final int MAGIC = 0x52434150; // "RCAP"
+	public static final int VERSION = 1;
+	public static final int FILE_HEADER_SIZE = 16;
+	public static final int RECORD_HEADER_SIZE = 28;
+	public static final int ADDRESS_SIZE = 16;
+
+	public static final byte INBOUND = 0;
+	public static final byte OUTBOUND = 1;
+
+	public static final long DEFAULT_CAPACITY = 64L * 1024 * 1024;
+
+	private static final int END_OFFSET_POSITION = 8;
+	private static final byte[] NO_ADDRESS = new byte[ADDRESS_SIZE];
+
+	private final RandomAccessFile file;
+	private final MappedByteBuffer buffer;
+	private boolean closed = false;
+
+	private long recorded = 0;
+	private long dropped = 0;
+
+	/**
+	 * Create a capture file, replacing any existing file
+	 *
+	 * @param path file to write
+	 * @param capacity size of the file in bytes, at most Integer.MAX_VALUE
+	 * @throws IOException if the file can't be created or mapped
+	 */
+	public RobocolCapture(File path, long capacity) throws IOException {
+		if (capacity < FILE_HEADER_SIZE || capacity > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("invalid capture capacity: " + capacity);
+		}
+
+		file = new RandomAccessFile(path, "rw");
+		try {
+			file.setLength(0);
+			file.setLength(capacity);
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putLong(FILE_HEADER_SIZE);
+	}
+
+	/**
+	 * Record a datagram
+	 *
+	 * @param direction INBOUND or OUTBOUND
+	 * @param address peer address, or null if not known
+	 * @param data array holding the datagram
+	 * @param offset index of the datagram in data
+	 * @param length length of the datagram
+	 */
+	public synchronized void record(byte direction, InetAddress address, byte[] data, int offset, int length) {
+		if (!putHeader(direction, address, length)) return;
+
+		buffer.put(data, offset, length);
+		commit();
+	}
+
+	/**
+	 * Record a datagram
+	 *
+	 * @param direction INBOUND or OUTBOUND
+	 * @param address peer address, or null if not known
+	 * @param data datagram, from position to limit; the position is left unchanged
+	 */
+	public synchronized void record(byte direction, InetAddress address, ByteBuffer data) {
+		if (!putHeader(direction, address, data.remaining())) return;
+
+		int position = data.position();
+		buffer.put(data);
+		data.position(position);
+		commit();
+	}
+
+	/**
+	 * Stop recording and write the file out
+	 */
+	public synchronized void close() {
+		if (closed) return;
+		closed = true;
+
+		buffer.force();
+		try {
+			file.close();
+		} catch (IOException e) {
+			RobotLog.w("Unable to close capture file: " + e.toString());
+		}
+	}
+
+	public synchronized long getRecorded() {
+		return recorded;
+	}
+
+	/**
+	 * @return number of datagrams not recorded because the file was full
+	 */
+	public synchronized long getDropped() {
+		return dropped;
+	}
+
+	private boolean putHeader(byte direction, InetAddress address, int length) {
+		if (closed) return false;
+		if (buffer.remaining() < RECORD_HEADER_SIZE + length) {
+			if (dropped++ == 0) RobotLog.w("Capture file is full, no longer recording");
+			return false;
+		}
+
+		byte[] addressBytes = (address == null) ? NO_ADDRESS : address.getAddress();
+		int addressLength = (address == null) ? 0 : addressBytes.length;
+
+		buffer.putLong(System.nanoTime());
+		buffer.put(direction);
+		buffer.put((byte) addressLength);
+		buffer.putShort((short) length);
+		buffer.put(addressBytes, 0, addressLength);
+		buffer.put(NO_ADDRESS, 0, ADDRESS_SIZE - addressLength);
+		return true;
+	}
+
+	private void commit() {
+		buffer.putLong(END_OFFSET_POSITION, buffer.position());
+		recorded++;
+	}
+}
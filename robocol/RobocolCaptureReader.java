@@ -0,0 +1,136 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reads the records of a file written by RobocolCapture, in order
+ */
+public class RobocolCaptureReader {
+
+	private final MappedByteBuffer buffer;
+	private final long end;
+
+	private long timestamp;
+	private byte direction;
+	private InetAddress address;
+	private final byte[] addressBytes4 = new byte[4];
+	private final byte[] addressBytes16 = new byte[RobocolCapture.ADDRESS_SIZE];
+	private final byte[] data = new byte[RobocolConfig.MAX_PACKET_SIZE];
+	private int length;
+
+	/**
+	 * Open a capture file
+	 *
+	 * @param path file written by RobocolCapture
+	 * @throws IOException if the file can't be read or is not a capture file
+	 */
+	public RobocolCaptureReader(File path) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(path, "r");
+		try {
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+		} finally {
+			file.close();
+		}
+
+		try {
+			if (buffer.getInt() != RobocolCapture.MAGIC) throw new IOException("Not a Robocol capture file: " + path);
+			int version = buffer.getInt();
+			if (version != RobocolCapture.VERSION) throw new IOException("Unsupported capture version: " + version);
+			end = buffer.getLong();
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Capture file is truncated: " + path);
+		}
+
+		if (end < RobocolCapture.FILE_HEADER_SIZE || end > buffer.capacity()) {
+			throw new IOException("Capture file is corrupt: " + path);
+		}
+	}
+
+	/**
+	 * Move to the next record
+	 *
+	 * @return false if there are no more records
+	 * @throws IOException if the record is corrupt
+	 */
+	public boolean next() throws IOException {
+		if (buffer.position() + RobocolCapture.RECORD_HEADER_SIZE > end) return false;
+
+		timestamp = buffer.getLong();
+		direction = buffer.get();
+		int addressLength = buffer.get() & 0xff;
+		length = buffer.getShort() & 0xffff;
+
+		if (addressLength != 0 && addressLength != 4 && addressLength != RobocolCapture.ADDRESS_SIZE) {
+			throw new IOException("Corrupt capture record, address length " + addressLength);
+		}
+		if (length > data.length || buffer.position() + RobocolCapture.ADDRESS_SIZE + length > end) {
+			throw new IOException("Corrupt capture record, datagram length " + length);
+		}
+
+		byte[] addressBytes = (addressLength == 4) ? addressBytes4 : addressBytes16;
+		buffer.get(addressBytes16);
+		if (addressLength == 0) {
+			address = null;
+		} else {
+			if (addressLength == 4) System.arraycopy(addressBytes16, 0, addressBytes4, 0, 4);
+			try {
+				// InetAddress copies the bytes
+				address = InetAddress.getByAddress(addressBytes);
+			} catch (UnknownHostException e) {
+				address = null;
+			}
+		}
+
+		buffer.get(data, 0, length);
+		return true;
+	}
+
+	/**
+	 * @return System.nanoTime() of the capturing process when the datagram was recorded
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return RobocolCapture.INBOUND or RobocolCapture.OUTBOUND
+	 */
+	public byte getDirection() {
+		return direction;
+	}
+
+	/**
+	 * @return peer address, or null if it was not recorded
+	 */
+	public InetAddress getAddress() {
+		return address;
+	}
+
+	/**
+	 * Get the datagram; only valid until the next call to next()
+	 *
+	 * @return array holding the datagram at index 0
+	 */
+	public byte[] getData() {
+		return data;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return a copy of the datagram
+	 */
+	public byte[] copyData() {
+		return Arrays.copyOf(data, length);
+	}
+}
@@ -4,6 +4,7 @@ import com.qualcomm.robotcore.exception.RobotCoreException;
 
 import java.net.DatagramPacket;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 
 /**
  * RobocolDatagram
@@ -13,6 +14,7 @@ import java.net.InetAddress;
 public class RobocolDatagram {
 
 	private DatagramPacket packet;
+	private ByteBuffer byteBuffer;
 
 	/**
 	 * Construct a RobocolDatagram from a RobocolParsable
@@ -47,7 +49,7 @@ public class RobocolDatagram {
 	 * @return message type
 	 */
 	public RobocolParsable.MsgType getMsgType() {
-		return RobocolParsable.MsgType.fromByte(packet.getData()[0]);
+		return RobocolParsable.MsgType.fromByte(packet.getData()[packet.getOffset()]);
 	}
 
 	/**
@@ -77,6 +79,32 @@ public class RobocolDatagram {
 		return packet.getData();
 	}
 
+	/**
+	 * Get the index of the first byte of this datagram in the array returned by getData()
+	 *
+	 * @return offset, in bytes
+	 */
+	public int getOffset() {
+		return packet.getOffset();
+	}
+
+	/**
+	 * Get a ByteBuffer backed by the data of this datagram, suitable for
+	 * RobocolParsable.readFrom(buffer, getOffset(), getLength()).
+	 * <p>
+	 * The buffer is reused between calls, so this method does not allocate in the steady state.
+	 *
+	 * @return buffer backed by getData()
+	 */
+	public ByteBuffer getByteBuffer() {
+		byte[] data = packet.getData();
+		if (byteBuffer == null || byteBuffer.array() != data) {
+			byteBuffer = ByteBuffer.wrap(data);
+		}
+		byteBuffer.clear();
+		return byteBuffer;
+	}
+
 	public void setData(byte[] data) {
 		packet = new DatagramPacket(data, data.length);
 	}
@@ -95,7 +123,7 @@ public class RobocolDatagram {
 		String addr = null;
 
 		if (packet != null && packet.getAddress() != null && packet.getLength() > 0) {
-			type = RobocolParsable.MsgType.fromByte(packet.getData()[0]).name();
+			type = RobocolParsable.MsgType.fromByte(packet.getData()[packet.getOffset()]).name();
 			size = packet.getLength();
 			addr = packet.getAddress().getHostAddress();
 		}
@@ -0,0 +1,241 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.exception.RobotCoreException;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+/**
+ * RobocolDatagramSocket backed by a non-blocking java.nio DatagramChannel.
+ * <p>
+ * The receive thread sleeps in a Selector until a datagram is ready, instead of spinning, and
+ * drain(RecvCallback) handles a whole burst of datagrams in a single wakeup. Datagrams are read
+ * and written through direct buffers.
+ */
+public class RobocolDatagramChannelSocket extends RobocolDatagramSocket {
+
+	private static final boolean DEBUG = false;
+
+	private DatagramChannel channel;
+	private Selector selector;
+
+	// guarded by sendBuffer
+	private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(RobocolConfig.MAX_PACKET_SIZE);
+
+	// only used by the receiving thread
+	private final ByteBuffer recvBuffer = ByteBuffer.allocateDirect(RobocolConfig.MAX_PACKET_SIZE);
+	private final byte[] recvData = new byte[RobocolConfig.MAX_PACKET_SIZE];
+	private final DatagramPacket packetRecv = new DatagramPacket(recvData, recvData.length);
+	private final RobocolDatagram msgRecv = new RobocolDatagram(packetRecv);
+
+	@Override
+	public void bind(InetSocketAddress bindAddress) throws SocketException {
+
+		if (!isClosed()) {
+			close();
+		}
+		setState(State.LISTENING);
+
+		// start up the channel
+		RobotLog.d("RobocolDatagramChannelSocket binding to " + bindAddress.toString());
+		try {
+			channel = DatagramChannel.open();
+			channel.configureBlocking(false);
+			channel.socket().bind(bindAddress);
+
+			selector = Selector.open();
+			channel.register(selector, SelectionKey.OP_READ);
+		} catch (IOException e) {
+			setState(State.ERROR);
+			throw new SocketException("Unable to bind datagram channel: " + e.toString());
+		}
+	}
+
+	@Override
+	public void connect(InetAddress connectAddress) throws SocketException {
+		InetSocketAddress addr = new InetSocketAddress(connectAddress, RobocolConfig.PORT_NUMBER);
+		RobotLog.d("RobocolDatagramChannelSocket connected to " + addr.toString());
+		try {
+			if (channel.isConnected()) channel.disconnect();
+			channel.connect(addr);
+		} catch (IOException e) {
+			throw new SocketException("Unable to connect datagram channel: " + e.toString());
+		}
+	}
+
+	@Override
+	public void close() {
+		setPackingEnabled(false);
+		stopSender();
+		setState(State.CLOSED);
+
+		// closing the selector wakes up a thread blocked in recv()
+		try {
+			if (selector != null) selector.close();
+			if (channel != null) channel.close();
+		} catch (IOException e) {
+			RobotLog.d("RobocolDatagramChannelSocket close error: " + e.toString());
+		}
+
+		RobotLog.d("RobocolDatagramChannelSocket is closed");
+	}
+
+	@Override
+	protected void transmit(RobocolDatagram message) {
+		synchronized (sendBuffer) {
+			sendBuffer.clear();
+			sendBuffer.put(message.getData(), message.getOffset(), message.getLength());
+			sendBuffer.flip();
+			transmitSendBuffer(message.getAddress(), message);
+		}
+	}
+
+	@Override
+	protected void transmit(RobocolParsable message, InetAddress address) {
+		synchronized (sendBuffer) {
+			sendBuffer.clear();
+			try {
+				message.writeTo(sendBuffer);
+			} catch (RobotCoreException e) {
+				RobotLog.w("Unable to encode " + message.getRobocolMsgType().name() + " message: " + e.toString());
+				return;
+			}
+			sendBuffer.flip();
+			transmitSendBuffer(address, message);
+		}
+	}
+
+	/**
+	 * Receive a RobocolDatagram packet, waiting in the selector if none is pending
+	 *
+	 * @return packet; or null if error
+	 */
+	@Override
+	public RobocolDatagram recv() {
+		try {
+			while (isRunning()) {
+				RobocolDatagram msg = recvNow();
+				if (msg != null) return msg;
+
+				selector.select();
+				selector.selectedKeys().clear();
+			}
+		} catch (PortUnreachableException e) {
+			RobotLog.d("RobocolDatagramChannelSocket receive error: remote port unreachable");
+		} catch (ClosedSelectorException e) {
+			// socket was closed while we were waiting
+		} catch (IOException e) {
+			RobotLog.d("RobocolDatagramChannelSocket receive error: " + e.toString());
+		} catch (NullPointerException e) {
+			RobotLog.d("RobocolDatagramChannelSocket receive error: " + e.toString());
+		}
+
+		return null;
+	}
+
+	/**
+	 * Receive every pending RobocolDatagram packet in one wakeup
+	 *
+	 * @param callback callback for each received packet
+	 * @return number of packets received; 0 if error
+	 */
+	@Override
+	public int drain(RecvCallback callback) {
+		int count = 0;
+
+		RobocolDatagram msg = recv();
+		try {
+			while (msg != null) {
+				callback.onRecv(msg);
+				count++;
+				msg = recvNow();
+			}
+		} catch (IOException e) {
+			RobotLog.d("RobocolDatagramChannelSocket receive error: " + e.toString());
+		}
+
+		return count;
+	}
+
+	@Override
+	public InetAddress getInetAddress() {
+		if (channel == null) return null;
+
+		return channel.socket().getInetAddress();
+	}
+
+	@Override
+	public InetAddress getLocalAddress() {
+		if (channel == null) return null;
+
+		return channel.socket().getLocalAddress();
+	}
+
+	/*
+	 * Read one datagram without blocking; returns null if none is pending
+	 */
+	private RobocolDatagram recvNow() throws IOException {
+		recvBuffer.clear();
+		SocketAddress from = channel.receive(recvBuffer);
+		if (from == null) return null;
+
+		recvBuffer.flip();
+		int length = recvBuffer.remaining();
+		recvBuffer.get(recvData, 0, length);
+		packetRecv.setData(recvData, 0, length);
+		packetRecv.setSocketAddress(from);
+
+		RobocolCapture capture = getCapture();
+		if (capture != null) capture.record(RobocolCapture.INBOUND, packetRecv.getAddress(), recvData, 0, length);
+
+		if (DEBUG) RobotLog.v("received network packet from " + from.toString());
+
+		return msgRecv;
+	}
+
+	/*
+	 * Send the contents of sendBuffer; caller must hold the sendBuffer lock
+	 */
+	private void transmitSendBuffer(InetAddress address, Object message) {
+		RobocolCapture capture = getCapture();
+		if (capture != null) capture.record(RobocolCapture.OUTBOUND, address, sendBuffer);
+
+		try {
+			int sent;
+			if (channel.isConnected()) {
+				sent = channel.write(sendBuffer);
+			} else {
+				sent = channel.send(sendBuffer, new InetSocketAddress(address, RobocolConfig.PORT_NUMBER));
+			}
+
+			if (sent == 0) {
+				// the socket send buffer is full; like any other UDP loss, the datagram is dropped
+				RobotLog.w("Unable to send " + message.toString() + ": send buffer full");
+			} else if (DEBUG) {
+				RobotLog.v("sent network packet: " + message.toString());
+			}
+		} catch (IllegalArgumentException e) {
+			RobotLog.w("Unable to send RobocolDatagram: " + e.toString());
+			RobotLog.w("               " + message.toString());
+		} catch (IOException e) {
+			// channel was unable to send
+			RobotLog.w("Unable to send RobocolDatagram: " + e.toString());
+			RobotLog.w("               " + message.toString());
+		} catch (NullPointerException e) {
+			RobotLog.w("Unable to send RobocolDatagram: " + e.toString());
+			RobotLog.w("               " + message.toString());
+		}
+	}
+
+}
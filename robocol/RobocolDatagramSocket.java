@@ -1,5 +1,8 @@
 package com.sources.com.qualcomm.robotcore.robocol;
 
+import com.qualcomm.robotcore.exception.RobotCoreException;
+import com.qualcomm.robotcore.util.FrameworkScheduler;
+import com.qualcomm.robotcore.util.Range;
 import com.qualcomm.robotcore.util.RobotLog;
 
 import java.io.IOException;
@@ -9,6 +12,7 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.PortUnreachableException;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
 
 /**
  * Heavyweight multi-threaded datagram socket with non-blocking IO.
@@ -19,22 +23,67 @@ public class RobocolDatagramSocket {
 
 	private static final boolean DEBUG = false;
 
+	private static final long SENDER_STOP_TIMEOUT = 500; // in milliseconds
+
 	public enum State {
 		LISTENING,  /// Socket is ready
 		CLOSED,     /// Socket is not ready
 		ERROR       /// Socket is in error state
 	}
 
+	/**
+	 * Underlying transport used to move datagrams
+	 */
+	public enum Transport {
+		DATAGRAM_SOCKET,  /// blocking java.net.DatagramSocket, see RobocolDatagramSocket
+		DATAGRAM_CHANNEL  /// selector driven java.nio DatagramChannel, see RobocolDatagramChannelSocket
+	}
+
+	/**
+	 * Callback used by drain(RecvCallback)
+	 */
+	public interface RecvCallback {
+
+		/**
+		 * Called once for each received datagram. The datagram is reused by the socket, so it is
+		 * only valid until this method returns.
+		 *
+		 * @param datagram received datagram
+		 */
+		public void onRecv(RobocolDatagram datagram);
+	}
+
 	private final byte[] buffer = new byte[RobocolConfig.MAX_PACKET_SIZE];
 
 	private DatagramSocket socket;
 	private final DatagramPacket packetRecv = new DatagramPacket(buffer, buffer.length);
 	private final RobocolDatagram msgRecv = new RobocolDatagram();
 
+	// reused by send(RobocolParsable), guarded by packetSend
+	private final byte[] sendBuffer = new byte[RobocolConfig.MAX_PACKET_SIZE];
+	private final ByteBuffer sendByteBuffer = ByteBuffer.wrap(sendBuffer);
+	private final DatagramPacket packetSend = new DatagramPacket(sendBuffer, sendBuffer.length);
+	private final RobocolDatagram msgSend = new RobocolDatagram(packetSend);
+
+	// messages waiting to be packed into one datagram, guarded by packByteBuffer
+	private final byte[] packBuffer = new byte[RobocolConfig.MAX_PACKET_SIZE];
+	private final ByteBuffer packByteBuffer = ByteBuffer.wrap(packBuffer);
+	private final DatagramPacket packetPacked = new DatagramPacket(packBuffer, packBuffer.length);
+	private final RobocolDatagram msgPacked = new RobocolDatagram(packetPacked);
+	private volatile boolean packingEnabled = false;
+	private int maxPackedSize = RobocolConfig.DEFAULT_MAX_PACKED_SIZE;
+
 	volatile private State state;
 
+	// optional record of all traffic, see setCapture()
+	private volatile RobocolCapture capture = null;
+
+	// optional outbound queue with its own sender thread, see startSender()
+	private volatile RobocolSendQueue sendQueue = null;
+
 	public RobocolDatagramSocket() {
 		state = State.CLOSED;
+		packByteBuffer.limit(maxPackedSize);
 	}
 
 	public void listen(InetAddress destAddress) throws SocketException {
@@ -60,6 +109,8 @@ public class RobocolDatagramSocket {
 	}
 
 	public void close() {
+		setPackingEnabled(false);
+		stopSender();
 		state = State.CLOSED;
 
 		if (socket != null) socket.close();
@@ -67,7 +118,196 @@ public class RobocolDatagramSocket {
 		RobotLog.d("RobocolDatagramSocket is closed");
 	}
 
+	/**
+	 * Send a RobocolDatagram packet
+	 * <p>
+	 * If packing is enabled the packet may be held until flush() is called.
+	 *
+	 * @param message packet to send
+	 */
 	public void send(RobocolDatagram message) {
+		if (packingEnabled) {
+			synchronized (packByteBuffer) {
+				if (message.getLength() <= packByteBuffer.limit()) {
+					if (message.getLength() > packByteBuffer.remaining()) flushPacked();
+					packByteBuffer.put(message.getData(), message.getOffset(), message.getLength());
+					return;
+				}
+
+				// too big to pack; keep ordering by sending what is already pending first
+				flushPacked();
+			}
+		}
+
+		dispatch(message);
+	}
+
+	/**
+	 * Encode a message into this socket's send buffer and send it
+	 * <p>
+	 * Unlike send(new RobocolDatagram(message)), this does not allocate. Concurrent callers are
+	 * serialized on the send buffer. If packing is enabled the message may be held until flush()
+	 * is called.
+	 *
+	 * @param message message to send
+	 */
+	public void send(RobocolParsable message) {
+		send(message, null);
+	}
+
+	/**
+	 * Encode a message into this socket's send buffer and send it to the given address
+	 * <p>
+	 * Messages sent to an explicit address are never packed.
+	 *
+	 * @param message message to send
+	 * @param address destination, or null if this socket is connected
+	 */
+	public void send(RobocolParsable message, InetAddress address) {
+		if (packingEnabled && address == null) {
+			synchronized (packByteBuffer) {
+				int mark = packByteBuffer.position();
+				try {
+					message.writeTo(packByteBuffer);
+					return;
+				} catch (RobotCoreException e) {
+					// did not fit in what is left of the pack, start a new one
+					packByteBuffer.position(mark);
+				}
+
+				flushPacked();
+				try {
+					message.writeTo(packByteBuffer);
+					return;
+				} catch (RobotCoreException e) {
+					// larger than the pack budget, send it on its own
+					packByteBuffer.clear();
+					packByteBuffer.limit(maxPackedSize);
+				}
+			}
+		}
+
+		RobocolSendQueue queue = sendQueue;
+		if (queue != null) {
+			queue.offer(message, address);
+		} else {
+			transmit(message, address);
+		}
+	}
+
+	/**
+	 * Send any messages that are being held for packing
+	 * <p>
+	 * Callers that send several messages in a burst should call this once at the end of the burst.
+	 */
+	public void flush() {
+		synchronized (packByteBuffer) {
+			flushPacked();
+		}
+	}
+
+	/**
+	 * Enable or disable packing of several messages into one datagram
+	 * <p>
+	 * Only enable packing if the remote peer advertised PeerDiscovery.CAPABILITY_PACKING.
+	 *
+	 * @param enabled true to pack messages
+	 */
+	public void setPackingEnabled(boolean enabled) {
+		synchronized (packByteBuffer) {
+			if (!enabled) flushPacked();
+			packingEnabled = enabled;
+		}
+	}
+
+	public boolean isPackingEnabled() {
+		return packingEnabled;
+	}
+
+	/**
+	 * Set the largest datagram that packing is allowed to build
+	 *
+	 * @param size size in bytes, between RobocolParsable.HEADER_LENGTH and RobocolConfig.MAX_PACKET_SIZE
+	 */
+	public void setMaxPackedSize(int size) {
+		Range.throwIfRangeIsInvalid(size, RobocolParsable.HEADER_LENGTH, RobocolConfig.MAX_PACKET_SIZE);
+		synchronized (packByteBuffer) {
+			flushPacked();
+			maxPackedSize = size;
+			packByteBuffer.limit(maxPackedSize);
+		}
+	}
+
+	public int getMaxPackedSize() {
+		return maxPackedSize;
+	}
+
+	/**
+	 * Record every datagram sent or received from now on
+	 * <p>
+	 * The capture is not closed by this socket.
+	 *
+	 * @param capture capture to record into, or null to stop recording
+	 */
+	public void setCapture(RobocolCapture capture) {
+		this.capture = capture;
+	}
+
+	public RobocolCapture getCapture() {
+		return capture;
+	}
+
+	/**
+	 * Hand all sends to a dedicated sender thread
+	 * <p>
+	 * From now on send() and flush() only queue datagrams; no caller blocks on the socket. A
+	 * datagram that finds its lane of the queue full is dropped, see RobocolSendQueue.getStats().
+	 *
+	 * @param scheduler scheduler to start the sender thread on
+	 */
+	public synchronized void startSender(FrameworkScheduler scheduler) {
+		if (sendQueue != null) return;
+		RobocolSendQueue queue = new RobocolSendQueue(this);
+		queue.start(scheduler);
+		sendQueue = queue;
+	}
+
+	/**
+	 * Stop the sender thread, after it sends what is already queued, and go back to sending on the
+	 * calling thread
+	 */
+	public synchronized void stopSender() {
+		RobocolSendQueue queue = sendQueue;
+		if (queue == null) return;
+		synchronized (packByteBuffer) {
+			flushPacked();
+		}
+		sendQueue = null;
+		queue.stop(SENDER_STOP_TIMEOUT);
+	}
+
+	/**
+	 * Get the outbound queue
+	 *
+	 * @return queue, or null if sends are made on the calling thread
+	 */
+	public RobocolSendQueue getSendQueue() {
+		return sendQueue;
+	}
+
+	/**
+	 * Put a RobocolDatagram packet on the wire
+	 * <p>
+	 * Subclasses that use a different transport override this method.
+	 *
+	 * @param message packet to send
+	 */
+	protected void transmit(RobocolDatagram message) {
+
+		RobocolCapture capture = this.capture;
+		if (capture != null) {
+			capture.record(RobocolCapture.OUTBOUND, message.getAddress(), message.getData(), message.getOffset(), message.getLength());
+		}
 
 		try {
 			socket.send(message.getPacket());
@@ -85,6 +325,62 @@ public class RobocolDatagramSocket {
 		}
 	}
 
+	/**
+	 * Encode a message and put it on the wire
+	 *
+	 * @param message message to send
+	 * @param address destination, or null if this socket is connected
+	 */
+	protected void transmit(RobocolParsable message, InetAddress address) {
+		synchronized (packetSend) {
+			sendByteBuffer.clear();
+			try {
+				message.writeTo(sendByteBuffer);
+			} catch (RobotCoreException e) {
+				RobotLog.w("Unable to encode " + message.getRobocolMsgType().name() + " message: " + e.toString());
+				return;
+			}
+
+			packetSend.setData(sendBuffer, 0, sendByteBuffer.position());
+			packetSend.setAddress(address);
+			if (address != null) packetSend.setPort(RobocolConfig.PORT_NUMBER);
+
+			transmit(msgSend);
+		}
+	}
+
+	/*
+	 * Called by the sender thread of the send queue
+	 */
+	void transmitQueued(RobocolDatagram message) {
+		transmit(message);
+	}
+
+	/*
+	 * Queue a datagram if there is a sender thread, otherwise put it on the wire now
+	 */
+	private void dispatch(RobocolDatagram message) {
+		RobocolSendQueue queue = sendQueue;
+		if (queue != null) {
+			queue.offer(message);
+		} else {
+			transmit(message);
+		}
+	}
+
+	/*
+	 * Send the pending pack, if any; caller must hold the packByteBuffer lock
+	 */
+	private void flushPacked() {
+		if (packByteBuffer.position() == 0) return;
+
+		packetPacked.setData(packBuffer, 0, packByteBuffer.position());
+		dispatch(msgPacked);
+
+		packByteBuffer.clear();
+		packByteBuffer.limit(maxPackedSize);
+	}
+
 	/**
 	 * Receive a RobocolDatagram packet
 	 * 
@@ -93,6 +389,7 @@ public class RobocolDatagramSocket {
 	public RobocolDatagram recv() {
 
 		try {
+			packetRecv.setLength(buffer.length);
 			socket.receive(packetRecv);
 			if (DEBUG) RobotLog.v("received network packet from " + packetRecv.getAddress().toString());
 		} catch (PortUnreachableException e) {
@@ -103,6 +400,12 @@ public class RobocolDatagramSocket {
 			return null;
 		} catch (NullPointerException e) {
 			RobotLog.d("RobocolDatagramSocket receive error: " + e.toString());
+			return null;
+		}
+
+		RobocolCapture capture = this.capture;
+		if (capture != null) {
+			capture.record(RobocolCapture.INBOUND, packetRecv.getAddress(), packetRecv.getData(), packetRecv.getOffset(), packetRecv.getLength());
 		}
 
 		msgRecv.setPacket(packetRecv);
@@ -110,10 +413,31 @@ public class RobocolDatagramSocket {
 		return msgRecv;
 	}
 
+	/**
+	 * Receive all pending RobocolDatagram packets
+	 * <p>
+	 * Blocks until at least one packet is available, then passes every packet that can be read
+	 * without blocking again to the callback. This implementation passes a single packet.
+	 *
+	 * @param callback callback for each received packet
+	 * @return number of packets received; 0 if error
+	 */
+	public int drain(RecvCallback callback) {
+		RobocolDatagram msg = recv();
+		if (msg == null) return 0;
+
+		callback.onRecv(msg);
+		return 1;
+	}
+
 	public State getState() {
 		return state;
 	}
 
+	protected void setState(State state) {
+		this.state = state;
+	}
+
 	public InetAddress getInetAddress() {
 		if (socket == null) return null;
 
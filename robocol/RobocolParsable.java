@@ -33,6 +33,8 @@ package com.sources.com.qualcomm.robotcore.robocol;
 import com.qualcomm.robotcore.exception.RobotCoreException;
 import com.qualcomm.robotcore.util.RobotLog;
 
+import java.nio.ByteBuffer;
+
 /**
  * Interface implemented by objects that want to be sendable via a RobocolDatagram.
  *
@@ -66,7 +68,13 @@ public interface RobocolParsable {
 		GAMEPAD(2),
 		PEER_DISCOVERY(3),
 		COMMAND(4),
-		TELEMETRY(5);
+		TELEMETRY(5),
+		TELEMETRY_DELTA(6),
+		TELEMETRY_ACK(7),
+		TELEMETRY_FRAGMENT(8),
+		COMMAND_ACK(9),
+		BULK_DATA(10),
+		BULK_ACK(11);
 
 		private static final MsgType[] VALUES_CACHE = MsgType.values();
 		private final int type;
@@ -128,4 +136,26 @@ public interface RobocolParsable {
 	 */
 	public abstract void fromByteArray(byte[] byteArray) throws RobotCoreException;
 
+	/**
+	 * Write this object, header included, into a buffer starting at the buffer's current position.
+	 * On return the position of the buffer is just past the end of the message.
+	 * <p>
+	 * Unlike toByteArray(), this method does not allocate; callers are expected to reuse the buffer.
+	 *
+	 * @param buffer buffer to write to
+	 * @throws RobotCoreException if the message does not fit in the remaining space of the buffer
+	 */
+	public abstract void writeTo(ByteBuffer buffer) throws RobotCoreException;
+
+	/**
+	 * Populate the fields of this object from a message held in a buffer. The position and limit
+	 * of the buffer will be modified.
+	 *
+	 * @param buffer buffer holding the message
+	 * @param offset index of the first byte of the message header
+	 * @param length length of the message in bytes, header included
+	 * @throws RobotCoreException if unable to parse the message
+	 */
+	public abstract void readFrom(ByteBuffer buffer, int offset, int length) throws RobotCoreException;
+
 }
@@ -0,0 +1,182 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.util.RobotLog;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * RobocolDatagramSocket that replays the inbound datagrams of a capture
+ * <p>
+ * Give one to an EventLoopManager in place of a network socket, and the manager handles the
+ * gamepads, heartbeats, commands and everything else it received while the capture was made,
+ * either with the original timing or as fast as possible. Whatever the manager sends is counted
+ * and dropped. Nothing is replayed until begin() is called, so the event loop can be set up
+ * first. Once the capture is exhausted the socket closes itself.
+ * <p>
+ * Example:
+ * <pre>
+ * RobocolReplaySocket socket = new RobocolReplaySocket(new RobocolCaptureReader(file), true);
+ * EventLoopManager manager = new EventLoopManager(socket);
+ * manager.start(eventLoop);
+ * socket.begin();
+ * socket.awaitFinished();
+ * manager.shutdown();
+ * </pre>
+ */
+public class RobocolReplaySocket extends RobocolDatagramSocket {
+
+	private final RobocolCaptureReader reader;
+	private final boolean realTime;
+
+	// only used by the receiving thread
+	private final byte[] recvData = new byte[RobocolConfig.MAX_PACKET_SIZE];
+	private final DatagramPacket packetRecv = new DatagramPacket(recvData, recvData.length);
+	private final RobocolDatagram msgRecv = new RobocolDatagram(packetRecv);
+	private long firstTimestamp = 0;
+	private long replayStart = 0;
+
+	private boolean started = false; // guarded by this
+	private volatile boolean finished = false;
+	private volatile long replayed = 0;
+	private final AtomicLong transmitted = new AtomicLong();
+
+	/**
+	 * Constructor
+	 *
+	 * @param reader capture to replay
+	 * @param realTime true to keep the original timing, false to replay as fast as possible
+	 */
+	public RobocolReplaySocket(RobocolCaptureReader reader, boolean realTime) {
+		this.reader = reader;
+		this.realTime = realTime;
+		setState(State.LISTENING);
+	}
+
+	@Override
+	public void bind(InetSocketAddress bindAddress) throws SocketException {
+		// nothing to bind, the capture is the only source of datagrams
+	}
+
+	@Override
+	public void connect(InetAddress connectAddress) throws SocketException {
+		// take no action
+	}
+
+	@Override
+	public void close() {
+		setPackingEnabled(false);
+		stopSender();
+		setState(State.CLOSED);
+		finish();
+	}
+
+	@Override
+	protected void transmit(RobocolDatagram message) {
+		transmitted.incrementAndGet();
+	}
+
+	@Override
+	protected void transmit(RobocolParsable message, InetAddress address) {
+		transmitted.incrementAndGet();
+	}
+
+	/**
+	 * Return the next inbound datagram of the capture, waiting for its time if replaying in real
+	 * time
+	 *
+	 * @return packet; or null if the capture is exhausted or the socket was closed
+	 */
+	@Override
+	public RobocolDatagram recv() {
+		try {
+			awaitBegin();
+			while (isRunning()) {
+				if (!reader.next()) {
+					RobotLog.v("Replay finished, " + replayed + " datagrams");
+					close();
+					return null;
+				}
+				if (reader.getDirection() != RobocolCapture.INBOUND) continue;
+
+				if (realTime) waitUntilDue(reader.getTimestamp());
+				if (!isRunning()) return null;
+
+				System.arraycopy(reader.getData(), 0, recvData, 0, reader.getLength());
+				packetRecv.setData(recvData, 0, reader.getLength());
+				packetRecv.setAddress(reader.getAddress());
+				replayed++;
+				return msgRecv;
+			}
+		} catch (IOException e) {
+			RobotLog.w("Unable to replay capture: " + e.toString());
+			close();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		return null;
+	}
+
+	/**
+	 * Start replaying
+	 */
+	public synchronized void begin() {
+		started = true;
+		notifyAll();
+	}
+
+	/**
+	 * Wait until the whole capture has been replayed, or the socket is closed
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public synchronized void awaitFinished() throws InterruptedException {
+		while (!finished) wait();
+	}
+
+	public boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * @return number of datagrams handed to the receiver so far
+	 */
+	public long getReplayed() {
+		return replayed;
+	}
+
+	/**
+	 * @return number of messages and datagrams the owner tried to send
+	 */
+	public long getTransmitted() {
+		return transmitted.get();
+	}
+
+	private void waitUntilDue(long timestamp) {
+		long now = System.nanoTime();
+		if (replayStart == 0) {
+			replayStart = now;
+			firstTimestamp = timestamp;
+		}
+
+		long due = replayStart + (timestamp - firstTimestamp);
+		while (isRunning() && (now = System.nanoTime()) - due < 0) {
+			LockSupport.parkNanos(due - now);
+		}
+	}
+
+	private synchronized void awaitBegin() throws InterruptedException {
+		while (!started && isRunning()) wait();
+	}
+
+	private synchronized void finish() {
+		finished = true;
+		notifyAll();
+	}
+}
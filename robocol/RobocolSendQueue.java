@@ -0,0 +1,446 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.exception.RobotCoreException;
+import com.qualcomm.robotcore.util.FrameworkScheduler;
+import com.qualcomm.robotcore.util.RobotLog;
+import com.qualcomm.robotcore.util.TypeConversion;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Outbound datagram queue drained by a single sender thread.
+ * <p>
+ * Any thread may offer a datagram; it is copied into a preallocated slot and the caller returns
+ * without touching the socket. The sender thread wakes up, sends everything that is queued, most
+ * urgent lane first, and goes back to sleep. When a lane is full the new datagram is dropped and
+ * counted, like any other UDP loss.
+ * <p>
+ * Each lane is a bounded ring with a per slot sequence number, so producers only contend on a
+ * single compare and set and never block.
+ */
+public class RobocolSendQueue {
+
+	/**
+	 * Send priority, most urgent first
+	 */
+	public enum Lane {
+		CONTROL(32),   /// heartbeats, peer discovery, commands and command acks
+		REALTIME(64),  /// gamepads and telemetry
+		BULK(64);      /// telemetry fragments and bulk transfers
+
+		private final int capacity;
+
+		private Lane(int capacity) {
+			this.capacity = capacity;
+		}
+
+		public int getCapacity() {
+			return capacity;
+		}
+
+		/**
+		 * Lane that a message type is sent on
+		 *
+		 * @param type message type
+		 * @return lane
+		 */
+		public static Lane forMsgType(RobocolParsable.MsgType type) {
+			switch (type) {
+				case HEARTBEAT:
+				case PEER_DISCOVERY:
+				case COMMAND:
+				case COMMAND_ACK:
+					return CONTROL;
+				case GAMEPAD:
+				case TELEMETRY:
+				case TELEMETRY_DELTA:
+				case TELEMETRY_ACK:
+					return REALTIME;
+				default:
+					return BULK;
+			}
+		}
+	}
+
+	/**
+	 * Snapshot of the queue counters
+	 */
+	public static class Stats {
+		public final int[] depth;
+		public final long[] sent;
+		public final long[] dropped;
+		public final long[] droppedByMsgType;
+		public final long wakeups;
+		public final int maxBatch;
+
+		private Stats(int[] depth, long[] sent, long[] dropped, long[] droppedByMsgType, long wakeups, int maxBatch) {
+			this.depth = depth;
+			this.sent = sent;
+			this.dropped = dropped;
+			this.droppedByMsgType = droppedByMsgType;
+			this.wakeups = wakeups;
+			this.maxBatch = maxBatch;
+		}
+
+		public long getSent() {
+			long total = 0;
+			for (long n : sent) total += n;
+			return total;
+		}
+
+		public long getDropped() {
+			long total = 0;
+			for (long n : dropped) total += n;
+			return total;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder s = new StringBuilder();
+			for (Lane lane : Lane.values()) {
+				int i = lane.ordinal();
+				s.append(String.format("%s: depth %d, sent %d, dropped %d; ", lane.name(), depth[i], sent[i], dropped[i]));
+			}
+			s.append(String.format("wakeups %d, max batch %d", wakeups, maxBatch));
+			return s.toString();
+		}
+	}
+
+	/*
+	 * Bounded ring of preallocated slots. Slot i may be written by the producer that claimed
+	 * position p when sequence[i] == p, and read by the consumer when sequence[i] == p + 1.
+	 */
+	private static class Ring {
+		final int mask;
+		final AtomicLongArray sequence;
+		final AtomicLong tail = new AtomicLong();
+		final AtomicLong sent = new AtomicLong();
+		final AtomicLong dropped = new AtomicLong();
+		final byte[][] data;
+		final ByteBuffer[] buffers;
+		final int[] lengths;
+		final InetAddress[] addresses;
+		final int[] ports;
+		volatile long head = 0; // only written by the sender thread
+
+		Ring(int capacity) {
+			mask = capacity - 1;
+			sequence = new AtomicLongArray(capacity);
+			data = new byte[capacity][];
+			buffers = new ByteBuffer[capacity];
+			lengths = new int[capacity];
+			addresses = new InetAddress[capacity];
+			ports = new int[capacity];
+			for (int i = 0; i < capacity; i++) {
+				sequence.set(i, i);
+				data[i] = new byte[RobocolConfig.MAX_PACKET_SIZE];
+				buffers[i] = ByteBuffer.wrap(data[i]);
+			}
+		}
+
+		/*
+		 * Claim the next free slot; returns its position or -1 if the ring is full
+		 */
+		long claim() {
+			long pos = tail.get();
+			while (true) {
+				int index = (int) (pos & mask);
+				long diff = sequence.get(index) - pos;
+				if (diff == 0) {
+					if (tail.compareAndSet(pos, pos + 1)) return pos;
+					pos = tail.get();
+				} else if (diff < 0) {
+					return -1;
+				} else {
+					pos = tail.get();
+				}
+			}
+		}
+
+		/*
+		 * A full volatile store, not lazySet(): signal() reads senderWaiting right after this, and
+		 * the sender writes senderWaiting before looking at the rings again. Both sides need the
+		 * store-load ordering, or each can miss the other's write and the datagram waits out a park.
+		 */
+		void publish(long pos) {
+			sequence.set((int) (pos & mask), pos + 1);
+		}
+
+		boolean hasNext() {
+			return sequence.get((int) (head & mask)) == head + 1;
+		}
+
+		int depth() {
+			return (int) Math.max(0, tail.get() - head);
+		}
+	}
+
+	// idle sender threads wake up this often even without a signal, to notice a stop
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	public static final int SENDER_PRIORITY = Thread.NORM_PRIORITY + 2;
+
+	private final RobocolDatagramSocket socket;
+	private final Ring[] rings;
+	private final AtomicLongArray droppedByMsgType = new AtomicLongArray(RobocolParsable.MsgType.values().length);
+
+	// only used by the sender thread
+	private final DatagramPacket packetOut = new DatagramPacket(RobocolParsable.EMPTY_HEADER_BUFFER, 0);
+	private final RobocolDatagram msgOut = new RobocolDatagram(packetOut);
+
+	private volatile Thread sender = null;
+	private volatile boolean running = false;
+	private volatile boolean senderWaiting = false;
+	private volatile long wakeups = 0;
+	private volatile int maxBatch = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param socket socket the sender thread transmits on
+	 */
+	public RobocolSendQueue(RobocolDatagramSocket socket) {
+		this.socket = socket;
+		rings = new Ring[Lane.values().length];
+		for (Lane lane : Lane.values()) rings[lane.ordinal()] = new Ring(lane.getCapacity());
+	}
+
+	/**
+	 * Start the sender thread
+	 *
+	 * @param scheduler scheduler to start the sender worker on
+	 */
+	public synchronized void start(FrameworkScheduler scheduler) {
+		if (running) return;
+		running = true;
+		sender = scheduler.startWorker("Robocol sender", SENDER_PRIORITY, new Runnable() {
+			@Override
+			public void run() {
+				senderLoop();
+			}
+		});
+	}
+
+	/**
+	 * Send whatever is still queued and stop the sender thread
+	 *
+	 * @param timeout how long to wait for the sender thread, in milliseconds
+	 */
+	public synchronized void stop(long timeout) {
+		if (!running) return;
+		running = false;
+
+		Thread thread = sender;
+		sender = null;
+		if (thread == null || thread == Thread.currentThread()) return;
+
+		LockSupport.unpark(thread);
+		try {
+			thread.join(timeout);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Queue a message for sending
+	 *
+	 * @param message message to send
+	 * @param address destination, or null if the socket is connected
+	 * @return false if the message was dropped
+	 */
+	public boolean offer(RobocolParsable message, InetAddress address) {
+		RobocolParsable.MsgType type = message.getRobocolMsgType();
+		Ring ring = rings[Lane.forMsgType(type).ordinal()];
+
+		long pos = ring.claim();
+		if (pos < 0) {
+			drop(ring, type);
+			return false;
+		}
+
+		int index = (int) (pos & ring.mask);
+		ByteBuffer buffer = ring.buffers[index];
+		buffer.clear();
+		int length = 0; // the sender skips empty slots
+		try {
+			message.writeTo(buffer);
+			length = buffer.position();
+		} catch (RobotCoreException e) {
+			RobotLog.w("Unable to encode " + type.name() + " message: " + e.toString());
+		} finally {
+			// a claimed slot must be published even if encoding blew up, or the lane stalls on it
+			ring.lengths[index] = length;
+			ring.addresses[index] = address;
+			ring.ports[index] = RobocolConfig.PORT_NUMBER;
+			ring.publish(pos);
+		}
+
+		signal();
+		return length > 0;
+	}
+
+	/**
+	 * Queue an encoded datagram for sending; the data is copied
+	 *
+	 * @param message datagram to send
+	 * @return false if the datagram was dropped
+	 */
+	public boolean offer(RobocolDatagram message) {
+		byte[] data = message.getData();
+		int offset = message.getOffset();
+		int length = message.getLength();
+
+		Ring ring = rings[laneOf(data, offset, length).ordinal()];
+		long pos = ring.claim();
+		if (pos < 0) {
+			drop(ring, length > 0 ? RobocolParsable.MsgType.fromByte(data[offset]) : RobocolParsable.MsgType.EMPTY);
+			return false;
+		}
+
+		int index = (int) (pos & ring.mask);
+		int copied = 0;
+		try {
+			System.arraycopy(data, offset, ring.data[index], 0, length);
+			copied = length;
+		} finally {
+			ring.lengths[index] = copied;
+			ring.addresses[index] = message.getAddress();
+			ring.ports[index] = message.getPacket().getPort();
+			ring.publish(pos);
+		}
+
+		signal();
+		return true;
+	}
+
+	/**
+	 * Number of datagrams waiting in a lane
+	 *
+	 * @param lane lane
+	 * @return queue depth
+	 */
+	public int getDepth(Lane lane) {
+		return rings[lane.ordinal()].depth();
+	}
+
+	public Stats getStats() {
+		int lanes = rings.length;
+		int[] depth = new int[lanes];
+		long[] sent = new long[lanes];
+		long[] dropped = new long[lanes];
+		for (int i = 0; i < lanes; i++) {
+			depth[i] = rings[i].depth();
+			sent[i] = rings[i].sent.get();
+			dropped[i] = rings[i].dropped.get();
+		}
+
+		long[] byType = new long[droppedByMsgType.length()];
+		for (int i = 0; i < byType.length; i++) byType[i] = droppedByMsgType.get(i);
+
+		return new Stats(depth, sent, dropped, byType, wakeups, maxBatch);
+	}
+
+	/*
+	 * A packed datagram goes out on the lane of its most urgent message
+	 */
+	private static Lane laneOf(byte[] data, int offset, int length) {
+		Lane lane = Lane.BULK;
+		int end = offset + length;
+		while (end - offset >= RobocolParsable.HEADER_LENGTH) {
+			Lane l = Lane.forMsgType(RobocolParsable.MsgType.fromByte(data[offset]));
+			if (l.ordinal() < lane.ordinal()) lane = l;
+			if (lane == Lane.CONTROL) break;
+
+			offset += RobocolParsable.HEADER_LENGTH
+					+ ((TypeConversion.unsignedByteToInt(data[offset + 1]) << 8) | TypeConversion.unsignedByteToInt(data[offset + 2]));
+		}
+		return lane;
+	}
+
+	private void drop(Ring ring, RobocolParsable.MsgType type) {
+		ring.dropped.incrementAndGet();
+		droppedByMsgType.incrementAndGet(type.ordinal());
+	}
+
+	private void signal() {
+		if (senderWaiting) {
+			Thread thread = sender;
+			if (thread != null) LockSupport.unpark(thread);
+		}
+	}
+
+	private void senderLoop() {
+		while (running) {
+			int batch = sendAll();
+			if (batch > 0) {
+				wakeups++;
+				if (batch > maxBatch) maxBatch = batch;
+				continue;
+			}
+
+			// publish that we are about to sleep, then look once more so a racing offer is not missed
+			senderWaiting = true;
+			if (!hasPending() && running) LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+			senderWaiting = false;
+		}
+
+		// let whatever was queued before the stop go out
+		sendAll();
+	}
+
+	private boolean hasPending() {
+		for (Ring ring : rings) {
+			if (ring.hasNext()) return true;
+		}
+		return false;
+	}
+
+	/*
+	 * Send every queued datagram, always taking the next one from the most urgent lane
+	 */
+	private int sendAll() {
+		int count = 0;
+		boolean progress = true;
+		while (progress) {
+			progress = false;
+			for (Ring ring : rings) {
+				if (ring.hasNext()) {
+					sendNext(ring);
+					count++;
+					progress = true;
+					break;
+				}
+			}
+		}
+		return count;
+	}
+
+	private void sendNext(Ring ring) {
+		long pos = ring.head;
+		int index = (int) (pos & ring.mask);
+
+		int length = ring.lengths[index];
+		if (length > 0) {
+			packetOut.setData(ring.data[index], 0, length);
+			packetOut.setAddress(ring.addresses[index]);
+			if (ring.addresses[index] != null && ring.ports[index] >= 0) packetOut.setPort(ring.ports[index]);
+			socket.transmitQueued(msgOut);
+			ring.sent.incrementAndGet();
+		}
+		ring.addresses[index] = null;
+
+		ring.sequence.lazySet(index, pos + ring.mask + 1);
+		ring.head = pos + 1;
+	}
+}
@@ -0,0 +1,61 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.util.TypeConversion;
+
+import java.net.DatagramPacket;
+
+/**
+ * Splits received datagrams into the Robocol messages they contain.
+ * <p>
+ * A peer that supports PeerDiscovery.CAPABILITY_PACKING may send several messages back to back
+ * in one datagram, each with its own header. The payload length in each header is used to find
+ * the next message. A datagram holding a single message is passed through as is.
+ * <p>
+ * The datagram handed to the wrapped callback is reused, so it is only valid until the callback
+ * returns.
+ */
+public class RobocolUnpacker implements RobocolDatagramSocket.RecvCallback {
+
+	private final RobocolDatagramSocket.RecvCallback callback;
+
+	private final DatagramPacket packetSlice = new DatagramPacket(RobocolParsable.EMPTY_HEADER_BUFFER, 0);
+	private final RobocolDatagram msgSlice = new RobocolDatagram(packetSlice);
+
+	/**
+	 * Constructor
+	 *
+	 * @param callback callback for each message
+	 */
+	public RobocolUnpacker(RobocolDatagramSocket.RecvCallback callback) {
+		this.callback = callback;
+	}
+
+	@Override
+	public void onRecv(RobocolDatagram datagram) {
+		byte[] data = datagram.getData();
+		int offset = datagram.getOffset();
+		int end = offset + datagram.getLength();
+
+		while (end - offset >= RobocolParsable.HEADER_LENGTH) {
+			int length = RobocolParsable.HEADER_LENGTH
+					+ ((TypeConversion.unsignedByteToInt(data[offset + 1]) << 8) | TypeConversion.unsignedByteToInt(data[offset + 2]));
+
+			if (offset == datagram.getOffset() && length >= end - offset) {
+				// the common case, one message per datagram
+				callback.onRecv(datagram);
+				return;
+			}
+
+			// a length running past the end of the datagram is handed over as is; the parser decides
+			if (length > end - offset) length = end - offset;
+
+			packetSlice.setData(data, offset, length);
+			packetSlice.setAddress(datagram.getAddress());
+			if (datagram.getPacket().getPort() >= 0) packetSlice.setPort(datagram.getPacket().getPort());
+			callback.onRecv(msgSlice);
+
+			offset += length;
+		}
+	}
+
+}
@@ -33,8 +33,11 @@ package com.sources.com.qualcomm.robotcore.robocol;
 import com.qualcomm.robotcore.exception.RobotCoreException;
 import com.qualcomm.robotcore.util.TypeConversion;
 
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -47,7 +50,6 @@ public class Telemetry implements RobocolParsable {
 	public final static String DEFAULT_TAG = "TELEMETRY_DATA";
 
 	private static final Charset CHARSET = Charset.forName("UTF-8");
-	private static final int BASE_PAYLOAD_SIZE = 8;
 
 	private final Map<String, String> dataStrings = new HashMap<String, String>();
 	private final Map<String, Float> dataNumbers = new HashMap<String, Float>();
@@ -170,140 +172,18 @@ public class Telemetry implements RobocolParsable {
 
 	@Override
 	public synchronized byte[] toByteArray() throws RobotCoreException {
-
-		/*
-		 * See countMessageBytes(...) for information about data format
-		 */
-
-		timestamp = System.currentTimeMillis();
-
-		if (dataStrings.size() > 256) {
-			throw new RobotCoreException("Cannot have more than 256 string data points");
-		}
-
-		if (dataNumbers.size() > 256) {
-			throw new RobotCoreException("Cannot have more than 256 number data points");
-		}
-
-		int payloadSize = countMessageBytes() + BASE_PAYLOAD_SIZE;
-		int totalSize = HEADER_LENGTH + payloadSize;
-
-		if (totalSize > RobocolConfig.MAX_PACKET_SIZE) {
-			throw new RobotCoreException(String.format("Cannot send telemetry data of %d bytes; max is %d",
-					totalSize, RobocolConfig.MAX_PACKET_SIZE));
-		}
-
-		ByteBuffer buffer = ByteBuffer.allocate(totalSize);
-
-		// populate the header
-		buffer.put(getRobocolMsgType().asByte());
-		buffer.putShort((short)payloadSize);
-
-		// timestamp
-		buffer.putLong(timestamp);
-
-		// tag
-		if (tag.length() == 0) {
-			buffer.put((byte) 0);
-		} else {
-			byte tagBytes[] = tag.getBytes(CHARSET);
-
-			if (tagBytes.length > 256) {
-				throw new RobotCoreException(String.format("Telemetry tag cannot exceed 256 bytes [%s]", tag));
-			}
-
-			buffer.put((byte) tagBytes.length);
-			buffer.put(tagBytes);
-		}
-
-		// data strings
-		buffer.put((byte) dataStrings.size());
-		for (Entry<String, String> entry : dataStrings.entrySet()) {
-			byte[] key = entry.getKey().getBytes(CHARSET);
-			byte[] value = entry.getValue().getBytes(CHARSET);
-
-			if (key.length > 256 || value.length > 256) {
-				throw new RobotCoreException(String.format("Telemetry elements cannot exceed 256 bytes [%s:%s]",
-						entry.getKey(), entry.getValue()));
-			}
-
-			buffer.put((byte) key.length);
-			buffer.put(key);
-			buffer.put((byte) value.length);
-			buffer.put(value);
-		}
-
-		// data numbers
-		buffer.put((byte) dataNumbers.size());
-		for (Entry<String, Float> entry : dataNumbers.entrySet()) {
-			byte[] key = entry.getKey().getBytes(CHARSET);
-			float val = entry.getValue();
-
-			if (key.length > 256) {
-				throw new RobotCoreException(String.format("Telemetry elements cannot exceed 256 bytes [%s:%f]",
-						entry.getKey(), val));
-			}
-
-			buffer.put((byte) key.length);
-			buffer.put(key);
-			buffer.putFloat(val);
-		}
-
-		// done
-		return buffer.array();
+		ByteBuffer buffer = ByteBuffer.allocate(RobocolConfig.MAX_PACKET_SIZE);
+		writeTo(buffer);
+		return Arrays.copyOf(buffer.array(), buffer.position());
 	}
 
 	@Override
 	public synchronized void fromByteArray(byte[] byteArray) throws RobotCoreException {
-
-		clearData();
-
-		ByteBuffer buffer = ByteBuffer.wrap(byteArray, HEADER_LENGTH, byteArray.length - HEADER_LENGTH);
-
-		// timestamp
-		timestamp = buffer.getLong();
-
-		// tag
-		int tagLength = TypeConversion.unsignedByteToInt(buffer.get());
-		if (tagLength == 0) {
-			tag = "";
-		} else {
-			byte[] tagBytes = new byte[tagLength];
-			buffer.get(tagBytes);
-			tag = new String(tagBytes , CHARSET);
-		}
-
-		// data strings
-		int stringDataPoints = buffer.get();
-		for (int i = 0; i < stringDataPoints; i++) {
-			int keyLength = TypeConversion.unsignedByteToInt(buffer.get());
-			byte[] keyBytes = new byte[keyLength];
-			buffer.get(keyBytes);
-
-			int valLength = TypeConversion.unsignedByteToInt(buffer.get());
-			byte[] valBytes = new byte[valLength];
-			buffer.get(valBytes);
-
-			String key = new String(keyBytes, CHARSET);
-			String val = new String(valBytes, CHARSET);
-
-			dataStrings.put(key, val);
-		}
-
-		// data numbers
-		int numberDataPoints = buffer.get();
-		for (int i = 0; i < numberDataPoints; i++) {
-			int keyLength = TypeConversion.unsignedByteToInt(buffer.get());
-			byte[] keyBytes = new byte[keyLength];
-			buffer.get(keyBytes);
-			String key = new String(keyBytes, CHARSET);
-			float val = buffer.getFloat();
-
-			dataNumbers.put(key, val);
-		}
+		readFrom(ByteBuffer.wrap(byteArray), 0, byteArray.length);
 	}
 
-	private int countMessageBytes() {
+	@Override
+	public synchronized void writeTo(ByteBuffer buffer) throws RobotCoreException {
 
 		/*
 		 * Data format
@@ -335,28 +215,144 @@ public class Telemetry implements RobocolParsable {
 		 *  1       | uint8  | length of key
 		 *  varies  | UTF-8  | key
 		 *  4       | float  | value
+		 *
+		 * The payload length in the header is filled in once the data points have been written,
+		 * so every key and value is only encoded once.
 		 */
 
-		int count = 0;
+		timestamp = System.currentTimeMillis();
+
+		if (dataStrings.size() > 256) {
+			throw new RobotCoreException("Cannot have more than 256 string data points");
+		}
+
+		if (dataNumbers.size() > 256) {
+			throw new RobotCoreException("Cannot have more than 256 number data points");
+		}
+
+		int start = buffer.position();
+
+		try {
+			// populate the header, the payload size is written below
+			buffer.put(getRobocolMsgType().asByte());
+			buffer.putShort((short) 0);
+
+			// timestamp
+			buffer.putLong(timestamp);
+
+			// tag
+			if (tag.length() == 0) {
+				buffer.put((byte) 0);
+			} else {
+				byte tagBytes[] = tag.getBytes(CHARSET);
+
+				if (tagBytes.length > 256) {
+					throw new RobotCoreException(String.format("Telemetry tag cannot exceed 256 bytes [%s]", tag));
+				}
+
+				buffer.put((byte) tagBytes.length);
+				buffer.put(tagBytes);
+			}
+
+			// data strings
+			buffer.put((byte) dataStrings.size());
+			for (Entry<String, String> entry : dataStrings.entrySet()) {
+				byte[] key = entry.getKey().getBytes(CHARSET);
+				byte[] value = entry.getValue().getBytes(CHARSET);
+
+				if (key.length > 256 || value.length > 256) {
+					throw new RobotCoreException(String.format("Telemetry elements cannot exceed 256 bytes [%s:%s]",
+							entry.getKey(), entry.getValue()));
+				}
+
+				buffer.put((byte) key.length);
+				buffer.put(key);
+				buffer.put((byte) value.length);
+				buffer.put(value);
+			}
+
+			// data numbers
+			buffer.put((byte) dataNumbers.size());
+			for (Entry<String, Float> entry : dataNumbers.entrySet()) {
+				byte[] key = entry.getKey().getBytes(CHARSET);
+				float val = entry.getValue();
 
-		// count the length of the tag
-		count += 1 + tag.getBytes(CHARSET).length;
+				if (key.length > 256) {
+					throw new RobotCoreException(String.format("Telemetry elements cannot exceed 256 bytes [%s:%f]",
+							entry.getKey(), val));
+				}
 
-		// count the string data
-		count += 1;
-		for(Entry<String, String> entry : dataStrings.entrySet()) {
-			count += 1 + entry.getKey().getBytes(CHARSET).length;
-			count += 1 + entry.getValue().getBytes(CHARSET).length;
+				buffer.put((byte) key.length);
+				buffer.put(key);
+				buffer.putFloat(val);
+			}
+		} catch (BufferOverflowException e) {
+			throw new RobotCoreException(String.format("Cannot send telemetry data; it does not fit in %d bytes",
+					buffer.limit() - start), e);
 		}
 
-		// count the number data
-		count += 1;
-		for (Entry<String, Float> entry: dataNumbers.entrySet()) {
-			count += 1 + entry.getKey().getBytes(CHARSET).length;
-			count += 4;
+		int totalSize = buffer.position() - start;
+		if (totalSize > RobocolConfig.MAX_PACKET_SIZE) {
+			throw new RobotCoreException(String.format("Cannot send telemetry data of %d bytes; max is %d",
+					totalSize, RobocolConfig.MAX_PACKET_SIZE));
 		}
 
-		return count;
+		buffer.putShort(start + 1, (short) (totalSize - HEADER_LENGTH));
+	}
+
+	@Override
+	public synchronized void readFrom(ByteBuffer buffer, int offset, int length) throws RobotCoreException {
+
+		clearData();
+
+		buffer.limit(offset + length);
+		buffer.position(offset + HEADER_LENGTH);
+
+		try {
+			// timestamp
+			timestamp = buffer.getLong();
+
+			// tag
+			int tagLength = TypeConversion.unsignedByteToInt(buffer.get());
+			if (tagLength == 0) {
+				tag = "";
+			} else {
+				byte[] tagBytes = new byte[tagLength];
+				buffer.get(tagBytes);
+				tag = new String(tagBytes , CHARSET);
+			}
+
+			// data strings
+			int stringDataPoints = buffer.get();
+			for (int i = 0; i < stringDataPoints; i++) {
+				int keyLength = TypeConversion.unsignedByteToInt(buffer.get());
+				byte[] keyBytes = new byte[keyLength];
+				buffer.get(keyBytes);
+
+				int valLength = TypeConversion.unsignedByteToInt(buffer.get());
+				byte[] valBytes = new byte[valLength];
+				buffer.get(valBytes);
+
+				String key = new String(keyBytes, CHARSET);
+				String val = new String(valBytes, CHARSET);
+
+				dataStrings.put(key, val);
+			}
+
+			// data numbers
+			int numberDataPoints = buffer.get();
+			for (int i = 0; i < numberDataPoints; i++) {
+				int keyLength = TypeConversion.unsignedByteToInt(buffer.get());
+				byte[] keyBytes = new byte[keyLength];
+				buffer.get(keyBytes);
+				String key = new String(keyBytes, CHARSET);
+				float val = buffer.getFloat();
+
+				dataNumbers.put(key, val);
+			}
+		} catch (BufferUnderflowException e) {
+			throw new RobotCoreException("Telemetry message is truncated", e);
+		}
 	}
 
 }
@@ -0,0 +1,124 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.exception.RobotCoreException;
+import com.qualcomm.robotcore.util.TypeConversion;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Sent by the receiver of a TelemetryDelta frame to confirm that it applied the frame
+ */
+public class TelemetryAck implements RobocolParsable {
+
+	private String tag = "";
+	private byte[] tagBytes = new byte[0];
+	private int sequence = 0;
+
+	public TelemetryAck() {
+		// default constructor
+	}
+
+	public TelemetryAck(String tag, int sequence) {
+		set(tag, sequence);
+	}
+
+	/**
+	 * Reuse this ack for another frame
+	 *
+	 * @param tag tag of the frame, as sent in the frame
+	 * @param sequence sequence number of the frame
+	 */
+	public void set(String tag, int sequence) {
+		if (!tag.equals(this.tag)) {
+			this.tag = tag;
+			this.tagBytes = TypeConversion.stringToUtf8(tag);
+		}
+		this.sequence = sequence;
+	}
+
+	/**
+	 * Get the tag of the confirmed frame, an empty string is the default tag
+	 *
+	 * @return tag
+	 */
+	public String getTag() {
+		return tag;
+	}
+
+	public int getSequence() {
+		return sequence;
+	}
+
+	@Override
+	public MsgType getRobocolMsgType() {
+		return MsgType.TELEMETRY_ACK;
+	}
+
+	@Override
+	public byte[] toByteArray() throws RobotCoreException {
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + getPayloadSize());
+		writeTo(buffer);
+		return buffer.array();
+	}
+
+	@Override
+	public void fromByteArray(byte[] byteArray) throws RobotCoreException {
+		readFrom(ByteBuffer.wrap(byteArray), 0, byteArray.length);
+	}
+
+	@Override
+	public void writeTo(ByteBuffer buffer) throws RobotCoreException {
+
+		/*
+		 * Data format
+		 *
+		 * bytes    | format | value
+		 * ---------|--------|---------------------------------
+		 *  1       | uint8  | length of tag (or 0 for default tag)
+		 *  varies  | UTF-8  | value of tag
+		 *  4       | int32  | sequence number of the confirmed frame
+		 */
+
+		if (tagBytes.length > 255) {
+			throw new RobotCoreException(String.format("Telemetry tag cannot exceed 255 bytes [%s]", tag));
+		}
+
+		try {
+			buffer.put(getRobocolMsgType().asByte());
+			buffer.putShort((short) getPayloadSize());
+
+			buffer.put((byte) tagBytes.length);
+			buffer.put(tagBytes);
+			buffer.putInt(sequence);
+		} catch (BufferOverflowException e) {
+			throw new RobotCoreException("Telemetry ack does not fit in buffer", e);
+		}
+	}
+
+	@Override
+	public void readFrom(ByteBuffer buffer, int offset, int length) throws RobotCoreException {
+		buffer.limit(offset + length);
+		buffer.position(offset + HEADER_LENGTH);
+
+		try {
+			tagBytes = new byte[TypeConversion.unsignedByteToInt(buffer.get())];
+			buffer.get(tagBytes);
+			tag = TypeConversion.utf8ToString(tagBytes);
+			sequence = buffer.getInt();
+		} catch (BufferUnderflowException e) {
+			throw new RobotCoreException("Telemetry ack is truncated", e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Telemetry ack - tag: %s, seq: %d", tag, sequence);
+	}
+
+	private int getPayloadSize() {
+		return 1 + tagBytes.length + 4;
+	}
+
+}
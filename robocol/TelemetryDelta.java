@@ -0,0 +1,428 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.exception.RobotCoreException;
+import com.qualcomm.robotcore.util.TypeConversion;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Telemetry frame that only carries the data points that changed since a base frame
+ * <p>
+ * A keyframe carries every data point and replaces the receiver's state for the tag. Any other
+ * frame is applied on top of the receiver's copy of the base frame. The receiver confirms each
+ * frame it applied with a TelemetryAck, and the sender always picks the newest confirmed frame as
+ * the base.
+ * <p>
+ * Keys are sent as IDs from a TelemetryKeyTable. A frame also carries the definitions of any IDs
+ * the receiver may not know yet.
+ * <p>
+ * A frame may be larger than one packet; TelemetryFragmenter splits such frames for peers that
+ * support PeerDiscovery.CAPABILITY_TELEMETRY_FRAGMENT.
+ *
+ * @see TelemetryDeltaEncoder
+ * @see TelemetryDeltaDecoder
+ */
+public class TelemetryDelta implements RobocolParsable {
+
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+
+	private static final byte FLAG_KEYFRAME = 0x01;
+
+	/**
+	 * Most string or number data points a frame can carry
+	 */
+	public static final int MAX_DATA_POINTS = 0xffff;
+
+	private static final int INITIAL_CAPACITY = 32;
+
+	/*
+	 * Size of everything but the data points and definitions: header, timestamp, tag length,
+	 * sequence, base sequence, flags and both data point counts
+	 */
+	private static final int FIXED_SIZE = HEADER_LENGTH + 8 + 1 + 4 + 4 + 1 + 2 + 2;
+
+	private String tag = ""; // an empty tag is treated as the default tag
+	private byte[] tagBytes = new byte[0];
+	private long timestamp = 0;
+	private int sequence = 0;
+	private int baseSequence = 0;
+	private boolean keyframe = false;
+
+	private int definitionCount = 0;
+	private int[] definitionIds = new int[INITIAL_CAPACITY];
+	private byte[][] definitionUtf8 = new byte[INITIAL_CAPACITY][];
+	private String[] definitionKeys = new String[INITIAL_CAPACITY];
+
+	private int stringCount = 0;
+	private int[] stringIds = new int[INITIAL_CAPACITY];
+	private byte[][] stringUtf8 = new byte[INITIAL_CAPACITY][];
+	private String[] stringValues = new String[INITIAL_CAPACITY];
+
+	private int numberCount = 0;
+	private int[] numberIds = new int[INITIAL_CAPACITY];
+	private float[] numberValues = new float[INITIAL_CAPACITY];
+
+	// encoded size of the definitions and data points added so far
+	private int variableSize = 0;
+
+	public TelemetryDelta() {
+		// default constructor
+	}
+
+	public TelemetryDelta(byte[] byteArray) throws RobotCoreException {
+		fromByteArray(byteArray);
+	}
+
+	/**
+	 * Reset this frame so it can be filled in again
+	 *
+	 * @param tag telemetry tag
+	 * @param sequence sequence number of this frame
+	 * @param baseSequence frame this frame is relative to; ignored for keyframes
+	 * @param keyframe true if this frame carries every data point
+	 */
+	public void set(String tag, int sequence, int baseSequence, boolean keyframe) {
+		if (!tag.equals(this.tag)) {
+			this.tag = tag;
+			this.tagBytes = tag.getBytes(CHARSET);
+		}
+		this.sequence = sequence;
+		this.baseSequence = baseSequence;
+		this.keyframe = keyframe;
+		clearData();
+	}
+
+	/**
+	 * Add the definition of a key ID
+	 *
+	 * @param id key ID
+	 * @param utf8 UTF-8 encoded key, kept by reference
+	 * @throws RobotCoreException if the key is longer than 255 bytes
+	 */
+	public void addDefinition(int id, byte[] utf8) throws RobotCoreException {
+		if (utf8.length > 255) {
+			throw new RobotCoreException(String.format("Telemetry elements cannot exceed 255 bytes [%s]",
+					new String(utf8, CHARSET)));
+		}
+
+		if (definitionCount == definitionIds.length) {
+			int capacity = definitionCount * 2;
+			definitionIds = Arrays.copyOf(definitionIds, capacity);
+			definitionUtf8 = Arrays.copyOf(definitionUtf8, capacity);
+			definitionKeys = Arrays.copyOf(definitionKeys, capacity);
+		}
+		definitionIds[definitionCount] = id;
+		definitionUtf8[definitionCount] = utf8;
+		definitionKeys[definitionCount] = null;
+		definitionCount++;
+		variableSize += TypeConversion.unsignedVarintSize(id) + 1 + utf8.length;
+	}
+
+	/**
+	 * Add a string data point
+	 *
+	 * @param id key ID
+	 * @param value new value
+	 * @throws RobotCoreException if the value is longer than 255 bytes, or there are too many
+	 * string data points
+	 */
+	public void addData(int id, String value) throws RobotCoreException {
+		addData(id, value.getBytes(CHARSET));
+		stringValues[stringCount - 1] = value;
+	}
+
+	private void addData(int id, byte[] utf8) throws RobotCoreException {
+		if (utf8.length > 255) {
+			throw new RobotCoreException(String.format("Telemetry elements cannot exceed 255 bytes [%s]",
+					new String(utf8, CHARSET)));
+		}
+
+		if (stringCount == MAX_DATA_POINTS) {
+			throw new RobotCoreException(String.format("Cannot have more than %d string data points", MAX_DATA_POINTS));
+		}
+
+		if (stringCount == stringIds.length) {
+			stringIds = Arrays.copyOf(stringIds, stringCount * 2);
+			stringUtf8 = Arrays.copyOf(stringUtf8, stringCount * 2);
+			stringValues = Arrays.copyOf(stringValues, stringCount * 2);
+		}
+		stringIds[stringCount] = id;
+		stringUtf8[stringCount] = utf8;
+		stringValues[stringCount] = null;
+		stringCount++;
+		variableSize += TypeConversion.unsignedVarintSize(id) + 1 + utf8.length;
+	}
+
+	/**
+	 * Add a number data point
+	 *
+	 * @param id key ID
+	 * @param value new value
+	 * @throws RobotCoreException if there are too many number data points
+	 */
+	public void addData(int id, float value) throws RobotCoreException {
+		if (numberCount == MAX_DATA_POINTS) {
+			throw new RobotCoreException(String.format("Cannot have more than %d number data points", MAX_DATA_POINTS));
+		}
+
+		if (numberCount == numberIds.length) {
+			numberIds = Arrays.copyOf(numberIds, numberCount * 2);
+			numberValues = Arrays.copyOf(numberValues, numberCount * 2);
+		}
+		numberIds[numberCount] = id;
+		numberValues[numberCount] = value;
+		numberCount++;
+		variableSize += TypeConversion.unsignedVarintSize(id) + 4;
+	}
+
+	/**
+	 * Remove all definitions and data points
+	 */
+	public void clearData() {
+		Arrays.fill(definitionUtf8, 0, definitionCount, null);
+		Arrays.fill(stringUtf8, 0, stringCount, null);
+		Arrays.fill(stringValues, 0, stringCount, null);
+		definitionCount = 0;
+		stringCount = 0;
+		numberCount = 0;
+		variableSize = 0;
+	}
+
+	/**
+	 * Size this frame will have once encoded, header included
+	 * <p>
+	 * The size is kept up to date as data is added, so nothing needs to be encoded to find it.
+	 *
+	 * @return size in bytes
+	 */
+	public int getEncodedSize() {
+		return FIXED_SIZE + tagBytes.length + TypeConversion.unsignedVarintSize(definitionCount) + variableSize;
+	}
+
+	/**
+	 * Get the tag, an empty string is the default tag
+	 *
+	 * @return tag
+	 */
+	public String getTag() {
+		if (tag.length() == 0) return Telemetry.DEFAULT_TAG;
+
+		return tag;
+	}
+
+	/**
+	 * Timestamp this frame was sent. Timestamp is in wall time.
+	 *
+	 * @return timestamp, or 0 if never sent
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public int getSequence() {
+		return sequence;
+	}
+
+	public int getBaseSequence() {
+		return baseSequence;
+	}
+
+	public boolean isKeyframe() {
+		return keyframe;
+	}
+
+	public int getDefinitionCount() {
+		return definitionCount;
+	}
+
+	public int getDefinitionId(int index) {
+		return definitionIds[index];
+	}
+
+	public String getDefinitionKey(int index) {
+		if (definitionKeys[index] == null) definitionKeys[index] = new String(definitionUtf8[index], CHARSET);
+		return definitionKeys[index];
+	}
+
+	public int getStringCount() {
+		return stringCount;
+	}
+
+	public int getStringId(int index) {
+		return stringIds[index];
+	}
+
+	public String getStringValue(int index) {
+		if (stringValues[index] == null) stringValues[index] = new String(stringUtf8[index], CHARSET);
+		return stringValues[index];
+	}
+
+	public int getNumberCount() {
+		return numberCount;
+	}
+
+	public int getNumberId(int index) {
+		return numberIds[index];
+	}
+
+	public float getNumberValue(int index) {
+		return numberValues[index];
+	}
+
+	@Override
+	public MsgType getRobocolMsgType() {
+		return MsgType.TELEMETRY_DELTA;
+	}
+
+	@Override
+	public byte[] toByteArray() throws RobotCoreException {
+		ByteBuffer buffer = ByteBuffer.allocate(getEncodedSize());
+		writeTo(buffer);
+		return buffer.array();
+	}
+
+	@Override
+	public void fromByteArray(byte[] byteArray) throws RobotCoreException {
+		readFrom(ByteBuffer.wrap(byteArray), 0, byteArray.length);
+	}
+
+	@Override
+	public void writeTo(ByteBuffer buffer) throws RobotCoreException {
+
+		/*
+		 * Data format
+		 *
+		 * bytes    | format | value
+		 * ---------|--------|---------------------------------
+		 *  8       | int64  | timestamp
+		 *  1       | uint8  | length of tag (or 0 for default tag)
+		 *  varies  | UTF-8  | value of tag
+		 *  4       | int32  | sequence number
+		 *  4       | int32  | base sequence number
+		 *  1       | uint8  | flags, 0x01 = keyframe
+		 *  varies  | varint | count of key definitions
+		 *          |        |
+		 *  varies  | varint | key ID
+		 *  1       | uint8  | length of key
+		 *  varies  | UTF-8  | value of key
+		 *          |        |
+		 *  2       | uint16 | count of string data points
+		 *          |        |
+		 *  varies  | varint | key ID
+		 *  1       | uint8  | length of value
+		 *  varies  | UTF-8  | value
+		 *          |        |
+		 *  2       | uint16 | count of number data points
+		 *          |        |
+		 *  varies  | varint | key ID
+		 *  4       | float  | value
+		 */
+
+		if (tagBytes.length > 255) {
+			throw new RobotCoreException(String.format("Telemetry tag cannot exceed 255 bytes [%s]", tag));
+		}
+
+		int totalSize = getEncodedSize();
+		if (totalSize > TelemetryFragment.MAX_FRAME_SIZE) {
+			throw new RobotCoreException(String.format("Cannot send telemetry frame of %d bytes; max is %d",
+					totalSize, TelemetryFragment.MAX_FRAME_SIZE));
+		}
+
+		timestamp = System.currentTimeMillis();
+
+		int start = buffer.position();
+
+		try {
+			buffer.put(getRobocolMsgType().asByte());
+			buffer.putShort((short) (totalSize - HEADER_LENGTH));
+
+			buffer.putLong(timestamp);
+			buffer.put((byte) tagBytes.length);
+			buffer.put(tagBytes);
+			buffer.putInt(sequence);
+			buffer.putInt(baseSequence);
+			buffer.put(keyframe ? FLAG_KEYFRAME : 0);
+
+			TypeConversion.putUnsignedVarint(buffer, definitionCount);
+			for (int i = 0; i < definitionCount; i++) {
+				byte[] keyBytes = definitionUtf8[i];
+				TypeConversion.putUnsignedVarint(buffer, definitionIds[i]);
+				buffer.put((byte) keyBytes.length);
+				buffer.put(keyBytes);
+			}
+
+			buffer.putShort((short) stringCount);
+			for (int i = 0; i < stringCount; i++) {
+				TypeConversion.putUnsignedVarint(buffer, stringIds[i]);
+				buffer.put((byte) stringUtf8[i].length);
+				buffer.put(stringUtf8[i]);
+			}
+
+			buffer.putShort((short) numberCount);
+			for (int i = 0; i < numberCount; i++) {
+				TypeConversion.putUnsignedVarint(buffer, numberIds[i]);
+				buffer.putFloat(numberValues[i]);
+			}
+		} catch (BufferOverflowException e) {
+			throw new RobotCoreException(String.format("Cannot send telemetry frame of %d bytes; it does not fit in %d bytes",
+					totalSize, buffer.limit() - start), e);
+		}
+	}
+
+	@Override
+	public void readFrom(ByteBuffer buffer, int offset, int length) throws RobotCoreException {
+
+		clearData();
+
+		buffer.limit(offset + length);
+		buffer.position(offset + HEADER_LENGTH);
+
+		try {
+			timestamp = buffer.getLong();
+			tagBytes = getBytes(buffer);
+			tag = new String(tagBytes, CHARSET);
+			sequence = buffer.getInt();
+			baseSequence = buffer.getInt();
+			keyframe = (buffer.get() & FLAG_KEYFRAME) != 0;
+
+			int definitions = TypeConversion.getUnsignedVarint(buffer);
+			for (int i = 0; i < definitions; i++) {
+				int id = TypeConversion.getUnsignedVarint(buffer);
+				addDefinition(id, getBytes(buffer));
+			}
+
+			int stringDataPoints = buffer.getShort() & 0xffff;
+			for (int i = 0; i < stringDataPoints; i++) {
+				int id = TypeConversion.getUnsignedVarint(buffer);
+				addData(id, getBytes(buffer));
+			}
+
+			int numberDataPoints = buffer.getShort() & 0xffff;
+			for (int i = 0; i < numberDataPoints; i++) {
+				int id = TypeConversion.getUnsignedVarint(buffer);
+				addData(id, buffer.getFloat());
+			}
+		} catch (BufferUnderflowException e) {
+			throw new RobotCoreException("Telemetry frame is truncated", e);
+		} catch (IllegalArgumentException e) {
+			throw new RobotCoreException("Telemetry frame is malformed", e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Telemetry frame - tag: %s, seq: %d, base: %d, keyframe: %s, definitions: %d, points: %d",
+				getTag(), sequence, baseSequence, keyframe, definitionCount, stringCount + numberCount);
+	}
+
+	private static byte[] getBytes(ByteBuffer buffer) {
+		byte[] bytes = new byte[TypeConversion.unsignedByteToInt(buffer.get())];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+}
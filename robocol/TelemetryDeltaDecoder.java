@@ -0,0 +1,107 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rebuilds Telemetry from TelemetryDelta frames
+ * <p>
+ * Every frame that is applied should be confirmed to the sender with a TelemetryAck. Frames whose
+ * base frame or keys are not known are dropped; the sender will fall back to a keyframe.
+ * <p>
+ * This class is not thread safe.
+ */
+public class TelemetryDeltaDecoder {
+
+	private static class State {
+		int sequence;
+		boolean valid = false;
+		final Map<String, String> dataStrings = new HashMap<String, String>();
+		final Map<String, Float> dataNumbers = new HashMap<String, Float>();
+	}
+
+	private final Map<String, State[]> streams = new HashMap<String, State[]>();
+	private final String[] keys = new String[TelemetryKeyTable.MAX_KEYS];
+
+	/**
+	 * Apply a frame
+	 *
+	 * @param frame received frame
+	 * @param telemetry filled in with the full telemetry data for the frame's tag
+	 * @return true if the frame was applied and should be acknowledged; false if it was dropped
+	 */
+	public boolean decode(TelemetryDelta frame, Telemetry telemetry) {
+
+		// learn new keys even if the rest of the frame can't be used
+		for (int i = 0; i < frame.getDefinitionCount(); i++) {
+			int id = frame.getDefinitionId(i);
+			if (id < keys.length) keys[id] = frame.getDefinitionKey(i);
+		}
+
+		for (int i = 0; i < frame.getStringCount(); i++) {
+			if (lookupKey(frame.getStringId(i)) == null) return false;
+		}
+		for (int i = 0; i < frame.getNumberCount(); i++) {
+			if (lookupKey(frame.getNumberId(i)) == null) return false;
+		}
+
+		State[] history = streams.get(frame.getTag());
+		if (history == null) {
+			history = new State[TelemetryDeltaEncoder.HISTORY_SIZE];
+			for (int i = 0; i < history.length; i++) history[i] = new State();
+			streams.put(frame.getTag(), history);
+		}
+
+		State base = null;
+		if (!frame.isKeyframe()) {
+			base = history[slot(frame.getBaseSequence())];
+			if (!base.valid || base.sequence != frame.getBaseSequence()) return false;
+		}
+
+		State state = history[slot(frame.getSequence())];
+		if (state != base) {
+			state.dataStrings.clear();
+			state.dataNumbers.clear();
+			if (base != null) {
+				state.dataStrings.putAll(base.dataStrings);
+				state.dataNumbers.putAll(base.dataNumbers);
+			}
+		}
+		for (int i = 0; i < frame.getStringCount(); i++) {
+			state.dataStrings.put(keys[frame.getStringId(i)], frame.getStringValue(i));
+		}
+		for (int i = 0; i < frame.getNumberCount(); i++) {
+			state.dataNumbers.put(keys[frame.getNumberId(i)], frame.getNumberValue(i));
+		}
+		state.sequence = frame.getSequence();
+		state.valid = true;
+
+		telemetry.clearData();
+		telemetry.setTag(frame.getTag());
+		for (Map.Entry<String, String> entry : state.dataStrings.entrySet()) {
+			telemetry.addData(entry.getKey(), entry.getValue());
+		}
+		for (Map.Entry<String, Float> entry : state.dataNumbers.entrySet()) {
+			telemetry.addData(entry.getKey(), entry.getValue());
+		}
+
+		return true;
+	}
+
+	/**
+	 * Forget all received state; call this when the sender changes
+	 */
+	public void reset() {
+		streams.clear();
+		for (int i = 0; i < keys.length; i++) keys[i] = null;
+	}
+
+	private String lookupKey(int id) {
+		if (id < 0 || id >= keys.length) return null;
+		return keys[id];
+	}
+
+	private static int slot(int sequence) {
+		return (sequence & Integer.MAX_VALUE) % TelemetryDeltaEncoder.HISTORY_SIZE;
+	}
+}
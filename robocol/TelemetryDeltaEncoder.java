@@ -0,0 +1,235 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.exception.RobotCoreException;
+import com.qualcomm.robotcore.util.Range;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Turns Telemetry into TelemetryDelta frames
+ * <p>
+ * Each tag is its own stream. A frame only carries the data points that were added or changed
+ * since the newest frame the receiver acknowledged. A keyframe carrying every data point is sent
+ * when nothing usable has been acknowledged, when a data point of the acknowledged frame is no
+ * longer present, and at least once every keyframe interval so the receiver can recover from loss.
+ * <p>
+ * Keys are replaced by IDs from a TelemetryKeyTable shared by all tags. A key is defined in every
+ * frame that uses it until the receiver acknowledges one of those frames, and again in every
+ * keyframe, so a keyframe can always be decoded on its own.
+ * <p>
+ * This class is not thread safe.
+ */
+public class TelemetryDeltaEncoder {
+
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 50;
+
+	/**
+	 * Number of sent frames remembered per tag; acks for older frames are ignored
+	 */
+	public static final int HISTORY_SIZE = 16;
+
+	private static class Snapshot {
+		int sequence;
+		boolean valid = false;
+		final Map<String, String> dataStrings = new HashMap<String, String>();
+		final Map<String, Float> dataNumbers = new HashMap<String, Float>();
+		int[] definedIds = new int[32];
+		int definedCount = 0;
+
+		void addDefinedId(int id) {
+			if (definedCount == definedIds.length) definedIds = Arrays.copyOf(definedIds, definedCount * 2);
+			definedIds[definedCount++] = id;
+		}
+	}
+
+	private static class Stream {
+		int nextSequence = 0;
+		int ackedSequence = 0;
+		boolean acked = false;
+		int framesSinceKeyframe = 0;
+		final Snapshot[] history = new Snapshot[HISTORY_SIZE];
+
+		Stream() {
+			for (int i = 0; i < history.length; i++) history[i] = new Snapshot();
+		}
+
+		Snapshot lookup(int sequence) {
+			Snapshot snapshot = history[slot(sequence)];
+			if (snapshot.valid && snapshot.sequence == sequence) return snapshot;
+			return null;
+		}
+	}
+
+	private final Map<String, Stream> streams = new HashMap<String, Stream>();
+	private final TelemetryKeyTable keyTable = new TelemetryKeyTable();
+
+	private int keyframeInterval = DEFAULT_KEYFRAME_INTERVAL;
+
+	/**
+	 * Set how often a keyframe is sent, even if the receiver is acknowledging frames
+	 *
+	 * @param keyframeInterval number of frames per tag between keyframes, 1 sends only keyframes
+	 */
+	public void setKeyframeInterval(int keyframeInterval) {
+		Range.throwIfRangeIsInvalid(keyframeInterval, 1, Integer.MAX_VALUE);
+		this.keyframeInterval = keyframeInterval;
+	}
+
+	public int getKeyframeInterval() {
+		return keyframeInterval;
+	}
+
+	/**
+	 * Encode the current telemetry data into a frame
+	 *
+	 * @param telemetry telemetry data to send
+	 * @param frame frame to fill in, reused between calls
+	 * @throws RobotCoreException if a key is too long, or a single frame uses more than
+	 * TelemetryKeyTable.MAX_KEYS keys
+	 */
+	public void encode(Telemetry telemetry, TelemetryDelta frame) throws RobotCoreException {
+		synchronized (telemetry) {
+			if (encode(telemetry, frame, false)) return;
+
+			// the key table filled up; start over with a fresh table
+			RobotLog.w("Telemetry key table is full, resetting it");
+			reset();
+			if (encode(telemetry, frame, true)) return;
+		}
+
+		throw new RobotCoreException(String.format("Cannot send telemetry with more than %d keys",
+				TelemetryKeyTable.MAX_KEYS));
+	}
+
+	/**
+	 * The receiver has applied a frame
+	 *
+	 * @param ack acknowledgement from the receiver
+	 */
+	public void acknowledge(TelemetryAck ack) {
+		String tag = ack.getTag();
+		if (tag.length() == 0) tag = Telemetry.DEFAULT_TAG;
+
+		Stream stream = streams.get(tag);
+		if (stream == null) return; // not a tag we sent
+
+		int sequence = ack.getSequence();
+		Snapshot snapshot = stream.lookup(sequence);
+		if (snapshot == null) return; // too old, or never sent
+
+		// the receiver now knows every key defined in that frame
+		for (int i = 0; i < snapshot.definedCount; i++) {
+			keyTable.confirm(snapshot.definedIds[i]);
+		}
+
+		// acks may arrive out of order; only move forward
+		if (!stream.acked || sequence - stream.ackedSequence > 0) {
+			stream.ackedSequence = sequence;
+			stream.acked = true;
+		}
+	}
+
+	/**
+	 * Forget everything that was sent, the next frame of each tag will be a keyframe and every key
+	 * will be defined again
+	 * <p>
+	 * Call this when the receiver changes.
+	 */
+	public void reset() {
+		streams.clear();
+		keyTable.reset();
+	}
+
+	/*
+	 * Returns false if the key table is full
+	 */
+	private boolean encode(Telemetry telemetry, TelemetryDelta frame, boolean forceKeyframe) throws RobotCoreException {
+		String tag = telemetry.getTag();
+		Stream stream = streams.get(tag);
+		if (stream == null) {
+			stream = new Stream();
+			streams.put(tag, stream);
+		}
+
+		int sequence = stream.nextSequence++;
+
+		// the base must not be the slot this frame is about to overwrite
+		Snapshot base = null;
+		if (stream.acked && sequence - stream.ackedSequence < HISTORY_SIZE) {
+			base = stream.lookup(stream.ackedSequence);
+		}
+
+		// a delta can't remove data points; the receiver only drops them on a keyframe
+		if (base != null && !hasAllKeys(telemetry, base)) base = null;
+
+		boolean keyframe = (forceKeyframe || base == null || stream.framesSinceKeyframe >= keyframeInterval);
+		if (keyframe) {
+			base = null;
+			stream.framesSinceKeyframe = 0;
+		}
+		stream.framesSinceKeyframe++;
+
+		frame.set(tag, sequence, (base == null) ? sequence : base.sequence, keyframe);
+		keyTable.startFrame();
+
+		// the receiver's state after this frame is the base plus whatever this frame carries
+		Snapshot snapshot = stream.history[slot(sequence)];
+		snapshot.valid = true;
+		snapshot.sequence = sequence;
+		snapshot.definedCount = 0;
+		snapshot.dataStrings.clear();
+		snapshot.dataNumbers.clear();
+		if (base != null) {
+			snapshot.dataStrings.putAll(base.dataStrings);
+			snapshot.dataNumbers.putAll(base.dataNumbers);
+		}
+
+		for (Entry<String, String> entry : telemetry.getDataStrings().entrySet()) {
+			String previous = snapshot.dataStrings.put(entry.getKey(), entry.getValue());
+			if (base == null || !entry.getValue().equals(previous)) {
+				TelemetryKeyTable.Key key = keyTable.lookup(entry.getKey());
+				if (key == null) return false;
+				define(key, keyframe, frame, snapshot);
+				frame.addData(key.getId(), entry.getValue());
+			}
+		}
+		for (Entry<String, Float> entry : telemetry.getDataNumbers().entrySet()) {
+			Float previous = snapshot.dataNumbers.put(entry.getKey(), entry.getValue());
+			if (base == null || !entry.getValue().equals(previous)) {
+				TelemetryKeyTable.Key key = keyTable.lookup(entry.getKey());
+				if (key == null) return false;
+				define(key, keyframe, frame, snapshot);
+				frame.addData(key.getId(), entry.getValue());
+			}
+		}
+
+		return true;
+	}
+
+	private void define(TelemetryKeyTable.Key key, boolean keyframe, TelemetryDelta frame, Snapshot snapshot) throws RobotCoreException {
+		if (keyTable.needsDefinition(key, keyframe)) {
+			frame.addDefinition(key.getId(), key.getUtf8());
+			snapshot.addDefinedId(key.getId());
+		}
+	}
+
+	private static boolean hasAllKeys(Telemetry telemetry, Snapshot base) {
+		Map<String, String> dataStrings = telemetry.getDataStrings();
+		for (String key : base.dataStrings.keySet()) {
+			if (!dataStrings.containsKey(key)) return false;
+		}
+		Map<String, Float> dataNumbers = telemetry.getDataNumbers();
+		for (String key : base.dataNumbers.keySet()) {
+			if (!dataNumbers.containsKey(key)) return false;
+		}
+		return true;
+	}
+
+	private static int slot(int sequence) {
+		return (sequence & Integer.MAX_VALUE) % HISTORY_SIZE;
+	}
+}
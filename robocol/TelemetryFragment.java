@@ -0,0 +1,199 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.exception.RobotCoreException;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * One piece of a telemetry frame that is too large to send in a single packet
+ * <p>
+ * The frame is encoded as usual, header included, and the encoded bytes are split into
+ * fragments. Every fragment of a frame has the same frame ID and fragment count.
+ *
+ * @see TelemetryFragmenter
+ * @see TelemetryReassembler
+ */
+public class TelemetryFragment implements RobocolParsable {
+
+	/**
+	 * Largest frame that can be fragmented, limited by the uint16 payload length in the header
+	 */
+	public static final int MAX_FRAME_SIZE = HEADER_LENGTH + 0xffff;
+
+	/**
+	 * Most fragments a frame can be split into
+	 */
+	public static final int MAX_FRAGMENTS = 255;
+
+	/**
+	 * Size of a fragment that carries no frame bytes
+	 */
+	public static final int OVERHEAD = HEADER_LENGTH + 2 + 1 + 1 + 4 + 4;
+
+	private int frameId = 0;
+	private int index = 0;
+	private int count = 0;
+	private int frameOffset = 0;
+	private int frameLength = 0;
+
+	// the fragment's bytes, by reference
+	private byte[] data = new byte[0];
+	private int dataOffset = 0;
+	private int dataLength = 0;
+
+	public TelemetryFragment() {
+		// default constructor
+	}
+
+	public TelemetryFragment(byte[] byteArray) throws RobotCoreException {
+		fromByteArray(byteArray);
+	}
+
+	/**
+	 * Reuse this fragment for another piece of a frame
+	 *
+	 * @param frameId ID shared by every fragment of the frame, only the low 16 bits are sent
+	 * @param index index of this fragment, starting at 0
+	 * @param count number of fragments in the frame
+	 * @param frame encoded frame, kept by reference until this fragment is written
+	 * @param frameOffset where this fragment starts within the frame
+	 * @param frameLength total length of the frame
+	 * @param length number of frame bytes in this fragment
+	 */
+	public void set(int frameId, int index, int count, byte[] frame, int frameOffset, int frameLength, int length) {
+		this.frameId = frameId & 0xffff;
+		this.index = index;
+		this.count = count;
+		this.data = frame;
+		this.dataOffset = frameOffset;
+		this.frameOffset = frameOffset;
+		this.frameLength = frameLength;
+		this.dataLength = length;
+	}
+
+	public int getFrameId() {
+		return frameId;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return where this fragment starts within the frame
+	 */
+	public int getFrameOffset() {
+		return frameOffset;
+	}
+
+	/**
+	 * @return total length of the frame
+	 */
+	public int getFrameLength() {
+		return frameLength;
+	}
+
+	/**
+	 * @return array holding this fragment's bytes, starting at getDataOffset()
+	 */
+	public byte[] getData() {
+		return data;
+	}
+
+	public int getDataOffset() {
+		return dataOffset;
+	}
+
+	public int getDataLength() {
+		return dataLength;
+	}
+
+	@Override
+	public MsgType getRobocolMsgType() {
+		return MsgType.TELEMETRY_FRAGMENT;
+	}
+
+	@Override
+	public byte[] toByteArray() throws RobotCoreException {
+		ByteBuffer buffer = ByteBuffer.allocate(OVERHEAD + dataLength);
+		writeTo(buffer);
+		return buffer.array();
+	}
+
+	@Override
+	public void fromByteArray(byte[] byteArray) throws RobotCoreException {
+		readFrom(ByteBuffer.wrap(byteArray), 0, byteArray.length);
+	}
+
+	@Override
+	public void writeTo(ByteBuffer buffer) throws RobotCoreException {
+
+		/*
+		 * Data format
+		 *
+		 * bytes    | format | value
+		 * ---------|--------|---------------------------------
+		 *  2       | uint16 | frame ID
+		 *  1       | uint8  | fragment index
+		 *  1       | uint8  | fragment count
+		 *  4       | int32  | offset of this fragment within the frame
+		 *  4       | int32  | total length of the frame
+		 *  varies  | bytes  | frame bytes, up to the end of the message
+		 */
+
+		try {
+			buffer.put(getRobocolMsgType().asByte());
+			buffer.putShort((short) (OVERHEAD - HEADER_LENGTH + dataLength));
+
+			buffer.putShort((short) frameId);
+			buffer.put((byte) index);
+			buffer.put((byte) count);
+			buffer.putInt(frameOffset);
+			buffer.putInt(frameLength);
+			buffer.put(data, dataOffset, dataLength);
+		} catch (BufferOverflowException e) {
+			throw new RobotCoreException("Telemetry fragment does not fit in buffer", e);
+		}
+	}
+
+	/**
+	 * Read a fragment; the fragment keeps a reference to the buffer's backing array
+	 */
+	@Override
+	public void readFrom(ByteBuffer buffer, int offset, int length) throws RobotCoreException {
+		if (!buffer.hasArray()) {
+			throw new RobotCoreException("Telemetry fragments can only be read from array backed buffers");
+		}
+
+		buffer.limit(offset + length);
+		buffer.position(offset + HEADER_LENGTH);
+
+		try {
+			frameId = buffer.getShort() & 0xffff;
+			index = buffer.get() & 0xff;
+			count = buffer.get() & 0xff;
+			frameOffset = buffer.getInt();
+			frameLength = buffer.getInt();
+		} catch (BufferUnderflowException e) {
+			throw new RobotCoreException("Telemetry fragment is truncated", e);
+		}
+
+		// the frame bytes stay in the received buffer
+		data = buffer.array();
+		dataOffset = buffer.arrayOffset() + buffer.position();
+		dataLength = buffer.remaining();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Telemetry fragment - frame: %d, fragment: %d of %d, bytes: %d",
+				frameId, index + 1, count, dataLength);
+	}
+
+}
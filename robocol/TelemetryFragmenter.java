@@ -0,0 +1,84 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.exception.RobotCoreException;
+import com.qualcomm.robotcore.util.Range;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Sends telemetry frames, splitting any frame larger than one packet into TelemetryFragments
+ * <p>
+ * The frame's size is known before it is encoded, so a frame that fits is written straight to
+ * the socket and a frame that doesn't is encoded once into a scratch buffer and split from there.
+ * <p>
+ * This class is not thread safe.
+ */
+public class TelemetryFragmenter {
+
+	/**
+	 * Default size of each fragment, chosen so a fragment fits in one Ethernet frame
+	 */
+	public static final int DEFAULT_FRAGMENT_SIZE = RobocolConfig.DEFAULT_MAX_PACKED_SIZE;
+
+	private final RobocolDatagramSocket socket;
+	private final TelemetryFragment fragment = new TelemetryFragment();
+
+	private ByteBuffer frameBuffer = null; // allocated the first time a frame needs it
+	private int nextFrameId = 0;
+	private int fragmentSize = DEFAULT_FRAGMENT_SIZE;
+
+	/**
+	 * Constructor
+	 *
+	 * @param socket socket to send frames and fragments on
+	 */
+	public TelemetryFragmenter(RobocolDatagramSocket socket) {
+		this.socket = socket;
+	}
+
+	/**
+	 * Set the size of each fragment, header included
+	 *
+	 * @param fragmentSize size in bytes
+	 */
+	public void setFragmentSize(int fragmentSize) {
+		Range.throwIfRangeIsInvalid(fragmentSize, TelemetryFragment.OVERHEAD + 1, RobocolConfig.MAX_PACKET_SIZE);
+		this.fragmentSize = fragmentSize;
+	}
+
+	public int getFragmentSize() {
+		return fragmentSize;
+	}
+
+	/**
+	 * Send a frame
+	 *
+	 * @param frame frame to send
+	 * @throws RobotCoreException if the frame is too large even for fragmentation
+	 */
+	public void send(TelemetryDelta frame) throws RobotCoreException {
+		int frameLength = frame.getEncodedSize();
+		if (frameLength <= RobocolConfig.MAX_PACKET_SIZE) {
+			socket.send(frame);
+			return;
+		}
+
+		int chunkSize = fragmentSize - TelemetryFragment.OVERHEAD;
+		int count = (frameLength + chunkSize - 1) / chunkSize;
+		if (count > TelemetryFragment.MAX_FRAGMENTS) {
+			throw new RobotCoreException(String.format("Cannot send telemetry frame of %d bytes in %d byte fragments",
+					frameLength, fragmentSize));
+		}
+
+		if (frameBuffer == null) frameBuffer = ByteBuffer.allocate(TelemetryFragment.MAX_FRAME_SIZE);
+		frameBuffer.clear();
+		frame.writeTo(frameBuffer);
+
+		int frameId = nextFrameId++;
+		for (int i = 0; i < count; i++) {
+			int offset = i * chunkSize;
+			fragment.set(frameId, i, count, frameBuffer.array(), offset, frameLength, Math.min(chunkSize, frameLength - offset));
+			socket.send(fragment);
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.exception.RobotCoreException;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sender side table of telemetry keys
+ * <p>
+ * Each key is given a small integer ID the first time it is seen, and its UTF-8 encoding is
+ * cached so frames can be built without encoding the key again. A key's definition has to be
+ * sent along with the ID until the receiver acknowledges a frame that carried the definition.
+ * <p>
+ * This class is not thread safe.
+ */
+public class TelemetryKeyTable {
+
+	/**
+	 * Most keys the table will hold before it has to be reset
+	 */
+	public static final int MAX_KEYS = 1024;
+
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+
+	public static class Key {
+		private final int id;
+		private final String key;
+		private final byte[] utf8;
+		private boolean confirmed = false;
+		private int lastDefinedPass = -1;
+
+		private Key(int id, String key) throws RobotCoreException {
+			this.id = id;
+			this.key = key;
+			this.utf8 = key.getBytes(CHARSET);
+
+			if (utf8.length > 255) {
+				throw new RobotCoreException(String.format("Telemetry elements cannot exceed 255 bytes [%s]", key));
+			}
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		/**
+		 * Get the cached UTF-8 encoding of this key
+		 *
+		 * @return reference to the encoded key, do not modify
+		 */
+		public byte[] getUtf8() {
+			return utf8;
+		}
+
+		/**
+		 * @return true if the receiver is known to have this key's definition
+		 */
+		public boolean isConfirmed() {
+			return confirmed;
+		}
+	}
+
+	private final Map<String, Key> keys = new HashMap<String, Key>();
+	private final List<Key> keysById = new ArrayList<Key>();
+	private int pass = 0;
+
+	/**
+	 * Look up a key, giving it a new ID if needed
+	 *
+	 * @param key telemetry key
+	 * @return key entry, or null if the key is new and the table is full
+	 * @throws RobotCoreException if the key is too long
+	 */
+	public Key lookup(String key) throws RobotCoreException {
+		Key entry = keys.get(key);
+		if (entry != null) return entry;
+
+		if (keysById.size() >= MAX_KEYS) return null;
+
+		entry = new Key(keysById.size(), key);
+		keys.put(key, entry);
+		keysById.add(entry);
+		return entry;
+	}
+
+	/**
+	 * Start a new frame; each key needs to be defined at most once per frame
+	 */
+	public void startFrame() {
+		pass++;
+	}
+
+	/**
+	 * Check if a key's definition has to be added to the current frame, and if so mark it as added
+	 *
+	 * @param entry key entry
+	 * @param force true to define the key even if the receiver confirmed it
+	 * @return true if the definition has to be added to the current frame
+	 */
+	public boolean needsDefinition(Key entry, boolean force) {
+		if (entry.lastDefinedPass == pass) return false;
+		if (entry.confirmed && !force) return false;
+
+		entry.lastDefinedPass = pass;
+		return true;
+	}
+
+	/**
+	 * The receiver has the definition of a key
+	 *
+	 * @param id key ID
+	 */
+	public void confirm(int id) {
+		if (id >= 0 && id < keysById.size()) keysById.get(id).confirmed = true;
+	}
+
+	public int size() {
+		return keysById.size();
+	}
+
+	/**
+	 * Forget all keys; IDs will be handed out again from 0
+	 */
+	public void reset() {
+		keys.clear();
+		keysById.clear();
+	}
+}
@@ -0,0 +1,196 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.exception.RobotCoreException;
+import com.qualcomm.robotcore.util.RobotLog;
+
+import java.net.DatagramPacket;
+
+/**
+ * Joins received TelemetryFragments back into telemetry frames
+ * <p>
+ * Any other message is passed through as is. A completed frame is handed to the wrapped callback
+ * as a datagram of its own, which is only valid until the callback returns.
+ * <p>
+ * At most a fixed number of frames are reassembled at once; when another frame starts, the
+ * oldest incomplete frame is dropped. A frame that is not complete within the timeout is dropped
+ * too. Memory use is therefore bounded by the number of pending frames times
+ * TelemetryFragment.MAX_FRAME_SIZE.
+ * <p>
+ * This class is not thread safe.
+ */
+public class TelemetryReassembler implements RobocolDatagramSocket.RecvCallback {
+
+	public static final int DEFAULT_TIMEOUT = 1000; // in milliseconds
+	public static final int DEFAULT_MAX_PENDING_FRAMES = 4;
+
+	private static class PendingFrame {
+		boolean active = false;
+		int frameId;
+		int count;
+		int frameLength;
+		int received;
+		long started;
+		final boolean[] haveFragment = new boolean[TelemetryFragment.MAX_FRAGMENTS];
+		byte[] data = new byte[0];
+	}
+
+	private final RobocolDatagramSocket.RecvCallback callback;
+	private final PendingFrame[] pending;
+	private final long timeout;
+
+	private final TelemetryFragment fragment = new TelemetryFragment();
+	private final DatagramPacket packetFrame = new DatagramPacket(RobocolParsable.EMPTY_HEADER_BUFFER, 0);
+	private final RobocolDatagram msgFrame = new RobocolDatagram(packetFrame);
+
+	private long completedFrames = 0;
+	private long droppedFrames = 0;
+	private long invalidFragments = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param callback callback for each message and completed frame
+	 */
+	public TelemetryReassembler(RobocolDatagramSocket.RecvCallback callback) {
+		this(callback, DEFAULT_TIMEOUT, DEFAULT_MAX_PENDING_FRAMES);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param callback callback for each message and completed frame
+	 * @param timeout time a frame has to complete, in milliseconds
+	 * @param maxPendingFrames most frames reassembled at once
+	 */
+	public TelemetryReassembler(RobocolDatagramSocket.RecvCallback callback, int timeout, int maxPendingFrames) {
+		if (maxPendingFrames < 1) throw new IllegalArgumentException("maxPendingFrames must be at least 1");
+
+		this.callback = callback;
+		this.timeout = timeout * 1000000L;
+		this.pending = new PendingFrame[maxPendingFrames];
+		for (int i = 0; i < pending.length; i++) pending[i] = new PendingFrame();
+	}
+
+	@Override
+	public void onRecv(RobocolDatagram datagram) {
+		if (datagram.getMsgType() != RobocolParsable.MsgType.TELEMETRY_FRAGMENT) {
+			callback.onRecv(datagram);
+			return;
+		}
+
+		try {
+			fragment.readFrom(datagram.getByteBuffer(), datagram.getOffset(), datagram.getLength());
+		} catch (RobotCoreException e) {
+			RobotLog.w("Dropping telemetry fragment: " + e.toString());
+			invalidFragments++;
+			return;
+		}
+
+		if (!isValid(fragment)) {
+			invalidFragments++;
+			return;
+		}
+
+		long now = System.nanoTime();
+		PendingFrame frame = findOrStart(fragment, now);
+
+		int index = fragment.getIndex();
+		if (!frame.haveFragment[index]) {
+			System.arraycopy(fragment.getData(), fragment.getDataOffset(), frame.data, fragment.getFrameOffset(), fragment.getDataLength());
+			frame.haveFragment[index] = true;
+			frame.received++;
+		}
+
+		if (frame.received == frame.count) {
+			frame.active = false;
+			completedFrames++;
+
+			packetFrame.setData(frame.data, 0, frame.frameLength);
+			packetFrame.setAddress(datagram.getAddress());
+			if (datagram.getPacket().getPort() >= 0) packetFrame.setPort(datagram.getPacket().getPort());
+			callback.onRecv(msgFrame);
+		}
+	}
+
+	/**
+	 * @return number of frames put back together
+	 */
+	public long getCompletedFrames() {
+		return completedFrames;
+	}
+
+	/**
+	 * @return number of frames dropped because they timed out or were pushed out by newer frames
+	 */
+	public long getDroppedFrames() {
+		return droppedFrames;
+	}
+
+	/**
+	 * @return number of fragments that could not be used at all
+	 */
+	public long getInvalidFragments() {
+		return invalidFragments;
+	}
+
+	/**
+	 * Drop every incomplete frame
+	 */
+	public void reset() {
+		for (PendingFrame frame : pending) frame.active = false;
+	}
+
+	private static boolean isValid(TelemetryFragment fragment) {
+		int frameLength = fragment.getFrameLength();
+		int offset = fragment.getFrameOffset();
+
+		return fragment.getIndex() < fragment.getCount()
+				&& frameLength >= RobocolParsable.HEADER_LENGTH
+				&& frameLength <= TelemetryFragment.MAX_FRAME_SIZE
+				&& offset >= 0
+				&& offset <= frameLength - fragment.getDataLength();
+	}
+
+	private PendingFrame findOrStart(TelemetryFragment fragment, long now) {
+		PendingFrame oldest = null;
+		PendingFrame free = null;
+
+		for (PendingFrame frame : pending) {
+			if (frame.active && now - frame.started > timeout) {
+				RobotLog.v("Telemetry frame " + frame.frameId + " timed out");
+				frame.active = false;
+				droppedFrames++;
+			}
+
+			if (!frame.active) {
+				if (free == null) free = frame;
+				continue;
+			}
+
+			if (frame.frameId == fragment.getFrameId()
+					&& frame.count == fragment.getCount()
+					&& frame.frameLength == fragment.getFrameLength()) {
+				return frame;
+			}
+
+			if (oldest == null || frame.started - oldest.started < 0) oldest = frame;
+		}
+
+		if (free == null) {
+			// all slots busy, give up on the oldest frame
+			free = oldest;
+			droppedFrames++;
+		}
+
+		free.active = true;
+		free.frameId = fragment.getFrameId();
+		free.count = fragment.getCount();
+		free.frameLength = fragment.getFrameLength();
+		free.received = 0;
+		free.started = now;
+		for (int i = 0; i < free.count; i++) free.haveFragment[i] = false;
+		if (free.data.length < free.frameLength) free.data = new byte[free.frameLength];
+
+		return free;
+	}
+}
@@ -35,6 +35,8 @@ import com.qualcomm.robotcore.eventloop.EventLoopManager;
 import com.qualcomm.robotcore.exception.RobotCoreException;
 import com.qualcomm.robotcore.robocol.RobocolDatagram;
 import com.qualcomm.robotcore.robocol.RobocolDatagramSocket;
+import com.qualcomm.robotcore.robocol.RobocolSendQueue;
+import com.qualcomm.robotcore.util.FrameworkScheduler;
 import com.qualcomm.robotcore.util.RobotLog;
 
 import java.net.InetAddress;
@@ -56,6 +58,8 @@ public class Robot {
 	public void start(InetAddress driverStationAddr, EventLoop eventLoop) throws RobotCoreException {
 		try {
 			socket.listen(driverStationAddr);
+			// keep the event loop and receive threads out of socket sends
+			socket.startSender(FrameworkScheduler.getDefault());
 			eventLoopManager.start(eventLoop);
 		} catch (SocketException e) {
 			RobotLog.logStacktrace(e);
@@ -66,8 +70,12 @@ public class Robot {
 	public void shutdown() {
 		if (eventLoopManager != null)
 			eventLoopManager.shutdown();
-		if (socket != null)
+		if (socket != null) {
+			RobocolSendQueue robocolQueue = socket.getSendQueue();
+			if (robocolQueue != null) RobotLog.v("Robocol send queue: " + robocolQueue.getStats());
 			socket.close();
+		}
+		RobotLog.v("Framework scheduler: " + FrameworkScheduler.getDefault().getStats());
 	}
 
 }
@@ -0,0 +1,638 @@
+package com.sources.com.qualcomm.robotcore.simulator;
+
+import com.qualcomm.robotcore.eventloop.EventLoop;
+import com.qualcomm.robotcore.eventloop.EventLoopManager;
+import com.qualcomm.robotcore.eventloop.LoopScheduler;
+import com.qualcomm.robotcore.eventloop.TelemetryRateLimiter;
+import com.qualcomm.robotcore.eventloop.opmode.OpModeManager;
+import com.qualcomm.robotcore.exception.RobotCoreException;
+import com.qualcomm.robotcore.hardware.Gamepad;
+import com.qualcomm.robotcore.robocol.Command;
+import com.qualcomm.robotcore.robocol.CommandAck;
+import com.qualcomm.robotcore.robocol.Heartbeat;
+import com.qualcomm.robotcore.robocol.PeerDiscovery;
+import com.qualcomm.robotcore.robocol.RobocolCapture;
+import com.qualcomm.robotcore.robocol.RobocolCaptureReader;
+import com.qualcomm.robotcore.robocol.RobocolConfig;
+import com.qualcomm.robotcore.robocol.RobocolDatagram;
+import com.qualcomm.robotcore.robocol.RobocolDatagramChannelSocket;
+import com.qualcomm.robotcore.robocol.RobocolDatagramSocket;
+import com.qualcomm.robotcore.robocol.RobocolReplaySocket;
+import com.qualcomm.robotcore.robocol.RobocolSendQueue;
+import com.qualcomm.robotcore.robocol.RobocolUnpacker;
+import com.qualcomm.robotcore.robocol.Telemetry;
+import com.qualcomm.robotcore.robocol.TelemetryAck;
+import com.qualcomm.robotcore.robocol.TelemetryDelta;
+import com.qualcomm.robotcore.robocol.TelemetryDeltaDecoder;
+import com.qualcomm.robotcore.robocol.TelemetryReassembler;
+import com.qualcomm.robotcore.util.FrameworkScheduler;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Headless driver station, for exercising a robot controller without a phone
+ * <p>
+ * Performs peer discovery with the robot controller, then streams heartbeats, gamepads and
+ * commands to it and consumes the telemetry it sends back. Heartbeat round trip time, heartbeat
+ * loss, command ack time and telemetry throughput are printed to standard out while running.
+ * <p>
+ * Both sides use RobocolConfig.PORT_NUMBER, so on one machine they need different addresses; by
+ * default the robot controller is expected at 127.0.0.1 and the simulator binds 127.0.0.2. With
+ * --local-rc an EventLoopManager is started in this process on the robot controller address,
+ * running an event loop that sends synthetic telemetry every loop.
+ * <p>
+ * --capture records the traffic to a file; --replay feeds such a file back into a local robot
+ * controller, with the original timing or, with --replay-fast, as fast as possible.
+ * <p>
+ * Run with --help for the list of options.
+ */
+public class DriverStationSimulator {
+
+	private static final String COMMAND_NAME = "CMD_SIMULATOR_PING";
+	private static final long COMMAND_RETRY_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final int MAX_COMMAND_ATTEMPTS = 10;
+	private static final long PEER_DISCOVERY_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * Simulator settings, filled in from the command line
+	 */
+	public static class Config {
+		public InetAddress rcAddress;
+		public InetAddress bindAddress;
+		public RobocolDatagramSocket.Transport transport = RobocolDatagramSocket.Transport.DATAGRAM_SOCKET;
+		public double heartbeatRate = 10; // in Hz
+		public double gamepadRate = 50; // in Hz, up to 1000
+		public double commandRate = 1; // in Hz
+		public int duration = 30; // in seconds
+		public int reportInterval = 5; // in seconds
+		public boolean localRc = false;
+		public int localRcTelemetryKeys = 20;
+		public double localRcTelemetryRate = TelemetryRateLimiter.DEFAULT_MAX_RATE; // in Hz, 0 for every loop
+		public double localRcLoopRate = EventLoopManager.DEFAULT_LOOP_FREQUENCY; // in Hz
+		public LoopScheduler.WaitStrategy localRcLoopWait = LoopScheduler.WaitStrategy.PARK_NANOS;
+		public File captureFile = null;
+		public File replayFile = null;
+		public boolean replayFast = false;
+
+		public Config() throws Exception {
+			rcAddress = InetAddress.getByName("127.0.0.1");
+			bindAddress = InetAddress.getByName("127.0.0.2");
+		}
+	}
+
+	/**
+	 * Bounded record of latency samples; once full, the oldest samples are overwritten
+	 */
+	private static class LatencyRecorder {
+		private final long[] samples;
+		private int next = 0;
+		private int count = 0;
+
+		LatencyRecorder(int capacity) {
+			samples = new long[capacity];
+		}
+
+		synchronized void record(long nanos) {
+			samples[next] = nanos;
+			next = (next + 1) % samples.length;
+			if (count < samples.length) count++;
+		}
+
+		/**
+		 * Take the samples recorded since the last call, sorted
+		 */
+		synchronized long[] drainSorted() {
+			long[] sorted = Arrays.copyOf(samples, count);
+			Arrays.sort(sorted);
+			next = 0;
+			count = 0;
+			return sorted;
+		}
+	}
+
+	private static class PendingCommand {
+		final Command command;
+		final long firstSent;
+		long lastSent;
+
+		PendingCommand(Command command, long now) {
+			this.command = command;
+			this.firstSent = now;
+			this.lastSent = now;
+		}
+	}
+
+	/**
+	 * Event loop run by --local-rc; sends synthetic telemetry every loop
+	 */
+	private static class SimulatedEventLoop implements EventLoop {
+		private final int keys;
+		private final Telemetry telemetry = new Telemetry();
+		private EventLoopManager manager;
+		private long loops = 0;
+		private volatile long commands = 0;
+
+		SimulatedEventLoop(int keys) {
+			this.keys = keys;
+		}
+
+		@Override
+		public void init(EventLoopManager eventLoopManager) {
+			this.manager = eventLoopManager;
+		}
+
+		@Override
+		public void loop() {
+			loops++;
+			for (int i = 0; i < keys; i++) {
+				// a couple of values change every loop, the rest rarely do
+				telemetry.addData("simulated value " + i, (double) ((i < 2) ? loops : loops / 100));
+			}
+			manager.sendTelemetryData(telemetry);
+		}
+
+		@Override
+		public void teardown() {
+			// take no action
+		}
+
+		@Override
+		public void processCommand(Command command) {
+			// the manager acks the command
+			commands++;
+		}
+
+		@Override
+		public OpModeManager getOpModeManager() {
+			return null;
+		}
+	}
+
+	/**
+	 * Handles everything received from the robot controller
+	 */
+	private class Receiver implements Runnable, RobocolDatagramSocket.RecvCallback {
+
+		private final RobocolUnpacker unpacker = new RobocolUnpacker(new TelemetryReassembler(this));
+		private final Heartbeat heartbeat = new Heartbeat(Heartbeat.Token.EMPTY);
+		private final Telemetry telemetry = new Telemetry();
+		private final TelemetryDelta telemetryFrame = new TelemetryDelta();
+		private final TelemetryDeltaDecoder telemetryDecoder = new TelemetryDeltaDecoder();
+		private final TelemetryAck telemetryAck = new TelemetryAck();
+		private final CommandAck commandAck = new CommandAck();
+
+		@Override
+		public void run() {
+			while (running && socket.getState() != RobocolDatagramSocket.State.CLOSED) {
+				if (socket.drain(unpacker) == 0) Thread.yield();
+				socket.flush();
+			}
+		}
+
+		@Override
+		public void onRecv(RobocolDatagram msg) {
+			try {
+				switch (msg.getMsgType()) {
+				case HEARTBEAT:
+					heartbeat.readFrom(msg.getByteBuffer(), msg.getOffset(), msg.getLength());
+					heartbeatRtt.record(System.nanoTime() - heartbeat.getTimestamp());
+					heartbeatsReceived.incrementAndGet();
+					break;
+				case PEER_DISCOVERY:
+					onPeerDiscovery(msg);
+					break;
+				case COMMAND:
+					onCommand(msg);
+					break;
+				case COMMAND_ACK:
+					commandAck.readFrom(msg.getByteBuffer(), msg.getOffset(), msg.getLength());
+					for (int i = 0; i < commandAck.getCount(); i++) {
+						onCommandAcked(commandAck.getTimestamp(i));
+					}
+					break;
+				case TELEMETRY:
+					telemetry.readFrom(msg.getByteBuffer(), msg.getOffset(), msg.getLength());
+					telemetryFrames.incrementAndGet();
+					telemetryBytes.addAndGet(msg.getLength());
+					break;
+				case TELEMETRY_DELTA:
+					telemetryFrame.readFrom(msg.getByteBuffer(), msg.getOffset(), msg.getLength());
+					telemetryBytes.addAndGet(msg.getLength());
+					if (telemetryDecoder.decode(telemetryFrame, telemetry)) {
+						telemetryFrames.incrementAndGet();
+						telemetryAck.set(telemetryFrame.getTag(), telemetryFrame.getSequence());
+						socket.send(telemetryAck);
+					} else {
+						telemetryFramesDropped.incrementAndGet();
+					}
+					break;
+				default:
+					break;
+				}
+			} catch (RobotCoreException e) {
+				System.out.println("Unable to process " + msg.getMsgType() + ": " + e.getMessage());
+			}
+		}
+
+		private void onPeerDiscovery(RobocolDatagram msg) throws RobotCoreException {
+			if (connected) return;
+
+			PeerDiscovery peer = new PeerDiscovery(PeerDiscovery.PeerType.NOT_SET);
+			peer.readFrom(msg.getByteBuffer(), msg.getOffset(), msg.getLength());
+			socket.setPackingEnabled(peer.hasCapability(PeerDiscovery.CAPABILITY_PACKING));
+			compactGamepads = peer.hasCapability(PeerDiscovery.CAPABILITY_GAMEPAD_V3);
+			telemetryDecoder.reset();
+			connected = true;
+
+			System.out.println("Connected to " + msg.getAddress().getHostAddress() + ": " + peer.toString());
+		}
+
+		private void onCommandAcked(long timestamp) {
+			PendingCommand pending = pendingCommands.remove(timestamp);
+			if (pending != null) {
+				commandAckTime.record(System.nanoTime() - pending.firstSent);
+				commandsAcked.incrementAndGet();
+			}
+		}
+
+		private void onCommand(RobocolDatagram msg) throws RobotCoreException {
+			Command command = new Command(msg.getByteBuffer(), msg.getOffset(), msg.getLength());
+
+			if (command.isAcknowledged()) {
+				onCommandAcked(command.getTimestamp());
+				return;
+			}
+
+			// a command from the robot controller, ack it so it is not resent
+			command.acknowledge();
+			socket.send(command);
+		}
+	}
+
+	private final Config config;
+	private final RobocolDatagramSocket socket;
+
+	private volatile boolean running = false;
+	private volatile boolean connected = false;
+	private volatile boolean compactGamepads = false;
+
+	private final LatencyRecorder heartbeatRtt = new LatencyRecorder(1 << 16);
+	private final LatencyRecorder commandAckTime = new LatencyRecorder(1 << 12);
+	private final Map<Long, PendingCommand> pendingCommands = new ConcurrentHashMap<Long, PendingCommand>();
+
+	private final AtomicLong heartbeatsSent = new AtomicLong();
+	private final AtomicLong heartbeatsReceived = new AtomicLong();
+	private final AtomicLong gamepadsSent = new AtomicLong();
+	private final AtomicLong commandsSent = new AtomicLong();
+	private final AtomicLong commandsAcked = new AtomicLong();
+	private final AtomicLong commandsFailed = new AtomicLong();
+	private final AtomicLong telemetryFrames = new AtomicLong();
+	private final AtomicLong telemetryFramesDropped = new AtomicLong();
+	private final AtomicLong telemetryBytes = new AtomicLong();
+
+	public DriverStationSimulator(Config config) {
+		this.config = config;
+
+		if (config.transport == RobocolDatagramSocket.Transport.DATAGRAM_CHANNEL) {
+			socket = new RobocolDatagramChannelSocket();
+		} else {
+			socket = new RobocolDatagramSocket();
+		}
+	}
+
+	/**
+	 * Run the simulation for the configured duration
+	 *
+	 * @throws Exception if the sockets cannot be set up
+	 */
+	public void run() throws Exception {
+		// record the robot controller's view of the traffic when it runs here, otherwise ours
+		RobocolCapture capture = null;
+		if (config.captureFile != null) {
+			capture = new RobocolCapture(config.captureFile, RobocolCapture.DEFAULT_CAPACITY);
+			if (!config.localRc) socket.setCapture(capture);
+		}
+
+		EventLoopManager localRc = null;
+		RobocolDatagramSocket rcSocket = null;
+		if (config.localRc) {
+			rcSocket = new RobocolDatagramSocket();
+			rcSocket.bind(new InetSocketAddress(config.rcAddress, RobocolConfig.PORT_NUMBER));
+			rcSocket.setCapture(capture);
+			// same as Robot.start()
+			rcSocket.startSender(FrameworkScheduler.getDefault());
+			localRc = new EventLoopManager(rcSocket);
+			localRc.setTelemetryMaxRate(Telemetry.DEFAULT_TAG, config.localRcTelemetryRate);
+			localRc.setLoopFrequency(config.localRcLoopRate);
+			localRc.setLoopWaitStrategy(config.localRcLoopWait);
+			localRc.start(new SimulatedEventLoop(config.localRcTelemetryKeys));
+		}
+
+		socket.bind(new InetSocketAddress(config.bindAddress, RobocolConfig.PORT_NUMBER));
+		socket.connect(config.rcAddress);
+
+		running = true;
+		Thread receiver = new Thread(new Receiver(), "Simulator receiver");
+		receiver.start();
+
+		try {
+			sendLoop();
+		} finally {
+			running = false;
+			// stop the local robot controller before the heartbeats stop, or it reports a dropped connection
+			if (localRc != null) {
+				RobocolSendQueue.Stats sendStats = rcSocket.getSendQueue().getStats();
+				String loopStats = localRc.getLoopScheduler().toString();
+				String loopProfile = localRc.getLoopProfiler().toString();
+				localRc.shutdown();
+				System.out.println("robot controller send queue: " + sendStats);
+				System.out.println("robot controller loop: " + loopStats);
+				System.out.println("robot controller " + loopProfile);
+			}
+			socket.close();
+			receiver.join(1000);
+			if (capture != null) {
+				capture.close();
+				System.out.println(String.format("captured %d datagrams to %s, %d dropped",
+						capture.getRecorded(), config.captureFile, capture.getDropped()));
+			}
+		}
+	}
+
+	/**
+	 * Replay a capture into an EventLoopManager running the simulated event loop
+	 *
+	 * @param config simulator settings
+	 * @throws Exception if the capture can't be read
+	 */
+	public static void replay(Config config) throws Exception {
+		RobocolReplaySocket socket = new RobocolReplaySocket(new RobocolCaptureReader(config.replayFile), !config.replayFast);
+		SimulatedEventLoop eventLoop = new SimulatedEventLoop(config.localRcTelemetryKeys);
+		EventLoopManager manager = new EventLoopManager(socket);
+
+		long start = System.nanoTime();
+		manager.start(eventLoop);
+		socket.begin();
+		socket.awaitFinished();
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		// let the event loop pick up the last gamepads
+		Thread.sleep(50);
+		manager.shutdown();
+
+		System.out.println(String.format("replayed %d datagrams in %.2f s: loop saw gamepad sequence %d, %d commands handled, %d messages sent",
+				socket.getReplayed(), seconds, manager.getGamepadSequence(), eventLoop.commands, socket.getTransmitted()));
+	}
+
+	private void sendLoop() throws RobotCoreException {
+		Gamepad gamepad = new Gamepad();
+		PeerDiscovery peerDiscovery = new PeerDiscovery(PeerDiscovery.PeerType.PEER);
+		long commandId = 0;
+
+		long heartbeatInterval = interval(config.heartbeatRate);
+		long gamepadInterval = interval(config.gamepadRate);
+		long commandInterval = interval(config.commandRate);
+		long reportInterval = TimeUnit.SECONDS.toNanos(config.reportInterval);
+
+		long start = System.nanoTime();
+		long end = start + TimeUnit.SECONDS.toNanos(config.duration);
+		long nextDiscovery = start;
+		long nextHeartbeat = start;
+		long nextGamepad = start;
+		long nextCommand = start;
+		long nextRetry = start;
+		long nextReport = start + reportInterval;
+		long lastReport = start;
+
+		System.out.println(String.format("Simulating driver station on %s, robot controller at %s",
+				config.bindAddress.getHostAddress(), config.rcAddress.getHostAddress()));
+
+		while (true) {
+			long now = System.nanoTime();
+			if (now - end >= 0) break;
+
+			if (!connected && now - nextDiscovery >= 0) {
+				socket.send(peerDiscovery);
+				nextDiscovery = now + PEER_DISCOVERY_INTERVAL;
+			}
+
+			if (connected && now - nextHeartbeat >= 0) {
+				socket.send(new Heartbeat());
+				heartbeatsSent.incrementAndGet();
+				nextHeartbeat += heartbeatInterval;
+				if (now - nextHeartbeat > heartbeatInterval) nextHeartbeat = now + heartbeatInterval;
+			}
+
+			if (connected && gamepadInterval > 0 && now - nextGamepad >= 0) {
+				double t = (now - start) / 1e9;
+				gamepad.left_stick_x = (float) Math.sin(t);
+				gamepad.left_stick_y = (float) Math.cos(t);
+				gamepad.right_trigger = (float) ((Math.sin(t * 3) + 1) / 2);
+				gamepad.a = ((long) t % 2) == 0;
+				gamepad.timestamp = System.currentTimeMillis();
+				gamepad.user = 1;
+				gamepad.id = 1;
+				gamepad.setWireVersion(compactGamepads ? Gamepad.COMPACT_ROBOCOL_VERSION : 2);
+				socket.send(gamepad);
+				gamepadsSent.incrementAndGet();
+				nextGamepad += gamepadInterval;
+				// don't try to catch up after a stall
+				if (now - nextGamepad > gamepadInterval) nextGamepad = now + gamepadInterval;
+			}
+
+			if (connected && commandInterval > 0 && now - nextCommand >= 0) {
+				Command command = new Command(COMMAND_NAME, Long.toString(commandId++));
+				pendingCommands.put(command.getTimestamp(), new PendingCommand(command, now));
+				socket.send(command);
+				commandsSent.incrementAndGet();
+				nextCommand += commandInterval;
+			}
+
+			if (now - nextRetry >= 0) {
+				retryCommands(now);
+				nextRetry = now + COMMAND_RETRY_INTERVAL;
+			}
+
+			socket.flush();
+
+			if (now - nextReport >= 0) {
+				report((now - lastReport) / 1e9);
+				lastReport = now;
+				nextReport += reportInterval;
+			}
+
+			long wake = Math.min(nextRetry, nextReport);
+			if (connected) {
+				wake = Math.min(wake, nextHeartbeat);
+				if (gamepadInterval > 0) wake = Math.min(wake, nextGamepad);
+				if (commandInterval > 0) wake = Math.min(wake, nextCommand);
+			} else {
+				wake = Math.min(wake, nextDiscovery);
+			}
+			long sleep = wake - System.nanoTime();
+			if (sleep > 0) LockSupport.parkNanos(sleep);
+		}
+
+		report((System.nanoTime() - lastReport) / 1e9);
+	}
+
+	private void retryCommands(long now) {
+		Iterator<PendingCommand> iterator = pendingCommands.values().iterator();
+		while (iterator.hasNext()) {
+			PendingCommand pending = iterator.next();
+			if (now - pending.lastSent < COMMAND_RETRY_INTERVAL) continue;
+
+			if (pending.command.getAttempts() >= MAX_COMMAND_ATTEMPTS) {
+				iterator.remove();
+				commandsFailed.incrementAndGet();
+			} else {
+				socket.send(pending.command);
+				pending.lastSent = now;
+			}
+		}
+	}
+
+	private void report(double seconds) {
+		long sent = heartbeatsSent.getAndSet(0);
+		long received = heartbeatsReceived.getAndSet(0);
+		long[] rtt = heartbeatRtt.drainSorted();
+		long[] ack = commandAckTime.drainSorted();
+		double loss = (sent == 0) ? 0 : Math.max(0, 100.0 * (sent - received) / sent);
+
+		System.out.println(String.format("heartbeat: sent %d, loss %.1f%%, rtt ms p50 %.2f p90 %.2f p99 %.2f max %.2f",
+				sent, loss, millis(rtt, 0.5), millis(rtt, 0.9), millis(rtt, 0.99), millis(rtt, 1.0)));
+		System.out.println(String.format("gamepad: %.0f/s   command: sent %d, acked %d, failed %d, ack ms p50 %.2f p99 %.2f",
+				gamepadsSent.getAndSet(0) / seconds, commandsSent.getAndSet(0), commandsAcked.getAndSet(0),
+				commandsFailed.getAndSet(0), millis(ack, 0.5), millis(ack, 0.99)));
+		System.out.println(String.format("telemetry: %.1f frames/s, %.1f KB/s, %d dropped",
+				telemetryFrames.getAndSet(0) / seconds, telemetryBytes.getAndSet(0) / seconds / 1024,
+				telemetryFramesDropped.getAndSet(0)));
+	}
+
+	private static double millis(long[] sorted, double percentile) {
+		if (sorted.length == 0) return 0;
+
+		int index = (int) Math.ceil(percentile * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+	}
+
+	private static long interval(double rate) {
+		if (rate <= 0) return 0;
+		return (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+	}
+
+	private static void usage() {
+		System.out.println("Usage: DriverStationSimulator [options]");
+		System.out.println("  --rc <address>          robot controller address (default 127.0.0.1)");
+		System.out.println("  --bind <address>        address to bind the simulator to (default 127.0.0.2)");
+		System.out.println("  --transport <type>      socket or channel (default socket)");
+		System.out.println("  --heartbeat-rate <hz>   heartbeats per second (default 10)");
+		System.out.println("  --gamepad-rate <hz>     gamepad packets per second, up to 1000 (default 50)");
+		System.out.println("  --command-rate <hz>     commands per second (default 1)");
+		System.out.println("  --duration <seconds>    how long to run (default 30)");
+		System.out.println("  --report <seconds>      time between reports (default 5)");
+		System.out.println("  --local-rc              run a robot controller in this process");
+		System.out.println("  --telemetry-keys <n>    telemetry keys sent by the local robot controller (default 20)");
+		System.out.println("  --telemetry-rate <hz>   local robot controller telemetry limit, 0 for every loop (default 20)");
+		System.out.println("  --loop-rate <hz>        local robot controller event loop rate (default 200)");
+		System.out.println("  --loop-wait <strategy>  sleep, park or spin, how the local event loop waits (default park)");
+		System.out.println("  --capture <file>        record the local robot controller's traffic, or ours without --local-rc");
+		System.out.println("  --replay <file>         replay a capture into a local robot controller, then exit");
+		System.out.println("  --replay-fast           replay as fast as possible instead of with the original timing");
+	}
+
+	public static void main(String[] args) throws Exception {
+		Config config = new Config();
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("--help")) {
+					usage();
+					return;
+				} else if (arg.equals("--local-rc")) {
+					config.localRc = true;
+					continue;
+				} else if (arg.equals("--replay-fast")) {
+					config.replayFast = true;
+					continue;
+				}
+
+				if (i + 1 >= args.length) throw new IllegalArgumentException("missing value for " + arg);
+				String value = args[++i];
+
+				if (arg.equals("--rc")) {
+					config.rcAddress = InetAddress.getByName(value);
+				} else if (arg.equals("--bind")) {
+					config.bindAddress = InetAddress.getByName(value);
+				} else if (arg.equals("--transport")) {
+					config.transport = value.equals("channel")
+							? RobocolDatagramSocket.Transport.DATAGRAM_CHANNEL
+							: RobocolDatagramSocket.Transport.DATAGRAM_SOCKET;
+				} else if (arg.equals("--heartbeat-rate")) {
+					config.heartbeatRate = Double.parseDouble(value);
+				} else if (arg.equals("--gamepad-rate")) {
+					config.gamepadRate = Math.min(1000, Double.parseDouble(value));
+				} else if (arg.equals("--command-rate")) {
+					config.commandRate = Double.parseDouble(value);
+				} else if (arg.equals("--duration")) {
+					config.duration = Integer.parseInt(value);
+				} else if (arg.equals("--report")) {
+					config.reportInterval = Math.max(1, Integer.parseInt(value));
+				} else if (arg.equals("--telemetry-keys")) {
+					config.localRcTelemetryKeys = Integer.parseInt(value);
+				} else if (arg.equals("--telemetry-rate")) {
+					config.localRcTelemetryRate = Double.parseDouble(value);
+				} else if (arg.equals("--loop-rate")) {
+					config.localRcLoopRate = Double.parseDouble(value);
+				} else if (arg.equals("--loop-wait")) {
+					if (value.equals("sleep")) {
+						config.localRcLoopWait = LoopScheduler.WaitStrategy.SLEEP;
+					} else if (value.equals("park")) {
+						config.localRcLoopWait = LoopScheduler.WaitStrategy.PARK_NANOS;
+					} else if (value.equals("spin")) {
+						config.localRcLoopWait = LoopScheduler.WaitStrategy.SPIN_THEN_PARK;
+					} else {
+						throw new IllegalArgumentException("unknown wait strategy " + value);
+					}
+				} else if (arg.equals("--capture")) {
+					config.captureFile = new File(value);
+				} else if (arg.equals("--replay")) {
+					config.replayFile = new File(value);
+				} else {
+					throw new IllegalArgumentException("unknown option " + arg);
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			usage();
+			return;
+		}
+
+		if (config.replayFile != null) {
+			replay(config);
+			return;
+		}
+
+		if (config.heartbeatRate <= 0) {
+			System.out.println("heartbeat rate must be positive");
+			return;
+		}
+
+		try {
+			new DriverStationSimulator(config).run();
+		} catch (SocketException e) {
+			System.out.println("Unable to open socket: " + e.getMessage());
+		}
+	}
+}
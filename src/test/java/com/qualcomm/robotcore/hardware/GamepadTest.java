@@ -0,0 +1,158 @@
+package com.sources.com.qualcomm.robotcore.hardware;
+
+import com.qualcomm.robotcore.exception.RobotCoreException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class GamepadTest {
+
+	private static final float STICK_STEP = 1 / 127f;
+
+	private Gamepad sender;
+	private Gamepad receiver;
+
+	@Before
+	public void setUp() {
+		sender = new Gamepad();
+		sender.id = 5;
+		sender.user = 1;
+		sender.timestamp = 1000;
+		receiver = new Gamepad();
+	}
+
+	private static byte[] encode(Gamepad gamepad) throws RobotCoreException {
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		gamepad.writeTo(buffer);
+		return Arrays.copyOf(buffer.array(), buffer.position());
+	}
+
+	private void decode(byte[] bytes) throws RobotCoreException {
+		receiver.readFrom(ByteBuffer.wrap(bytes), 0, bytes.length);
+	}
+
+	/*
+	 * Move the left stick a little, as a driver would, and encode the next update
+	 */
+	private byte[] next(int i) throws RobotCoreException {
+		sender.timestamp += 20;
+		sender.left_stick_x = (i % 100) / 100f;
+		return encode(sender);
+	}
+
+	@Test
+	public void version2RoundTrip() throws RobotCoreException {
+		sender.left_stick_y = -0.25f;
+		sender.right_trigger = 0.75f;
+		sender.a = true;
+		sender.right_bumper = true;
+
+		decode(sender.toByteArray());
+		assertEquals(5, receiver.id);
+		assertEquals(1, receiver.user);
+		assertEquals(1000, receiver.timestamp);
+		assertEquals(-0.25f, receiver.left_stick_y, 0f);
+		assertEquals(0.75f, receiver.right_trigger, 0f);
+		assertTrue(receiver.a);
+		assertTrue(receiver.right_bumper);
+		assertFalse(receiver.b);
+	}
+
+	@Test
+	public void compactRoundTrip() throws RobotCoreException {
+		sender.setWireVersion(Gamepad.COMPACT_ROBOCOL_VERSION);
+		sender.left_stick_x = 0.5f;
+		sender.right_stick_y = -1f;
+		sender.left_trigger = 0.2f;
+		sender.dpad_up = true;
+
+		byte[] full = encode(sender);
+		assertEquals(1, Gamepad.peekUser(full, 0, full.length));
+		decode(full);
+		assertEquals(5, receiver.id);
+		assertEquals(1, receiver.user);
+		assertEquals(1000, receiver.timestamp);
+		assertEquals(0.5f, receiver.left_stick_x, STICK_STEP);
+		assertEquals(-1f, receiver.right_stick_y, 0f);
+		assertEquals(0.2f, receiver.left_trigger, 1 / 255f);
+		assertTrue(receiver.dpad_up);
+
+		// only the moved stick and the timestamp go into the next update
+		sender.timestamp += 20;
+		sender.right_stick_x = 0.3f;
+		byte[] delta = encode(sender);
+		assertTrue(delta.length + " bytes", delta.length < full.length / 2);
+
+		decode(delta);
+		assertEquals(1020, receiver.timestamp);
+		assertEquals(0.3f, receiver.right_stick_x, STICK_STEP);
+		assertEquals(0.5f, receiver.left_stick_x, STICK_STEP);
+		assertTrue(receiver.dpad_up);
+	}
+
+	@Test(expected = RobotCoreException.class)
+	public void truncatedCompactUpdateIsRejected() throws RobotCoreException {
+		sender.setWireVersion(Gamepad.COMPACT_ROBOCOL_VERSION);
+		byte[] full = encode(sender);
+		decode(Arrays.copyOf(full, full.length - 3));
+	}
+
+	@Test
+	public void lostUpdateIsHarmless() throws RobotCoreException {
+		sender.setWireVersion(Gamepad.COMPACT_ROBOCOL_VERSION);
+		decode(encode(sender));
+
+		next(1); // lost
+		decode(next(2));
+		assertEquals(sender.timestamp, receiver.timestamp);
+		assertEquals(sender.left_stick_x, receiver.left_stick_x, STICK_STEP);
+	}
+
+	/*
+	 * Losing a full update costs the updates built on it, but only until the next full update
+	 */
+	@Test
+	public void lostFullUpdateRecoversQuickly() throws RobotCoreException {
+		sender.setWireVersion(Gamepad.COMPACT_ROBOCOL_VERSION);
+		decode(encode(sender));
+
+		int dropped = 0;
+		int maxDroppedInRow = 0;
+		int inRow = 0;
+		boolean lostOne = false;
+		for (int i = 1; i < 200; i++) {
+			byte[] update = next(i);
+			boolean full = update.length == encodedFullLength();
+			if (full && !lostOne) {
+				lostOne = true;
+				continue;
+			}
+
+			try {
+				decode(update);
+				inRow = 0;
+				assertEquals(sender.timestamp, receiver.timestamp);
+				assertEquals(sender.left_stick_x, receiver.left_stick_x, STICK_STEP);
+			} catch (RobotCoreException e) {
+				dropped++;
+				inRow++;
+				maxDroppedInRow = Math.max(maxDroppedInRow, inRow);
+			}
+		}
+
+		assertTrue(lostOne);
+		assertTrue(dropped > 0);
+		assertTrue(maxDroppedInRow + " dropped in a row", maxDroppedInRow <= Gamepad.FULL_UPDATE_INTERVAL - 1);
+	}
+
+	private int encodedFullLength() throws RobotCoreException {
+		Gamepad gamepad = new Gamepad();
+		gamepad.setWireVersion(Gamepad.COMPACT_ROBOCOL_VERSION);
+		return encode(gamepad).length;
+	}
+}
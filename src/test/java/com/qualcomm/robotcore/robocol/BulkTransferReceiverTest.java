@@ -0,0 +1,101 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.exception.RobotCoreException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BulkTransferReceiverTest {
+
+	private static final byte[] NAME = { 'f' };
+
+	private RecordingSocket socket;
+	private final List<byte[]> completed = new ArrayList<byte[]>();
+
+	private final BulkTransferReceiver.Listener listener = new BulkTransferReceiver.Listener() {
+		@Override
+		public void onTransferComplete(String name, byte[] data) {
+			completed.add(data);
+		}
+	};
+
+	@Before
+	public void setUp() {
+		socket = new RecordingSocket();
+		completed.clear();
+	}
+
+	private static BulkChunk chunk(int id, int index, byte[] transfer) throws RobotCoreException {
+		int count = Math.max(1, (transfer.length + BulkChunk.CHUNK_SIZE - 1) / BulkChunk.CHUNK_SIZE);
+		BulkChunk chunk = new BulkChunk();
+		chunk.set(id, index, count, NAME, transfer);
+		// parse it back, as the receive thread would
+		BulkChunk copy = new BulkChunk();
+		copy.fromByteArray(chunk.toByteArray());
+		return copy;
+	}
+
+	@Test
+	public void ackSelectiveMask() throws RobotCoreException {
+		// chunks 0-9 received, 10 missing, then 11, 13 and 10 + 64
+		long selective = (1L << 0) | (1L << 2) | (1L << 63);
+		BulkAck ack = new BulkAck();
+		ack.set(77, 10, selective);
+
+		BulkAck copy = new BulkAck();
+		copy.fromByteArray(ack.toByteArray());
+		assertEquals(77, copy.getTransferId());
+		assertEquals(10, copy.getCumulative());
+
+		for (int i = 0; i < 10; i++) assertTrue(copy.isAcknowledged(i));
+		assertFalse(copy.isAcknowledged(10));
+		assertTrue(copy.isAcknowledged(11));
+		assertFalse(copy.isAcknowledged(12));
+		assertTrue(copy.isAcknowledged(13));
+		assertTrue(copy.isAcknowledged(10 + BulkAck.SELECTIVE_RANGE));
+		assertFalse(copy.isAcknowledged(11 + BulkAck.SELECTIVE_RANGE));
+	}
+
+	@Test
+	public void reassemblesOutOfOrder() throws RobotCoreException {
+		BulkTransferReceiver receiver = new BulkTransferReceiver(listener);
+		byte[] transfer = new byte[3 * BulkChunk.CHUNK_SIZE + 10];
+		for (int i = 0; i < transfer.length; i++) transfer[i] = (byte) i;
+
+		for (int index : new int[] { 3, 1, 0, 1, 2 }) receiver.onChunk(chunk(1, index, transfer), 0);
+		receiver.sendAcks(socket);
+
+		assertEquals(1, completed.size());
+		assertArrayEquals(transfer, completed.get(0));
+		assertEquals(1, socket.count(RobocolParsable.MsgType.BULK_ACK));
+	}
+
+	@Test
+	public void oversizedTransferIsRefused() throws RobotCoreException {
+		BulkTransferReceiver receiver = new BulkTransferReceiver(listener, 4 * BulkChunk.CHUNK_SIZE);
+
+		receiver.onChunk(chunk(1, 0, new byte[4 * BulkChunk.CHUNK_SIZE + 1]), 0);
+		receiver.sendAcks(socket);
+		assertEquals(1, receiver.getDropped());
+		assertEquals(0, socket.count(RobocolParsable.MsgType.BULK_ACK));
+
+		receiver.onChunk(chunk(2, 0, new byte[4 * BulkChunk.CHUNK_SIZE]), 0);
+		assertEquals(1, receiver.getDropped());
+	}
+
+	@Test
+	public void emptyTransfer() throws RobotCoreException {
+		BulkTransferReceiver receiver = new BulkTransferReceiver(listener);
+
+		receiver.onChunk(chunk(1, 0, new byte[0]), 0);
+		receiver.sendAcks(socket);
+
+		assertEquals(1, completed.size());
+		assertEquals(0, completed.get(0).length);
+	}
+}
@@ -0,0 +1,52 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.exception.RobotCoreException;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class CommandAckTest {
+
+	@Test
+	public void roundTrip() throws RobotCoreException {
+		CommandAck ack = new CommandAck();
+		Command[] commands = new Command[5];
+		for (int i = 0; i < commands.length; i++) {
+			commands[i] = new Command("command " + i);
+			assertTrue(ack.add(commands[i]));
+		}
+
+		CommandAck copy = new CommandAck();
+		copy.fromByteArray(ack.toByteArray());
+
+		assertEquals(commands.length, copy.getCount());
+		for (int i = 0; i < commands.length; i++) {
+			assertEquals(commands[i].getTimestamp(), copy.getTimestamp(i));
+			assertEquals(commands[i].getName().hashCode(), copy.getNameHash(i));
+		}
+	}
+
+	@Test
+	public void isBounded() {
+		CommandAck ack = new CommandAck();
+		for (int i = 0; i < CommandAck.MAX_ACKS; i++) assertTrue(ack.add(new Command("c")));
+
+		assertTrue(ack.isFull());
+		assertFalse(ack.add(new Command("c")));
+		ack.clear();
+		assertTrue(ack.isEmpty());
+	}
+
+	@Test(expected = RobotCoreException.class)
+	public void truncatedAckIsRejected() throws RobotCoreException {
+		CommandAck ack = new CommandAck();
+		ack.add(new Command("c"));
+		ack.add(new Command("d"));
+		byte[] bytes = ack.toByteArray();
+
+		new CommandAck().readFrom(ByteBuffer.wrap(bytes), 0, bytes.length - 4);
+	}
+}
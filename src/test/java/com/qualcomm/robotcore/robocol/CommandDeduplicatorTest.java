@@ -0,0 +1,92 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class CommandDeduplicatorTest {
+
+	private static final long MS = 1000000L;
+
+	@Test
+	public void duplicateIsRejected() {
+		CommandDeduplicator dedup = new CommandDeduplicator();
+
+		assertTrue(dedup.add(42, 1000, 0));
+		assertFalse(dedup.add(42, 1000, MS));
+		assertTrue(dedup.add(43, 1000, MS));
+		assertTrue(dedup.add(42, 1001, MS));
+
+		assertEquals(3, dedup.size());
+		assertEquals(1, dedup.getDuplicates());
+	}
+
+	@Test
+	public void oldestIsEvictedWhenFull() {
+		CommandDeduplicator dedup = new CommandDeduplicator(4, 10000);
+
+		for (int i = 0; i < 5; i++) assertTrue(dedup.add(i, i, 0));
+		assertEquals(4, dedup.size());
+
+		for (int i = 1; i < 5; i++) assertFalse(dedup.add(i, i, 0));
+		assertTrue(dedup.add(0, 0, 0));
+	}
+
+	@Test
+	public void expiresByAge() {
+		CommandDeduplicator dedup = new CommandDeduplicator(16, 10);
+
+		assertTrue(dedup.add(1, 1, 0));
+		assertTrue(dedup.add(2, 2, 5 * MS));
+		assertFalse(dedup.add(1, 1, 10 * MS));
+
+		// the first command is older than 10 ms now, the second is not
+		assertTrue(dedup.add(1, 1, 11 * MS));
+		assertFalse(dedup.add(2, 2, 11 * MS));
+	}
+
+	@Test
+	public void clearForgetsEverything() {
+		CommandDeduplicator dedup = new CommandDeduplicator(8, 10000);
+
+		for (int i = 0; i < 8; i++) dedup.add(i, i, 0);
+		dedup.clear();
+
+		assertEquals(0, dedup.size());
+		for (int i = 0; i < 8; i++) assertTrue(dedup.add(i, i, 0));
+	}
+
+	/*
+	 * A small table with a small key space makes long probe runs, so every add that is over the
+	 * window count removes an entry from the middle of a run (backward shift) and then probes again.
+	 */
+	@Test
+	public void matchesSlidingWindowUnderChurn() {
+		final int window = 8;
+		CommandDeduplicator dedup = new CommandDeduplicator(window, 10000);
+		ArrayDeque<Long> order = new ArrayDeque<Long>();
+		Set<Long> remembered = new HashSet<Long>();
+		Random random = new Random(1);
+
+		for (int i = 0; i < 100000; i++) {
+			int nameHash = random.nextInt(4);
+			long timestamp = random.nextInt(12);
+			long key = ((long) nameHash << 32) | timestamp;
+
+			boolean expected = !remembered.contains(key);
+			assertEquals("add #" + i, expected, dedup.add(nameHash, timestamp, 0));
+
+			if (expected) {
+				if (order.size() == window) remembered.remove(order.removeFirst());
+				order.addLast(key);
+				remembered.add(key);
+			}
+			assertEquals(order.size(), dedup.size());
+		}
+	}
+}
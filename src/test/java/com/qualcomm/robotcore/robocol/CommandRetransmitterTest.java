@@ -0,0 +1,170 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CommandRetransmitterTest {
+
+	private static final long MS = 1000000L;
+	private static final long TICK = CommandRetransmitter.TICK * MS;
+
+	private RecordingSocket socket;
+	private CommandRetransmitter retransmitter;
+	private long t0;
+
+	@Before
+	public void setUp() {
+		socket = new RecordingSocket();
+		retransmitter = new CommandRetransmitter(socket, 10);
+		t0 = System.nanoTime();
+	}
+
+	private int sent() {
+		return socket.count(RobocolParsable.MsgType.COMMAND);
+	}
+
+	@Test
+	public void sendsRightAwayAndResendsAfterTimeout() {
+		retransmitter.send(new Command("test"), t0);
+		assertEquals(1, sent());
+
+		retransmitter.advance(t0 + 50 * MS);
+		assertEquals(1, sent());
+
+		retransmitter.advance(t0 + 120 * MS);
+		assertEquals(2, sent());
+		assertEquals(1, retransmitter.getRetransmissions());
+		assertEquals(1, retransmitter.getPendingCount());
+	}
+
+	@Test
+	public void ackStopsResending() {
+		Command command = new Command("test");
+		retransmitter.send(command, t0);
+
+		assertTrue(retransmitter.acknowledge(command, t0 + 30 * MS));
+		assertFalse(retransmitter.acknowledge(command, t0 + 31 * MS));
+		assertEquals(0, retransmitter.getPendingCount());
+
+		for (long t = 0; t < 1000 * MS; t += TICK) retransmitter.advance(t0 + t);
+		assertEquals(1, sent());
+
+		// one sample of 30 ms: RTO = SRTT + 4 * RTTVAR = 30 + 4 * 15 ms
+		assertEquals(0.030, retransmitter.getSmoothedRtt(), 0.001);
+		assertEquals(0.090, retransmitter.getRto(), 0.001);
+	}
+
+	@Test
+	public void batchedAcks() {
+		CommandAck ack = new CommandAck();
+		for (int i = 0; i < 3; i++) {
+			Command command = new Command("test" + i);
+			retransmitter.send(command, t0);
+			ack.add(command);
+		}
+		retransmitter.send(new Command("not acked"), t0);
+
+		assertEquals(3, retransmitter.acknowledge(ack, t0 + MS));
+		assertEquals(1, retransmitter.getPendingCount());
+	}
+
+	/*
+	 * Timeouts double with every resend: 100, 200, 400, 800 and 1600 ms. The last two are more
+	 * than one turn of the wheel, so those entries have to stay linked past their first turn.
+	 */
+	@Test
+	public void backoffPastOneTurnOfTheWheel() {
+		retransmitter.send(new Command("test"), t0);
+
+		List<Long> resends = new ArrayList<Long>();
+		for (long t = 0; t <= 3200 * MS; t += TICK / 2) {
+			int before = sent();
+			retransmitter.advance(t0 + t);
+			if (sent() > before) resends.add(t / MS);
+		}
+
+		// deadlines are rounded up to the next tick, so each gap may be up to a tick longer
+		long[] timeouts = { 100, 200, 400, 800, 1600 };
+		assertEquals(timeouts.length, resends.size());
+		long previous = 0;
+		for (int i = 0; i < timeouts.length; i++) {
+			long late = resends.get(i) - previous - timeouts[i];
+			assertTrue("resend " + i + " at " + resends.get(i) + " ms", late >= 0 && late <= 2 * CommandRetransmitter.TICK);
+			previous = resends.get(i);
+		}
+	}
+
+	@Test
+	public void longStallResendsOnceAndKeepsGoing() {
+		retransmitter.send(new Command("test"), t0);
+
+		// far more than a turn of the wheel
+		retransmitter.advance(t0 + 5000 * MS);
+		assertEquals(2, sent());
+
+		// the timeout doubled to 200 ms
+		retransmitter.advance(t0 + 5150 * MS);
+		assertEquals(2, sent());
+		retransmitter.advance(t0 + 5220 * MS);
+		assertEquals(3, sent());
+	}
+
+	@Test
+	public void dropsAfterMaxAttempts() {
+		retransmitter = new CommandRetransmitter(socket, 3);
+		retransmitter.send(new Command("test"), t0);
+
+		for (long t = 0; t < 5000 * MS; t += TICK) retransmitter.advance(t0 + t);
+
+		assertEquals(3, sent());
+		assertEquals(1, retransmitter.getFailures());
+		assertEquals(0, retransmitter.getPendingCount());
+	}
+
+	@Test
+	public void bulkIsRateLimited() {
+		for (int i = 0; i < 20; i++) {
+			retransmitter.send(new Command("bulk" + i, "", Command.Priority.BULK), t0);
+		}
+		assertEquals(0, sent());
+
+		retransmitter.advance(t0 + TICK);
+		assertEquals(CommandRetransmitter.MAX_BULK_PER_TICK, sent());
+		retransmitter.advance(t0 + 2 * TICK);
+		assertEquals(2 * CommandRetransmitter.MAX_BULK_PER_TICK, sent());
+		retransmitter.advance(t0 + 3 * TICK);
+		assertEquals(20, sent());
+	}
+
+	@Test
+	public void frameworkCommandsArePrioritized() {
+		assertEquals(Command.Priority.CRITICAL, new Command("CMD_RUN_OP_MODE", "Teleop").getPriority());
+		assertEquals(Command.Priority.CRITICAL, new Command("CMD_RESTART_ROBOT").getPriority());
+		assertEquals(Command.Priority.BULK, new Command("CMD_REQUEST_OP_MODE_LIST_RESP").getPriority());
+		assertEquals(Command.Priority.INTERACTIVE, new Command("CMD_SET_MATCH_NUMBER").getPriority());
+		assertEquals(Command.Priority.INTERACTIVE, new Command("CMD_RUN_OP_MODE", "", Command.Priority.INTERACTIVE).getPriority());
+	}
+
+	@Test
+	public void criticalGoesFirstAndDoesNotBackOff() throws Exception {
+		for (int i = 0; i < 3; i++) retransmitter.send(new Command("test" + i), t0);
+		retransmitter.send(new Command("CMD_STOP_OP_MODE"), t0);
+		socket.sent.clear();
+
+		// all four are due on the same tick
+		retransmitter.advance(t0 + 120 * MS);
+		assertEquals(4, sent());
+		assertEquals("CMD_STOP_OP_MODE", new Command(socket.sent.get(0)).getName());
+
+		// the others wait 200 ms now, the critical command only 100 ms
+		socket.sent.clear();
+		retransmitter.advance(t0 + 240 * MS);
+		assertEquals(1, sent());
+		assertEquals("CMD_STOP_OP_MODE", new Command(socket.sent.get(0)).getName());
+	}
+}
@@ -0,0 +1,126 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.exception.RobotCoreException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class LinkQualityMonitorTest {
+
+	private static final long PERIOD = 25000000L; // 25 ms between heartbeats
+
+	private LinkQualityMonitor monitor;
+	private long now;
+
+	@Before
+	public void setUp() {
+		monitor = new LinkQualityMonitor();
+		now = 0;
+	}
+
+	/*
+	 * Deliver a heartbeat with the given sequence number, sent and received one period after the last
+	 */
+	private boolean receive(int sequence) throws RobotCoreException {
+		now += PERIOD;
+
+		ByteBuffer buffer = ByteBuffer.allocate(Heartbeat.BUFFER_SIZE);
+		buffer.put(RobocolParsable.MsgType.HEARTBEAT.asByte());
+		buffer.putShort(Heartbeat.PAYLOAD_SIZE);
+		buffer.putShort((short) sequence);
+		buffer.putLong(now);
+
+		Heartbeat heartbeat = new Heartbeat(Heartbeat.Token.EMPTY);
+		heartbeat.readFrom(buffer, 0, Heartbeat.BUFFER_SIZE);
+		return monitor.onHeartbeat(heartbeat, now + 1000000L);
+	}
+
+	private void receiveRange(int from, int to) throws RobotCoreException {
+		for (int sequence = from; sequence <= to; sequence++) receive(sequence);
+	}
+
+	@Test
+	public void countsLossAndReordering() throws RobotCoreException {
+		receiveRange(0, 9);
+		receive(12);
+		receive(11); // late, it was counted as lost when 12 arrived
+		receiveRange(13, 20);
+		receive(20);
+
+		assertEquals(21, monitor.getReceived());
+		assertEquals(1, monitor.getLost());
+		assertEquals(1, monitor.getReordered());
+		assertEquals(1, monitor.getDuplicates());
+		assertEquals(0, monitor.getResyncs());
+		assertEquals(1, monitor.getGapHistogram()[1]);
+	}
+
+	@Test
+	public void sequenceWrapIsNotLoss() throws RobotCoreException {
+		receiveRange(Heartbeat.MAX_SEQUENCE_NUMBER - 5, Heartbeat.MAX_SEQUENCE_NUMBER);
+		receiveRange(0, 5);
+		receive(Heartbeat.MAX_SEQUENCE_NUMBER); // late, from before the wrap
+
+		assertEquals(0, monitor.getLost());
+		assertEquals(1, monitor.getReordered());
+		assertEquals(0, monitor.getResyncs());
+	}
+
+	@Test
+	public void lossAcrossSequenceWrap() throws RobotCoreException {
+		receiveRange(Heartbeat.MAX_SEQUENCE_NUMBER - 5, Heartbeat.MAX_SEQUENCE_NUMBER - 1);
+		receiveRange(2, 5); // MAX_SEQUENCE_NUMBER, 0 and 1 lost
+
+		assertEquals(3, monitor.getLost());
+		assertEquals(0, monitor.getResyncs());
+	}
+
+	/*
+	 * A driver station restart starts the sequence numbers over; that is neither loss nor
+	 * thousands of late heartbeats
+	 */
+	@Test
+	public void restartResyncs() throws RobotCoreException {
+		receiveRange(0, 3000);
+		assertFalse(receive(3002));
+		assertEquals(1, monitor.getLost());
+
+		assertTrue(receive(0));
+		receiveRange(1, 500);
+
+		assertEquals(1, monitor.getLost());
+		assertEquals(0, monitor.getReordered());
+		assertEquals(1, monitor.getResyncs());
+		assertEquals(0, monitor.getLossRatio(), 0.001);
+
+		// counting goes on from the new sequence
+		receive(502);
+		assertEquals(2, monitor.getLost());
+	}
+
+	@Test
+	public void longOutageResyncs() throws RobotCoreException {
+		receiveRange(0, 100);
+		assertTrue(receive(5000));
+		receiveRange(5001, 5010);
+
+		assertEquals(0, monitor.getLost());
+		assertEquals(1, monitor.getResyncs());
+	}
+
+	@Test
+	public void resetForgetsEverything() throws RobotCoreException {
+		receiveRange(0, 10);
+		receive(20);
+		monitor.reset();
+
+		receiveRange(0, 10);
+		assertEquals(11, monitor.getReceived());
+		assertEquals(0, monitor.getLost());
+		assertEquals(0, monitor.getReordered());
+	}
+}
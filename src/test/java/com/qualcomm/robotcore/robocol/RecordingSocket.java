@@ -0,0 +1,55 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.exception.RobotCoreException;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Socket that keeps every message sent on it, encoded, instead of sending it
+ */
+class RecordingSocket extends RobocolDatagramSocket {
+
+	final List<byte[]> sent = new ArrayList<byte[]>();
+
+	private final ByteBuffer buffer = ByteBuffer.allocate(TelemetryFragment.MAX_FRAME_SIZE);
+
+	@Override
+	public void send(RobocolParsable message, InetAddress address) {
+		buffer.clear();
+		try {
+			message.writeTo(buffer);
+		} catch (RobotCoreException e) {
+			throw new AssertionError(e);
+		}
+		sent.add(Arrays.copyOf(buffer.array(), buffer.position()));
+	}
+
+	@Override
+	public void flush() {
+		// nothing is held back
+	}
+
+	/**
+	 * @return number of messages of a type sent so far
+	 */
+	int count(RobocolParsable.MsgType type) {
+		int count = 0;
+		for (byte[] message : sent) {
+			if (RobocolParsable.MsgType.fromByte(message[0]) == type) count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return a sent message as a datagram, as the receiver would see it
+	 */
+	static RobocolDatagram datagram(byte[] message) {
+		RobocolDatagram datagram = new RobocolDatagram(message);
+		datagram.setAddress(InetAddress.getLoopbackAddress());
+		return datagram;
+	}
+}
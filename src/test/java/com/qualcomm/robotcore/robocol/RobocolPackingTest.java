@@ -0,0 +1,236 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.exception.RobotCoreException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RobocolPackingTest {
+
+	/*
+	 * Records every datagram that would go out on the network
+	 */
+	private static class PacketSocket extends RobocolDatagramSocket {
+		final List<byte[]> transmitted = new ArrayList<byte[]>();
+
+		@Override
+		protected void transmit(RobocolDatagram message) {
+			transmitted.add(Arrays.copyOfRange(message.getData(), message.getOffset(), message.getOffset() + message.getLength()));
+		}
+	}
+
+	private PacketSocket socket;
+	private final List<byte[]> received = new ArrayList<byte[]>();
+	private final RobocolUnpacker unpacker = new RobocolUnpacker(new RobocolDatagramSocket.RecvCallback() {
+		@Override
+		public void onRecv(RobocolDatagram datagram) {
+			received.add(Arrays.copyOfRange(datagram.getData(), datagram.getOffset(), datagram.getOffset() + datagram.getLength()));
+		}
+	});
+
+	@Before
+	public void setUp() {
+		socket = new PacketSocket();
+		socket.setPackingEnabled(true);
+		received.clear();
+	}
+
+	private void unpackAll() {
+		for (byte[] datagram : socket.transmitted) unpacker.onRecv(new RobocolDatagram(datagram));
+	}
+
+	private static TelemetryAck ack(int sequence) {
+		return new TelemetryAck("tag", sequence);
+	}
+
+	private static int sequenceOf(byte[] message) throws RobotCoreException {
+		TelemetryAck ack = new TelemetryAck();
+		ack.fromByteArray(message);
+		return ack.getSequence();
+	}
+
+	@Test
+	public void severalMessagesShareOneDatagram() throws RobotCoreException {
+		Heartbeat heartbeat = new Heartbeat();
+		socket.send(heartbeat);
+		socket.send(ack(1));
+		socket.send(new RobocolDatagram(ack(2)));
+		socket.send(new PeerDiscovery(PeerDiscovery.PeerType.PEER));
+		assertEquals(0, socket.transmitted.size());
+
+		socket.flush();
+		assertEquals(1, socket.transmitted.size());
+
+		unpackAll();
+		assertEquals(4, received.size());
+		assertArrayEquals(heartbeat.toByteArray(), received.get(0));
+		assertEquals(1, sequenceOf(received.get(1)));
+		assertEquals(2, sequenceOf(received.get(2)));
+		assertEquals(RobocolParsable.MsgType.PEER_DISCOVERY, new RobocolDatagram(received.get(3)).getMsgType());
+
+		// nothing left to send
+		socket.flush();
+		assertEquals(1, socket.transmitted.size());
+	}
+
+	@Test
+	public void singleMessagePassesThrough() throws RobotCoreException {
+		socket.setPackingEnabled(false);
+		socket.send(ack(7));
+		assertEquals(1, socket.transmitted.size());
+
+		unpackAll();
+		assertEquals(1, received.size());
+		assertArrayEquals(ack(7).toByteArray(), received.get(0));
+	}
+
+	@Test
+	public void fullPackStartsANewDatagram() throws RobotCoreException {
+		int size = ack(0).toByteArray().length;
+		socket.setMaxPackedSize(3 * size);
+
+		for (int i = 0; i < 7; i++) socket.send(ack(i));
+		socket.flush();
+
+		assertEquals(3, socket.transmitted.size());
+		for (byte[] datagram : socket.transmitted) assertTrue(datagram.length <= 3 * size);
+
+		unpackAll();
+		assertEquals(7, received.size());
+		for (int i = 0; i < 7; i++) assertEquals(i, sequenceOf(received.get(i)));
+	}
+
+	@Test
+	public void oversizedMessageGoesAloneAndInOrder() throws RobotCoreException {
+		int size = ack(0).toByteArray().length;
+		socket.setMaxPackedSize(2 * size);
+
+		TelemetryAck large = new TelemetryAck("a much longer tag than the pack has room for", 99);
+		assertTrue(large.toByteArray().length > 2 * size);
+
+		socket.send(ack(1));
+		socket.send(large);
+		socket.send(ack(2));
+		socket.flush();
+
+		assertEquals(3, socket.transmitted.size());
+		assertArrayEquals(large.toByteArray(), socket.transmitted.get(1));
+
+		unpackAll();
+		assertEquals(3, received.size());
+		assertEquals(1, sequenceOf(received.get(0)));
+		assertEquals(99, sequenceOf(received.get(1)));
+		assertEquals(2, sequenceOf(received.get(2)));
+	}
+
+	@Test
+	public void disablingPackingFlushes() throws RobotCoreException {
+		socket.send(ack(1));
+		socket.send(ack(2));
+		socket.setPackingEnabled(false);
+		assertEquals(1, socket.transmitted.size());
+
+		socket.send(ack(3));
+		assertEquals(2, socket.transmitted.size());
+	}
+
+	/*
+	 * A header claiming more than the datagram holds is passed on for the parser to reject
+	 */
+	@Test
+	public void truncatedTailIsHandedOver() throws RobotCoreException {
+		socket.send(ack(1));
+		socket.send(ack(2));
+		socket.flush();
+
+		byte[] datagram = socket.transmitted.get(0);
+		unpacker.onRecv(new RobocolDatagram(Arrays.copyOf(datagram, datagram.length - 2)));
+
+		assertEquals(2, received.size());
+		assertEquals(1, sequenceOf(received.get(0)));
+		assertEquals(datagram.length / 2 - 2, received.get(1).length);
+	}
+
+	@Test
+	public void peerDiscoveryVersion2() throws RobotCoreException {
+		PeerDiscovery sent = new PeerDiscovery(PeerDiscovery.PeerType.PEER,
+				PeerDiscovery.CAPABILITY_PACKING | PeerDiscovery.CAPABILITY_COMMAND_ACK);
+		byte[] bytes = sent.toByteArray();
+		assertEquals(PeerDiscovery.BUFFER_SIZE, bytes.length);
+
+		PeerDiscovery parsed = new PeerDiscovery(PeerDiscovery.PeerType.NOT_SET);
+		parsed.fromByteArray(bytes);
+		assertEquals(2, parsed.getRobocolVersion());
+		assertEquals(PeerDiscovery.PeerType.PEER, parsed.getPeerType());
+		assertTrue(parsed.hasCapability(PeerDiscovery.CAPABILITY_PACKING));
+		assertTrue(parsed.hasCapability(PeerDiscovery.CAPABILITY_COMMAND_ACK));
+		assertFalse(parsed.hasCapability(PeerDiscovery.CAPABILITY_TELEMETRY_DELTA));
+	}
+
+	/*
+	 * A version 1 peer sends no capabilities; whatever follows the peer type is padding
+	 */
+	@Test
+	public void peerDiscoveryVersion1HasNoCapabilities() throws RobotCoreException {
+		PeerDiscovery sent = new PeerDiscovery(PeerDiscovery.PeerType.GROUP_OWNER);
+		sent.setRobocolVersion((byte) 1);
+		byte[] bytes = sent.toByteArray();
+		assertEquals(PeerDiscovery.BUFFER_SIZE, bytes.length);
+		for (int i = RobocolParsable.HEADER_LENGTH + 2; i < bytes.length; i++) assertEquals(0, bytes[i]);
+
+		// even if a version 1 peer leaves garbage in the padding
+		bytes[RobocolParsable.HEADER_LENGTH + 2] = (byte) 0xff;
+		bytes[RobocolParsable.HEADER_LENGTH + 3] = (byte) 0xff;
+
+		PeerDiscovery parsed = new PeerDiscovery(PeerDiscovery.PeerType.NOT_SET);
+		parsed.fromByteArray(bytes);
+		assertEquals(1, parsed.getRobocolVersion());
+		assertEquals(PeerDiscovery.PeerType.GROUP_OWNER, parsed.getPeerType());
+		assertEquals(0, parsed.getCapabilities());
+		assertFalse(parsed.hasCapability(PeerDiscovery.CAPABILITY_PACKING));
+	}
+
+	/*
+	 * The robot answers in the lower of the two versions, so each side only uses what both support
+	 */
+	@Test
+	public void capabilityHandshake() throws RobotCoreException {
+		// a newer peer, with capabilities this version does not know
+		byte[] newer = new PeerDiscovery(PeerDiscovery.PeerType.PEER, PeerDiscovery.CAPABILITY_PACKING | 0x8000).toByteArray();
+		newer[RobocolParsable.HEADER_LENGTH] = PeerDiscovery.ROBOCOL_VERSION + 1;
+
+		PeerDiscovery peer = new PeerDiscovery(PeerDiscovery.PeerType.NOT_SET);
+		peer.fromByteArray(newer);
+		assertTrue(peer.hasCapability(PeerDiscovery.CAPABILITY_PACKING));
+		assertFalse(peer.hasCapability(PeerDiscovery.CAPABILITY_BULK_TRANSFER));
+
+		PeerDiscovery reply = new PeerDiscovery(PeerDiscovery.PeerType.PEER);
+		reply.setRobocolVersion((byte) Math.min(peer.getRobocolVersion(), PeerDiscovery.ROBOCOL_VERSION));
+		PeerDiscovery parsedReply = new PeerDiscovery(PeerDiscovery.PeerType.NOT_SET);
+		parsedReply.fromByteArray(reply.toByteArray());
+		assertEquals(PeerDiscovery.ROBOCOL_VERSION, parsedReply.getRobocolVersion());
+		assertEquals(PeerDiscovery.SUPPORTED_CAPABILITIES, parsedReply.getCapabilities());
+
+		// an older peer gets a version 1 reply, without capabilities
+		PeerDiscovery old = new PeerDiscovery(PeerDiscovery.PeerType.PEER);
+		old.setRobocolVersion((byte) 1);
+		peer.fromByteArray(old.toByteArray());
+
+		reply.setRobocolVersion((byte) Math.min(peer.getRobocolVersion(), PeerDiscovery.ROBOCOL_VERSION));
+		parsedReply.fromByteArray(reply.toByteArray());
+		assertEquals(1, parsedReply.getRobocolVersion());
+		assertEquals(0, parsedReply.getCapabilities());
+	}
+
+	@Test(expected = RobotCoreException.class)
+	public void shortPeerDiscoveryIsRejected() throws RobotCoreException {
+		byte[] bytes = new PeerDiscovery(PeerDiscovery.PeerType.PEER).toByteArray();
+		new PeerDiscovery(PeerDiscovery.PeerType.NOT_SET).fromByteArray(Arrays.copyOf(bytes, bytes.length - 1));
+	}
+}
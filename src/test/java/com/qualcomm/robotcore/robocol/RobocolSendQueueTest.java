@@ -0,0 +1,180 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.util.FrameworkScheduler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RobocolSendQueueTest {
+
+	private static final int CONTROL = RobocolSendQueue.Lane.CONTROL.getCapacity();
+
+	/*
+	 * Collects what the sender thread transmits
+	 */
+	private static class SinkSocket extends RobocolDatagramSocket {
+		final LinkedBlockingQueue<byte[]> sent = new LinkedBlockingQueue<byte[]>();
+
+		@Override
+		void transmitQueued(RobocolDatagram message) {
+			byte[] copy = new byte[message.getLength()];
+			System.arraycopy(message.getData(), message.getOffset(), copy, 0, copy.length);
+			sent.add(copy);
+		}
+	}
+
+	private SinkSocket socket;
+	private RobocolSendQueue queue;
+	private FrameworkScheduler scheduler;
+
+	@Before
+	public void setUp() {
+		socket = new SinkSocket();
+		queue = new RobocolSendQueue(socket);
+		scheduler = new FrameworkScheduler();
+	}
+
+	@After
+	public void tearDown() {
+		queue.stop(1000);
+		scheduler.shutdown(1000);
+	}
+
+	/*
+	 * Heartbeat header, so the datagram goes on the CONTROL lane, with a producer and sequence number
+	 */
+	private static RobocolDatagram datagram(int producer, int sequence) {
+		ByteBuffer buffer = ByteBuffer.allocate(RobocolParsable.HEADER_LENGTH + 8);
+		buffer.put(RobocolParsable.MsgType.HEARTBEAT.asByte());
+		buffer.putShort((short) 8);
+		buffer.putInt(producer);
+		buffer.putInt(sequence);
+		return new RobocolDatagram(buffer.array());
+	}
+
+	private static int producerOf(byte[] datagram) {
+		return ByteBuffer.wrap(datagram).getInt(RobocolParsable.HEADER_LENGTH);
+	}
+
+	private static int sequenceOf(byte[] datagram) {
+		return ByteBuffer.wrap(datagram).getInt(RobocolParsable.HEADER_LENGTH + 4);
+	}
+
+	private byte[] next() throws InterruptedException {
+		byte[] datagram = socket.sent.poll(5, TimeUnit.SECONDS);
+		assertNotNull("nothing sent", datagram);
+		return datagram;
+	}
+
+	@Test
+	public void fullRingDropsAndRecovers() throws InterruptedException {
+		// no sender yet, so nothing leaves the ring
+		for (int i = 0; i < CONTROL; i++) assertTrue(queue.offer(datagram(0, i)));
+		for (int i = 0; i < 5; i++) assertFalse(queue.offer(datagram(0, CONTROL + i)));
+
+		RobocolSendQueue.Stats stats = queue.getStats();
+		assertEquals(5, stats.getDropped());
+		assertEquals(5, stats.droppedByMsgType[RobocolParsable.MsgType.HEARTBEAT.ordinal()]);
+		assertEquals(CONTROL, queue.getDepth(RobocolSendQueue.Lane.CONTROL));
+
+		queue.start(scheduler);
+		for (int i = 0; i < CONTROL; i++) assertEquals(i, sequenceOf(next()));
+
+		// the slots are free again, on their second turn
+		for (int i = 0; i < CONTROL; i++) assertTrue(queue.offer(datagram(0, i)));
+		for (int i = 0; i < CONTROL; i++) assertEquals(i, sequenceOf(next()));
+		assertEquals(0, queue.getDepth(RobocolSendQueue.Lane.CONTROL));
+	}
+
+	/*
+	 * Several producers wrap the ring many times; every datagram arrives once, and each
+	 * producer's datagrams arrive in the order they were offered
+	 */
+	@Test
+	public void producersWrapAroundInOrder() throws Exception {
+		final int producers = 4;
+		final int count = 50 * CONTROL;
+		queue.start(scheduler);
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int p = 0; p < producers; p++) {
+			final int producer = p;
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < count; i++) {
+						// a full lane drops; offer again until it is taken
+						while (!queue.offer(datagram(producer, i))) Thread.yield();
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+
+		int[] expected = new int[producers];
+		for (int n = 0; n < producers * count; n++) {
+			byte[] datagram = next();
+			int producer = producerOf(datagram);
+			assertEquals("producer " + producer, expected[producer], sequenceOf(datagram));
+			expected[producer]++;
+		}
+		for (Thread thread : threads) thread.join();
+
+		assertNull(socket.sent.poll(50, TimeUnit.MILLISECONDS));
+		assertEquals(producers * count, queue.getStats().getSent());
+	}
+
+	/*
+	 * An idle sender is parked; an offer must wake it instead of waiting out the idle park
+	 */
+	@Test
+	public void offerWakesIdleSender() throws InterruptedException {
+		queue.start(scheduler);
+
+		for (int i = 0; i < 50; i++) {
+			Thread.sleep(20); // long enough for the sender to park
+			long start = System.nanoTime();
+			assertTrue(queue.offer(datagram(0, i)));
+			assertEquals(i, sequenceOf(next()));
+
+			long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			assertTrue("datagram " + i + " waited " + latency + " ms", latency < 50);
+		}
+	}
+
+	/*
+	 * A message that fails to encode still publishes its slot, empty, so the lane keeps going
+	 */
+	@Test
+	public void encodeFailureDoesNotStallTheLane() throws InterruptedException {
+		Heartbeat broken = new Heartbeat() {
+			@Override
+			public void writeTo(ByteBuffer buffer) {
+				throw new IllegalStateException("broken");
+			}
+		};
+
+		try {
+			queue.offer(broken, null);
+			fail("exception expected");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		queue.start(scheduler);
+		for (int i = 0; i < 2 * CONTROL; i++) {
+			assertTrue(queue.offer(datagram(0, i)));
+			assertEquals(i, sequenceOf(next()));
+		}
+	}
+}
@@ -0,0 +1,219 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.exception.RobotCoreException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+public class TelemetryDeltaTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private TelemetryDeltaEncoder encoder;
+	private TelemetryDeltaDecoder decoder;
+	private TelemetryDelta frame;
+	private Telemetry received;
+
+	@Before
+	public void setUp() {
+		encoder = new TelemetryDeltaEncoder();
+		decoder = new TelemetryDeltaDecoder();
+		frame = new TelemetryDelta();
+		received = new Telemetry();
+	}
+
+	private static TelemetryDelta roundTrip(TelemetryDelta frame) throws RobotCoreException {
+		byte[] bytes = frame.toByteArray();
+		assertEquals(frame.getEncodedSize(), bytes.length);
+		return new TelemetryDelta(bytes);
+	}
+
+	/*
+	 * Encode, send, decode and acknowledge one frame; returns the frame as received
+	 */
+	private TelemetryDelta send(Telemetry telemetry, boolean ack) throws RobotCoreException {
+		encoder.encode(telemetry, frame);
+		TelemetryDelta wire = roundTrip(frame);
+		assertTrue(decoder.decode(wire, received));
+		if (ack) encoder.acknowledge(new TelemetryAck(wire.getTag(), wire.getSequence()));
+		return wire;
+	}
+
+	@Test
+	public void frameRoundTrip() throws RobotCoreException {
+		frame.set("tag", 7, 3, false);
+		frame.addDefinition(5, "five".getBytes(UTF8));
+		frame.addData(5, "value");
+		frame.addData(6, 1.5f);
+
+		TelemetryDelta copy = roundTrip(frame);
+		assertEquals("tag", copy.getTag());
+		assertEquals(7, copy.getSequence());
+		assertEquals(3, copy.getBaseSequence());
+		assertFalse(copy.isKeyframe());
+		assertEquals(1, copy.getDefinitionCount());
+		assertEquals(5, copy.getDefinitionId(0));
+		assertEquals("five", copy.getDefinitionKey(0));
+		assertEquals(1, copy.getStringCount());
+		assertEquals("value", copy.getStringValue(0));
+		assertEquals(1, copy.getNumberCount());
+		assertEquals(6, copy.getNumberId(0));
+		assertEquals(1.5f, copy.getNumberValue(0), 0f);
+	}
+
+	@Test
+	public void multiByteVarintIds() throws RobotCoreException {
+		int[] ids = { 0, 127, 128, 300, 16383, 16384, TelemetryKeyTable.MAX_KEYS - 1 };
+
+		frame.set("", 1, 1, true);
+		for (int id : ids) {
+			frame.addDefinition(id, ("k" + id).getBytes(UTF8));
+			frame.addData(id, "v" + id);
+			frame.addData(id, id);
+		}
+
+		TelemetryDelta copy = roundTrip(frame);
+		assertEquals(ids.length, copy.getDefinitionCount());
+		for (int i = 0; i < ids.length; i++) {
+			assertEquals(ids[i], copy.getDefinitionId(i));
+			assertEquals("k" + ids[i], copy.getDefinitionKey(i));
+			assertEquals(ids[i], copy.getStringId(i));
+			assertEquals("v" + ids[i], copy.getStringValue(i));
+			assertEquals(ids[i], copy.getNumberId(i));
+			assertEquals(ids[i], copy.getNumberValue(i), 0f);
+		}
+	}
+
+	@Test(expected = RobotCoreException.class)
+	public void truncatedFrameIsRejected() throws RobotCoreException {
+		frame.set("tag", 1, 1, true);
+		frame.addData(300, "value");
+		byte[] bytes = frame.toByteArray();
+
+		new TelemetryDelta().readFrom(ByteBuffer.wrap(bytes), 0, bytes.length - 3);
+	}
+
+	@Test
+	public void ackRoundTrip() throws RobotCoreException {
+		TelemetryAck ack = new TelemetryAck("tag", -5);
+		TelemetryAck copy = new TelemetryAck();
+		copy.fromByteArray(ack.toByteArray());
+
+		assertEquals("tag", copy.getTag());
+		assertEquals(-5, copy.getSequence());
+	}
+
+	@Test
+	public void deltaCarriesOnlyChanges() throws RobotCoreException {
+		Telemetry telemetry = new Telemetry();
+		telemetry.addData("a", "1");
+		telemetry.addData("b", 2f);
+		TelemetryDelta first = send(telemetry, true);
+		assertTrue(first.isKeyframe());
+		assertEquals(2, first.getDefinitionCount());
+
+		telemetry.addData("a", "1");
+		telemetry.addData("b", 3f);
+		TelemetryDelta second = send(telemetry, true);
+		assertFalse(second.isKeyframe());
+		assertEquals(0, second.getDefinitionCount());
+		assertEquals(0, second.getStringCount());
+		assertEquals(1, second.getNumberCount());
+
+		assertEquals("1", received.getDataStrings().get("a"));
+		assertEquals(3f, received.getDataNumbers().get("b"), 0f);
+	}
+
+	@Test
+	public void removedKeyForcesKeyframe() throws RobotCoreException {
+		Telemetry telemetry = new Telemetry();
+		telemetry.addData("a", "1");
+		telemetry.addData("b", "2");
+		send(telemetry, true);
+
+		telemetry.clearData();
+		telemetry.addData("a", "1");
+		TelemetryDelta frame = send(telemetry, true);
+
+		assertTrue(frame.isKeyframe());
+		assertEquals(1, received.getDataStrings().size());
+		assertNull(received.getDataStrings().get("b"));
+
+		// a key that only moved from strings to numbers is a removal too
+		telemetry.clearData();
+		telemetry.addData("a", 1f);
+		frame = send(telemetry, true);
+
+		assertTrue(frame.isKeyframe());
+		assertTrue(received.getDataStrings().isEmpty());
+		assertEquals(1f, received.getDataNumbers().get("a"), 0f);
+	}
+
+	@Test
+	public void unacknowledgedKeysAreDefinedAgain() throws RobotCoreException {
+		Telemetry telemetry = new Telemetry();
+		telemetry.addData("a", "1");
+		send(telemetry, true);
+
+		telemetry.addData("a", "1");
+		telemetry.addData("b", "2");
+		assertEquals(1, send(telemetry, false).getDefinitionCount());
+
+		// not acknowledged yet, so "b" is defined again
+		telemetry.addData("a", "1");
+		telemetry.addData("b", "3");
+		assertEquals(1, send(telemetry, true).getDefinitionCount());
+
+		telemetry.addData("a", "1");
+		telemetry.addData("b", "4");
+		assertEquals(0, send(telemetry, true).getDefinitionCount());
+	}
+
+	@Test
+	public void lostFrameIsRecovered() throws RobotCoreException {
+		Telemetry telemetry = new Telemetry();
+		telemetry.addData("a", "1");
+		send(telemetry, true);
+
+		// lost on the way: neither decoded nor acknowledged
+		telemetry.addData("a", "2");
+		encoder.encode(telemetry, frame);
+
+		// still relative to the acknowledged frame, so it applies on its own
+		telemetry.addData("a", "3");
+		TelemetryDelta next = send(telemetry, true);
+		assertFalse(next.isKeyframe());
+		assertEquals("3", received.getDataStrings().get("a"));
+	}
+
+	@Test
+	public void frameWithUnknownBaseIsDropped() throws RobotCoreException {
+		Telemetry telemetry = new Telemetry();
+		telemetry.addData("a", "1");
+		send(telemetry, true);
+
+		telemetry.addData("a", "2");
+		encoder.encode(telemetry, frame);
+		TelemetryDelta delta = roundTrip(frame);
+
+		assertFalse(new TelemetryDeltaDecoder().decode(delta, received));
+	}
+
+	@Test
+	public void keyframeInterval() throws RobotCoreException {
+		encoder.setKeyframeInterval(3);
+		Telemetry telemetry = new Telemetry();
+
+		int keyframes = 0;
+		for (int i = 0; i < 9; i++) {
+			telemetry.addData("a", "" + i);
+			if (send(telemetry, true).isKeyframe()) keyframes++;
+		}
+		assertEquals(3, keyframes);
+	}
+}
@@ -0,0 +1,146 @@
+package com.sources.com.qualcomm.robotcore.robocol;
+
+import com.qualcomm.robotcore.exception.RobotCoreException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TelemetryFragmentTest {
+
+	private RecordingSocket socket;
+	private TelemetryFragmenter fragmenter;
+	private final List<byte[]> frames = new ArrayList<byte[]>();
+
+	private final RobocolDatagramSocket.RecvCallback collector = new RobocolDatagramSocket.RecvCallback() {
+		@Override
+		public void onRecv(RobocolDatagram datagram) {
+			// only valid during the callback
+			frames.add(Arrays.copyOfRange(datagram.getData(), datagram.getOffset(), datagram.getOffset() + datagram.getLength()));
+		}
+	};
+
+	@Before
+	public void setUp() {
+		socket = new RecordingSocket();
+		fragmenter = new TelemetryFragmenter(socket);
+		frames.clear();
+	}
+
+	private static TelemetryDelta largeFrame(int sequence) throws RobotCoreException {
+		TelemetryDelta frame = new TelemetryDelta();
+		frame.set("tag", sequence, sequence, true);
+		for (int i = 0; i < 100; i++) {
+			frame.addData(i, "value " + sequence + " " + i + " .............................................");
+		}
+		assertTrue(frame.getEncodedSize() > RobocolConfig.MAX_PACKET_SIZE);
+		return frame;
+	}
+
+	private static void assertSameFrame(TelemetryDelta expected, byte[] actual) throws RobotCoreException {
+		TelemetryDelta frame = new TelemetryDelta(actual);
+		assertEquals(expected.getEncodedSize(), actual.length);
+		assertEquals(expected.getSequence(), frame.getSequence());
+		assertEquals(expected.getStringCount(), frame.getStringCount());
+		for (int i = 0; i < expected.getStringCount(); i++) {
+			assertEquals(expected.getStringValue(i), frame.getStringValue(i));
+		}
+	}
+
+	@Test
+	public void smallFrameIsNotFragmented() throws RobotCoreException {
+		TelemetryDelta frame = new TelemetryDelta();
+		frame.set("tag", 1, 1, true);
+		frame.addData(0, "value");
+		fragmenter.send(frame);
+
+		assertEquals(1, socket.count(RobocolParsable.MsgType.TELEMETRY_DELTA));
+		assertEquals(0, socket.count(RobocolParsable.MsgType.TELEMETRY_FRAGMENT));
+	}
+
+	@Test
+	public void reassemblesOutOfOrder() throws RobotCoreException {
+		TelemetryDelta frame = largeFrame(1);
+		fragmenter.send(frame);
+
+		List<byte[]> fragments = new ArrayList<byte[]>(socket.sent);
+		assertEquals(fragments.size(), socket.count(RobocolParsable.MsgType.TELEMETRY_FRAGMENT));
+		assertTrue(fragments.size() > 1);
+		for (byte[] fragment : fragments) assertTrue(fragment.length <= fragmenter.getFragmentSize());
+
+		Collections.reverse(fragments);
+		fragments.add(1, fragments.get(0)); // a duplicate is harmless
+
+		TelemetryReassembler reassembler = new TelemetryReassembler(collector);
+		for (byte[] fragment : fragments) reassembler.onRecv(RecordingSocket.datagram(fragment));
+
+		assertEquals(1, frames.size());
+		assertEquals(1, reassembler.getCompletedFrames());
+		assertSameFrame(frame, frames.get(0));
+	}
+
+	@Test
+	public void otherMessagesPassThrough() throws RobotCoreException {
+		TelemetryReassembler reassembler = new TelemetryReassembler(collector);
+		byte[] heartbeat = new Heartbeat().toByteArray();
+		reassembler.onRecv(RecordingSocket.datagram(heartbeat));
+
+		assertEquals(1, frames.size());
+		assertArrayEquals(heartbeat, frames.get(0));
+	}
+
+	@Test
+	public void incompleteFrameTimesOut() throws Exception {
+		fragmenter.send(largeFrame(1));
+		List<byte[]> fragments = socket.sent;
+
+		TelemetryReassembler reassembler = new TelemetryReassembler(collector, 100, 4);
+		reassembler.onRecv(RecordingSocket.datagram(fragments.get(0)));
+		Thread.sleep(150);
+		for (int i = 1; i < fragments.size(); i++) reassembler.onRecv(RecordingSocket.datagram(fragments.get(i)));
+
+		assertEquals(0, frames.size());
+		assertEquals(1, reassembler.getDroppedFrames());
+	}
+
+	@Test
+	public void oldestFrameIsDroppedWhenFull() throws RobotCoreException {
+		fragmenter.send(largeFrame(1));
+		List<byte[]> first = new ArrayList<byte[]>(socket.sent);
+		socket.sent.clear();
+		fragmenter.send(largeFrame(2));
+		List<byte[]> second = new ArrayList<byte[]>(socket.sent);
+
+		TelemetryReassembler reassembler = new TelemetryReassembler(collector, 1000, 1);
+		reassembler.onRecv(RecordingSocket.datagram(first.get(0)));
+		for (byte[] fragment : second) reassembler.onRecv(RecordingSocket.datagram(fragment));
+		for (int i = 1; i < first.size(); i++) reassembler.onRecv(RecordingSocket.datagram(first.get(i)));
+
+		assertEquals(1, frames.size());
+		assertSameFrame(largeFrame(2), frames.get(0));
+		assertEquals(1, reassembler.getDroppedFrames());
+	}
+
+	@Test
+	public void invalidFragmentIsCounted() throws RobotCoreException {
+		fragmenter.send(largeFrame(1));
+		byte[] fragment = socket.sent.get(0);
+
+		// claim more fragments than the format allows to be indexed
+		TelemetryFragment parsed = new TelemetryFragment(fragment);
+		TelemetryFragment bad = new TelemetryFragment();
+		bad.set(parsed.getFrameId(), 3, 2, new byte[16], 0, 16, 16);
+
+		TelemetryReassembler reassembler = new TelemetryReassembler(collector);
+		reassembler.onRecv(RecordingSocket.datagram(bad.toByteArray()));
+
+		assertEquals(0, frames.size());
+		assertEquals(1, reassembler.getInvalidFragments());
+	}
+}
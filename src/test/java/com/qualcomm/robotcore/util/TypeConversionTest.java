@@ -0,0 +1,42 @@
+package com.sources.com.qualcomm.robotcore.util;
+
+import org.junit.Test;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class TypeConversionTest {
+
+	@Test
+	public void unsignedVarintRoundTrip() {
+		int[] values = { 0, 1, 127, 128, 255, 300, 16383, 16384, 2097151, 2097152, Integer.MAX_VALUE, -1, Integer.MIN_VALUE };
+		int[] sizes = { 1, 1, 1, 2, 2, 2, 2, 3, 3, 4, 5, 5, 5 };
+
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		for (int i = 0; i < values.length; i++) {
+			buffer.clear();
+			TypeConversion.putUnsignedVarint(buffer, values[i]);
+			assertEquals("size of " + values[i], sizes[i], buffer.position());
+			assertEquals(sizes[i], TypeConversion.unsignedVarintSize(values[i]));
+
+			buffer.flip();
+			assertEquals(values[i], TypeConversion.getUnsignedVarint(buffer));
+			assertEquals(0, buffer.remaining());
+		}
+	}
+
+	@Test(expected = BufferUnderflowException.class)
+	public void truncatedVarint() {
+		ByteBuffer buffer = ByteBuffer.wrap(new byte[] { (byte) 0x80, (byte) 0x80 });
+		TypeConversion.getUnsignedVarint(buffer);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void overlongVarint() {
+		byte[] bytes = new byte[6];
+		for (int i = 0; i < 5; i++) bytes[i] = (byte) 0x80;
+		TypeConversion.getUnsignedVarint(ByteBuffer.wrap(bytes));
+	}
+}
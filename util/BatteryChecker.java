@@ -36,6 +36,9 @@ import android.content.IntentFilter;
 import android.os.BatteryManager;
 import android.os.Handler;
 
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
 public class BatteryChecker {
 
 	public interface BatteryWatcher{
@@ -48,11 +51,18 @@ public class BatteryChecker {
 	private long delay;
 	private BatteryWatcher watcher;
 	protected Handler batteryHandler;
+	private final FrameworkScheduler scheduler;
+	private ScheduledFuture<?> batteryFuture = null;
 
 	public BatteryChecker(Context context, BatteryWatcher watcher, long delay){
+		this(context, watcher, delay, FrameworkScheduler.getDefault());
+	}
+
+	public BatteryChecker(Context context, BatteryWatcher watcher, long delay, FrameworkScheduler scheduler){
 		this.context = context;
 		this.watcher = watcher;
 		this.delay = delay;
+		this.scheduler = scheduler;
 		batteryHandler = new Handler();
 	}
 
@@ -60,6 +70,8 @@ public class BatteryChecker {
 	// so it's more reliable to do our own polling. I register the receiver with a null receiver
 	// since I don't care about actually receiving the broadcast. registerReceiver() gives me
 	// the intent with all the info I want. Then I do some processing, and I'm done.
+	// Polling runs on the framework scheduler; the watcher is still called back on the
+	// thread that created this checker.
 	Runnable batteryLevelChecker = new Runnable() {
 		@Override
 		public void run() {
@@ -73,19 +85,27 @@ public class BatteryChecker {
 				percent = (currentLevel * 100) / scale;
 			}
 
-			watcher.updateBatteryLevel(percent);
+			final int level = percent;
+			batteryHandler.post(new Runnable() {
+				@Override
+				public void run() {
+					watcher.updateBatteryLevel(level);
+				}
+			});
 			RobotLog.i("Battery Level Remaining: " + percent);
-
-			batteryHandler.postDelayed(batteryLevelChecker, delay);
 		}
 	};
 
-	public void startBatteryMonitoring(){
-		batteryHandler.postDelayed(batteryLevelChecker, 0);
+	public synchronized void startBatteryMonitoring(){
+		if (batteryFuture != null) batteryFuture.cancel(false);
+		batteryFuture = scheduler.scheduleWithFixedDelay("battery checker", batteryLevelChecker, 0, delay, TimeUnit.MILLISECONDS);
 	}
 
-	public void endBatteryMonitoring(){
-		batteryHandler.removeCallbacks(batteryLevelChecker);
+	public synchronized void endBatteryMonitoring(){
+		if (batteryFuture != null) {
+			batteryFuture.cancel(false);
+			batteryFuture = null;
+		}
 	}
 
 }
@@ -0,0 +1,322 @@
+package com.sources.com.qualcomm.robotcore.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Owns the threads of the robot framework
+ * <p>
+ * There are three kinds of work:
+ * <ul>
+ * <li>timed tasks, periodic or delayed, run on a small pool of timer threads; they must not
+ * block</li>
+ * <li>short blocking jobs, such as shell commands, run on a bounded I/O pool</li>
+ * <li>long lived loops, such as the event loop, each get a worker thread of their own</li>
+ * </ul>
+ * All threads are named, so they can be told apart in a thread dump. Exceptions thrown by tasks are
+ * logged; a periodic task keeps running after an exception. getStats() reports the threads and
+ * queues, which shows when something keeps starting workers without stopping them.
+ * <p>
+ * Most code uses the shared scheduler from getDefault().
+ */
+public class FrameworkScheduler {
+
+	public static final int TIMER_THREADS = 2;
+	public static final int IO_THREADS = 2;
+	public static final int IO_QUEUE_SIZE = 32;
+
+	/**
+	 * More live workers than this is almost certainly a leak, a warning is logged
+	 */
+	public static final int MAX_EXPECTED_WORKERS = 16;
+
+	private static FrameworkScheduler defaultScheduler = null;
+
+	/**
+	 * Snapshot of the scheduler's threads and queues
+	 */
+	public static class Stats {
+		public final List<String> workers;
+		public final int timerThreads;
+		public final int timerQueued;
+		public final int ioThreads;
+		public final int ioActive;
+		public final int ioQueued;
+		public final long failedTasks;
+		public final long rejectedTasks;
+
+		private Stats(List<String> workers, int timerThreads, int timerQueued, int ioThreads, int ioActive,
+				int ioQueued, long failedTasks, long rejectedTasks) {
+			this.workers = workers;
+			this.timerThreads = timerThreads;
+			this.timerQueued = timerQueued;
+			this.ioThreads = ioThreads;
+			this.ioActive = ioActive;
+			this.ioQueued = ioQueued;
+			this.failedTasks = failedTasks;
+			this.rejectedTasks = rejectedTasks;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("workers: %d %s, timer threads: %d (%d queued), io threads: %d (%d active, %d queued), failed: %d, rejected: %d",
+					workers.size(), workers.toString(), timerThreads, timerQueued, ioThreads, ioActive, ioQueued,
+					failedTasks, rejectedTasks);
+		}
+	}
+
+	private static class NamedThreadFactory implements ThreadFactory {
+		private final String prefix;
+		private final int priority;
+		private final AtomicInteger count = new AtomicInteger();
+
+		NamedThreadFactory(String prefix, int priority) {
+			this.prefix = prefix;
+			this.priority = priority;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			thread.setPriority(priority);
+			return thread;
+		}
+	}
+
+	/*
+	 * Logs what a task throws, so a failing task is visible and a periodic task keeps running
+	 */
+	private class GuardedTask implements Runnable {
+		private final String name;
+		private final Runnable task;
+
+		GuardedTask(String name, Runnable task) {
+			this.name = name;
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			try {
+				task.run();
+			} catch (Exception e) {
+				failedTasks.incrementAndGet();
+				RobotLog.e("Scheduled task " + name + " threw an exception: " + e.toString());
+				RobotLog.logStacktrace(e);
+			}
+		}
+	}
+
+	private final ScheduledThreadPoolExecutor timer;
+	private final ThreadPoolExecutor io;
+	private final Set<Thread> workers = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+	private final AtomicLong failedTasks = new AtomicLong();
+	private final AtomicLong rejectedTasks = new AtomicLong();
+	private volatile boolean shutdown = false;
+
+	public FrameworkScheduler() {
+		timer = new ScheduledThreadPoolExecutor(TIMER_THREADS, new NamedThreadFactory("Robocore timer", Thread.NORM_PRIORITY + 1));
+		timer.setRemoveOnCancelPolicy(true);
+		timer.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+
+		io = new ThreadPoolExecutor(IO_THREADS, IO_THREADS, 30, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(IO_QUEUE_SIZE),
+				new NamedThreadFactory("Robocore io", Thread.NORM_PRIORITY - 1),
+				new RejectedExecutionHandler() {
+					@Override
+					public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+						rejectedTasks.incrementAndGet();
+						throw new RejectedExecutionException("I/O queue is full");
+					}
+				});
+		io.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Get the scheduler shared by the framework, creating it if needed
+	 *
+	 * @return shared scheduler
+	 */
+	public static synchronized FrameworkScheduler getDefault() {
+		if (defaultScheduler == null || defaultScheduler.isShutdown()) {
+			defaultScheduler = new FrameworkScheduler();
+		}
+		return defaultScheduler;
+	}
+
+	/**
+	 * Run a task periodically on a timer thread; see ScheduledExecutorService.scheduleAtFixedRate()
+	 *
+	 * @param name task name, for logging
+	 * @param task task to run, must not block
+	 * @param initialDelay delay before the first run
+	 * @param period time between the start of runs
+	 * @param unit unit of initialDelay and period
+	 * @return future, cancel it to stop the task
+	 */
+	public ScheduledFuture<?> scheduleAtFixedRate(String name, Runnable task, long initialDelay, long period, TimeUnit unit) {
+		return timer.scheduleAtFixedRate(new GuardedTask(name, task), initialDelay, period, unit);
+	}
+
+	/**
+	 * Run a task periodically on a timer thread; see ScheduledExecutorService.scheduleWithFixedDelay()
+	 *
+	 * @param name task name, for logging
+	 * @param task task to run, must not block
+	 * @param initialDelay delay before the first run
+	 * @param delay time between the end of one run and the start of the next
+	 * @param unit unit of initialDelay and delay
+	 * @return future, cancel it to stop the task
+	 */
+	public ScheduledFuture<?> scheduleWithFixedDelay(String name, Runnable task, long initialDelay, long delay, TimeUnit unit) {
+		return timer.scheduleWithFixedDelay(new GuardedTask(name, task), initialDelay, delay, unit);
+	}
+
+	/**
+	 * Run a task once on a timer thread, after a delay
+	 *
+	 * @param name task name, for logging
+	 * @param task task to run, must not block
+	 * @param delay delay before running
+	 * @param unit unit of delay
+	 * @return future, cancel it to keep the task from running
+	 */
+	public ScheduledFuture<?> schedule(String name, Runnable task, long delay, TimeUnit unit) {
+		return timer.schedule(new GuardedTask(name, task), delay, unit);
+	}
+
+	/**
+	 * Run a short blocking job on the I/O pool
+	 *
+	 * @param name job name, for logging
+	 * @param task job to run
+	 * @return future, or null if the job was rejected because the queue is full or the scheduler
+	 * is shut down
+	 */
+	public Future<?> execute(String name, Runnable task) {
+		try {
+			return io.submit(new GuardedTask(name, task));
+		} catch (RejectedExecutionException e) {
+			RobotLog.w("Unable to run " + name + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Create a small bounded pool for blocking jobs that must run side by side, such as probes
+	 * that each wait on a timeout
+	 * <p>
+	 * The pool belongs to the caller. Its threads are named and daemon, and stop after 30 seconds
+	 * without work; a job submitted while the queue is full is rejected.
+	 *
+	 * @param name thread name prefix
+	 * @param threads maximum number of threads
+	 * @param queueSize maximum number of jobs waiting for a thread
+	 * @return the pool
+	 */
+	public ThreadPoolExecutor newPool(String name, int threads, int queueSize) {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize), new NamedThreadFactory(name, Thread.NORM_PRIORITY));
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	/**
+	 * Start a long lived task on a worker thread of its own
+	 * <p>
+	 * The worker stops when the task returns. Stop it by whatever means the task offers, usually
+	 * Thread.interrupt().
+	 *
+	 * @param name thread name
+	 * @param priority thread priority, see Thread.setPriority()
+	 * @param task task to run
+	 * @return the started worker thread
+	 */
+	public Thread startWorker(final String name, int priority, final Runnable task) {
+		if (shutdown) throw new RejectedExecutionException("Scheduler is shut down, can't start " + name);
+
+		Thread worker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					task.run();
+				} catch (Exception e) {
+					failedTasks.incrementAndGet();
+					RobotLog.e("Worker " + name + " threw an exception: " + e.toString());
+					RobotLog.logStacktrace(e);
+				} finally {
+					workers.remove(Thread.currentThread());
+				}
+			}
+		}, name);
+		worker.setPriority(priority);
+
+		workers.add(worker);
+		if (workers.size() > MAX_EXPECTED_WORKERS) {
+			RobotLog.w(String.format("%d framework workers alive, threads may be leaking: %s", workers.size(), getStats()));
+		}
+
+		worker.start();
+		return worker;
+	}
+
+	/**
+	 * Stop all timed tasks and jobs, interrupt the workers and wait for them to stop
+	 *
+	 * @param timeout how long to wait for the workers, in milliseconds
+	 * @return true if every worker stopped in time
+	 */
+	public boolean shutdown(long timeout) {
+		shutdown = true;
+		timer.shutdownNow();
+		io.shutdownNow();
+
+		List<Thread> running = new ArrayList<Thread>(workers);
+		for (Thread worker : running) worker.interrupt();
+
+		long deadline = System.currentTimeMillis() + timeout;
+		try {
+			for (Thread worker : running) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining > 0) worker.join(remaining);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		Iterator<Thread> iterator = workers.iterator();
+		boolean stopped = !iterator.hasNext();
+		while (iterator.hasNext()) {
+			RobotLog.w("Framework worker did not stop: " + iterator.next().getName());
+		}
+		return stopped;
+	}
+
+	public boolean isShutdown() {
+		return shutdown;
+	}
+
+	public Stats getStats() {
+		List<String> names = new ArrayList<String>();
+		for (Thread worker : workers) names.add(worker.getName());
+
+		return new Stats(names, timer.getPoolSize(), timer.getQueue().size(), io.getPoolSize(),
+				io.getActiveCount(), io.getQueue().size(), failedTasks.get(), rejectedTasks.get());
+	}
+}
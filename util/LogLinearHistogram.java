@@ -0,0 +1,105 @@
+package com.sources.com.qualcomm.robotcore.util;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size histogram of non-negative values, such as durations in nanoseconds
+ * <p>
+ * Values below 2^SUB_BUCKET_BITS get a bucket each. Above that, every power of two range is split
+ * into 2^SUB_BUCKET_BITS equal buckets, so a value is known to within about 6% of itself no matter
+ * how large it is. Values past MAX_TRACKABLE_VALUE go into the last bucket; the exact maximum is
+ * kept separately.
+ * <p>
+ * Recording never allocates. All methods are synchronized, so one histogram may be shared by
+ * several threads.
+ */
+public class LogLinearHistogram {
+
+	public static final int SUB_BUCKET_BITS = 4;
+	public static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * Largest value with its own bucket; 2^40 ns is over 18 minutes
+	 */
+	public static final long MAX_TRACKABLE_VALUE = (1L << 40) - 1;
+
+	private static final int BUCKET_COUNT = indexOf(MAX_TRACKABLE_VALUE) + 1;
+
+	private final long[] counts = new long[BUCKET_COUNT];
+	private long count = 0;
+	private long max = 0;
+	private long sum = 0;
+
+	/**
+	 * Record a value
+	 *
+	 * @param value value to record; negative values are recorded as 0
+	 */
+	public synchronized void record(long value) {
+		if (value < 0) value = 0;
+		counts[indexOf(Math.min(value, MAX_TRACKABLE_VALUE))]++;
+		count++;
+		sum += value;
+		if (value > max) max = value;
+	}
+
+	/**
+	 * Forget all recorded values
+	 */
+	public synchronized void reset() {
+		Arrays.fill(counts, 0);
+		count = 0;
+		max = 0;
+		sum = 0;
+	}
+
+	public synchronized long getCount() {
+		return count;
+	}
+
+	public synchronized long getMax() {
+		return max;
+	}
+
+	public synchronized long getMean() {
+		return (count == 0) ? 0 : sum / count;
+	}
+
+	/**
+	 * Get the value at a percentile
+	 * <p>
+	 * The result is the upper bound of the bucket holding the percentile, but never more than the
+	 * largest recorded value.
+	 *
+	 * @param percentile percentile, between 0 and 1
+	 * @return value at the percentile, or 0 if nothing was recorded
+	 */
+	public synchronized long getPercentile(double percentile) {
+		Range.throwIfRangeIsInvalid(percentile, 0, 1);
+		if (count == 0) return 0;
+
+		long rank = Math.max(1, (long) Math.ceil(percentile * count));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) return (i == counts.length - 1) ? max : Math.min(upperBound(i), max);
+		}
+		return max;
+	}
+
+	private static int indexOf(long value) {
+		if (value < SUB_BUCKET_COUNT) return (int) value;
+
+		int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+		int sub = (int) (value >>> shift) & (SUB_BUCKET_COUNT - 1);
+		return (shift + 1) * SUB_BUCKET_COUNT + sub;
+	}
+
+	private static long upperBound(int index) {
+		if (index < SUB_BUCKET_COUNT) return index;
+
+		int shift = index / SUB_BUCKET_COUNT - 1;
+		long lower = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+		return lower + (1L << shift) - 1;
+	}
+}
@@ -175,7 +175,8 @@ public class RobotLog {
 		final String packageName = context.getPackageName();
 		final String filename = (new File(getLogFilename(context))).getAbsolutePath();
 
-		Thread logThread = new Thread() {
+		// logcat runs for as long as the app does, so it gets a worker of its own
+		FrameworkScheduler.getDefault().startWorker("RobotLog logcat", Thread.MIN_PRIORITY, new Runnable() {
 			@Override
 			public void run() {
 				try {
@@ -194,8 +195,7 @@ public class RobotLog {
 					writeLogcatToDiskEnabled = false;
 				}
 			}
-		};
-		logThread.start();
+		});
 	}
 
 	public static String getLogFilename(Context context) {
@@ -209,7 +209,7 @@ public class RobotLog {
 
 		writeLogcatToDiskEnabled = false;
 
-		Thread logThread = new Thread() {
+		FrameworkScheduler.getDefault().execute("RobotLog logcat stop", new Runnable() {
 			@Override
 			public void run() {
 				try {
@@ -227,8 +227,7 @@ public class RobotLog {
 					RobotLog.v("Unable to cancel writing log file to disk: " + e.toString());
 				}
 			}
-		};
-		logThread.start();
+		});
 	}
 
 }
@@ -0,0 +1,66 @@
+package com.sources.com.qualcomm.robotcore.util;
+
+/**
+ * Token bucket rate limiter
+ * <p>
+ * Tokens are added at a fixed rate, up to the capacity of the bucket. Taking tokens fails if the
+ * bucket does not hold enough, so short bursts up to the capacity are allowed while the long term
+ * rate never exceeds the fill rate.
+ */
+public class TokenBucket {
+
+	private double rate; // tokens per second
+	private double capacity;
+	private double tokens;
+	private long lastRefill;
+
+	/**
+	 * Constructor, the bucket starts full
+	 *
+	 * @param rate tokens added per second
+	 * @param capacity maximum number of tokens held
+	 */
+	public TokenBucket(double rate, double capacity) {
+		this.rate = rate;
+		this.capacity = capacity;
+		this.tokens = capacity;
+		this.lastRefill = System.nanoTime();
+	}
+
+	/**
+	 * Take tokens from the bucket, if it holds enough
+	 *
+	 * @param count number of tokens to take
+	 * @param now System.nanoTime()
+	 * @return true if the tokens were taken
+	 */
+	public synchronized boolean tryTake(double count, long now) {
+		refill(now);
+		if (tokens < count) return false;
+
+		tokens -= count;
+		return true;
+	}
+
+	/**
+	 * Change the fill rate, tokens already in the bucket are kept
+	 *
+	 * @param rate tokens added per second
+	 */
+	public synchronized void setRate(double rate) {
+		refill(System.nanoTime());
+		this.rate = rate;
+	}
+
+	public synchronized double getRate() {
+		return rate;
+	}
+
+	private void refill(long now) {
+		long elapsed = now - lastRefill;
+		if (elapsed <= 0) return;
+
+		tokens = Math.min(capacity, tokens + rate * elapsed / 1e9);
+		lastRefill = now;
+	}
+}
@@ -209,4 +209,49 @@ public class TypeConversion {
 		return new String(utf8String, UTF8_CHARSET);
 	}
 
+	/**
+	 * Write an int as an unsigned LEB128 varint, 7 bits per byte with the low bits first
+	 * @param buffer buffer to write to
+	 * @param value value to write, treated as unsigned
+	 * @throws java.nio.BufferOverflowException if the buffer is full
+	 */
+	public static void putUnsignedVarint(ByteBuffer buffer, int value) {
+		while ((value & ~0x7f) != 0) {
+			buffer.put((byte) ((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	/**
+	 * Read an unsigned LEB128 varint written by putUnsignedVarint
+	 * @param buffer buffer to read from
+	 * @throws java.nio.BufferUnderflowException if the buffer ends before the varint does
+	 * @throws java.lang.IllegalArgumentException if the varint does not fit in an int
+	 * @return value read
+	 */
+	public static int getUnsignedVarint(ByteBuffer buffer) {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			byte b = buffer.get();
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+		throw new IllegalArgumentException("varint is longer than 5 bytes");
+	}
+
+	/**
+	 * Number of bytes putUnsignedVarint will use for a value
+	 * @param value value, treated as unsigned
+	 * @return size in bytes, between 1 and 5
+	 */
+	public static int unsignedVarintSize(int value) {
+		int size = 1;
+		while ((value & ~0x7f) != 0) {
+			size++;
+			value >>>= 7;
+		}
+		return size;
+	}
+
 }